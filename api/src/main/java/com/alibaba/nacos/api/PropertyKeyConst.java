@@ -58,6 +58,8 @@ public class PropertyKeyConst {
 
     public final static String NAMING_CLIENT_BEAT_THREAD_COUNT = "namingClientBeatThreadCount";
 
+    public final static String NAMING_CLIENT_BEAT_BATCH = "namingClientBeatBatch";
+
     public final static String NAMING_POLLING_THREAD_COUNT = "namingPollingThreadCount";
 
     /**
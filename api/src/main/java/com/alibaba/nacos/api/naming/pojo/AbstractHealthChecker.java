@@ -16,6 +16,8 @@
 package com.alibaba.nacos.api.naming.pojo;
 
 import com.alibaba.fastjson.annotation.JSONField;
+import com.alibaba.fastjson.annotation.JSONType;
+import com.alibaba.fastjson.serializer.PropertyFilter;
 import com.alibaba.fastjson.serializer.SerializeWriter;
 import com.alibaba.nacos.api.common.Constants;
 import org.apache.commons.lang3.StringUtils;
@@ -70,12 +72,21 @@ public abstract class AbstractHealthChecker implements Cloneable {
         }
     }
 
+    @JSONType(serialzeFilters = Http.DefaultMethodFilter.class)
     public static class Http extends AbstractHealthChecker {
         public static final String TYPE = "HTTP";
 
+        public static final String METHOD_GET = "GET";
+        public static final String METHOD_HEAD = "HEAD";
+
         private String path = "";
         private String headers = "";
 
+        /**
+         * request method of the check, GET or HEAD
+         */
+        private String method = METHOD_GET;
+
         private int expectedResponseCode = 200;
 
         public Http() {
@@ -106,6 +117,17 @@ public abstract class AbstractHealthChecker implements Cloneable {
             this.headers = headers;
         }
 
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * @param method request method of the check, trimmed and upper-cased, GET if blank
+         */
+        public void setMethod(String method) {
+            this.method = StringUtils.isBlank(method) ? METHOD_GET : method.trim().toUpperCase();
+        }
+
         @JSONField(serialize = false)
         public Map<String, String> getCustomHeaders() {
             if (StringUtils.isBlank(headers)) {
@@ -134,11 +156,14 @@ public abstract class AbstractHealthChecker implements Cloneable {
         public void jsonAdapterCallback(SerializeWriter writer) {
             writer.writeFieldValue(',', "path", getPath());
             writer.writeFieldValue(',', "headers", getHeaders());
+            if (!METHOD_GET.equals(getMethod())) {
+                writer.writeFieldValue(',', "method", getMethod());
+            }
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(path, headers, expectedResponseCode);
+            return Objects.hash(path, headers, method, expectedResponseCode);
         }
 
         @Override
@@ -159,6 +184,9 @@ public abstract class AbstractHealthChecker implements Cloneable {
             if (!strEquals(headers, other.getHeaders())) {
                 return false;
             }
+            if (!strEquals(method, other.getMethod())) {
+                return false;
+            }
             return expectedResponseCode == other.getExpectedResponseCode();
         }
 
@@ -168,11 +196,23 @@ public abstract class AbstractHealthChecker implements Cloneable {
 
             config.setPath(this.getPath());
             config.setHeaders(this.getHeaders());
+            config.setMethod(this.getMethod());
             config.setType(this.getType());
             config.setExpectedResponseCode(this.getExpectedResponseCode());
 
             return config;
         }
+
+        /**
+         * Leaves out the default GET method, so checkers serialize as they did before the method was added
+         */
+        public static class DefaultMethodFilter implements PropertyFilter {
+
+            @Override
+            public boolean apply(Object object, String name, Object value) {
+                return !"method".equals(name) || !METHOD_GET.equals(value);
+            }
+        }
     }
 
     public static class Tcp extends AbstractHealthChecker {
@@ -94,7 +94,7 @@ public class NacosNamingService implements NamingService {
         eventDispatcher = new EventDispatcher();
         serverProxy = new NamingProxy(namespace, endpoint, serverList);
         serverProxy.setProperties(properties);
-        beatReactor = new BeatReactor(serverProxy, initClientBeatThreadCount(properties));
+        beatReactor = new BeatReactor(serverProxy, initClientBeatThreadCount(properties), isClientBeatBatch(properties));
         hostReactor = new HostReactor(eventDispatcher, serverProxy, cacheDir, isLoadCacheAtStart(properties), initPollingThreadCount(properties));
     }
 
@@ -107,6 +107,14 @@ public class NacosNamingService implements NamingService {
             UtilAndComs.DEFAULT_CLIENT_BEAT_THREAD_COUNT);
     }
 
+    private boolean isClientBeatBatch(Properties properties) {
+        if (properties == null) {
+            return false;
+        }
+
+        return BooleanUtils.toBoolean(properties.getProperty(PropertyKeyConst.NAMING_CLIENT_BEAT_BATCH));
+    }
+
     private int initPollingThreadCount(Properties properties) {
         if (properties == null) {
 
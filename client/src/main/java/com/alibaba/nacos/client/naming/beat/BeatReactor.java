@@ -15,11 +15,16 @@
  */
 package com.alibaba.nacos.client.naming.beat;
 
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
 import com.alibaba.nacos.api.common.Constants;
 import com.alibaba.nacos.client.monitor.MetricsMonitor;
 import com.alibaba.nacos.client.naming.net.NamingProxy;
 import com.alibaba.nacos.client.naming.utils.UtilAndComs;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 
@@ -30,10 +35,20 @@ import static com.alibaba.nacos.client.utils.LogUtils.NAMING_LOGGER;
  */
 public class BeatReactor {
 
+    /**
+     * Interval to try batch beats again after falling back to single beats, in case the servers were upgraded
+     */
+    private static final long BATCH_PROBE_INTERVAL = TimeUnit.MINUTES.toMillis(1L);
+
     private ScheduledExecutorService executorService;
 
     private NamingProxy serverProxy;
 
+    /**
+     * Whether beats of all instances are sent in one request, falls back to single beats on servers without batch beats
+     */
+    private volatile boolean batchMode;
+
     public final Map<String, BeatInfo> dom2Beat = new ConcurrentHashMap<String, BeatInfo>();
 
     public BeatReactor(NamingProxy serverProxy) {
@@ -41,7 +56,12 @@ public class BeatReactor {
     }
 
     public BeatReactor(NamingProxy serverProxy, int threadCount) {
+        this(serverProxy, threadCount, false);
+    }
+
+    public BeatReactor(NamingProxy serverProxy, int threadCount, boolean batchMode) {
         this.serverProxy = serverProxy;
+        this.batchMode = batchMode;
 
         executorService = new ScheduledThreadPoolExecutor(threadCount, new ThreadFactory() {
             @Override
@@ -52,12 +72,18 @@ public class BeatReactor {
                 return thread;
             }
         });
+
+        if (batchMode) {
+            executorService.schedule(new BatchBeatTask(), Constants.DEFAULT_HEART_BEAT_INTERVAL, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void addBeatInfo(String serviceName, BeatInfo beatInfo) {
         NAMING_LOGGER.info("[BEAT] adding beat: {} to beat map.", beatInfo);
         dom2Beat.put(buildKey(serviceName, beatInfo.getIp(), beatInfo.getPort()), beatInfo);
-        executorService.schedule(new BeatTask(beatInfo), beatInfo.getPeriod(), TimeUnit.MILLISECONDS);
+        if (!batchMode) {
+            scheduleBeat(beatInfo);
+        }
         MetricsMonitor.getDom2BeatSizeMonitor().set(dom2Beat.size());
     }
 
@@ -71,6 +97,20 @@ public class BeatReactor {
         MetricsMonitor.getDom2BeatSizeMonitor().set(dom2Beat.size());
     }
 
+    public boolean isBatchMode() {
+        return batchMode;
+    }
+
+    private void scheduleBeat(BeatInfo beatInfo) {
+        synchronized (beatInfo) {
+            if (beatInfo.isScheduled()) {
+                return;
+            }
+            beatInfo.setScheduled(true);
+        }
+        executorService.schedule(new BeatTask(beatInfo), beatInfo.getPeriod(), TimeUnit.MILLISECONDS);
+    }
+
     private String buildKey(String serviceName, String ip, int port) {
         return serviceName + Constants.NAMING_INSTANCE_ID_SPLITTER
             + ip + Constants.NAMING_INSTANCE_ID_SPLITTER + port;
@@ -89,9 +129,80 @@ public class BeatReactor {
             if (beatInfo.isStopped()) {
                 return;
             }
+            synchronized (beatInfo) {
+                // the server supports batch beats again, which renew this instance from now on:
+                if (batchMode) {
+                    beatInfo.setScheduled(false);
+                    return;
+                }
+            }
             long result = serverProxy.sendBeat(beatInfo);
             long nextTime = result > 0 ? result : beatInfo.getPeriod();
             executorService.schedule(new BeatTask(beatInfo), nextTime, TimeUnit.MILLISECONDS);
         }
     }
+
+    class BatchBeatTask implements Runnable {
+
+        @Override
+        public void run() {
+            long nextTime = Constants.DEFAULT_HEART_BEAT_INTERVAL;
+            try {
+                Map<String, List<BeatInfo>> beats = new HashMap<String, List<BeatInfo>>(16);
+                for (BeatInfo beatInfo : dom2Beat.values()) {
+                    if (beatInfo.isStopped()) {
+                        continue;
+                    }
+                    List<BeatInfo> serviceBeats = beats.get(beatInfo.getServiceName());
+                    if (serviceBeats == null) {
+                        serviceBeats = new ArrayList<BeatInfo>();
+                        beats.put(beatInfo.getServiceName(), serviceBeats);
+                    }
+                    serviceBeats.add(beatInfo);
+                    nextTime = Math.min(nextTime, beatInfo.getPeriod());
+                }
+
+                if (!beats.isEmpty()) {
+                    JSONObject result = serverProxy.sendBatchBeats(beats);
+
+                    if (result == null) {
+                        if (batchMode) {
+                            NAMING_LOGGER.warn("[BEAT] server does not support batch beats, send single beats instead.");
+                            batchMode = false;
+                            for (BeatInfo beatInfo : dom2Beat.values()) {
+                                scheduleBeat(beatInfo);
+                            }
+                        }
+                    } else {
+                        if (!batchMode) {
+                            NAMING_LOGGER.info("[BEAT] server supports batch beats again, stop sending single beats.");
+                            batchMode = true;
+                        }
+
+                        long interval = result.getLongValue("clientBeatInterval");
+                        if (interval > 0) {
+                            nextTime = interval;
+                        }
+
+                        // beats the server could not renew, such as of instances not registered, are sent again one by one:
+                        JSONArray unhandled = result.getJSONArray("unhandled");
+                        if (unhandled != null) {
+                            for (int i = 0; i < unhandled.size(); i++) {
+                                BeatInfo beatInfo = dom2Beat.get(unhandled.getString(i));
+                                if (beatInfo != null && !beatInfo.isStopped()) {
+                                    serverProxy.sendBeat(beatInfo);
+                                }
+                            }
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                NAMING_LOGGER.error("[CLIENT-BEAT] failed to send batch beats", e);
+            }
+            if (!batchMode) {
+                nextTime = BATCH_PROBE_INTERVAL;
+            }
+            executorService.schedule(this, nextTime, TimeUnit.MILLISECONDS);
+        }
+    }
 }
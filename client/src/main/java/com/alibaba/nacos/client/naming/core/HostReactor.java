@@ -16,6 +16,7 @@
 package com.alibaba.nacos.client.naming.core;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
 import com.alibaba.nacos.api.exception.NacosException;
 import com.alibaba.nacos.api.naming.pojo.Instance;
 import com.alibaba.nacos.api.naming.pojo.ServiceInfo;
@@ -204,6 +205,97 @@ public class HostReactor {
         return serviceInfo;
     }
 
+    /**
+     * Apply the instances added, changed and removed in a delta pushed by the server.
+     * <p>
+     * A delta only applies to the data it was computed from, which is told by its base checksum.
+     * If the cached data is different, e.g. after a push was lost, the full data is pulled instead.
+     *
+     * @param json delta pushed by the server
+     * @return service updated, or the cached one if the delta does not apply
+     */
+    public ServiceInfo processServiceDeltaJSON(String json) {
+        JSONObject delta = JSON.parseObject(json);
+        final String serviceName = delta.getString("name");
+        final String clusters = delta.getString("clusters");
+        String baseChecksum = delta.getString("baseChecksum");
+
+        ServiceInfo oldService = serviceInfoMap.get(ServiceInfo.getKey(serviceName, clusters));
+        if (oldService == null || !StringUtils.equals(oldService.getChecksum(), baseChecksum)) {
+            NAMING_LOGGER.warn("[NA] delta push of service: " + ServiceInfo.getKey(serviceName, clusters)
+                + " does not apply, base checksum: " + baseChecksum + ", current: "
+                + (oldService == null ? null : oldService.getChecksum()) + ", pull full data");
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    updateServiceNow(serviceName, clusters);
+                }
+            });
+            return oldService;
+        }
+
+        List<Instance> newHosts = JSON.parseArray(delta.getString("added"), Instance.class);
+        List<Instance> modHosts = JSON.parseArray(delta.getString("changed"), Instance.class);
+        List<String> removed = JSON.parseArray(delta.getString("removed"), String.class);
+
+        Map<String, Instance> hostMap = new LinkedHashMap<String, Instance>(oldService.getHosts().size() * 2);
+        for (Instance host : oldService.getHosts()) {
+            hostMap.put(host.toInetAddr(), host);
+        }
+
+        List<Instance> remvHosts = new ArrayList<Instance>();
+        for (String inetAddr : removed) {
+            Instance host = hostMap.remove(inetAddr);
+            if (host != null) {
+                remvHosts.add(host);
+            }
+        }
+
+        for (Instance host : newHosts) {
+            hostMap.put(host.toInetAddr(), host);
+        }
+
+        for (Instance host : modHosts) {
+            hostMap.put(host.toInetAddr(), host);
+        }
+
+        ServiceInfo serviceInfo = new ServiceInfo(oldService.getName(), oldService.getClusters());
+        serviceInfo.setGroupName(oldService.getGroupName());
+        serviceInfo.setAllIPs(oldService.isAllIPs());
+        serviceInfo.setCacheMillis(delta.getLongValue("cacheMillis"));
+        serviceInfo.setLastRefTime(delta.getLongValue("lastRefTime"));
+        serviceInfo.setChecksum(delta.getString("checksum"));
+        serviceInfo.setHosts(new ArrayList<Instance>(hostMap.values()));
+        serviceInfo.setJsonFromServer(JSON.toJSONString(serviceInfo));
+
+        serviceInfoMap.put(serviceInfo.getKey(), serviceInfo);
+
+        if (newHosts.size() > 0) {
+            NAMING_LOGGER.info("new ips(" + newHosts.size() + ") service: "
+                + serviceInfo.getKey() + " -> " + JSON.toJSONString(newHosts));
+        }
+
+        if (remvHosts.size() > 0) {
+            NAMING_LOGGER.info("removed ips(" + remvHosts.size() + ") service: "
+                + serviceInfo.getKey() + " -> " + JSON.toJSONString(remvHosts));
+        }
+
+        if (modHosts.size() > 0) {
+            NAMING_LOGGER.info("modified ips(" + modHosts.size() + ") service: "
+                + serviceInfo.getKey() + " -> " + JSON.toJSONString(modHosts));
+        }
+
+        if (newHosts.size() > 0 || remvHosts.size() > 0 || modHosts.size() > 0) {
+            eventDispatcher.serviceChanged(serviceInfo);
+            DiskCache.write(serviceInfo, cacheDir);
+
+            NAMING_LOGGER.info("current ips:(" + serviceInfo.ipCount() + ") service: " + serviceInfo.getKey() +
+                " -> " + JSON.toJSONString(serviceInfo.getHosts()));
+        }
+
+        return serviceInfo;
+    }
+
     private ServiceInfo getServiceInfo0(String serviceName, String clusters) {
 
         String key = ServiceInfo.getKey(serviceName, clusters);
@@ -81,6 +81,13 @@ public class PushReceiver implements Runnable {
                     hostReactor.processServiceJSON(pushPacket.data);
 
                     // send ack to server
+                    ack = "{\"type\": \"push-ack\""
+                        + ", \"lastRefTime\":\"" + pushPacket.lastRefTime
+                        + "\", \"data\":" + "\"\"}";
+                } else if ("dom-delta".equals(pushPacket.type)) {
+                    // a delta not applicable is acked as well, the full data is then pulled:
+                    hostReactor.processServiceDeltaJSON(pushPacket.data);
+
                     ack = "{\"type\": \"push-ack\""
                         + ", \"lastRefTime\":\"" + pushPacket.lastRefTime
                         + "\", \"data\":" + "\"\"}";
@@ -16,10 +16,12 @@
 package com.alibaba.nacos.client.naming.net;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.alibaba.fastjson.TypeReference;
 import com.alibaba.nacos.api.PropertyKeyConst;
 import com.alibaba.nacos.api.SystemPropertyKeyConst;
+import com.alibaba.nacos.api.common.Constants;
 import com.alibaba.nacos.api.exception.NacosException;
 import com.alibaba.nacos.api.naming.CommonParams;
 import com.alibaba.nacos.api.naming.pojo.Instance;
@@ -294,6 +296,10 @@ public class NamingProxy {
         params.put("udpPort", String.valueOf(udpPort));
         params.put("clientIP", NetUtils.localIP());
         params.put("healthyOnly", String.valueOf(healthyOnly));
+        if (udpPort > 0) {
+            // pushes may carry the changed instances only:
+            params.put("pushDelta", "true");
+        }
 
         return reqAPI(UtilAndComs.NACOS_URL_BASE + "/instance/list", params, HttpMethod.GET);
     }
@@ -319,6 +325,51 @@ public class NamingProxy {
         return 0L;
     }
 
+    /**
+     * Send beats of many instances in one request.
+     *
+     * @param beats beats grouped by service name
+     * @return result of the server with the beats it could not renew, or null if the server does not support batch beats
+     * @throws NacosException if the request fails
+     */
+    public JSONObject sendBatchBeats(Map<String, List<BeatInfo>> beats) throws NacosException {
+        JSONObject body = new JSONObject();
+        for (Map.Entry<String, List<BeatInfo>> entry : beats.entrySet()) {
+            JSONArray serviceBeats = new JSONArray();
+            for (BeatInfo beatInfo : entry.getValue()) {
+                // only what identifies the instance, beats of unknown instances are sent again in full:
+                JSONObject beat = new JSONObject();
+                beat.put("ip", beatInfo.getIp());
+                beat.put("port", beatInfo.getPort());
+                if (StringUtils.isNotEmpty(beatInfo.getCluster())
+                    && !Constants.DEFAULT_CLUSTER_NAME.equals(beatInfo.getCluster())) {
+                    beat.put("cluster", beatInfo.getCluster());
+                }
+                serviceBeats.add(beat);
+            }
+            body.put(entry.getKey(), serviceBeats);
+        }
+
+        if (NAMING_LOGGER.isDebugEnabled()) {
+            NAMING_LOGGER.debug("[BEAT] {} sending batch beats to server: {}", namespaceId, body.toJSONString());
+        }
+
+        Map<String, String> params = new HashMap<String, String>(4);
+        params.put("beats", body.toJSONString());
+        params.put(CommonParams.NAMESPACE_ID, namespaceId);
+        try {
+            return JSON.parseObject(reqAPI(UtilAndComs.NACOS_URL_BASE + "/instance/beats", params, HttpMethod.PUT));
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof NacosException) {
+                int code = ((NacosException) e.getCause()).getErrCode();
+                if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_NOT_IMPLEMENTED) {
+                    return null;
+                }
+            }
+            throw e;
+        }
+    }
+
     public boolean serverHealthy() {
 
         try {
@@ -422,7 +473,8 @@ public class NamingProxy {
             return StringUtils.EMPTY;
         }
 
-        throw new NacosException(NacosException.SERVER_ERROR, "failed to req API:"
+        // the status of the server is kept as the error code, so callers can tell an unsupported API from a failure:
+        throw new NacosException(result.code, "failed to req API:"
             + curServer + api + ". code:"
             + result.code + " msg: " + result.content);
     }
@@ -462,7 +514,7 @@ public class NamingProxy {
             }
 
             throw new IllegalStateException("failed to req API:" + api + " after all servers(" + servers + ") tried: "
-                + exception.getMessage());
+                + exception.getMessage(), exception);
         }
 
         for (int i = 0; i < UtilAndComs.REQUEST_DOMAIN_RETRY_COUNT; i++) {
@@ -475,7 +527,7 @@ public class NamingProxy {
         }
 
         throw new IllegalStateException("failed to req API:/api/" + api + " after all servers(" + servers + ") tried: "
-            + exception.getMessage());
+            + exception.getMessage(), exception);
 
     }
 
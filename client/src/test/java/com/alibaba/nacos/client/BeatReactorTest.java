@@ -1,17 +1,30 @@
 package com.alibaba.nacos.client;
 
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.nacos.api.exception.NacosException;
 import com.alibaba.nacos.client.naming.beat.BeatInfo;
 import com.alibaba.nacos.client.naming.beat.BeatReactor;
 import com.alibaba.nacos.client.naming.net.NamingProxy;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.IOException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 /**
@@ -47,6 +60,122 @@ public class BeatReactorTest {
         Assert.assertEquals(0, getActiveThread(beatReactor));
     }
 
+    @Test
+    public void batchBeatsAcrossServices() throws Exception {
+        BeatReactor beatReactor = new BeatReactor(namingProxy, 1, true);
+        beatReactor.addBeatInfo("service-a", beatInfo("service-a", "11.11.11.11"));
+        beatReactor.addBeatInfo("service-a", beatInfo("service-a", "11.11.11.12"));
+        beatReactor.addBeatInfo("service-b", beatInfo("service-b", "11.11.11.11"));
+
+        Mockito.doReturn(new JSONObject()).when(namingProxy).sendBatchBeats(Mockito.<Map<String, List<BeatInfo>>>any());
+        batchBeatTask(beatReactor).run();
+
+        ArgumentCaptor<Map> beats = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(namingProxy).sendBatchBeats(beats.capture());
+        Assert.assertEquals(2, beats.getValue().size());
+        Assert.assertEquals(2, ((List) beats.getValue().get("service-a")).size());
+        Assert.assertEquals(1, ((List) beats.getValue().get("service-b")).size());
+        Mockito.verify(namingProxy, Mockito.never()).sendBeat(Mockito.any(BeatInfo.class));
+    }
+
+    @Test
+    public void fallBackToSingleBeatsAndBack() throws Exception {
+        BeatReactor beatReactor = new BeatReactor(namingProxy, 1, true);
+        BeatInfo first = beatInfo("service-a", "11.11.11.11");
+        BeatInfo second = beatInfo("service-b", "11.11.11.11");
+        beatReactor.addBeatInfo("service-a", first);
+        beatReactor.addBeatInfo("service-b", second);
+        Runnable batchBeatTask = batchBeatTask(beatReactor);
+
+        // a server without batch beats:
+        Mockito.doReturn(null).when(namingProxy).sendBatchBeats(Mockito.<Map<String, List<BeatInfo>>>any());
+        Mockito.doReturn(0L).when(namingProxy).sendBeat(Mockito.any(BeatInfo.class));
+        batchBeatTask.run();
+
+        Assert.assertFalse(beatReactor.isBatchMode());
+        Mockito.verify(namingProxy, Mockito.timeout(1000L).atLeast(2)).sendBeat(first);
+        Mockito.verify(namingProxy, Mockito.timeout(1000L).atLeast(2)).sendBeat(second);
+
+        // the server is upgraded and the next try of batch beats succeeds:
+        Mockito.doReturn(new JSONObject()).when(namingProxy).sendBatchBeats(Mockito.<Map<String, List<BeatInfo>>>any());
+        batchBeatTask.run();
+
+        Assert.assertTrue(beatReactor.isBatchMode());
+        Thread.sleep(200L);
+        Mockito.clearInvocations(namingProxy);
+        Thread.sleep(300L);
+        Mockito.verify(namingProxy, Mockito.never()).sendBeat(Mockito.any(BeatInfo.class));
+        Assert.assertFalse(first.isScheduled());
+        Assert.assertFalse(second.isScheduled());
+    }
+
+    @Test
+    public void batchBeatsNotSupported() throws Exception {
+        Map<String, List<BeatInfo>> beats = Collections.singletonMap("service-a",
+            Collections.singletonList(beatInfo("service-a", "11.11.11.11")));
+
+        HttpServer server = serverAnswering(HttpURLConnection.HTTP_NOT_FOUND);
+        try {
+            Assert.assertNull(proxyOf(server).sendBatchBeats(beats));
+        } finally {
+            server.stop(0);
+        }
+
+        server = serverAnswering(HttpURLConnection.HTTP_NOT_IMPLEMENTED);
+        try {
+            Assert.assertNull(proxyOf(server).sendBatchBeats(beats));
+        } finally {
+            server.stop(0);
+        }
+
+        // any other failure is not taken for an old server:
+        server = serverAnswering(HttpURLConnection.HTTP_INTERNAL_ERROR);
+        try {
+            proxyOf(server).sendBatchBeats(beats);
+            Assert.fail("failure taken for an old server");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof NacosException);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static BeatInfo beatInfo(String serviceName, String ip) {
+        BeatInfo beatInfo = new BeatInfo();
+        beatInfo.setServiceName(serviceName);
+        beatInfo.setIp(ip);
+        beatInfo.setPort(1234);
+        beatInfo.setCluster("clusterName");
+        beatInfo.setWeight(1);
+        beatInfo.setMetadata(new HashMap<String, String>());
+        beatInfo.setPeriod(50L);
+        return beatInfo;
+    }
+
+    private static Runnable batchBeatTask(BeatReactor beatReactor) throws Exception {
+        Class<?> clazz = Class.forName(BeatReactor.class.getName() + "$BatchBeatTask");
+        Constructor<?> constructor = clazz.getDeclaredConstructor(BeatReactor.class);
+        constructor.setAccessible(true);
+        return (Runnable) constructor.newInstance(beatReactor);
+    }
+
+    private static HttpServer serverAnswering(final int code) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(code, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static NamingProxy proxyOf(HttpServer server) {
+        return new NamingProxy("public", null, "127.0.0.1:" + server.getAddress().getPort());
+    }
+
     private int getActiveThread(BeatReactor beatReactor) throws NoSuchFieldException, IllegalAccessException {
         Field field = BeatReactor.class.getDeclaredField("executorService");
         field.setAccessible(true);
@@ -0,0 +1,139 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.client;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.alibaba.nacos.api.naming.pojo.ServiceInfo;
+import com.alibaba.nacos.client.naming.core.EventDispatcher;
+import com.alibaba.nacos.client.naming.core.HostReactor;
+import com.alibaba.nacos.client.naming.net.NamingProxy;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author nkorange
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class HostReactorTest {
+
+    private static final String SERVICE_NAME = "DEFAULT_GROUP@@test-service";
+
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
+    @Mock
+    private NamingProxy namingProxy;
+
+    @Mock
+    private EventDispatcher eventDispatcher;
+
+    private HostReactor hostReactor;
+
+    @Before
+    public void init() {
+        hostReactor = new HostReactor(eventDispatcher, namingProxy, cacheDir.getRoot().getAbsolutePath());
+
+        ServiceInfo serviceInfo = new ServiceInfo(SERVICE_NAME, "");
+        serviceInfo.setChecksum("checksum-1");
+        serviceInfo.setLastRefTime(1L);
+        serviceInfo.setHosts(Arrays.asList(instance("1.1.1.1", 1.0D), instance("1.1.1.2", 1.0D)));
+        hostReactor.processServiceJSON(JSON.toJSONString(serviceInfo));
+        Mockito.reset(eventDispatcher);
+    }
+
+    @Test
+    public void applyDelta() {
+        JSONObject delta = delta("checksum-1", "checksum-2");
+        delta.put("added", Collections.singletonList(instance("1.1.1.3", 1.0D)));
+        delta.put("changed", Collections.singletonList(instance("1.1.1.2", 5.0D)));
+        delta.put("removed", Collections.singletonList("1.1.1.1:80"));
+
+        ServiceInfo serviceInfo = hostReactor.processServiceDeltaJSON(delta.toJSONString());
+
+        Assert.assertEquals("checksum-2", serviceInfo.getChecksum());
+        Assert.assertEquals(2L, serviceInfo.getLastRefTime());
+        Assert.assertSame(serviceInfo, hostReactor.getServiceInfoMap().get(SERVICE_NAME));
+
+        List<String> hosts = new ArrayList<String>();
+        for (Instance host : serviceInfo.getHosts()) {
+            hosts.add(host.toInetAddr() + "_" + host.getWeight());
+        }
+        Assert.assertEquals(Arrays.asList("1.1.1.2:80_5.0", "1.1.1.3:80_1.0"), hosts);
+
+        Mockito.verify(eventDispatcher).serviceChanged(serviceInfo);
+        Mockito.verifyZeroInteractions(namingProxy);
+    }
+
+    @Test
+    public void pullOnChecksumMismatch() throws Exception {
+        ServiceInfo latest = new ServiceInfo(SERVICE_NAME, "");
+        latest.setChecksum("checksum-3");
+        latest.setLastRefTime(3L);
+        latest.setHosts(Collections.singletonList(instance("1.1.1.4", 1.0D)));
+        Mockito.doReturn(JSON.toJSONString(latest)).when(namingProxy)
+            .queryList(Mockito.eq(SERVICE_NAME), Mockito.eq(""), Mockito.anyInt(), Mockito.eq(false));
+
+        JSONObject delta = delta("checksum-2", "checksum-3");
+        delta.put("added", Collections.singletonList(instance("1.1.1.4", 1.0D)));
+        delta.put("changed", Collections.emptyList());
+        delta.put("removed", Arrays.asList("1.1.1.1:80", "1.1.1.2:80"));
+
+        ServiceInfo serviceInfo = hostReactor.processServiceDeltaJSON(delta.toJSONString());
+
+        // the delta is not applied on top of data it was not computed from:
+        Assert.assertEquals("checksum-1", serviceInfo.getChecksum());
+        Assert.assertEquals(2, serviceInfo.getHosts().size());
+
+        Mockito.verify(namingProxy, Mockito.timeout(3000L))
+            .queryList(Mockito.eq(SERVICE_NAME), Mockito.eq(""), Mockito.anyInt(), Mockito.eq(false));
+        Mockito.verify(eventDispatcher, Mockito.timeout(3000L)).serviceChanged(Mockito.any(ServiceInfo.class));
+        Assert.assertEquals("checksum-3", hostReactor.getServiceInfoMap().get(SERVICE_NAME).getChecksum());
+    }
+
+    private JSONObject delta(String baseChecksum, String checksum) {
+        JSONObject delta = new JSONObject();
+        delta.put("name", SERVICE_NAME);
+        delta.put("clusters", "");
+        delta.put("baseChecksum", baseChecksum);
+        delta.put("checksum", checksum);
+        delta.put("cacheMillis", 10000L);
+        delta.put("lastRefTime", 2L);
+        return delta;
+    }
+
+    private Instance instance(String ip, double weight) {
+        Instance instance = new Instance();
+        instance.setIp(ip);
+        instance.setPort(80);
+        instance.setWeight(weight);
+        instance.setHealthy(true);
+        return instance;
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.cluster.transport;
+
+import com.alibaba.fastjson.TypeReference;
+import com.alibaba.nacos.naming.consistency.Datum;
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.core.Instances;
+import com.alibaba.nacos.naming.pojo.Record;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Schema based binary serializer for maps of instance list datums.
+ * <p>
+ * Integers are varint encoded, the beats of one instance list are delta encoded and every
+ * string is written once per payload and referred to by index afterwards, so cluster names,
+ * service names and metadata keys cost one or two bytes after their first occurrence.
+ * Payloads start with {@link #MAGIC} which can never start a JSON document, so receivers can
+ * tell both formats apart without extra headers.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+@Component
+public class BinarySerializer implements Serializer {
+
+    public static final byte MAGIC = (byte) 0xB1;
+
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_HEALTHY = 1;
+    private static final int FLAG_ENABLED = 1 << 1;
+    private static final int FLAG_EPHEMERAL = 1 << 2;
+    private static final int FLAG_MARKED = 1 << 3;
+    private static final int FLAG_DEFAULT_WEIGHT = 1 << 4;
+
+    private static final double DEFAULT_WEIGHT = 1.0D;
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    @Override
+    public <T> byte[] serialize(T data) {
+        if (!(data instanceof Map)) {
+            throw new IllegalArgumentException("binary serializer only supports datum maps, got: "
+                + (data == null ? null : data.getClass()));
+        }
+
+        Map<?, ?> datumMap = (Map<?, ?>) data;
+
+        // keys without datum are left out, the same as a missing key for the receiver:
+        int size = 0;
+        for (Object value : datumMap.values()) {
+            if (value != null) {
+                size++;
+            }
+        }
+
+        Writer writer = new Writer(size * 128 + 16);
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeVarInt(size);
+
+        for (Map.Entry<?, ?> entry : datumMap.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            if (!(entry.getValue() instanceof Datum)) {
+                throw new IllegalArgumentException("binary serializer only supports datum maps, got value: "
+                    + entry.getValue().getClass());
+            }
+            writer.writeString((String) entry.getKey());
+            writeDatum(writer, (Datum) entry.getValue());
+        }
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Deserialize a map of instance list datums, the only type this serializer writes
+     *
+     * @param data  data to deserialize
+     * @param clazz {@link Map} or one of its super types
+     * @param <T>   target type
+     * @return map of datum keys to instance list datums
+     */
+    @Override
+    public <T> T deserialize(byte[] data, Class<T> clazz) {
+        if (!clazz.isAssignableFrom(HashMap.class)) {
+            throw new IllegalArgumentException("binary serializer only supports datum maps, got: " + clazz);
+        }
+        return clazz.cast(deserializeMap(data, Instances.class));
+    }
+
+    /**
+     * Deserialize a map of instance list datums, the only type this serializer writes
+     *
+     * @param data  data to deserialize
+     * @param clazz a {@link Map} type, such as {@code Map<String, Datum<Instances>>}
+     * @param <T>   target type
+     * @return map of datum keys to instance list datums
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(byte[] data, TypeReference<T> clazz) {
+        Type type = clazz.getType();
+        Type rawType = type instanceof ParameterizedType ? ((ParameterizedType) type).getRawType() : type;
+        if (!(rawType instanceof Class) || !((Class<?>) rawType).isAssignableFrom(HashMap.class)) {
+            throw new IllegalArgumentException("binary serializer only supports datum maps, got: " + type);
+        }
+        return (T) deserializeMap(data, Instances.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Record> Map<String, Datum<T>> deserializeMap(byte[] data, Class<T> clazz) {
+        if (clazz != Instances.class) {
+            throw new IllegalArgumentException("binary serializer only supports instance lists, got: " + clazz);
+        }
+
+        Reader reader = new Reader(data);
+        if (reader.readByte() != MAGIC) {
+            throw new IllegalArgumentException("not a binary serialized payload");
+        }
+
+        byte version = reader.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported binary serializer version: " + version);
+        }
+
+        int size = reader.readVarInt();
+        Map<String, Datum<T>> resultMap = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++) {
+            String mapKey = reader.readString();
+            resultMap.put(mapKey, (Datum<T>) readDatum(reader));
+        }
+
+        return resultMap;
+    }
+
+    private void writeDatum(Writer writer, Datum datum) {
+        writer.writeString(datum.key);
+        writer.writeVarLong(datum.timestamp.get());
+
+        if (datum.value == null) {
+            writer.writeVarInt(0);
+            return;
+        }
+
+        if (!(datum.value instanceof Instances)) {
+            throw new IllegalArgumentException("binary serializer only supports instance lists, got: "
+                + datum.value.getClass());
+        }
+
+        List<Instance> instanceList = ((Instances) datum.value).getInstanceList();
+        if (instanceList == null) {
+            instanceList = Collections.emptyList();
+        }
+
+        // 0 is reserved for a null value:
+        writer.writeVarInt(instanceList.size() + 1);
+
+        long lastBeat = 0L;
+        for (Instance instance : instanceList) {
+            writeInstance(writer, instance, lastBeat);
+            lastBeat = instance.getLastBeat();
+        }
+    }
+
+    private Datum<Instances> readDatum(Reader reader) {
+        Datum<Instances> datum = new Datum<>();
+        datum.key = reader.readString();
+        datum.timestamp.set(reader.readVarLong());
+
+        int size = reader.readVarInt() - 1;
+        if (size < 0) {
+            return datum;
+        }
+
+        List<Instance> instanceList = new ArrayList<>(size);
+        long lastBeat = 0L;
+        for (int i = 0; i < size; i++) {
+            Instance instance = readInstance(reader, lastBeat);
+            lastBeat = instance.getLastBeat();
+            instanceList.add(instance);
+        }
+
+        Instances instances = new Instances();
+        instances.setInstanceList(instanceList);
+        datum.value = instances;
+        return datum;
+    }
+
+    private void writeInstance(Writer writer, Instance instance, long previousBeat) {
+        int flags = 0;
+        if (instance.isHealthy()) {
+            flags |= FLAG_HEALTHY;
+        }
+        if (instance.isEnabled()) {
+            flags |= FLAG_ENABLED;
+        }
+        if (instance.isEphemeral()) {
+            flags |= FLAG_EPHEMERAL;
+        }
+        if (instance.isMarked()) {
+            flags |= FLAG_MARKED;
+        }
+        if (instance.getWeight() == DEFAULT_WEIGHT) {
+            flags |= FLAG_DEFAULT_WEIGHT;
+        }
+
+        writer.writeByte((byte) flags);
+        writer.writeString(instance.getInstanceId());
+        writer.writeString(instance.getIp());
+        writer.writeVarInt(instance.getPort());
+        if ((flags & FLAG_DEFAULT_WEIGHT) == 0) {
+            writer.writeLong(Double.doubleToLongBits(instance.getWeight()));
+        }
+        writer.writeString(instance.getClusterName());
+        writer.writeString(instance.getServiceName());
+        writer.writeVarLong(instance.getLastBeat() - previousBeat);
+        writer.writeString(instance.getTenant());
+        writer.writeString(instance.getApp());
+
+        Map<String, String> metadata = instance.getMetadata();
+        if (metadata == null || metadata.isEmpty()) {
+            writer.writeVarInt(0);
+            return;
+        }
+
+        writer.writeVarInt(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            writer.writeString(entry.getKey());
+            writer.writeString(entry.getValue());
+        }
+    }
+
+    private Instance readInstance(Reader reader, long previousBeat) {
+        Instance instance = new Instance();
+
+        int flags = reader.readByte();
+        instance.setHealthy((flags & FLAG_HEALTHY) != 0);
+        instance.setEnabled((flags & FLAG_ENABLED) != 0);
+        instance.setEphemeral((flags & FLAG_EPHEMERAL) != 0);
+        instance.setMarked((flags & FLAG_MARKED) != 0);
+
+        instance.setInstanceId(reader.readString());
+        instance.setIp(reader.readString());
+        instance.setPort(reader.readVarInt());
+        if ((flags & FLAG_DEFAULT_WEIGHT) != 0) {
+            instance.setWeight(DEFAULT_WEIGHT);
+        } else {
+            instance.setWeight(Double.longBitsToDouble(reader.readLong()));
+        }
+        instance.setClusterName(reader.readString());
+        instance.setServiceName(reader.readString());
+        instance.setLastBeat(previousBeat + reader.readVarLong());
+        instance.setTenant(reader.readString());
+        instance.setApp(reader.readString());
+
+        int metadataSize = reader.readVarInt();
+        Map<String, String> metadata = new HashMap<>(Math.max(16, metadataSize * 4 / 3 + 1));
+        for (int i = 0; i < metadataSize; i++) {
+            metadata.put(reader.readString(), reader.readString());
+        }
+        instance.setMetadata(metadata);
+
+        return instance;
+    }
+
+    /**
+     * Output buffer. Strings are referenced as: 0 for null, 1 for a new literal that follows,
+     * n + 2 for the n-th literal already written.
+     */
+    private static class Writer {
+
+        private byte[] buffer;
+
+        private int position;
+
+        private Map<String, Integer> strings = new HashMap<>(256);
+
+        Writer(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(1);
+            buffer[position++] = value;
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value);
+        }
+
+        void writeVarLong(long value) {
+            // zig-zag so that small negative numbers stay small:
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensureCapacity(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[position++] = (byte) zigzag;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarInt(index + 2);
+                return;
+            }
+
+            strings.put(value, strings.size());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(1);
+            writeVarInt(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+            }
+        }
+    }
+
+    private static class Reader {
+
+        private final byte[] buffer;
+
+        private int position;
+
+        private List<String> strings = new ArrayList<>(256);
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("truncated binary payload");
+            }
+            return buffer[position++];
+        }
+
+        int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        long readVarLong() {
+            long zigzag = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IllegalArgumentException("malformed varint in binary payload");
+        }
+
+        long readLong() {
+            long value = 0L;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        String readString() {
+            int tag = readVarInt();
+            if (tag == 0) {
+                return null;
+            }
+
+            if (tag > 1) {
+                return strings.get(tag - 2);
+            }
+
+            int length = readVarInt();
+            if (length < 0 || position + length > buffer.length) {
+                throw new IllegalArgumentException("truncated binary payload");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            strings.add(value);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.cluster.transport;
+
+import java.io.*;
+
+/**
+ * Framing of a datum stream: a sequence of serialized datum maps, each prefixed by its length,
+ * terminated by a zero length. Every chunk is a complete payload of a {@link Serializer}, so the
+ * receiver can decode and apply it before reading the next one.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class DatumChunkStream {
+
+    public static final String CONTENT_TYPE = "application/x-nacos-datum-stream";
+
+    /**
+     * Upper bound of a single chunk, protects the reader from a corrupted length.
+     */
+    private static final int MAX_CHUNK_BYTES = 256 * 1024 * 1024;
+
+    private final DataOutputStream out;
+
+    public DatumChunkStream(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+    }
+
+    public void write(byte[] chunk) throws IOException {
+        if (chunk.length == 0) {
+            return;
+        }
+        out.writeInt(chunk.length);
+        out.write(chunk);
+        out.flush();
+    }
+
+    public void finish() throws IOException {
+        out.writeInt(0);
+        out.flush();
+    }
+
+    /**
+     * Read chunks until the end marker.
+     *
+     * @return number of chunks read
+     * @throws IOException if the stream ends before the end marker or is malformed
+     */
+    public static int read(InputStream in, ChunkHandler handler) throws Exception {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        int count = 0;
+        while (true) {
+            int length = input.readInt();
+            if (length == 0) {
+                return count;
+            }
+
+            if (length < 0 || length > MAX_CHUNK_BYTES) {
+                throw new IOException("malformed datum stream, chunk length: " + length);
+            }
+
+            byte[] chunk = new byte[length];
+            input.readFully(chunk);
+            handler.onChunk(chunk);
+            count++;
+        }
+    }
+
+    public interface ChunkHandler {
+
+        /**
+         * Handle one serialized datum map
+         *
+         * @param chunk serialized datum map
+         * @throws Exception any exception while applying the chunk
+         */
+        void onChunk(byte[] chunk) throws Exception;
+    }
+}
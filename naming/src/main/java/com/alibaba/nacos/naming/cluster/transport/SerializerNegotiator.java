@@ -0,0 +1,105 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.cluster.transport;
+
+import com.alibaba.nacos.naming.misc.GlobalConfig;
+import com.alibaba.nacos.naming.misc.Loggers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses the serializer used with each peer.
+ * <p>
+ * Every distro request and response carries {@link #SERIALIZER_HEADER} naming the best format
+ * its sender can read. A peer is only sent binary data after it has advertised so; peers that
+ * never send the header (older versions) keep receiving JSON. Incoming payloads are decoded by
+ * looking at their first byte, so both formats are always accepted.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+@Component
+public class SerializerNegotiator {
+
+    public static final String SERIALIZER_HEADER = "Nacos-Serializer";
+
+    public static final String BINARY = "binary";
+
+    public static final String JSON = "json";
+
+    public static final String BINARY_CONTENT_TYPE = "application/x-nacos-binary";
+
+    @Autowired
+    private FastJsonSerializer jsonSerializer;
+
+    @Autowired
+    private BinarySerializer binarySerializer;
+
+    @Autowired
+    private GlobalConfig globalConfig;
+
+    private Map<String, Boolean> binaryPeers = new ConcurrentHashMap<>();
+
+    /**
+     * @return the value of {@link #SERIALIZER_HEADER} this server sends
+     */
+    public String advertise() {
+        return globalConfig.isBinarySerializer() ? BINARY : JSON;
+    }
+
+    public boolean acceptBinary(String header) {
+        return globalConfig.isBinarySerializer() && BINARY.equals(header);
+    }
+
+    public Serializer select(String server) {
+        if (globalConfig.isBinarySerializer() && binaryPeers.containsKey(server)) {
+            return binarySerializer;
+        }
+        return jsonSerializer;
+    }
+
+    public Serializer select(byte[] data) {
+        return BinarySerializer.isBinary(data) ? binarySerializer : jsonSerializer;
+    }
+
+    public Serializer json() {
+        return jsonSerializer;
+    }
+
+    public Serializer binary() {
+        return binarySerializer;
+    }
+
+    public void onResponse(String server, String header) {
+        if (BINARY.equals(header)) {
+            if (binaryPeers.put(server, Boolean.TRUE) == null) {
+                Loggers.DISTRO.info("[DISTRO-SERIALIZER] peer {} accepts binary data", server);
+            }
+            return;
+        }
+
+        downgrade(server);
+    }
+
+    public void downgrade(String server) {
+        if (binaryPeers.remove(server) != null) {
+            Loggers.DISTRO.warn("[DISTRO-SERIALIZER] fall back to json for peer {}", server);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.consistency;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatches datum changes to the record listeners on several worker threads.
+ * <p>
+ * A key always goes to the same shard and every shard is drained by one thread in FIFO order,
+ * so the changes of one key are notified in the order they were added while different keys are
+ * notified in parallel. A CHANGE is dropped if a CHANGE of the same key is still waiting, since
+ * the listener reads the latest value of the key when the task is dispatched.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public abstract class ShardedNotifier {
+
+    public static final int DEFAULT_SHARD_COUNT = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private static final int TOTAL_CAPACITY = 1024 * 1024;
+
+    private final String name;
+
+    private final Logger logger;
+
+    private final Shard[] shards;
+
+    /**
+     * Action of the last task of a key which is not dispatched yet
+     */
+    private final ConcurrentMap<String, ApplyAction> pending = new ConcurrentHashMap<>(10 * 1024);
+
+    private final AtomicLong dispatchCount = new AtomicLong();
+
+    private final AtomicLong totalDelayNanos = new AtomicLong();
+
+    private final AtomicLong maxDelayNanos = new AtomicLong();
+
+    private final AtomicLong delayCount = new AtomicLong();
+
+    private volatile boolean started = false;
+
+    public ShardedNotifier(String name, Logger logger) {
+        this(name, logger, DEFAULT_SHARD_COUNT, TOTAL_CAPACITY / DEFAULT_SHARD_COUNT);
+    }
+
+    public ShardedNotifier(String name, Logger logger, int shardCount, int shardCapacity) {
+        this.name = name;
+        this.logger = logger;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(shardCapacity);
+        }
+    }
+
+    /**
+     * Notify the listeners of a key, called on the worker thread of the key's shard.
+     *
+     * @param datumKey key of the datum
+     * @param action   change or delete
+     * @throws Exception any exception while notifying
+     */
+    protected abstract void handle(String datumKey, ApplyAction action) throws Exception;
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+
+        for (int i = 0; i < shards.length; i++) {
+            Thread thread = new Thread(shards[i]);
+            thread.setDaemon(true);
+            thread.setName(name + "." + i);
+            thread.start();
+        }
+        started = true;
+
+        logger.info("{} started, shard count: {}", name, shards.length);
+    }
+
+    public void addTask(String datumKey, ApplyAction action) {
+
+        if (action == ApplyAction.CHANGE && pending.get(datumKey) == ApplyAction.CHANGE) {
+            return;
+        }
+
+        pending.put(datumKey, action);
+
+        if (!shards[shardOf(datumKey)].tasks.offer(new Task(datumKey, action))) {
+            pending.remove(datumKey, action);
+            throw new IllegalStateException("notify queue full, key: " + datumKey);
+        }
+    }
+
+    public int getTaskSize() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.tasks.size();
+        }
+        return size;
+    }
+
+    public int[] getShardTaskSizes() {
+        int[] sizes = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            sizes[i] = shards[i].tasks.size();
+        }
+        return sizes;
+    }
+
+    public long getDispatchCount() {
+        return dispatchCount.get();
+    }
+
+    /**
+     * @return max time in milliseconds a task waited in its queue since the last reset
+     */
+    public long getMaxDispatchDelay() {
+        return TimeUnit.NANOSECONDS.toMillis(maxDelayNanos.get());
+    }
+
+    /**
+     * @return average time in milliseconds a task waited in its queue since the last reset
+     */
+    public long getAvgDispatchDelay() {
+        long count = delayCount.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalDelayNanos.get() / count);
+    }
+
+    public void resetDispatchDelay() {
+        maxDelayNanos.set(0);
+        totalDelayNanos.set(0);
+        delayCount.set(0);
+    }
+
+    private int shardOf(String datumKey) {
+        int h = datumKey.hashCode();
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % shards.length;
+    }
+
+    private void recordDelay(long delay) {
+        totalDelayNanos.addAndGet(delay);
+        delayCount.incrementAndGet();
+
+        long max;
+        do {
+            max = maxDelayNanos.get();
+        } while (delay > max && !maxDelayNanos.compareAndSet(max, delay));
+    }
+
+    private static class Task {
+
+        private final String datumKey;
+
+        private final ApplyAction action;
+
+        private final long createTime = System.nanoTime();
+
+        Task(String datumKey, ApplyAction action) {
+            this.datumKey = datumKey;
+            this.action = action;
+        }
+    }
+
+    private class Shard implements Runnable {
+
+        private final BlockingQueue<Task> tasks;
+
+        Shard(int capacity) {
+            tasks = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Task task = tasks.take();
+
+                    // clear the mark before reading the datum, a change added from now on is queued again:
+                    pending.remove(task.datumKey, task.action);
+                    recordDelay(System.nanoTime() - task.createTime);
+
+                    handle(task.datumKey, task.action);
+                    dispatchCount.incrementAndGet();
+                } catch (InterruptedException e) {
+                    logger.warn("{} interrupted", name);
+                    return;
+                } catch (Throwable e) {
+                    logger.error("{} error while handling notifying task", name, e);
+                }
+            }
+        }
+    }
+}
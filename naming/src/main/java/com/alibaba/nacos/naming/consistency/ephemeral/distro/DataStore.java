@@ -20,9 +20,11 @@ import com.alibaba.nacos.naming.core.Instances;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -34,14 +36,59 @@ import java.util.concurrent.ConcurrentHashMap;
 @Component
 public class DataStore {
 
+    /**
+     * Number of recent modifications kept to tell derived views which keys changed
+     */
+    public static final int MAX_CHANGE_LOG_SIZE = 10 * 1024;
+
     private Map<String, Datum> dataMap = new ConcurrentHashMap<>(1024);
 
+    private long version = 0L;
+
+    /**
+     * All modifications with a greater version than this are still in the change log
+     */
+    private long changeLogFloor = 0L;
+
+    private final TreeMap<Long, String> changeLog = new TreeMap<>();
+
     public void put(String key, Datum value) {
         dataMap.put(key, value);
+        recordChange(key);
     }
 
     public Datum remove(String key) {
-        return dataMap.remove(key);
+        Datum datum = dataMap.remove(key);
+        recordChange(key);
+        return datum;
+    }
+
+    /**
+     * @return a counter increased on every modification, used to tell whether derived views are stale
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Keys modified after one version up to another.
+     *
+     * @param fromVersion version the caller is up to date with
+     * @param toVersion   version returned by {@link #getVersion()}
+     * @return keys modified in between, or null if the change log no longer covers the range
+     */
+    public synchronized Set<String> getChangedKeys(long fromVersion, long toVersion) {
+        if (fromVersion < changeLogFloor || toVersion > version) {
+            return null;
+        }
+        return new HashSet<>(changeLog.subMap(fromVersion, false, toVersion, true).values());
+    }
+
+    private synchronized void recordChange(String key) {
+        changeLog.put(++version, key);
+        while (changeLog.size() > MAX_CHANGE_LOG_SIZE) {
+            changeLogFloor = changeLog.pollFirstEntry().getKey();
+        }
     }
 
     public Set<String> keys() {
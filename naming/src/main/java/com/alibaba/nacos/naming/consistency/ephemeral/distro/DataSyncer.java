@@ -15,23 +15,24 @@
  */
 package com.alibaba.nacos.naming.consistency.ephemeral.distro;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.nacos.naming.cluster.ServerListManager;
 import com.alibaba.nacos.naming.cluster.servers.Server;
-import com.alibaba.nacos.naming.cluster.transport.Serializer;
+import com.alibaba.nacos.naming.cluster.transport.SerializerNegotiator;
 import com.alibaba.nacos.naming.consistency.Datum;
 import com.alibaba.nacos.naming.consistency.KeyBuilder;
 import com.alibaba.nacos.naming.core.DistroMapper;
 import com.alibaba.nacos.naming.misc.*;
+import com.ning.http.client.AsyncCompletionHandler;
+import com.ning.http.client.Response;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.net.HttpURLConnection;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -51,7 +52,7 @@ public class DataSyncer {
     private GlobalConfig partitionConfig;
 
     @Autowired
-    private Serializer serializer;
+    private SerializerNegotiator serializerNegotiator;
 
     @Autowired
     private DistroMapper distroMapper;
@@ -59,8 +60,30 @@ public class DataSyncer {
     @Autowired
     private ServerListManager serverListManager;
 
+    @Autowired
+    private DeltaLog deltaLog;
+
     private Map<String, String> taskMap = new ConcurrentHashMap<>();
 
+    /**
+     * Peers that answered 404 to a hash tree root, with the time they did so.
+     */
+    private Map<String, Long> legacyPeers = new ConcurrentHashMap<>();
+
+    private static final long LEGACY_PEER_RECHECK_MILLIS = 60 * 1000L;
+
+    /**
+     * Peers that answered 404 to instance deltas, with the time they did so.
+     */
+    private Map<String, Long> legacyDeltaPeers = new ConcurrentHashMap<>();
+
+    /**
+     * Versions of the keys last delivered to each peer, by {@link #buildKey(String, String)}
+     */
+    private Map<String, SyncState> syncStates = new ConcurrentHashMap<>();
+
+    private volatile DistroHashTree localTree = new DistroHashTree(new HashMap<String, String>(1));
+
     @PostConstruct
     public void init() {
         startTimedSync();
@@ -106,7 +129,13 @@ public class DataSyncer {
 
                     Map<String, Datum> datumMap = dataStore.batchGet(keys);
 
-                    if (datumMap == null || datumMap.isEmpty()) {
+                    for (String key : keys) {
+                        if (!datumMap.containsKey(key)) {
+                            syncStates.remove(buildKey(key, task.getTargetServer()));
+                        }
+                    }
+
+                    if (datumMap.isEmpty()) {
                         // clear all flags of this task:
                         for (String key : task.getKeys()) {
                             taskMap.remove(buildKey(key, task.getTargetServer()));
@@ -114,10 +143,21 @@ public class DataSyncer {
                         return;
                     }
 
-                    byte[] data = serializer.serialize(datumMap);
-
                     long timestamp = System.currentTimeMillis();
-                    boolean success = NamingProxy.syncData(data, task.getTargetServer());
+                    boolean success = syncDeltas(datumMap, task.getTargetServer());
+
+                    if (success && !datumMap.isEmpty()) {
+                        byte[] data = serializerNegotiator.select(task.getTargetServer()).serialize(datumMap);
+                        success = NamingProxy.syncData(data, task.getTargetServer());
+                        if (success) {
+                            for (Map.Entry<String, Datum> entry : datumMap.entrySet()) {
+                                long version = entry.getValue().timestamp.get();
+                                syncStates.put(buildKey(entry.getKey(), task.getTargetServer()),
+                                    new SyncState(version, version));
+                            }
+                        }
+                    }
+
                     if (!success) {
                         SyncTask syncTask = new SyncTask();
                         syncTask.setKeys(task.getKeys());
@@ -139,6 +179,81 @@ public class DataSyncer {
         }, delay);
     }
 
+    /**
+     * Send the keys the peer holds a recent version of as instance deltas. Keys sent this way are
+     * removed from the map, the remaining ones need a full datum.
+     *
+     * @return false if the deltas could not be delivered
+     */
+    private boolean syncDeltas(Map<String, Datum> datumMap, String server) {
+
+        if (!partitionConfig.isDeltaSync()) {
+            return true;
+        }
+
+        Long legacySince = legacyDeltaPeers.get(server);
+        if (legacySince != null && System.currentTimeMillis() - legacySince < LEGACY_PEER_RECHECK_MILLIS) {
+            return true;
+        }
+
+        List<InstancesDelta> deltas = new ArrayList<>();
+        for (Map.Entry<String, Datum> entry : datumMap.entrySet()) {
+            SyncState state = syncStates.get(buildKey(entry.getKey(), server));
+            if (state == null
+                || entry.getValue().timestamp.get() - state.fullVersion >= partitionConfig.getDeltaSyncFullInterval()) {
+                continue;
+            }
+
+            InstancesDelta delta = deltaLog.getDelta(entry.getKey(), state.version);
+            if (delta != null) {
+                deltas.add(delta);
+            }
+        }
+
+        if (deltas.isEmpty()) {
+            return true;
+        }
+
+        List<String> rejected;
+        try {
+            rejected = NamingProxy.syncDeltas(JSON.toJSONBytes(deltas), server);
+        } catch (Exception e) {
+            Loggers.DISTRO.warn("sync deltas to " + server + " failed.", e);
+            return false;
+        }
+
+        if (rejected == null) {
+            // peer does not know deltas yet, send it full datums instead:
+            if (legacyDeltaPeers.put(server, System.currentTimeMillis()) == null) {
+                Loggers.DISTRO.info("peer {} does not support delta sync, fall back to full datums", server);
+            }
+            return true;
+        }
+
+        legacyDeltaPeers.remove(server);
+
+        Set<String> rejectedKeys = new HashSet<>(rejected);
+        for (InstancesDelta delta : deltas) {
+            if (rejectedKeys.contains(delta.getKey())) {
+                continue;
+            }
+
+            String syncKey = buildKey(delta.getKey(), server);
+            SyncState state = syncStates.get(syncKey);
+            if (state == null) {
+                // the key was removed meanwhile, its full datum, if any, is sent along:
+                continue;
+            }
+            syncStates.put(syncKey, new SyncState(delta.getVersion(), state.fullVersion));
+            datumMap.remove(delta.getKey());
+        }
+
+        if (Loggers.DISTRO.isDebugEnabled()) {
+            Loggers.DISTRO.debug("synced {} deltas to {}, rejected: {}", deltas.size(), server, rejected);
+        }
+        return true;
+    }
+
     public void retrySync(SyncTask syncTask) {
 
         Server server = new Server();
@@ -178,19 +293,29 @@ public class DataSyncer {
                     keyChecksums.put(key, dataStore.get(key).value.getChecksum());
                 }
 
+                DistroHashTree tree = new DistroHashTree(keyChecksums);
+                localTree = tree;
+
                 if (keyChecksums.isEmpty()) {
                     return;
                 }
 
                 if (Loggers.DISTRO.isDebugEnabled()) {
-                    Loggers.DISTRO.debug("sync checksums: {}", keyChecksums);
+                    Loggers.DISTRO.debug("sync hash tree root: {}, key count: {}", tree.getRoot(), tree.size());
                 }
 
                 for (Server member : getServers()) {
                     if (NetUtils.localServer().equals(member.getKey())) {
                         continue;
                     }
-                    NamingProxy.syncCheckSums(keyChecksums, member.getKey());
+
+                    Long legacySince = legacyPeers.get(member.getKey());
+                    if (legacySince != null && System.currentTimeMillis() - legacySince < LEGACY_PEER_RECHECK_MILLIS) {
+                        NamingProxy.syncCheckSums(keyChecksums, member.getKey());
+                        continue;
+                    }
+
+                    syncTreeRoot(tree, member.getKey());
                 }
             } catch (Exception e) {
                 Loggers.DISTRO.error("timed sync task failed.", e);
@@ -198,6 +323,46 @@ public class DataSyncer {
         }
     }
 
+    private void syncTreeRoot(DistroHashTree tree, String server) {
+        try {
+            NamingProxy.syncTreeRoot(tree.getRoot(), tree.size(), server, new AsyncCompletionHandler() {
+                @Override
+                public Object onCompleted(Response response) throws Exception {
+                    if (HttpURLConnection.HTTP_NOT_FOUND == response.getStatusCode()) {
+                        // peer does not know hash trees yet, send it full checksums instead:
+                        if (legacyPeers.put(server, System.currentTimeMillis()) == null) {
+                            Loggers.DISTRO.info("peer {} does not support hash tree sync, fall back to checksums", server);
+                        }
+                        return null;
+                    }
+
+                    if (HttpURLConnection.HTTP_OK != response.getStatusCode()) {
+                        Loggers.DISTRO.error("failed to sync hash tree root to {}, code: {}, msg: {}",
+                            server, response.getStatusCode(), response.getResponseBody());
+                        return null;
+                    }
+
+                    legacyPeers.remove(server);
+                    return null;
+                }
+
+                @Override
+                public void onThrowable(Throwable t) {
+                    Loggers.DISTRO.error("failed to sync hash tree root to " + server, t);
+                }
+            });
+        } catch (Exception e) {
+            Loggers.DISTRO.warn("sync hash tree root to " + server + " failed.", e);
+        }
+    }
+
+    /**
+     * @return hash tree of the keys this server is responsible for, as last sent to peers
+     */
+    public DistroHashTree getLocalTree() {
+        return localTree;
+    }
+
     public List<Server> getServers() {
         return serverListManager.getHealthyServers();
     }
@@ -205,4 +370,19 @@ public class DataSyncer {
     public String buildKey(String key, String targetServer) {
         return key + UtilsAndCommons.CACHE_KEY_SPLITER + targetServer;
     }
+
+    private static class SyncState {
+
+        private final long version;
+
+        /**
+         * Version of the last full datum sent, deltas are only sent for a limited number of versions after it
+         */
+        private final long fullVersion;
+
+        SyncState(long version, long fullVersion) {
+            this.version = version;
+            this.fullVersion = fullVersion;
+        }
+    }
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.consistency.ephemeral.distro;
+
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.core.Instances;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recent instance level changes of the keys written on this server.
+ * <p>
+ * Every local write of a key is compared with the previous one by a fingerprint of each
+ * instance, which also catches instances changed in place. Only the last
+ * {@link #MAX_DELTAS_PER_KEY} changes of a key are kept, older versions need a full datum.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+@Component
+public class DeltaLog {
+
+    public static final int MAX_DELTAS_PER_KEY = 16;
+
+    private final Map<String, KeyLog> logs = new ConcurrentHashMap<>(1024);
+
+    /**
+     * Record a new version of a key.
+     *
+     * @param key       datum key
+     * @param version   version of the new datum, expected to be the last recorded one plus 1
+     * @param instances instances of the new datum
+     */
+    public void record(String key, long version, Instances instances) {
+
+        KeyLog log = logs.get(key);
+        if (log == null) {
+            logs.putIfAbsent(key, new KeyLog());
+            log = logs.get(key);
+        }
+
+        synchronized (log) {
+            Map<String, Long> fingerprints = new HashMap<>(instances.getInstanceList().size() * 2);
+            InstancesDelta delta = new InstancesDelta(key, log.version, version);
+
+            for (Instance instance : instances.getInstanceList()) {
+                String datumKey = instance.getDatumKey();
+                long fingerprint = fingerprint(instance);
+                fingerprints.put(datumKey, fingerprint);
+
+                Long previous = log.fingerprints == null ? null : log.fingerprints.get(datumKey);
+                if (previous == null || previous != fingerprint) {
+                    delta.getUpdated().add(instance);
+                }
+            }
+
+            if (log.fingerprints != null && log.version == version - 1) {
+                for (String datumKey : log.fingerprints.keySet()) {
+                    if (!fingerprints.containsKey(datumKey)) {
+                        delta.getRemoved().add(datumKey);
+                    }
+                }
+
+                log.deltas.addLast(delta);
+                if (log.deltas.size() > MAX_DELTAS_PER_KEY) {
+                    log.deltas.removeFirst();
+                }
+            } else {
+                // no base to compare with:
+                log.deltas.clear();
+            }
+
+            log.version = version;
+            log.fingerprints = fingerprints;
+        }
+    }
+
+    public void remove(String key) {
+        logs.remove(key);
+    }
+
+    /**
+     * Merge the changes of a key since the given version.
+     *
+     * @return changes from {@code baseVersion} to the last recorded version, or null if they are
+     * no longer or not yet known
+     */
+    public InstancesDelta getDelta(String key, long baseVersion) {
+
+        KeyLog log = logs.get(key);
+        if (log == null) {
+            return null;
+        }
+
+        synchronized (log) {
+            if (log.fingerprints == null || baseVersion > log.version) {
+                return null;
+            }
+
+            if (baseVersion == log.version) {
+                return new InstancesDelta(key, baseVersion, baseVersion);
+            }
+
+            Map<String, Instance> updated = new LinkedHashMap<>();
+            Set<String> removed = new LinkedHashSet<>();
+            boolean found = false;
+
+            for (InstancesDelta delta : log.deltas) {
+                if (!found) {
+                    if (delta.getBaseVersion() != baseVersion) {
+                        continue;
+                    }
+                    found = true;
+                }
+
+                for (Instance instance : delta.getUpdated()) {
+                    updated.put(instance.getDatumKey(), instance);
+                    removed.remove(instance.getDatumKey());
+                }
+
+                for (String datumKey : delta.getRemoved()) {
+                    updated.remove(datumKey);
+                    removed.add(datumKey);
+                }
+            }
+
+            if (!found) {
+                return null;
+            }
+
+            InstancesDelta merged = new InstancesDelta(key, baseVersion, log.version);
+            merged.getUpdated().addAll(updated.values());
+            merged.getRemoved().addAll(removed);
+            return merged;
+        }
+    }
+
+    /**
+     * Apply a delta to the instances of its base version.
+     *
+     * @return instances of the version of the delta
+     */
+    public static Instances apply(Instances base, InstancesDelta delta) {
+
+        Map<String, Instance> instanceMap = new HashMap<>(base.getInstanceList().size() * 2);
+        for (Instance instance : base.getInstanceList()) {
+            instanceMap.put(instance.getDatumKey(), instance);
+        }
+
+        for (String datumKey : delta.getRemoved()) {
+            instanceMap.remove(datumKey);
+        }
+
+        for (Instance instance : delta.getUpdated()) {
+            instanceMap.put(instance.getDatumKey(), instance);
+        }
+
+        Instances instances = new Instances();
+        instances.setInstanceList(new ArrayList<>(instanceMap.values()));
+        return instances;
+    }
+
+    /**
+     * Hash of everything a peer keeps of an instance except the last beat
+     */
+    static long fingerprint(Instance instance) {
+        long h = 0xcbf29ce484222325L;
+        h = fnv(h, instance.getDatumKey());
+        h = fnv(h, String.valueOf(instance.getWeight()));
+        h = fnv(h, instance.isHealthy() + "_" + instance.isEnabled() + "_" + instance.isEphemeral()
+            + "_" + instance.isMarked());
+        h = fnv(h, instance.getInstanceId());
+        h = fnv(h, instance.getServiceName());
+        h = fnv(h, instance.getTenant());
+        h = fnv(h, instance.getApp());
+
+        if (instance.getMetadata() != null) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(instance.getMetadata()).entrySet()) {
+                h = fnv(h, entry.getKey());
+                h = fnv(h, entry.getValue());
+            }
+        }
+        return h;
+    }
+
+    private static long fnv(long h, String value) {
+        if (value == null) {
+            return (h ^ 0xff) * 0x100000001b3L;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // separator, so that adjacent fields can not shift into each other:
+        return (h ^ 0xfe) * 0x100000001b3L;
+    }
+
+    private static class KeyLog {
+
+        private long version;
+
+        private Map<String, Long> fingerprints;
+
+        private final Deque<InstancesDelta> deltas = new ArrayDeque<>();
+    }
+}
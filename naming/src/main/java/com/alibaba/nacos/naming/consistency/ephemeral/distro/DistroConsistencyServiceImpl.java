@@ -21,26 +21,31 @@ import com.alibaba.nacos.core.utils.SystemUtils;
 import com.alibaba.nacos.naming.cluster.ServerListManager;
 import com.alibaba.nacos.naming.cluster.ServerStatus;
 import com.alibaba.nacos.naming.cluster.servers.Server;
-import com.alibaba.nacos.naming.cluster.transport.Serializer;
+import com.alibaba.nacos.naming.cluster.transport.DatumChunkStream;
+import com.alibaba.nacos.naming.cluster.transport.SerializerNegotiator;
 import com.alibaba.nacos.naming.consistency.ApplyAction;
 import com.alibaba.nacos.naming.consistency.Datum;
 import com.alibaba.nacos.naming.consistency.KeyBuilder;
 import com.alibaba.nacos.naming.consistency.RecordListener;
+import com.alibaba.nacos.naming.consistency.ShardedNotifier;
 import com.alibaba.nacos.naming.consistency.ephemeral.EphemeralConsistencyService;
 import com.alibaba.nacos.naming.core.DistroMapper;
 import com.alibaba.nacos.naming.core.Instances;
 import com.alibaba.nacos.naming.core.Service;
 import com.alibaba.nacos.naming.misc.*;
 import com.alibaba.nacos.naming.pojo.Record;
-import org.apache.commons.lang3.StringUtils;
-import org.javatuples.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.annotation.PostConstruct;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A consistency protocol algorithm called <b>Partition</b>
@@ -59,18 +64,6 @@ import java.util.concurrent.*;
 @org.springframework.stereotype.Service("distroConsistencyService")
 public class DistroConsistencyServiceImpl implements EphemeralConsistencyService {
 
-    private ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
-        @Override
-        public Thread newThread(Runnable r) {
-            Thread t = new Thread(r);
-
-            t.setDaemon(true);
-            t.setName("com.alibaba.nacos.naming.distro.notifier");
-
-            return t;
-        }
-    });
-
     @Autowired
     private DistroMapper distroMapper;
 
@@ -84,7 +77,10 @@ public class DistroConsistencyServiceImpl implements EphemeralConsistencyService
     private DataSyncer dataSyncer;
 
     @Autowired
-    private Serializer serializer;
+    private DeltaLog deltaLog;
+
+    @Autowired
+    private SerializerNegotiator serializerNegotiator;
 
     @Autowired
     private ServerListManager serverListManager;
@@ -103,6 +99,10 @@ public class DistroConsistencyServiceImpl implements EphemeralConsistencyService
 
     private Map<String, String> syncChecksumTasks = new ConcurrentHashMap<>(16);
 
+    private Map<String, PeerTree> peerTrees = new ConcurrentHashMap<>(16);
+
+    private static final int MAX_FULL_SYNC_THREADS = 8;
+
     @PostConstruct
     public void init() {
         GlobalExecutor.submit(new Runnable() {
@@ -116,7 +116,7 @@ public class DistroConsistencyServiceImpl implements EphemeralConsistencyService
             }
         });
 
-        executor.submit(notifier);
+        notifier.start();
     }
 
     public void load() throws Exception {
@@ -130,19 +130,21 @@ public class DistroConsistencyServiceImpl implements EphemeralConsistencyService
             Loggers.DISTRO.info("waiting server list init...");
         }
 
+        List<Server> peers = new ArrayList<>();
         for (Server server : serverListManager.getHealthyServers()) {
-            if (NetUtils.localServer().equals(server.getKey())) {
-                continue;
-            }
-            if (Loggers.DISTRO.isDebugEnabled()) {
-                Loggers.DISTRO.debug("sync from " + server);
-            }
-            // try sync data from remote server:
-            if (syncAllDataFromRemote(server)) {
-                initialized = true;
-                return;
+            if (!NetUtils.localServer().equals(server.getKey())) {
+                peers.add(server);
             }
         }
+
+        if (Loggers.DISTRO.isDebugEnabled()) {
+            Loggers.DISTRO.debug("sync from " + peers);
+        }
+
+        // try sync data from remote servers:
+        if (syncAllDataFromRemote(peers)) {
+            initialized = true;
+        }
     }
 
     @Override
@@ -162,13 +164,32 @@ public class DistroConsistencyServiceImpl implements EphemeralConsistencyService
         return dataStore.get(key);
     }
 
+    /**
+     * Store a datum written on this server as the next version of the key.
+     */
     public void onPut(String key, Record value) {
 
+        Datum current = dataStore.get(key);
+        // a new key starts at the current time, so that it does not reuse the versions of a removed one:
+        long version = current == null ? System.currentTimeMillis() : current.timestamp.get() + 1;
+
+        onPut(key, value, version);
+
+        if (KeyBuilder.matchEphemeralInstanceListKey(key)) {
+            deltaLog.record(key, version, (Instances) value);
+        }
+    }
+
+    /**
+     * Store a datum with the given version.
+     */
+    public void onPut(String key, Record value, long version) {
+
         if (KeyBuilder.matchEphemeralInstanceListKey(key)) {
             Datum<Instances> datum = new Datum<>();
             datum.value = (Instances) value;
             datum.key = key;
-            datum.timestamp.incrementAndGet();
+            datum.timestamp.set(version);
             dataStore.put(key, datum);
         }
 
@@ -182,6 +203,7 @@ public class DistroConsistencyServiceImpl implements EphemeralConsistencyService
     public void onRemove(String key) {
 
         dataStore.remove(key);
+        deltaLog.remove(key);
 
         if (!listeners.containsKey(key)) {
             return;
@@ -190,6 +212,30 @@ public class DistroConsistencyServiceImpl implements EphemeralConsistencyService
         notifier.addTask(key, ApplyAction.DELETE);
     }
 
+    /**
+     * Apply instance deltas from the server responsible for their keys.
+     *
+     * @return keys whose local version differs from the base of their delta, they need full datums
+     */
+    public List<String> onReceiveDeltas(List<InstancesDelta> deltas) {
+
+        List<String> rejectedKeys = new ArrayList<>();
+        for (InstancesDelta delta : deltas) {
+            Datum datum = dataStore.get(delta.getKey());
+            if (datum == null || datum.value == null || datum.timestamp.get() != delta.getBaseVersion()) {
+                rejectedKeys.add(delta.getKey());
+                continue;
+            }
+
+            if (delta.getVersion() == delta.getBaseVersion()) {
+                continue;
+            }
+
+            onPut(delta.getKey(), DeltaLog.apply((Instances) datum.value, delta), delta.getVersion());
+        }
+        return rejectedKeys;
+    }
+
     public void onReceiveChecksums(Map<String, String> checksumMap, String server) {
 
         if (syncChecksumTasks.containsKey(server)) {
@@ -229,47 +275,258 @@ public class DistroConsistencyServiceImpl implements EphemeralConsistencyService
                 }
             }
 
-            if (Loggers.DISTRO.isDebugEnabled()) {
-                Loggers.DISTRO.info("to remove keys: {}, to update keys: {}, source: {}", toRemoveKeys, toUpdateKeys, server);
+            syncKeys(toUpdateKeys, toRemoveKeys, server);
+        } finally {
+            // Remove this 'in process' flag:
+            syncChecksumTasks.remove(server);
+        }
+
+    }
+
+    public void onReceiveTreeRoot(long root, String server) {
+
+        if (syncChecksumTasks.containsKey(server)) {
+            // Already in process of this server:
+            Loggers.DISTRO.warn("sync checksum task already in process with {}", server);
+            return;
+        }
+
+        syncChecksumTasks.put(server, "1");
+
+        try {
+            DistroHashTree localTree = buildPeerTree(server);
+            if (localTree.getRoot() == root) {
+                return;
             }
 
-            for (String key : toRemoveKeys) {
-                onRemove(key);
+            // descend only into the sub trees that differ:
+            List<Integer> diff = Collections.singletonList(0);
+            for (int level = 0; level < DistroHashTree.DEPTH && !diff.isEmpty(); level++) {
+                Map<Integer, long[]> remoteNodes = NamingProxy.getTreeNodes(level, diff, server);
+                List<Integer> next = new ArrayList<>();
+                for (Integer index : diff) {
+                    next.addAll(localTree.diffChildren(level, index, remoteNodes.get(index)));
+                }
+                diff = next;
             }
 
-            if (toUpdateKeys.isEmpty()) {
+            if (diff.isEmpty()) {
                 return;
             }
 
-            try {
-                byte[] result = NamingProxy.getData(toUpdateKeys, server);
-                processData(result);
-            } catch (Exception e) {
-                Loggers.DISTRO.error("get data from " + server + " failed!", e);
+            Map<String, String> remoteChecksums = NamingProxy.getTreeLeaves(diff, server);
+            Map<String, String> localChecksums = localTree.getChecksums(diff);
+
+            List<String> toUpdateKeys = new ArrayList<>();
+            List<String> toRemoveKeys = new ArrayList<>();
+            for (Map.Entry<String, String> entry : remoteChecksums.entrySet()) {
+                if (distroMapper.responsible(KeyBuilder.getServiceName(entry.getKey()))) {
+                    // this key should not be sent from remote server:
+                    Loggers.DISTRO.error("receive responsible key checksum of " + entry.getKey() + " from " + server);
+                    return;
+                }
+                if (!entry.getValue().equals(localChecksums.get(entry.getKey()))) {
+                    toUpdateKeys.add(entry.getKey());
+                }
+            }
+
+            for (String key : localChecksums.keySet()) {
+                if (!remoteChecksums.containsKey(key)) {
+                    toRemoveKeys.add(key);
+                }
             }
+
+            syncKeys(toUpdateKeys, toRemoveKeys, server);
+        } catch (Exception e) {
+            Loggers.DISTRO.error("sync hash tree with " + server + " failed!", e);
         } finally {
             // Remove this 'in process' flag:
             syncChecksumTasks.remove(server);
         }
+    }
+
+    private void syncKeys(List<String> toUpdateKeys, List<String> toRemoveKeys, String server) {
+
+        if (Loggers.DISTRO.isDebugEnabled()) {
+            Loggers.DISTRO.info("to remove keys: {}, to update keys: {}, source: {}", toRemoveKeys, toUpdateKeys, server);
+        }
+
+        for (String key : toRemoveKeys) {
+            onRemove(key);
+        }
+
+        if (toUpdateKeys.isEmpty()) {
+            return;
+        }
+
+        try {
+            byte[] result = NamingProxy.getData(toUpdateKeys, server);
+            processData(result);
+        } catch (Exception e) {
+            Loggers.DISTRO.error("get data from " + server + " failed!", e);
+        }
+    }
+
+    /**
+     * Build the hash tree of local keys the given server is responsible for. The tree is cached,
+     * and only the keys changed in the data store since are applied to it, until the mapping of
+     * keys to servers changes.
+     */
+    DistroHashTree buildPeerTree(String server) {
+
+        List<String> healthyList = distroMapper.getHealthyList();
+        int virtualNodes = switchDomain.getDistroVirtualNodes();
+        Map<String, Integer> weights = switchDomain.getDistroServerWeights();
+
+        PeerTree cached = peerTrees.get(server);
+        if (cached != null && cached.builtFrom(healthyList, virtualNodes, weights)) {
+            synchronized (cached) {
+                long version = dataStore.getVersion();
+                if (cached.version == version) {
+                    return cached.tree;
+                }
+
+                Set<String> changedKeys = dataStore.getChangedKeys(cached.version, version);
+                if (changedKeys != null) {
+                    for (String key : changedKeys) {
+                        if (!server.equals(distroMapper.mapSrv(KeyBuilder.getServiceName(key)))) {
+                            continue;
+                        }
+
+                        Datum datum = dataStore.get(key);
+                        if (datum == null || datum.value == null) {
+                            cached.tree.remove(key);
+                        } else {
+                            cached.tree.put(key, datum.value.getChecksum());
+                        }
+                    }
+                    cached.version = version;
+                    return cached.tree;
+                }
+            }
+        }
+
+        // keys changed while scanning are applied again on the next call:
+        long version = dataStore.getVersion();
+        Map<String, String> checksums = new HashMap<>(64);
+        for (String key : dataStore.keys()) {
+            if (!server.equals(distroMapper.mapSrv(KeyBuilder.getServiceName(key)))) {
+                continue;
+            }
+
+            Datum datum = dataStore.get(key);
+            if (datum == null || datum.value == null) {
+                continue;
+            }
+            checksums.put(key, datum.value.getChecksum());
+        }
 
+        DistroHashTree tree = new DistroHashTree(checksums);
+        peerTrees.put(server, new PeerTree(version, healthyList, virtualNodes, weights, tree));
+        return tree;
     }
 
     public boolean syncAllDataFromRemote(Server server) {
+        return syncAllDataFromRemote(Collections.singletonList(server));
+    }
+
+    /**
+     * Pull all data from the given servers in parallel. The data is split into as many disjoint
+     * partitions as there are servers, each partition is streamed in chunks that are applied as
+     * soon as they arrive, and a partition is retried on the next server if its server fails.
+     *
+     * @return true if every partition has been synced
+     */
+    public boolean syncAllDataFromRemote(final List<Server> servers) {
+
+        if (servers.isEmpty()) {
+            return false;
+        }
+
+        final long start = System.currentTimeMillis();
+        final int partitionCount = servers.size();
+        final AtomicBoolean fullySynced = new AtomicBoolean(false);
+        final AtomicInteger chunkCount = new AtomicInteger(0);
 
+        ExecutorService syncExecutor = Executors.newFixedThreadPool(Math.min(partitionCount, MAX_FULL_SYNC_THREADS),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r);
+
+                    t.setDaemon(true);
+                    t.setName("com.alibaba.nacos.naming.distro.full.sync");
+
+                    return t;
+                }
+            });
+
+        List<Future<Boolean>> futures = new ArrayList<>(partitionCount);
         try {
-            byte[] data = NamingProxy.getAllData(server.getKey());
-            processData(data);
-            return true;
+            for (int i = 0; i < partitionCount; i++) {
+                final int partition = i;
+                futures.add(syncExecutor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return syncPartition(servers, partition, partitionCount, fullySynced, chunkCount);
+                    }
+                }));
+            }
+
+            boolean success = true;
+            for (Future<Boolean> future : futures) {
+                success &= future.get();
+            }
+
+            Loggers.DISTRO.info("full sync from {} finished, success: {}, chunks: {}, cost: {}ms", servers,
+                success || fullySynced.get(), chunkCount.get(), System.currentTimeMillis() - start);
+
+            return success || fullySynced.get();
         } catch (Exception e) {
-            Loggers.DISTRO.error("sync full data from " + server + " failed!", e);
+            Loggers.DISTRO.error("full sync from " + servers + " failed!", e);
             return false;
+        } finally {
+            syncExecutor.shutdownNow();
+        }
+    }
+
+    private boolean syncPartition(List<Server> servers, int partition, int partitionCount,
+                                  final AtomicBoolean fullySynced, final AtomicInteger chunkCount) {
+
+        for (int i = 0; i < servers.size(); i++) {
+            if (fullySynced.get()) {
+                return true;
+            }
+
+            // start from a different server for each partition:
+            Server server = servers.get((partition + i) % servers.size());
+            try {
+                boolean partitioned = NamingProxy.getAllData(server.getKey(), partition, partitionCount,
+                    new DatumChunkStream.ChunkHandler() {
+                        @Override
+                        public void onChunk(byte[] chunk) throws Exception {
+                            processData(chunk);
+                            chunkCount.incrementAndGet();
+                        }
+                    });
+
+                if (!partitioned) {
+                    // an older server returned all of its data:
+                    fullySynced.set(true);
+                }
+                return true;
+            } catch (Exception e) {
+                Loggers.DISTRO.error("sync partition " + partition + " from " + server + " failed!", e);
+            }
         }
+
+        return false;
     }
 
     public void processData(byte[] data) throws Exception {
         if (data.length > 0) {
             Map<String, Datum<Instances>> datumMap =
-                serializer.deserializeMap(data, Instances.class);
+                serializerNegotiator.select(data).deserializeMap(data, Instances.class);
 
 
             for (Map.Entry<String, Datum<Instances>> entry : datumMap.entrySet()) {
@@ -353,78 +610,71 @@ public class DistroConsistencyServiceImpl implements EphemeralConsistencyService
         return initialized || !globalConfig.isDataWarmup();
     }
 
-    public class Notifier implements Runnable {
+    public class Notifier extends ShardedNotifier {
 
-        private ConcurrentHashMap<String, String> services = new ConcurrentHashMap<>(10 * 1024);
+        public Notifier() {
+            super("com.alibaba.nacos.naming.distro.notifier", Loggers.DISTRO);
+        }
 
-        private BlockingQueue<Pair> tasks = new LinkedBlockingQueue<Pair>(1024 * 1024);
+        @Override
+        protected void handle(String datumKey, ApplyAction action) {
 
-        public void addTask(String datumKey, ApplyAction action) {
+            int count = 0;
 
-            if (services.containsKey(datumKey) && action == ApplyAction.CHANGE) {
+            if (!listeners.containsKey(datumKey)) {
                 return;
             }
-            if (action == ApplyAction.CHANGE) {
-                services.put(datumKey, StringUtils.EMPTY);
-            }
-            tasks.add(Pair.with(datumKey, action));
-        }
 
-        public int getTaskSize() {
-            return tasks.size();
-        }
+            for (RecordListener listener : listeners.get(datumKey)) {
 
-        @Override
-        public void run() {
-            Loggers.DISTRO.info("distro notifier started");
+                count++;
 
-            while (true) {
                 try {
+                    if (action == ApplyAction.CHANGE) {
+                        listener.onChange(datumKey, dataStore.get(datumKey).value);
+                        continue;
+                    }
 
-                    Pair pair = tasks.take();
-
-                    if (pair == null) {
+                    if (action == ApplyAction.DELETE) {
+                        listener.onDelete(datumKey);
                         continue;
                     }
+                } catch (Throwable e) {
+                    Loggers.DISTRO.error("[NACOS-DISTRO] error while notifying listener of key: {}", datumKey, e);
+                }
+            }
 
-                    String datumKey = (String) pair.getValue0();
-                    ApplyAction action = (ApplyAction) pair.getValue1();
+            if (Loggers.DISTRO.isDebugEnabled()) {
+                Loggers.DISTRO.debug("[NACOS-DISTRO] datum change notified, key: {}, listener count: {}, action: {}",
+                    datumKey, count, action.name());
+            }
+        }
+    }
 
-                    services.remove(datumKey);
+    private static class PeerTree {
 
-                    int count = 0;
+        private long version;
 
-                    if (!listeners.containsKey(datumKey)) {
-                        continue;
-                    }
+        private final List<String> healthyList;
 
-                    for (RecordListener listener : listeners.get(datumKey)) {
+        private final int virtualNodes;
 
-                        count++;
+        private final Map<String, Integer> weights;
 
-                        try {
-                            if (action == ApplyAction.CHANGE) {
-                                listener.onChange(datumKey, dataStore.get(datumKey).value);
-                                continue;
-                            }
+        private final DistroHashTree tree;
 
-                            if (action == ApplyAction.DELETE) {
-                                listener.onDelete(datumKey);
-                                continue;
-                            }
-                        } catch (Throwable e) {
-                            Loggers.DISTRO.error("[NACOS-DISTRO] error while notifying listener of key: {}", datumKey, e);
-                        }
-                    }
+        PeerTree(long version, List<String> healthyList, int virtualNodes, Map<String, Integer> weights,
+                 DistroHashTree tree) {
+            this.version = version;
+            this.healthyList = healthyList;
+            this.virtualNodes = virtualNodes;
+            this.weights = weights;
+            this.tree = tree;
+        }
 
-                    if (Loggers.DISTRO.isDebugEnabled()) {
-                        Loggers.DISTRO.debug("[NACOS-DISTRO] datum change notified, key: {}, listener count: {}, action: {}",
-                            datumKey, count, action.name());
-                    }
-                } catch (Throwable e) {
-                    Loggers.DISTRO.error("[NACOS-DISTRO] Error while handling notifying task", e);
-                }
-            }
+        boolean builtFrom(List<String> healthyList, int virtualNodes, Map<String, Integer> weights) {
+            return this.healthyList.equals(healthyList) && this.virtualNodes == virtualNodes
+                && this.weights == weights;
         }
     }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.consistency.ephemeral.distro;
+
+import java.util.*;
+
+/**
+ * Fixed shape hash tree over the checksums of the keys one server is responsible for.
+ * <p>
+ * Keys are spread over {@link #LEAF_COUNT} leaves by the hash of the key alone, so both sides
+ * put the same key in the same leaf. A leaf hash is the sum of its key/checksum hashes and an
+ * inner node hashes its children in order. Two servers holding the same data agree on the
+ * root, and when they do not, only the children that differ need to be compared.
+ * <p>
+ * As a leaf hash is a sum, a changed key is applied by replacing its term in the leaf and
+ * rehashing the nodes on the path to the root, without touching the rest of the tree.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class DistroHashTree {
+
+    public static final int FANOUT = 16;
+
+    public static final int DEPTH = 3;
+
+    public static final int LEAF_COUNT = 1 << 12;
+
+    private static final int LEAF_BITS = 12;
+
+    /**
+     * levels[0] holds the root, levels[DEPTH] the leaves.
+     */
+    private final long[][] levels = new long[DEPTH + 1][];
+
+    private final Map<String, String> checksums;
+
+    /**
+     * @param checksums checksums of the keys, owned by the tree from now on
+     */
+    public DistroHashTree(Map<String, String> checksums) {
+        this.checksums = checksums;
+
+        for (int level = 0; level <= DEPTH; level++) {
+            levels[level] = new long[nodeCount(level)];
+        }
+
+        long[] leaves = levels[DEPTH];
+        for (Map.Entry<String, String> entry : checksums.entrySet()) {
+            leaves[leafOf(entry.getKey())] += hash(entry.getKey(), entry.getValue());
+        }
+
+        for (int level = DEPTH - 1; level >= 0; level--) {
+            for (int index = 0; index < levels[level].length; index++) {
+                rehash(level, index);
+            }
+        }
+    }
+
+    public static int nodeCount(int level) {
+        return 1 << (4 * level);
+    }
+
+    public static int leafOf(String key) {
+        return (int) (mix(fnv(key, 0xcbf29ce484222325L)) >>> (64 - LEAF_BITS));
+    }
+
+    public long getRoot() {
+        return levels[0][0];
+    }
+
+    public int size() {
+        return checksums.size();
+    }
+
+    /**
+     * Add a key or change its checksum.
+     */
+    public void put(String key, String checksum) {
+        String old = checksums.put(key, checksum);
+        if (old != null && old.equals(checksum)) {
+            return;
+        }
+
+        long delta = hash(key, checksum) - (old == null ? 0L : hash(key, old));
+        updateLeaf(leafOf(key), delta);
+    }
+
+    /**
+     * Remove a key, nothing happens if the tree does not hold it.
+     */
+    public void remove(String key) {
+        String old = checksums.remove(key);
+        if (old == null) {
+            return;
+        }
+
+        updateLeaf(leafOf(key), -hash(key, old));
+    }
+
+    /**
+     * @return hashes of the {@link #FANOUT} children of the given node
+     */
+    public long[] getChildren(int level, int index) {
+        return Arrays.copyOfRange(levels[level + 1], index * FANOUT, (index + 1) * FANOUT);
+    }
+
+    /**
+     * Compare the children of a node with the remote ones.
+     *
+     * @return indexes of the children at {@code level + 1} whose hashes differ
+     */
+    public List<Integer> diffChildren(int level, int index, long[] remoteChildren) {
+        List<Integer> diff = new ArrayList<>();
+        for (int i = 0; i < FANOUT; i++) {
+            int child = index * FANOUT + i;
+            if (remoteChildren == null || remoteChildren.length != FANOUT
+                || remoteChildren[i] != levels[level + 1][child]) {
+                diff.add(child);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * @return key checksums stored in the given leaves
+     */
+    public Map<String, String> getChecksums(Collection<Integer> leaves) {
+        Set<Integer> leafSet = new HashSet<>(leaves);
+        Map<String, String> result = new HashMap<>(16);
+        for (Map.Entry<String, String> entry : checksums.entrySet()) {
+            if (leafSet.contains(leafOf(entry.getKey()))) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void updateLeaf(int leaf, long delta) {
+        levels[DEPTH][leaf] += delta;
+
+        int index = leaf;
+        for (int level = DEPTH - 1; level >= 0; level--) {
+            index /= FANOUT;
+            rehash(level, index);
+        }
+    }
+
+    private void rehash(int level, int index) {
+        long h = 0L;
+        for (int child = index * FANOUT; child < (index + 1) * FANOUT; child++) {
+            h = mix(h * 31 + levels[level + 1][child]);
+        }
+        levels[level][index] = h;
+    }
+
+    private static long hash(String key, String checksum) {
+        long h = fnv(key, 0xcbf29ce484222325L);
+        h = fnv(checksum == null ? "" : checksum, h ^ 0xff);
+        return mix(h);
+    }
+
+    private static long fnv(String value, long seed) {
+        long h = seed;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
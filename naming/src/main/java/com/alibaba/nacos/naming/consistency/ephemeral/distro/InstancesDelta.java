@@ -0,0 +1,92 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.consistency.ephemeral.distro;
+
+import com.alibaba.nacos.naming.core.Instance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Instances added, changed or removed in one key between two versions of its datum.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class InstancesDelta {
+
+    private String key;
+
+    private long baseVersion;
+
+    private long version;
+
+    private List<Instance> updated = new ArrayList<>();
+
+    /**
+     * Datum keys of the removed instances
+     */
+    private List<String> removed = new ArrayList<>();
+
+    public InstancesDelta() {
+    }
+
+    public InstancesDelta(String key, long baseVersion, long version) {
+        this.key = key;
+        this.baseVersion = baseVersion;
+        this.version = version;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    public void setBaseVersion(long baseVersion) {
+        this.baseVersion = baseVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public List<Instance> getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(List<Instance> updated) {
+        this.updated = updated;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(List<String> removed) {
+        this.removed = removed;
+    }
+}
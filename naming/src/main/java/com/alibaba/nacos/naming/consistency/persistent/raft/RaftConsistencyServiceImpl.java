@@ -27,6 +27,8 @@ import com.alibaba.nacos.naming.pojo.Record;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 /**
  * Use simplified Raft protocol to maintain the consistency status of Nacos cluster.
  *
@@ -102,6 +104,15 @@ public class RaftConsistencyServiceImpl implements PersistentConsistencyService
         }
     }
 
+    public void onBatchPut(List<Datum> datums, RaftPeer source) throws NacosException {
+        try {
+            raftCore.onPublish(datums, source);
+        } catch (Exception e) {
+            Loggers.RAFT.error("Raft onBatchPut failed.", e);
+            throw new NacosException(NacosException.SERVER_ERROR, "Raft onBatchPut failed, size:" + datums.size() + ", source: " + source, e);
+        }
+    }
+
     public void onRemove(Datum datum, RaftPeer source) throws NacosException {
         try {
             raftCore.onDelete(datum.key, source);
@@ -24,6 +24,7 @@ import com.alibaba.nacos.naming.consistency.ApplyAction;
 import com.alibaba.nacos.naming.consistency.Datum;
 import com.alibaba.nacos.naming.consistency.KeyBuilder;
 import com.alibaba.nacos.naming.consistency.RecordListener;
+import com.alibaba.nacos.naming.consistency.ShardedNotifier;
 import com.alibaba.nacos.naming.core.Instances;
 import com.alibaba.nacos.naming.core.Service;
 import com.alibaba.nacos.naming.misc.*;
@@ -33,7 +34,6 @@ import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.Response;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
-import org.javatuples.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
@@ -48,6 +48,8 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.GZIPOutputStream;
@@ -74,24 +76,49 @@ public class RaftCore {
 
     public static final String API_ON_DEL = UtilsAndCommons.NACOS_NAMING_CONTEXT + "/raft/datum/commit";
 
+    public static final String API_ON_PUB_BATCH = UtilsAndCommons.NACOS_NAMING_CONTEXT + "/raft/datum/batch/commit";
+
     public static final String API_GET_PEER = UtilsAndCommons.NACOS_NAMING_CONTEXT + "/raft/peer";
 
-    private ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
-        @Override
-        public Thread newThread(Runnable r) {
-            Thread t = new Thread(r);
+    public static final String API_GET_CHANGES = UtilsAndCommons.NACOS_NAMING_CONTEXT + "/raft/datum/changes";
 
-            t.setDaemon(true);
-            t.setName("com.alibaba.nacos.naming.raft.notifier");
+    /**
+     * Marker in the beat response of followers which understand incremental beats
+     */
+    public static final String INCREMENTAL_BEAT_KEY = "incrementalBeat";
 
-            return t;
-        }
-    });
+    /**
+     * Marker in the beat of the leader which asks the follower to resync all keys
+     */
+    public static final String RESYNC_BEAT_KEY = "resync";
 
     public static final Lock OPERATE_LOCK = new ReentrantLock();
 
     public static final int PUBLISH_TERM_INCREASE_COUNT = 100;
 
+    /**
+     * Max number of publish requests coalesced into one replicated batch
+     */
+    public static final int MAX_PUBLISH_BATCH_SIZE = 256;
+
+    /**
+     * Max number of batches replicated to one follower without having been acknowledged
+     */
+    public static final int MAX_IN_FLIGHT_BATCHES_PER_PEER = 4;
+
+    /**
+     * Once this many batches are queued for a follower, its queue is cleared and the follower is told to
+     * resync all keys with the leader through the next heart-beat
+     */
+    public static final int MAX_PENDING_BATCHES_PER_PEER = 1024;
+
+    /**
+     * Number of recent datum changes kept to answer incremental syncs of followers
+     */
+    public static final int MAX_CHANGE_LOG_SIZE = 100 * 1024;
+
+    public static final int DATUM_SYNC_BATCH_SIZE = 50;
+
     private volatile Map<String, List<RecordListener>> listeners = new ConcurrentHashMap<>();
 
     private volatile ConcurrentMap<String, Datum> datums = new ConcurrentHashMap<>();
@@ -113,6 +140,42 @@ public class RaftCore {
 
     public volatile Notifier notifier = new Notifier();
 
+    private final Replicator replicator = new Replicator();
+
+    /**
+     * Identifies the index space of the change log of this node, changes when the node restarts
+     */
+    private final long changeEpoch = System.currentTimeMillis();
+
+    private long changeIndex = 0L;
+
+    /**
+     * All changes with a greater index than this are still in the change log
+     */
+    private long changeLogFloor = 0L;
+
+    private final TreeMap<Long, String> changeLog = new TreeMap<>();
+
+    private final Set<String> incrementalBeatPeers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Followers which fell too far behind the replication pipeline and have to resync all keys
+     */
+    private final Set<String> resyncPeers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicBoolean changeSyncing = new AtomicBoolean(false);
+
+    /**
+     * Set when the leader asked for a resync, the next change sync of this node then covers all keys
+     */
+    private volatile boolean resyncRequested = false;
+
+    private volatile String syncedLeader;
+
+    private volatile long syncedEpoch = -1L;
+
+    private volatile long syncedIndex = -1L;
+
     private boolean initialized = false;
 
     @PostConstruct
@@ -120,7 +183,12 @@ public class RaftCore {
 
         Loggers.RAFT.info("initializing Raft sub-system");
 
-        executor.submit(notifier);
+        notifier.start();
+
+        Thread replicatorThread = new Thread(replicator);
+        replicatorThread.setDaemon(true);
+        replicatorThread.setName("com.alibaba.nacos.naming.raft.replicator");
+        replicatorThread.start();
 
         long start = System.currentTimeMillis();
 
@@ -131,7 +199,7 @@ public class RaftCore {
         Loggers.RAFT.info("cache loaded, datum count: {}, current term: {}", datums.size(), peers.getTerm());
 
         while (true) {
-            if (notifier.tasks.size() <= 0) {
+            if (notifier.getTaskSize() <= 0) {
                 break;
             }
             Thread.sleep(1000L);
@@ -165,116 +233,75 @@ public class RaftCore {
             return;
         }
 
-        try {
-            OPERATE_LOCK.lock();
-            long start = System.currentTimeMillis();
-            final Datum datum = new Datum();
-            datum.key = key;
-            datum.value = value;
-            if (getDatum(key) == null) {
-                datum.timestamp.set(1L);
-            } else {
-                datum.timestamp.set(getDatum(key).timestamp.incrementAndGet());
-            }
-
-            JSONObject json = new JSONObject();
-            json.put("datum", datum);
-            json.put("source", peers.local());
-
-            onPublish(datum, peers.local());
-
-            final String content = JSON.toJSONString(json);
-
-            final CountDownLatch latch = new CountDownLatch(peers.majorityCount());
-            for (final String server : peers.allServersIncludeMyself()) {
-                if (isLeader(server)) {
-                    latch.countDown();
-                    continue;
-                }
-                final String url = buildURL(server, API_ON_PUB);
-                HttpClient.asyncHttpPostLarge(url, Arrays.asList("key=" + key), content, new AsyncCompletionHandler<Integer>() {
-                    @Override
-                    public Integer onCompleted(Response response) throws Exception {
-                        if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
-                            Loggers.RAFT.warn("[RAFT] failed to publish data to peer, datumId={}, peer={}, http code={}",
-                                datum.key, server, response.getStatusCode());
-                            return 1;
-                        }
-                        latch.countDown();
-                        return 0;
-                    }
-
-                    @Override
-                    public STATE onContentWriteCompleted() {
-                        return STATE.CONTINUE;
-                    }
-                });
-
-            }
+        long start = System.currentTimeMillis();
 
-            if (!latch.await(UtilsAndCommons.RAFT_PUBLISH_TIMEOUT, TimeUnit.MILLISECONDS)) {
-                // only majority servers return success can we consider this update success
-                Loggers.RAFT.error("data publish failed, caused failed to notify majority, key={}", key);
-                throw new IllegalStateException("data publish failed, caused failed to notify majority, key=" + key);
+        Future<Long> future = replicator.submit(key, value);
+        try {
+            future.get(UtilsAndCommons.RAFT_PUBLISH_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // only majority servers return success can we consider this update success
+            Loggers.RAFT.error("data publish failed, caused failed to notify majority, key={}", key);
+            throw new IllegalStateException("data publish failed, caused failed to notify majority, key=" + key);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
             }
-
-            long end = System.currentTimeMillis();
-            Loggers.RAFT.info("signalPublish cost {} ms, key: {}", (end - start), key);
-        } finally {
-            OPERATE_LOCK.unlock();
+            throw e;
         }
+
+        long end = System.currentTimeMillis();
+        Loggers.RAFT.info("signalPublish cost {} ms, key: {}", (end - start), key);
     }
 
     public void signalDelete(final String key) throws Exception {
 
-        OPERATE_LOCK.lock();
-        try {
-
-            if (!isLeader()) {
-                Map<String, String> params = new HashMap<>(1);
-                params.put("key", URLEncoder.encode(key, "UTF-8"));
-                raftProxy.proxy(getLeader().ip, API_DEL, params, HttpMethod.DELETE);
-                return;
-            }
-
-            JSONObject json = new JSONObject();
-            // construct datum:
-            Datum datum = new Datum();
-            datum.key = key;
-            json.put("datum", datum);
-            json.put("source", peers.local());
-
-            onDelete(datum.key, peers.local());
-
-            for (final String server : peers.allServersWithoutMySelf()) {
-                String url = buildURL(server, API_ON_DEL);
-                HttpClient.asyncHttpDeleteLarge(url, null, JSON.toJSONString(json)
-                    , new AsyncCompletionHandler<Integer>() {
-                        @Override
-                        public Integer onCompleted(Response response) throws Exception {
-                            if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
-                                Loggers.RAFT.warn("[RAFT] failed to delete data from peer, datumId={}, peer={}, http code={}", key, server, response.getStatusCode());
-                                return 1;
-                            }
-
-                            RaftPeer local = peers.local();
-
-                            local.resetLeaderDue();
+        if (!isLeader()) {
+            Map<String, String> params = new HashMap<>(1);
+            params.put("key", URLEncoder.encode(key, "UTF-8"));
+            raftProxy.proxy(getLeader().ip, API_DEL, params, HttpMethod.DELETE);
+            return;
+        }
 
-                            return 0;
-                        }
-                    });
+        // deletes share the pipelines of publishes, so they reach followers in the order they are made:
+        Future<Long> future = replicator.submitDelete(key);
+        try {
+            future.get(UtilsAndCommons.RAFT_PUBLISH_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Loggers.RAFT.error("data delete failed, caused failed to notify majority, key={}", key);
+            throw new IllegalStateException("data delete failed, caused failed to notify majority, key=" + key);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
             }
-        } finally {
-            OPERATE_LOCK.unlock();
+            throw e;
         }
     }
 
     public void onPublish(Datum datum, RaftPeer source) throws Exception {
+        onPublish(Collections.singletonList(datum), source, false);
+    }
+
+    /**
+     * Apply a batch of datums published by the leader
+     * <p>
+     * Batches are pipelined, so a follower may receive them out of order. A datum older than the one
+     * already held is therefore skipped instead of overwriting it.
+     *
+     * @param datums datums to apply
+     * @param source the leader which published the datums
+     * @throws Exception if the source is not a valid leader or datums can not be persisted
+     */
+    public void onPublish(List<Datum> datums, RaftPeer source) throws Exception {
+        onPublish(datums, source, !isLeader());
+    }
+
+    private void onPublish(List<Datum> datums, RaftPeer source, boolean skipStale) throws Exception {
         RaftPeer local = peers.local();
-        if (datum.value == null) {
-            Loggers.RAFT.warn("received empty datum");
-            throw new IllegalStateException("received empty datum");
+        for (Datum datum : datums) {
+            if (datum.value == null) {
+                Loggers.RAFT.warn("received empty datum");
+                throw new IllegalStateException("received empty datum");
+            }
         }
 
         if (!peers.isLeader(source.ip)) {
@@ -293,29 +320,48 @@ public class RaftCore {
 
         local.resetLeaderDue();
 
-        // if data should be persistent, usually this is always true:
-        if (KeyBuilder.matchPersistentKey(datum.key)) {
-            raftStore.write(datum);
+        List<Datum> accepted = new ArrayList<>(datums.size());
+        List<Datum> persistent = new ArrayList<>(datums.size());
+        for (Datum datum : datums) {
+            Datum current = this.datums.get(datum.key);
+            if (skipStale && current != null && current.timestamp.get() >= datum.timestamp.get()) {
+                Loggers.RAFT.info("[NACOS-RAFT] timestamp is smaller than that of mine, key: {}, remote: {}, local: {}",
+                    datum.key, datum.timestamp, current.timestamp);
+                continue;
+            }
+            accepted.add(datum);
+            // if data should be persistent, usually this is always true:
+            if (KeyBuilder.matchPersistentKey(datum.key)) {
+                persistent.add(datum);
+            }
         }
 
-        datums.put(datum.key, datum);
+        if (!persistent.isEmpty()) {
+            raftStore.write(persistent);
+        }
 
-        if (isLeader()) {
-            local.term.addAndGet(PUBLISH_TERM_INCREASE_COUNT);
-        } else {
-            if (local.term.get() + PUBLISH_TERM_INCREASE_COUNT > source.term.get()) {
-                //set leader term:
-                getLeader().term.set(source.term.get());
-                local.term.set(getLeader().term.get());
-            } else {
+        for (Datum datum : accepted) {
+            this.datums.put(datum.key, datum);
+            recordChange(datum.key);
+
+            if (isLeader()) {
                 local.term.addAndGet(PUBLISH_TERM_INCREASE_COUNT);
+            } else {
+                if (local.term.get() + PUBLISH_TERM_INCREASE_COUNT > source.term.get()) {
+                    //set leader term:
+                    getLeader().term.set(source.term.get());
+                    local.term.set(getLeader().term.get());
+                } else {
+                    local.term.addAndGet(PUBLISH_TERM_INCREASE_COUNT);
+                }
             }
         }
         raftStore.updateTerm(local.term.get());
 
-        notifier.addTask(datum.key, ApplyAction.CHANGE);
-
-        Loggers.RAFT.info("data added/updated, key={}, term={}", datum.key, local.term);
+        for (Datum datum : accepted) {
+            notifier.addTask(datum.key, ApplyAction.CHANGE);
+            Loggers.RAFT.info("data added/updated, key={}, term={}", datum.key, local.term);
+        }
     }
 
     public void onDelete(String datumKey, RaftPeer source) throws Exception {
@@ -495,47 +541,14 @@ public class RaftCore {
             JSONObject packet = new JSONObject();
             packet.put("peer", local);
 
-            JSONArray array = new JSONArray();
-
             if (switchDomain.isSendBeatOnly()) {
                 Loggers.RAFT.info("[SEND-BEAT-ONLY] {}", String.valueOf(switchDomain.isSendBeatOnly()));
+            } else {
+                packet.put("version", getChangeVersion());
             }
 
-            if (!switchDomain.isSendBeatOnly()) {
-                for (Datum datum : datums.values()) {
-
-                    JSONObject element = new JSONObject();
-
-                    if (KeyBuilder.matchServiceMetaKey(datum.key)) {
-                        element.put("key", KeyBuilder.briefServiceMetaKey(datum.key));
-                    } else if (KeyBuilder.matchInstanceListKey(datum.key)) {
-                        element.put("key", KeyBuilder.briefInstanceListkey(datum.key));
-                    }
-                    element.put("timestamp", datum.timestamp);
-
-                    array.add(element);
-                }
-            }
-
-            packet.put("datums", array);
-            // broadcast
-            Map<String, String> params = new HashMap<String, String>(1);
-            params.put("beat", JSON.toJSONString(packet));
-
-            String content = JSON.toJSONString(params);
-
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            GZIPOutputStream gzip = new GZIPOutputStream(out);
-            gzip.write(content.getBytes(StandardCharsets.UTF_8));
-            gzip.close();
-
-            byte[] compressedBytes = out.toByteArray();
-            String compressedContent = new String(compressedBytes, StandardCharsets.UTF_8);
-
-            if (Loggers.RAFT.isDebugEnabled()) {
-                Loggers.RAFT.debug("raw beat data size: {}, size of compressed data: {}",
-                    content.length(), compressedContent.length());
-            }
+            byte[] compressedBytes = compressBeat(packet);
+            byte[] fullCompressedBytes = null;
 
             for (final String server : peers.allServersWithoutMySelf()) {
                 try {
@@ -543,7 +556,24 @@ public class RaftCore {
                     if (Loggers.RAFT.isDebugEnabled()) {
                         Loggers.RAFT.debug("send beat to server " + server);
                     }
-                    HttpClient.asyncHttpPostLarge(url, null, compressedBytes, new AsyncCompletionHandler<Integer>() {
+
+                    byte[] content = compressedBytes;
+                    if (!switchDomain.isSendBeatOnly() && !incrementalBeatPeers.contains(server)) {
+                        // followers of older versions still need all keys in the beat:
+                        if (fullCompressedBytes == null) {
+                            fullCompressedBytes = compressBeat(buildFullBeat(local));
+                        }
+                        content = fullCompressedBytes;
+                    }
+
+                    final boolean resync = !switchDomain.isSendBeatOnly() && resyncPeers.contains(server);
+                    if (resync) {
+                        JSONObject resyncPacket = buildFullBeat(local);
+                        resyncPacket.put(RESYNC_BEAT_KEY, true);
+                        content = compressBeat(resyncPacket);
+                    }
+
+                    HttpClient.asyncHttpPostLarge(url, null, content, new AsyncCompletionHandler<Integer>() {
                         @Override
                         public Integer onCompleted(Response response) throws Exception {
                             if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
@@ -553,6 +583,17 @@ public class RaftCore {
                                 return 1;
                             }
 
+                            if (resync) {
+                                resyncPeers.remove(server);
+                            }
+
+                            JSONObject result = JSON.parseObject(response.getResponseBody());
+                            if (result.getBooleanValue(INCREMENTAL_BEAT_KEY)) {
+                                incrementalBeatPeers.add(server);
+                            } else {
+                                incrementalBeatPeers.remove(server);
+                            }
+
                             peers.update(JSON.parseObject(response.getResponseBody(), RaftPeer.class));
                             if (Loggers.RAFT.isDebugEnabled()) {
                                 Loggers.RAFT.debug("receive beat response from: {}", url);
@@ -575,6 +616,381 @@ public class RaftCore {
         }
     }
 
+    private JSONObject buildFullBeat(RaftPeer local) {
+        JSONObject packet = new JSONObject();
+        packet.put("peer", local);
+        packet.put("version", getChangeVersion());
+
+        JSONArray array = new JSONArray();
+        for (Datum datum : datums.values()) {
+
+            JSONObject element = new JSONObject();
+
+            if (KeyBuilder.matchServiceMetaKey(datum.key)) {
+                element.put("key", KeyBuilder.briefServiceMetaKey(datum.key));
+            } else if (KeyBuilder.matchInstanceListKey(datum.key)) {
+                element.put("key", KeyBuilder.briefInstanceListkey(datum.key));
+            }
+            element.put("timestamp", datum.timestamp);
+
+            array.add(element);
+        }
+
+        packet.put("datums", array);
+        return packet;
+    }
+
+    private byte[] compressBeat(JSONObject packet) throws IOException {
+        // broadcast
+        Map<String, String> params = new HashMap<String, String>(1);
+        params.put("beat", JSON.toJSONString(packet));
+
+        String content = JSON.toJSONString(params);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        gzip.close();
+
+        byte[] compressedBytes = out.toByteArray();
+
+        if (Loggers.RAFT.isDebugEnabled()) {
+            Loggers.RAFT.debug("raw beat data size: {}, size of compressed data: {}",
+                content.length(), compressedBytes.length);
+        }
+        return compressedBytes;
+    }
+
+    private void recordChange(String key) {
+        synchronized (changeLog) {
+            changeLog.put(++changeIndex, key);
+            if (changeLog.size() > MAX_CHANGE_LOG_SIZE) {
+                changeLogFloor = changeLog.pollFirstEntry().getKey();
+            }
+        }
+    }
+
+    public JSONObject getChangeVersion() {
+        JSONObject version = new JSONObject();
+        version.put("epoch", changeEpoch);
+        synchronized (changeLog) {
+            version.put("index", changeIndex);
+        }
+        return version;
+    }
+
+    /**
+     * Get keys changed since the given version of the change log
+     * <p>
+     * If the version belongs to another epoch or its changes were already evicted from the change
+     * log, all keys are returned and the result is marked as full.
+     *
+     * @param epoch epoch the follower synced last time
+     * @param index index the follower synced last time
+     * @return changed keys with their timestamps and deleted keys
+     */
+    public JSONObject getChanges(long epoch, long index) {
+
+        long currentIndex;
+        boolean full;
+        Set<String> changedKeys = new LinkedHashSet<>();
+
+        synchronized (changeLog) {
+            currentIndex = changeIndex;
+            full = epoch != changeEpoch || index < changeLogFloor || index > changeIndex;
+            if (!full) {
+                changedKeys.addAll(changeLog.tailMap(index, false).values());
+            }
+        }
+
+        JSONArray changed = new JSONArray();
+        JSONArray deleted = new JSONArray();
+
+        if (full) {
+            for (Datum datum : datums.values()) {
+                JSONObject element = new JSONObject();
+                element.put("key", datum.key);
+                element.put("timestamp", datum.timestamp.get());
+                changed.add(element);
+            }
+        } else {
+            for (String key : changedKeys) {
+                Datum datum = datums.get(key);
+                if (datum == null) {
+                    deleted.add(key);
+                    continue;
+                }
+                JSONObject element = new JSONObject();
+                element.put("key", key);
+                element.put("timestamp", datum.timestamp.get());
+                changed.add(element);
+            }
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("epoch", changeEpoch);
+        result.put("index", currentIndex);
+        result.put("full", full);
+        result.put("datums", changed);
+        result.put("deleted", deleted);
+        return result;
+    }
+
+    private void syncChanges(final RaftPeer remote) throws Exception {
+
+        if (!changeSyncing.compareAndSet(false, true)) {
+            return;
+        }
+
+        // asking from an unknown version makes the leader answer with all keys:
+        boolean sameLeader = !resyncRequested && StringUtils.equals(remote.ip, syncedLeader);
+        String url = buildURL(remote.ip, API_GET_CHANGES) + "?epoch=" + (sameLeader ? syncedEpoch : -1L)
+            + "&index=" + (sameLeader ? syncedIndex : -1L);
+
+        try {
+            HttpClient.asyncHttpGet(url, null, null, new AsyncCompletionHandler<Integer>() {
+                @Override
+                public Integer onCompleted(Response response) throws Exception {
+                    if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+                        Loggers.RAFT.warn("[NACOS-RAFT] failed to get changes from leader: {}, http code: {}",
+                            remote.ip, response.getStatusCode());
+                        changeSyncing.set(false);
+                        return 1;
+                    }
+
+                    try {
+                        applyChanges(remote, JSON.parseObject(response.getResponseBody()));
+                    } catch (Throwable e) {
+                        Loggers.RAFT.error("[NACOS-RAFT] failed to apply changes from leader: {}", remote.ip, e);
+                        changeSyncing.set(false);
+                    }
+                    return 0;
+                }
+
+                @Override
+                public void onThrowable(Throwable t) {
+                    Loggers.RAFT.warn("[NACOS-RAFT] error while getting changes from leader: {}", remote.ip, t);
+                    changeSyncing.set(false);
+                }
+            });
+        } catch (Exception e) {
+            changeSyncing.set(false);
+            throw e;
+        }
+    }
+
+    private void applyChanges(final RaftPeer remote, JSONObject changes) throws Exception {
+
+        final long epoch = changes.getLongValue("epoch");
+        final long index = changes.getLongValue("index");
+        boolean full = changes.getBooleanValue("full");
+        JSONArray changed = changes.getJSONArray("datums");
+
+        Set<String> receivedKeys = new HashSet<>(full ? changed.size() : 0);
+        List<String> staleKeys = new ArrayList<>();
+
+        for (int i = 0; i < changed.size(); i++) {
+            JSONObject entry = changed.getJSONObject(i);
+            String key = entry.getString("key");
+            long timestamp = entry.getLongValue("timestamp");
+            if (full) {
+                receivedKeys.add(key);
+            }
+            Datum datum = datums.get(key);
+            if (datum == null || datum.timestamp.get() < timestamp) {
+                staleKeys.add(key);
+            }
+        }
+
+        List<String> deadKeys = new ArrayList<>();
+        if (full) {
+            for (String key : datums.keySet()) {
+                if (!receivedKeys.contains(key)) {
+                    deadKeys.add(key);
+                }
+            }
+        } else {
+            deadKeys.addAll(changes.getJSONArray("deleted").toJavaList(String.class));
+        }
+
+        for (String deadKey : deadKeys) {
+            try {
+                deleteDatum(deadKey);
+            } catch (Exception e) {
+                Loggers.RAFT.error("[NACOS-RAFT] failed to remove entry, key={} {}", deadKey, e);
+            }
+        }
+
+        if (Loggers.RAFT.isDebugEnabled()) {
+            Loggers.RAFT.debug("[NACOS-RAFT] received changes from leader: {}, full: {}, changed: {}, stale: {}, deleted: {}",
+                remote.ip, full, changed.size(), staleKeys.size(), deadKeys.size());
+        }
+
+        int batchCount = (staleKeys.size() + DATUM_SYNC_BATCH_SIZE - 1) / DATUM_SYNC_BATCH_SIZE;
+        final AtomicInteger remaining = new AtomicInteger(batchCount);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        Runnable callback = new Runnable() {
+            @Override
+            public void run() {
+                if (remaining.decrementAndGet() > 0) {
+                    return;
+                }
+                finishChangeSync(remote, epoch, index, full, !failed.get());
+            }
+        };
+
+        if (batchCount == 0) {
+            finishChangeSync(remote, epoch, index, full, true);
+            return;
+        }
+
+        for (int i = 0; i < staleKeys.size(); i += DATUM_SYNC_BATCH_SIZE) {
+            List<String> batch = staleKeys.subList(i, Math.min(i + DATUM_SYNC_BATCH_SIZE, staleKeys.size()));
+            pullDatums(remote, batch, failed, callback);
+        }
+    }
+
+    private void finishChangeSync(RaftPeer remote, long epoch, long index, boolean full, boolean success) {
+        if (success) {
+            if (full) {
+                resyncRequested = false;
+            }
+            syncedLeader = remote.ip;
+            syncedEpoch = epoch;
+            syncedIndex = index;
+        }
+        changeSyncing.set(false);
+    }
+
+    private void pullDatums(final RaftPeer remote, List<String> keys, final AtomicBoolean failed, final Runnable callback) {
+
+        try {
+            // update datum entry
+            String url = buildURL(remote.ip, API_GET) + "?keys=" + URLEncoder.encode(StringUtils.join(keys, ","), "UTF-8");
+            HttpClient.asyncHttpGet(url, null, null, new DatumPuller(remote) {
+                @Override
+                public Integer onCompleted(Response response) throws Exception {
+                    boolean applied = false;
+                    try {
+                        applied = super.onCompleted(response) == 0;
+                    } finally {
+                        if (!applied) {
+                            failed.set(true);
+                        }
+                        callback.run();
+                    }
+                    return 0;
+                }
+
+                @Override
+                public void onThrowable(Throwable t) {
+                    Loggers.RAFT.warn("[NACOS-RAFT] error while pulling datums from leader: {}", remote.ip, t);
+                    failed.set(true);
+                    callback.run();
+                }
+            });
+        } catch (Exception e) {
+            Loggers.RAFT.warn("[NACOS-RAFT] error while pulling datums from leader: {}", remote.ip, e);
+            failed.set(true);
+            callback.run();
+        }
+    }
+
+    /**
+     * Applies datums pulled from the leader
+     * <p>
+     * Completes with 1 if any of the datums could not be applied, so the change sync it belongs to is
+     * not recorded as done and the datum is pulled again.
+     */
+    private class DatumPuller extends AsyncCompletionHandler<Integer> {
+
+        private final RaftPeer remote;
+
+        private DatumPuller(RaftPeer remote) {
+            this.remote = remote;
+        }
+
+        @Override
+        public Integer onCompleted(Response response) throws Exception {
+            if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+                return 1;
+            }
+
+            RaftPeer local = peers.local();
+
+            List<JSONObject> datumList = JSON.parseObject(response.getResponseBody(), new TypeReference<List<JSONObject>>() {
+            });
+
+            int failed = 0;
+            for (JSONObject datumJson : datumList) {
+                OPERATE_LOCK.lock();
+                Datum newDatum = null;
+                try {
+
+                    Datum oldDatum = getDatum(datumJson.getString("key"));
+
+                    if (oldDatum != null && datumJson.getLongValue("timestamp") <= oldDatum.timestamp.get()) {
+                        Loggers.RAFT.info("[NACOS-RAFT] timestamp is smaller than that of mine, key: {}, remote: {}, local: {}",
+                            datumJson.getString("key"), datumJson.getLongValue("timestamp"), oldDatum.timestamp);
+                        continue;
+                    }
+
+                    if (KeyBuilder.matchServiceMetaKey(datumJson.getString("key"))) {
+                        Datum<Service> serviceDatum = new Datum<>();
+                        serviceDatum.key = datumJson.getString("key");
+                        serviceDatum.timestamp.set(datumJson.getLongValue("timestamp"));
+                        serviceDatum.value =
+                            JSON.parseObject(JSON.toJSONString(datumJson.getJSONObject("value")), Service.class);
+                        newDatum = serviceDatum;
+                    }
+
+                    if (KeyBuilder.matchInstanceListKey(datumJson.getString("key"))) {
+                        Datum<Instances> instancesDatum = new Datum<>();
+                        instancesDatum.key = datumJson.getString("key");
+                        instancesDatum.timestamp.set(datumJson.getLongValue("timestamp"));
+                        instancesDatum.value =
+                            JSON.parseObject(JSON.toJSONString(datumJson.getJSONObject("value")), Instances.class);
+                        newDatum = instancesDatum;
+                    }
+
+                    if (newDatum == null || newDatum.value == null) {
+                        Loggers.RAFT.error("receive null datum: {}", datumJson);
+                        continue;
+                    }
+
+                    raftStore.write(newDatum);
+
+                    datums.put(newDatum.key, newDatum);
+                    recordChange(newDatum.key);
+                    notifier.addTask(newDatum.key, ApplyAction.CHANGE);
+
+                    local.resetLeaderDue();
+
+                    if (local.term.get() + 100 > remote.term.get()) {
+                        getLeader().term.set(remote.term.get());
+                        local.term.set(getLeader().term.get());
+                    } else {
+                        local.term.addAndGet(100);
+                    }
+
+                    raftStore.updateTerm(local.term.get());
+
+                    Loggers.RAFT.info("data updated, key: {}, timestamp: {}, from {}, local term: {}",
+                        newDatum.key, newDatum.timestamp, JSON.toJSONString(remote), local.term);
+
+                } catch (Throwable e) {
+                    Loggers.RAFT.error("[RAFT-BEAT] failed to sync datum from leader, datum: {}", newDatum, e);
+                    failed++;
+                } finally {
+                    OPERATE_LOCK.unlock();
+                }
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+            return failed == 0 ? 0 : 1;
+        }
+    }
+
     public RaftPeer receivedBeat(JSONObject beat) throws Exception {
         final RaftPeer local = peers.local();
         final RaftPeer remote = new RaftPeer();
@@ -612,6 +1028,26 @@ public class RaftCore {
 
         peers.makeLeader(remote);
 
+        if (beat.containsKey("version")) {
+            // incremental beat, only pull what changed since the last synced version of the leader:
+            if (!switchDomain.isSendBeatOnly()) {
+                if (beat.getBooleanValue(RESYNC_BEAT_KEY)) {
+                    Loggers.RAFT.warn("[NACOS-RAFT] leader {} asked for a resync of all keys", remote.ip);
+                    resyncRequested = true;
+                }
+                JSONObject version = beat.getJSONObject("version");
+                if (resyncRequested || !StringUtils.equals(remote.ip, syncedLeader) || version.getLongValue("epoch") != syncedEpoch
+                    || version.getLongValue("index") != syncedIndex) {
+                    syncChanges(remote);
+                }
+            }
+            return local;
+        }
+
+        if (beatDatums == null) {
+            return local;
+        }
+
         Map<String, Integer> receivedKeysMap = new HashMap<>(datums.size());
 
         for (Map.Entry<String, Datum> entry : datums.entrySet()) {
@@ -655,7 +1091,7 @@ public class RaftCore {
                         batch.add(datumKey);
                     }
 
-                    if (batch.size() < 50 && processedCount < beatDatums.size()) {
+                    if (batch.size() < DATUM_SYNC_BATCH_SIZE && processedCount < beatDatums.size()) {
                         continue;
                     }
 
@@ -670,81 +1106,7 @@ public class RaftCore {
 
                     // update datum entry
                     String url = buildURL(remote.ip, API_GET) + "?keys=" + URLEncoder.encode(keys, "UTF-8");
-                    HttpClient.asyncHttpGet(url, null, null, new AsyncCompletionHandler<Integer>() {
-                        @Override
-                        public Integer onCompleted(Response response) throws Exception {
-                            if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
-                                return 1;
-                            }
-
-                            List<JSONObject> datumList = JSON.parseObject(response.getResponseBody(), new TypeReference<List<JSONObject>>() {
-                            });
-
-                            for (JSONObject datumJson : datumList) {
-                                OPERATE_LOCK.lock();
-                                Datum newDatum = null;
-                                try {
-
-                                    Datum oldDatum = getDatum(datumJson.getString("key"));
-
-                                    if (oldDatum != null && datumJson.getLongValue("timestamp") <= oldDatum.timestamp.get()) {
-                                        Loggers.RAFT.info("[NACOS-RAFT] timestamp is smaller than that of mine, key: {}, remote: {}, local: {}",
-                                            datumJson.getString("key"), datumJson.getLongValue("timestamp"), oldDatum.timestamp);
-                                        continue;
-                                    }
-
-                                    if (KeyBuilder.matchServiceMetaKey(datumJson.getString("key"))) {
-                                        Datum<Service> serviceDatum = new Datum<>();
-                                        serviceDatum.key = datumJson.getString("key");
-                                        serviceDatum.timestamp.set(datumJson.getLongValue("timestamp"));
-                                        serviceDatum.value =
-                                            JSON.parseObject(JSON.toJSONString(datumJson.getJSONObject("value")), Service.class);
-                                        newDatum = serviceDatum;
-                                    }
-
-                                    if (KeyBuilder.matchInstanceListKey(datumJson.getString("key"))) {
-                                        Datum<Instances> instancesDatum = new Datum<>();
-                                        instancesDatum.key = datumJson.getString("key");
-                                        instancesDatum.timestamp.set(datumJson.getLongValue("timestamp"));
-                                        instancesDatum.value =
-                                            JSON.parseObject(JSON.toJSONString(datumJson.getJSONObject("value")), Instances.class);
-                                        newDatum = instancesDatum;
-                                    }
-
-                                    if (newDatum == null || newDatum.value == null) {
-                                        Loggers.RAFT.error("receive null datum: {}", datumJson);
-                                        continue;
-                                    }
-
-                                    raftStore.write(newDatum);
-
-                                    datums.put(newDatum.key, newDatum);
-                                    notifier.addTask(newDatum.key, ApplyAction.CHANGE);
-
-                                    local.resetLeaderDue();
-
-                                    if (local.term.get() + 100 > remote.term.get()) {
-                                        getLeader().term.set(remote.term.get());
-                                        local.term.set(getLeader().term.get());
-                                    } else {
-                                        local.term.addAndGet(100);
-                                    }
-
-                                    raftStore.updateTerm(local.term.get());
-
-                                    Loggers.RAFT.info("data updated, key: {}, timestamp: {}, from {}, local term: {}",
-                                        newDatum.key, newDatum.timestamp, JSON.toJSONString(remote), local.term);
-
-                                } catch (Throwable e) {
-                                    Loggers.RAFT.error("[RAFT-BEAT] failed to sync datum from leader, datum: {}", newDatum, e);
-                                } finally {
-                                    OPERATE_LOCK.unlock();
-                                }
-                            }
-                            TimeUnit.MILLISECONDS.sleep(200);
-                            return 0;
-                        }
-                    });
+                    HttpClient.asyncHttpGet(url, null, null, new DatumPuller(remote));
 
                     batch.clear();
 
@@ -868,6 +1230,7 @@ public class RaftCore {
 
     public void addDatum(Datum datum) {
         datums.put(datum.key, datum);
+        recordChange(datum.key);
         notifier.addTask(datum.key, ApplyAction.CHANGE);
     }
 
@@ -878,6 +1241,7 @@ public class RaftCore {
                 return;
             }
             datums.put(key, datum);
+            recordChange(key);
         } catch (Exception e) {
             Loggers.RAFT.error("load datum failed: " + key, e);
         }
@@ -890,6 +1254,7 @@ public class RaftCore {
             deleted = datums.remove(URLDecoder.decode(key, "UTF-8"));
             if (deleted != null) {
                 raftStore.delete(deleted);
+                recordChange(deleted.key);
                 Loggers.RAFT.info("datum deleted, key: {}", key);
             }
             notifier.addTask(URLDecoder.decode(key, "UTF-8"), ApplyAction.DELETE);
@@ -906,100 +1271,517 @@ public class RaftCore {
         return notifier.getTaskSize();
     }
 
-    public class Notifier implements Runnable {
+    public class Notifier extends ShardedNotifier {
 
-        private ConcurrentHashMap<String, String> services = new ConcurrentHashMap<>(10 * 1024);
-
-        private BlockingQueue<Pair> tasks = new LinkedBlockingQueue<>(1024 * 1024);
+        public Notifier() {
+            super("com.alibaba.nacos.naming.raft.notifier", Loggers.RAFT);
+        }
 
+        @Override
         public void addTask(String datumKey, ApplyAction action) {
 
-            if (services.containsKey(datumKey) && action == ApplyAction.CHANGE) {
+            Loggers.RAFT.info("add task {}", datumKey);
+
+            super.addTask(datumKey, action);
+        }
+
+        @Override
+        protected void handle(String datumKey, ApplyAction action) {
+
+            Loggers.RAFT.info("remove task {}", datumKey);
+
+            int count = 0;
+
+            if (listeners.containsKey(KeyBuilder.SERVICE_META_KEY_PREFIX)) {
+
+                if (KeyBuilder.matchServiceMetaKey(datumKey) && !KeyBuilder.matchSwitchKey(datumKey)) {
+
+                    for (RecordListener listener : listeners.get(KeyBuilder.SERVICE_META_KEY_PREFIX)) {
+                        try {
+                            if (action == ApplyAction.CHANGE) {
+                                listener.onChange(datumKey, getDatum(datumKey).value);
+                            }
+
+                            if (action == ApplyAction.DELETE) {
+                                listener.onDelete(datumKey);
+                            }
+                        } catch (Throwable e) {
+                            Loggers.RAFT.error("[NACOS-RAFT] error while notifying listener of key: {}", datumKey, e);
+                        }
+                    }
+                }
+            }
+
+            if (!listeners.containsKey(datumKey)) {
                 return;
             }
-            if (action == ApplyAction.CHANGE) {
-                services.put(datumKey, StringUtils.EMPTY);
+
+            for (RecordListener listener : listeners.get(datumKey)) {
+
+                count++;
+
+                try {
+                    if (action == ApplyAction.CHANGE) {
+                        listener.onChange(datumKey, getDatum(datumKey).value);
+                        continue;
+                    }
+
+                    if (action == ApplyAction.DELETE) {
+                        listener.onDelete(datumKey);
+                        continue;
+                    }
+                } catch (Throwable e) {
+                    Loggers.RAFT.error("[NACOS-RAFT] error while notifying listener of key: {}", datumKey, e);
+                }
+            }
+
+            if (Loggers.RAFT.isDebugEnabled()) {
+                Loggers.RAFT.debug("[NACOS-RAFT] datum change notified, key: {}, listener count: {}", datumKey, count);
             }
+        }
+    }
 
-            Loggers.RAFT.info("add task {}", datumKey);
+    /**
+     * Coalesces concurrent publish requests into batches and replicates them to the followers,
+     * keeping several batches in flight per follower. A batch is committed, and the futures of its
+     * publishers completed, as soon as a majority of the peers acknowledged it.
+     * <p>
+     * Deletes are replicated through the same pipelines, each as a batch of its own which no other
+     * batch of the follower overtakes.
+     */
+    public class Replicator implements Runnable {
+
+        private BlockingQueue<PublishRequest> requests = new LinkedBlockingQueue<>();
+
+        private ConcurrentMap<String, PeerPipeline> pipelines = new ConcurrentHashMap<>();
+
+        public Future<Long> submit(String key, Record value) {
+            PublishRequest request = new PublishRequest(key, value, false);
+            requests.add(request);
+            return request.future;
+        }
 
-            tasks.add(Pair.with(datumKey, action));
+        public Future<Long> submitDelete(String key) {
+            PublishRequest request = new PublishRequest(key, null, true);
+            requests.add(request);
+            return request.future;
         }
 
-        public int getTaskSize() {
-            return tasks.size();
+        public int getPendingCount() {
+            return requests.size();
         }
 
         @Override
         public void run() {
-            Loggers.RAFT.info("raft notifier started");
+            Loggers.RAFT.info("raft replicator started");
+
+            List<PublishRequest> batch = new ArrayList<>();
 
             while (true) {
                 try {
+                    batch.clear();
+                    batch.add(requests.take());
+                    requests.drainTo(batch, MAX_PUBLISH_BATCH_SIZE - 1);
 
-                    Pair pair = tasks.take();
+                    replicate(batch);
+                } catch (Throwable e) {
+                    Loggers.RAFT.error("[NACOS-RAFT] Error while replicating publish batch", e);
+                    for (PublishRequest request : batch) {
+                        request.future.completeExceptionally(e);
+                    }
+                }
+            }
+        }
 
-                    if (pair == null) {
-                        continue;
+        private void replicate(List<PublishRequest> requests) {
+            // publishes between two deletes are coalesced, deletes keep their place:
+            int from = 0;
+            for (int i = 0; i < requests.size(); i++) {
+                if (!requests.get(i).delete) {
+                    continue;
+                }
+                if (i > from) {
+                    replicate(requests.subList(from, i), false);
+                }
+                replicate(requests.subList(i, i + 1), true);
+                from = i + 1;
+            }
+            if (from < requests.size()) {
+                replicate(requests.subList(from, requests.size()), false);
+            }
+        }
+
+        /**
+         * Replicate one segment of a batch. A segment failing to be enqueued only fails its own
+         * requests, the segments already enqueued still reach the followers.
+         */
+        private void replicate(List<PublishRequest> segment, boolean delete) {
+            try {
+                if (delete) {
+                    delete(segment.get(0));
+                } else {
+                    publish(segment);
+                }
+            } catch (Throwable e) {
+                Loggers.RAFT.error("[NACOS-RAFT] Error while replicating {} requests", segment.size(), e);
+                for (PublishRequest request : segment) {
+                    request.future.completeExceptionally(e);
+                }
+            }
+        }
+
+        private void publish(List<PublishRequest> requests) throws Exception {
+
+            // later values of the same key win:
+            Map<String, Record> values = new LinkedHashMap<>(requests.size());
+            for (PublishRequest request : requests) {
+                values.put(request.key, request.value);
+            }
+
+            final List<Datum> batch = new ArrayList<>(values.size());
+            final String content;
+
+            OPERATE_LOCK.lock();
+            try {
+                if (!isLeader()) {
+                    throw new IllegalStateException("leader changed before data is published, current leader: "
+                        + getLeader().ip);
+                }
+
+                for (Map.Entry<String, Record> entry : values.entrySet()) {
+                    Datum datum = new Datum();
+                    datum.key = entry.getKey();
+                    datum.value = entry.getValue();
+                    if (getDatum(datum.key) == null) {
+                        datum.timestamp.set(1L);
+                    } else {
+                        datum.timestamp.set(getDatum(datum.key).timestamp.incrementAndGet());
                     }
+                    batch.add(datum);
+                }
 
-                    String datumKey = (String) pair.getValue0();
-                    ApplyAction action = (ApplyAction) pair.getValue1();
+                onPublish(batch, peers.local());
 
-                    services.remove(datumKey);
+                JSONObject json = new JSONObject();
+                json.put("datums", batch);
+                json.put("source", peers.local());
+                content = JSON.toJSONString(json);
+            } finally {
+                OPERATE_LOCK.unlock();
+            }
 
-                    Loggers.RAFT.info("remove task {}", datumKey);
+            enqueue(new ReplicatedBatch(batch, requests, content, peers.majorityCount()));
 
-                    int count = 0;
+            if (Loggers.RAFT.isDebugEnabled()) {
+                Loggers.RAFT.debug("[NACOS-RAFT] batch replicated, requests: {}, datums: {}", requests.size(), batch.size());
+            }
+        }
+
+        private void delete(PublishRequest request) throws Exception {
 
-                    if (listeners.containsKey(KeyBuilder.SERVICE_META_KEY_PREFIX)) {
+            final String content;
 
-                        if (KeyBuilder.matchServiceMetaKey(datumKey) && !KeyBuilder.matchSwitchKey(datumKey)) {
+            OPERATE_LOCK.lock();
+            try {
+                if (!isLeader()) {
+                    throw new IllegalStateException("leader changed before data is deleted, current leader: "
+                        + getLeader().ip);
+                }
 
-                            for (RecordListener listener : listeners.get(KeyBuilder.SERVICE_META_KEY_PREFIX)) {
-                                try {
-                                    if (action == ApplyAction.CHANGE) {
-                                        listener.onChange(datumKey, getDatum(datumKey).value);
-                                    }
+                Datum datum = new Datum();
+                datum.key = request.key;
 
-                                    if (action == ApplyAction.DELETE) {
-                                        listener.onDelete(datumKey);
-                                    }
-                                } catch (Throwable e) {
-                                    Loggers.RAFT.error("[NACOS-RAFT] error while notifying listener of key: {}", datumKey, e);
-                                }
-                            }
+                onDelete(datum.key, peers.local());
+
+                JSONObject json = new JSONObject();
+                json.put("datum", datum);
+                json.put("source", peers.local());
+                content = JSON.toJSONString(json);
+            } finally {
+                OPERATE_LOCK.unlock();
+            }
+
+            enqueue(new ReplicatedBatch(request, content, peers.majorityCount()));
+        }
+
+        private void enqueue(ReplicatedBatch replicated) {
+
+            // the leader itself:
+            replicated.ack();
+
+            for (String server : peers.allServersWithoutMySelf()) {
+                PeerPipeline pipeline = pipelines.get(server);
+                if (pipeline == null) {
+                    pipelines.putIfAbsent(server, new PeerPipeline(server));
+                    pipeline = pipelines.get(server);
+                }
+                pipeline.enqueue(replicated);
+            }
+        }
+    }
+
+    private static class PublishRequest {
+
+        private final String key;
+
+        private final Record value;
+
+        private final boolean delete;
+
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private PublishRequest(String key, Record value, boolean delete) {
+            this.key = key;
+            this.value = value;
+            this.delete = delete;
+        }
+    }
+
+    private class ReplicatedBatch {
+
+        private final List<Datum> datums;
+
+        private final List<PublishRequest> requests;
+
+        private final byte[] content;
+
+        /**
+         * key removed by this batch, null for batches of published datums
+         */
+        private final String deletedKey;
+
+        private final String deleteContent;
+
+        private final String source;
+
+        private final int majority;
+
+        private final AtomicInteger acks = new AtomicInteger(0);
+
+        private final long start = System.currentTimeMillis();
+
+        private ReplicatedBatch(List<Datum> datums, List<PublishRequest> requests, String content, int majority) throws IOException {
+            this.datums = datums;
+            this.requests = new ArrayList<>(requests);
+            this.majority = majority;
+            this.source = JSON.toJSONString(peers.local());
+            this.deletedKey = null;
+            this.deleteContent = null;
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+            gzip.close();
+            this.content = out.toByteArray();
+        }
+
+        private ReplicatedBatch(PublishRequest request, String content, int majority) {
+            this.datums = Collections.emptyList();
+            this.requests = Collections.singletonList(request);
+            this.majority = majority;
+            this.source = JSON.toJSONString(peers.local());
+            this.deletedKey = request.key;
+            this.deleteContent = content;
+            this.content = null;
+        }
+
+        private boolean isDelete() {
+            return deletedKey != null;
+        }
+
+        private void ack() {
+            if (acks.incrementAndGet() != majority) {
+                return;
+            }
+            long cost = System.currentTimeMillis() - start;
+            for (PublishRequest request : requests) {
+                request.future.complete(cost);
+            }
+        }
+    }
+
+    /**
+     * Replication pipeline to one follower
+     */
+    private class PeerPipeline {
+
+        private final String server;
+
+        private final Deque<ReplicatedBatch> queue = new ArrayDeque<>();
+
+        private int inFlight = 0;
+
+        /**
+         * followers of older versions only understand the single datum commit API
+         */
+        private volatile boolean batchUnsupported = false;
+
+        private PeerPipeline(String server) {
+            this.server = server;
+        }
+
+        private void enqueue(ReplicatedBatch batch) {
+            synchronized (this) {
+                if (queue.size() >= MAX_PENDING_BATCHES_PER_PEER) {
+                    // the follower can not keep up, it pulls whatever it missed from the leader instead:
+                    queue.clear();
+                    resyncPeers.add(server);
+                    Loggers.RAFT.warn("[NACOS-RAFT] too many pending batches for peer {}, cleared them and asked for a resync", server);
+                }
+                queue.add(batch);
+            }
+            dispatch();
+        }
+
+        private void dispatch() {
+            List<ReplicatedBatch> toSend = new ArrayList<>();
+            synchronized (this) {
+                while (inFlight < MAX_IN_FLIGHT_BATCHES_PER_PEER && !queue.isEmpty()) {
+                    // a delete waits for the batches before it, and the batches after it wait for the delete:
+                    ReplicatedBatch next = queue.peek();
+                    if (next.isDelete() && inFlight > 0) {
+                        break;
+                    }
+                    toSend.add(queue.poll());
+                    inFlight++;
+                    if (next.isDelete()) {
+                        break;
+                    }
+                }
+            }
+            for (ReplicatedBatch batch : toSend) {
+                if (batch.isDelete()) {
+                    sendDelete(batch);
+                } else if (batchUnsupported) {
+                    sendOneByOne(batch);
+                } else {
+                    send(batch);
+                }
+            }
+        }
+
+        private void done() {
+            synchronized (this) {
+                inFlight--;
+            }
+            dispatch();
+        }
+
+        private void send(final ReplicatedBatch batch) {
+            final String url = buildURL(server, API_ON_PUB_BATCH);
+            try {
+                HttpClient.asyncHttpPostLarge(url, null, batch.content, new AsyncCompletionHandler<Integer>() {
+                    @Override
+                    public Integer onCompleted(Response response) throws Exception {
+                        if (response.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                            Loggers.RAFT.warn("[RAFT] peer {} does not support batch publish, fall back to single datum publish", server);
+                            batchUnsupported = true;
+                            sendOneByOne(batch);
+                            return 1;
                         }
+                        if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+                            Loggers.RAFT.warn("[RAFT] failed to publish batch to peer, size={}, peer={}, http code={}",
+                                batch.datums.size(), server, response.getStatusCode());
+                            done();
+                            return 1;
+                        }
+                        batch.ack();
+                        done();
+                        return 0;
                     }
 
-                    if (!listeners.containsKey(datumKey)) {
-                        continue;
+                    @Override
+                    public void onThrowable(Throwable t) {
+                        Loggers.RAFT.warn("[RAFT] error while publishing batch to peer: {}", server, t);
+                        done();
                     }
 
-                    for (RecordListener listener : listeners.get(datumKey)) {
+                    @Override
+                    public STATE onContentWriteCompleted() {
+                        return STATE.CONTINUE;
+                    }
+                });
+            } catch (Exception e) {
+                Loggers.RAFT.warn("[RAFT] error while publishing batch to peer: {}", server, e);
+                done();
+            }
+        }
 
-                        count++;
+        private void sendDelete(final ReplicatedBatch batch) {
+            final String url = buildURL(server, API_ON_DEL);
+            try {
+                HttpClient.asyncHttpDeleteLarge(url, null, batch.deleteContent, new AsyncCompletionHandler<Integer>() {
+                    @Override
+                    public Integer onCompleted(Response response) throws Exception {
+                        if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+                            Loggers.RAFT.warn("[RAFT] failed to delete data from peer, datumId={}, peer={}, http code={}",
+                                batch.deletedKey, server, response.getStatusCode());
+                            done();
+                            return 1;
+                        }
+                        peers.local().resetLeaderDue();
+                        batch.ack();
+                        done();
+                        return 0;
+                    }
 
-                        try {
-                            if (action == ApplyAction.CHANGE) {
-                                listener.onChange(datumKey, getDatum(datumKey).value);
-                                continue;
-                            }
+                    @Override
+                    public void onThrowable(Throwable t) {
+                        Loggers.RAFT.warn("[RAFT] error while deleting data from peer, datumId={}, peer={}", batch.deletedKey, server, t);
+                        done();
+                    }
+                });
+            } catch (Exception e) {
+                Loggers.RAFT.warn("[RAFT] error while deleting data from peer, datumId={}, peer={}", batch.deletedKey, server, e);
+                done();
+            }
+        }
 
-                            if (action == ApplyAction.DELETE) {
-                                listener.onDelete(datumKey);
-                                continue;
-                            }
-                        } catch (Throwable e) {
-                            Loggers.RAFT.error("[NACOS-RAFT] error while notifying listener of key: {}", datumKey, e);
+        private void sendOneByOne(final ReplicatedBatch batch) {
+            final AtomicInteger remaining = new AtomicInteger(batch.datums.size());
+            final AtomicInteger failed = new AtomicInteger(0);
+
+            for (final Datum datum : batch.datums) {
+                String content = "{\"datum\":" + JSON.toJSONString(datum) + ",\"source\":" + batch.source + "}";
+                final String url = buildURL(server, API_ON_PUB);
+                AsyncCompletionHandler<Integer> handler = new AsyncCompletionHandler<Integer>() {
+                    @Override
+                    public Integer onCompleted(Response response) throws Exception {
+                        if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+                            Loggers.RAFT.warn("[RAFT] failed to publish data to peer, datumId={}, peer={}, http code={}",
+                                datum.key, server, response.getStatusCode());
+                            failed.incrementAndGet();
                         }
+                        finish();
+                        return 0;
                     }
 
-                    if (Loggers.RAFT.isDebugEnabled()) {
-                        Loggers.RAFT.debug("[NACOS-RAFT] datum change notified, key: {}, listener count: {}", datumKey, count);
+                    @Override
+                    public void onThrowable(Throwable t) {
+                        Loggers.RAFT.warn("[RAFT] error while publishing data to peer, datumId={}, peer={}", datum.key, server, t);
+                        failed.incrementAndGet();
+                        finish();
                     }
-                } catch (Throwable e) {
-                    Loggers.RAFT.error("[NACOS-RAFT] Error while handling notifying task", e);
+
+                    @Override
+                    public STATE onContentWriteCompleted() {
+                        return STATE.CONTINUE;
+                    }
+
+                    private void finish() {
+                        if (remaining.decrementAndGet() != 0) {
+                            return;
+                        }
+                        if (failed.get() == 0) {
+                            batch.ack();
+                        }
+                        done();
+                    }
+                };
+                try {
+                    HttpClient.asyncHttpPostLarge(url, Arrays.asList("key=" + datum.key), content, handler);
+                } catch (Exception e) {
+                    handler.onThrowable(e);
                 }
             }
         }
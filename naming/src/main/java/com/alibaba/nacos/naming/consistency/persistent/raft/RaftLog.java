@@ -0,0 +1,709 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.consistency.persistent.raft;
+
+import com.alibaba.nacos.naming.misc.Loggers;
+import com.alibaba.nacos.naming.monitor.MetricsMonitor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Segmented append-only log with periodic snapshots.
+ * <p>
+ * All appends are handed to a single writer thread, which drains every pending request, writes them
+ * to the active segment in one go and forces the segment once per batch (group commit). When the
+ * active segment grows beyond the segment size a new one is started, and once enough sealed
+ * segments have piled up they are folded together with the previous snapshot into a new snapshot.
+ * <p>
+ * Every record is stored as {@code [int length][int crc32][byte type][long index][payload]}, so a
+ * torn write at the tail of a segment is detected and ignored on replay.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class RaftLog {
+
+    public static final byte TYPE_PUT = 1;
+
+    public static final byte TYPE_DELETE = 2;
+
+    public static final byte TYPE_TERM = 3;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private static final int MAX_BATCH_SIZE = 4096;
+
+    private final File dir;
+
+    private final long segmentSize;
+
+    private final int compactThreshold;
+
+    private final BlockingQueue<Append> pending = new LinkedBlockingQueue<>();
+
+    private final Object compactLock = new Object();
+
+    private ScheduledExecutorService compactExecutor;
+
+    private FileChannel channel;
+
+    private volatile long currentFirstIndex;
+
+    private volatile long lastIndex;
+
+    private volatile boolean opened = false;
+
+    public RaftLog(File dir, long segmentSize, int compactThreshold) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.compactThreshold = compactThreshold;
+    }
+
+    public synchronized void open() throws IOException {
+
+        if (opened) {
+            return;
+        }
+
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("can not make raft log directory: " + dir.getAbsolutePath());
+        }
+
+        lastIndex = snapshotIndex(latestSnapshot());
+
+        List<File> segments = listSegments();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            File segment = segments.get(i);
+            final long[] segmentLastIndex = new long[]{-1L};
+            read(segment, -1L, new EntryVisitor() {
+                @Override
+                public void visit(Entry entry) {
+                    segmentLastIndex[0] = entry.index;
+                }
+            });
+            if (segmentLastIndex[0] >= 0) {
+                lastIndex = Math.max(lastIndex, segmentLastIndex[0]);
+                break;
+            }
+            // trailing segment without a single complete record, nothing worth keeping:
+            if (!segment.delete()) {
+                Loggers.RAFT.warn("[RAFT-LOG] failed to delete empty segment: {}", segment.getAbsolutePath());
+            }
+        }
+
+        // always continue in a fresh segment so a torn tail of the previous one is never appended to:
+        startSegment(lastIndex + 1);
+
+        compactExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                t.setName("com.alibaba.nacos.naming.raft.log.compactor");
+                return t;
+            }
+        });
+
+        Thread writer = new Thread(new Writer());
+        writer.setDaemon(true);
+        writer.setName("com.alibaba.nacos.naming.raft.log.writer");
+        writer.start();
+
+        opened = true;
+
+        Loggers.RAFT.info("[RAFT-LOG] log opened, dir: {}, last index: {}", dir.getAbsolutePath(), lastIndex);
+
+        if (listSegments().size() - 1 >= compactThreshold) {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Append entries to the log
+     *
+     * @param entries entries to append, their indexes are assigned by the log
+     * @param sync    whether the returned future should complete only after the entries are forced to disk
+     * @return future completed with the index of the last appended entry
+     */
+    public Future<Long> append(List<Entry> entries, boolean sync) {
+        if (!opened) {
+            throw new IllegalStateException("raft log is not opened: " + dir.getAbsolutePath());
+        }
+        Append append = new Append(entries, sync);
+        pending.add(append);
+        return append.future;
+    }
+
+    /**
+     * Replay the latest snapshot and every entry appended after it, in index order
+     *
+     * @param visitor visitor to receive the entries
+     */
+    public void replay(final EntryVisitor visitor) throws IOException {
+        synchronized (compactLock) {
+            File snapshot = latestSnapshot();
+            long snapshotIndex = snapshotIndex(snapshot);
+            if (snapshot != null) {
+                read(snapshot, -1L, visitor);
+            }
+            for (File segment : listSegments()) {
+                read(segment, snapshotIndex, visitor);
+            }
+        }
+    }
+
+    /**
+     * Read the entry stored at a position
+     *
+     * @param position position of the entry, as set on the entries by appends and replays
+     * @return the entry, or null if its file has been compacted away
+     * @throws IOException if the record at the position is unreadable or corrupted
+     */
+    public Entry read(Position position) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(new File(dir, position.file), "r")) {
+            in.seek(position.offset);
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE) {
+                throw new IOException("invalid raft log record length " + length + " at " + position);
+            }
+            int crc = in.readInt();
+            byte[] body = new byte[length];
+            in.readFully(body);
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(body);
+            if ((int) crc32.getValue() != crc) {
+                throw new IOException("corrupted raft log record at " + position);
+            }
+
+            Entry entry = decode(body);
+            entry.position = position;
+            return entry;
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Fold all sealed segments and the previous snapshot into a new snapshot and drop them
+     */
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            long start = System.currentTimeMillis();
+
+            List<File> sealed = new ArrayList<>();
+            for (File segment : listSegments()) {
+                if (segmentFirstIndex(segment) < currentFirstIndex) {
+                    sealed.add(segment);
+                }
+            }
+
+            if (sealed.isEmpty()) {
+                return;
+            }
+
+            File oldSnapshot = latestSnapshot();
+            final long oldSnapshotIndex = snapshotIndex(oldSnapshot);
+            final Map<String, Entry> state = new HashMap<>(1024);
+            final Entry[] term = new Entry[1];
+            final long[] snapshotIndex = new long[]{oldSnapshotIndex};
+
+            EntryVisitor visitor = new EntryVisitor() {
+                @Override
+                public void visit(Entry entry) {
+                    snapshotIndex[0] = Math.max(snapshotIndex[0], entry.index);
+                    switch (entry.type) {
+                        case TYPE_PUT:
+                            state.put(entry.key, entry);
+                            break;
+                        case TYPE_DELETE:
+                            state.remove(entry.key);
+                            break;
+                        case TYPE_TERM:
+                            term[0] = entry;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            };
+
+            if (oldSnapshot != null) {
+                read(oldSnapshot, -1L, visitor);
+            }
+            for (File segment : sealed) {
+                read(segment, oldSnapshotIndex, visitor);
+            }
+
+            File target = new File(dir, snapshotName(snapshotIndex[0]));
+            File tmp = new File(dir, target.getName() + TMP_SUFFIX);
+
+            try (FileOutputStream out = new FileOutputStream(tmp, false)) {
+                BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+                if (term[0] != null) {
+                    buffered.write(encode(term[0]));
+                }
+                for (Entry entry : state.values()) {
+                    buffered.write(encode(entry));
+                }
+                buffered.flush();
+                out.getChannel().force(true);
+            }
+
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+            if (oldSnapshot != null && !oldSnapshot.equals(target) && !oldSnapshot.delete()) {
+                Loggers.RAFT.warn("[RAFT-LOG] failed to delete old snapshot: {}", oldSnapshot.getAbsolutePath());
+            }
+            for (File segment : sealed) {
+                if (!segment.delete()) {
+                    Loggers.RAFT.warn("[RAFT-LOG] failed to delete compacted segment: {}", segment.getAbsolutePath());
+                }
+            }
+
+            Loggers.RAFT.info("[RAFT-LOG] snapshot finished, index: {}, keys: {}, segments: {}, cost: {} ms",
+                snapshotIndex[0], state.size(), sealed.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    public long getLastIndex() {
+        return lastIndex;
+    }
+
+    private void scheduleCompaction() {
+        compactExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (Throwable e) {
+                    MetricsMonitor.getDiskException().increment();
+                    Loggers.RAFT.error("[RAFT-LOG] failed to compact raft log", e);
+                }
+            }
+        });
+    }
+
+    private void startSegment(long firstIndex) throws IOException {
+        File segment = new File(dir, segmentName(firstIndex));
+        FileChannel newChannel = new RandomAccessFile(segment, "rw").getChannel();
+        newChannel.position(newChannel.size());
+
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+
+        channel = newChannel;
+        currentFirstIndex = firstIndex;
+    }
+
+    private List<File> listSegments() {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+
+        if (files == null) {
+            return new ArrayList<>();
+        }
+
+        List<File> segments = new ArrayList<>(Arrays.asList(files));
+        Collections.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(segmentFirstIndex(o1), segmentFirstIndex(o2));
+            }
+        });
+        return segments;
+    }
+
+    private File latestSnapshot() {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+            }
+        });
+
+        File latest = null;
+        if (files != null) {
+            for (File file : files) {
+                if (latest == null || snapshotIndex(file) > snapshotIndex(latest)) {
+                    latest = file;
+                }
+            }
+        }
+        return latest;
+    }
+
+    private static String segmentName(long firstIndex) {
+        return String.format("%020d", firstIndex) + SEGMENT_SUFFIX;
+    }
+
+    private static String snapshotName(long lastIndex) {
+        return SNAPSHOT_PREFIX + String.format("%020d", lastIndex) + SNAPSHOT_SUFFIX;
+    }
+
+    private static long segmentFirstIndex(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static long snapshotIndex(File snapshot) {
+        if (snapshot == null) {
+            return 0L;
+        }
+        String name = snapshot.getName();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    /**
+     * Read all complete records of a file, stopping silently at the first torn or corrupted one
+     *
+     * @param file       segment or snapshot file
+     * @param afterIndex only records with greater index are visited
+     * @param visitor    visitor to receive the entries
+     */
+    static void read(File file, long afterIndex, EntryVisitor visitor) throws IOException {
+
+        long position = 0L;
+        String name = file.getName();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+
+                byte[] body = new byte[length];
+                int crc;
+                try {
+                    crc = in.readInt();
+                    in.readFully(body);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                CRC32 crc32 = new CRC32();
+                crc32.update(body);
+                if ((int) crc32.getValue() != crc) {
+                    break;
+                }
+
+                Entry entry = decode(body);
+                entry.position = new Position(name, position);
+
+                position += RECORD_HEADER_SIZE + length;
+
+                if (entry.index > afterIndex) {
+                    visitor.visit(entry);
+                }
+            }
+        }
+
+        if (position < file.length()) {
+            Loggers.RAFT.warn("[RAFT-LOG] ignored {} trailing bytes of {}", file.length() - position,
+                file.getAbsolutePath());
+        }
+    }
+
+    static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(64);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.writeByte(entry.type);
+        body.writeLong(entry.index);
+        switch (entry.type) {
+            case TYPE_PUT:
+                writeBytes(body, entry.key.getBytes(StandardCharsets.UTF_8));
+                writeBytes(body, entry.value);
+                break;
+            case TYPE_DELETE:
+                writeBytes(body, entry.key.getBytes(StandardCharsets.UTF_8));
+                break;
+            case TYPE_TERM:
+                body.writeLong(entry.term);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown raft log entry type: " + entry.type);
+        }
+        body.flush();
+
+        byte[] bytes = bodyBytes.toByteArray();
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bytes.length);
+        record.putInt(bytes.length);
+        record.putInt((int) crc32.getValue());
+        record.put(bytes);
+        return record.array();
+    }
+
+    static Entry decode(byte[] bytes) throws IOException {
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(bytes));
+        Entry entry = new Entry();
+        entry.type = body.readByte();
+        entry.index = body.readLong();
+        switch (entry.type) {
+            case TYPE_PUT:
+                entry.key = new String(readBytes(body), StandardCharsets.UTF_8);
+                entry.value = readBytes(body);
+                break;
+            case TYPE_DELETE:
+                entry.key = new String(readBytes(body), StandardCharsets.UTF_8);
+                break;
+            case TYPE_TERM:
+                entry.term = body.readLong();
+                break;
+            default:
+                throw new IOException("unknown raft log entry type: " + entry.type);
+        }
+        return entry;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    public static Entry put(String key, byte[] value) {
+        Entry entry = new Entry();
+        entry.type = TYPE_PUT;
+        entry.key = key;
+        entry.value = value;
+        return entry;
+    }
+
+    public static Entry delete(String key) {
+        Entry entry = new Entry();
+        entry.type = TYPE_DELETE;
+        entry.key = key;
+        return entry;
+    }
+
+    public static Entry term(long term) {
+        Entry entry = new Entry();
+        entry.type = TYPE_TERM;
+        entry.term = term;
+        return entry;
+    }
+
+    public static class Entry {
+
+        public byte type;
+
+        public long index;
+
+        public String key;
+
+        public byte[] value;
+
+        public long term;
+
+        /**
+         * Where the entry is stored, set once it is appended or read
+         */
+        public Position position;
+    }
+
+    /**
+     * Location of a record in a segment or snapshot, valid until the file is compacted away
+     */
+    public static final class Position {
+
+        private final String file;
+
+        private final long offset;
+
+        Position(String file, long offset) {
+            this.file = file;
+            this.offset = offset;
+        }
+
+        @Override
+        public String toString() {
+            return file + "@" + offset;
+        }
+    }
+
+    public interface EntryVisitor {
+
+        /**
+         * Called for each entry read from the log
+         *
+         * @param entry log entry
+         * @throws IOException if the entry can not be handled
+         */
+        void visit(Entry entry) throws IOException;
+    }
+
+    private static class Append {
+
+        private final List<Entry> entries;
+
+        private final boolean sync;
+
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private Append(List<Entry> entries, boolean sync) {
+            this.entries = entries;
+            this.sync = sync;
+        }
+    }
+
+    private class Writer implements Runnable {
+
+        @Override
+        public void run() {
+
+            List<Append> batch = new ArrayList<>();
+
+            while (true) {
+                batch.clear();
+                try {
+                    batch.add(pending.take());
+                } catch (InterruptedException e) {
+                    Loggers.RAFT.warn("[RAFT-LOG] writer interrupted, exit.");
+                    return;
+                }
+                pending.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                long position = -1L;
+                try {
+                    position = channel.position();
+                    boolean sync = false;
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+                    long index = lastIndex;
+                    String segment = segmentName(currentFirstIndex);
+                    for (Append append : batch) {
+                        sync |= append.sync;
+                        for (Entry entry : append.entries) {
+                            entry.index = ++index;
+                            entry.position = new Position(segment, position + out.size());
+                            out.write(encode(entry));
+                        }
+                    }
+
+                    ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    if (sync) {
+                        channel.force(false);
+                    }
+                    lastIndex = index;
+
+                    for (Append append : batch) {
+                        append.future.complete(index);
+                    }
+                } catch (Throwable e) {
+                    MetricsMonitor.getDiskException().increment();
+                    Loggers.RAFT.error("[RAFT-LOG] failed to append {} requests", batch.size(), e);
+                    for (Append append : batch) {
+                        append.future.completeExceptionally(e);
+                    }
+                    // drop whatever was partially written so it can not hide the following records:
+                    truncateQuietly(position);
+                    continue;
+                }
+
+                try {
+                    if (channel.size() >= segmentSize) {
+                        startSegment(lastIndex + 1);
+                        if (listSegments().size() - 1 >= compactThreshold) {
+                            scheduleCompaction();
+                        }
+                    }
+                } catch (Throwable e) {
+                    MetricsMonitor.getDiskException().increment();
+                    Loggers.RAFT.error("[RAFT-LOG] failed to roll segment", e);
+                }
+            }
+        }
+
+        private void truncateQuietly(long position) {
+            if (position < 0) {
+                return;
+            }
+            try {
+                channel.truncate(position);
+                channel.position(position);
+            } catch (Throwable e) {
+                Loggers.RAFT.error("[RAFT-LOG] failed to truncate segment after write failure", e);
+            }
+        }
+    }
+}
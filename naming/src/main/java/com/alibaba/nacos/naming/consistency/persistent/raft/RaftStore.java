@@ -34,81 +34,208 @@ import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
+ * Persistent storage of raft datums.
+ * <p>
+ * Datums and the current term are appended to a segmented {@link RaftLog} and periodically compacted
+ * into a snapshot, so a write costs one group-committed append instead of rewriting a whole file, and
+ * a cold start replays one snapshot plus a log tail. The legacy file-per-datum cache is migrated into
+ * the log the first time a node starts with an empty log.
+ *
  * @author nacos
  */
 @Component
 public class RaftStore {
 
+    /**
+     * A segment is sealed once it grows beyond this size
+     */
+    public static final long LOG_SEGMENT_SIZE = 64 * 1024 * 1024L;
+
+    /**
+     * Sealed segments are folded into a snapshot once there are at least this many of them
+     */
+    public static final int LOG_COMPACT_THRESHOLD = 4;
+
+    private static final long WRITE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10L);
+
     private Properties meta = new Properties();
 
     private String metaFileName = UtilsAndCommons.DATA_BASE_DIR + File.separator + "meta.properties";
 
     private String cacheDir = UtilsAndCommons.DATA_BASE_DIR + File.separator + "data";
 
+    private String logDir = UtilsAndCommons.DATA_BASE_DIR + File.separator + "raft-log";
+
+    private RaftLog raftLog;
+
+    private volatile long term = -1L;
+
+    /**
+     * Keys still stored in the format without group, removed when their new format key is written
+     */
+    private Set<String> oldFormatKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Position in the log of the latest value of every key, so reading one key does not replay the whole
+     * log, while the values themselves stay on disk
+     */
+    private final ConcurrentMap<String, RaftLog.Position> index = new ConcurrentHashMap<>(1024);
+
+    private volatile boolean indexed = false;
+
     public synchronized void loadDatums(RaftCore.Notifier notifier, ConcurrentMap<String, Datum> datums) throws Exception {
 
-        Datum datum;
         long start = System.currentTimeMillis();
-        for (File cache : listCaches()) {
-            if (cache.isDirectory() && cache.listFiles() != null) {
-                for (File datumFile : cache.listFiles()) {
-                    datum = readDatum(datumFile, cache.getName());
-                    if (datum != null) {
-                        datums.put(datum.key, datum);
-                        notifier.addTask(datum.key, ApplyAction.CHANGE);
-                    }
-                }
+
+        final Map<String, byte[]> values = new LinkedHashMap<>(1024);
+        final long[] recoveredTerm = new long[]{-1L};
+        replay(values, recoveredTerm);
+
+        if (recoveredTerm[0] >= 0) {
+            term = recoveredTerm[0];
+        }
+
+        if (values.isEmpty() && recoveredTerm[0] < 0) {
+            migrateCaches(notifier, datums);
+            Loggers.RAFT.info("finish loading all datums, size: {} cost {} ms.", datums.size(), (System.currentTimeMillis() - start));
+            return;
+        }
+
+        Datum datum;
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            datum = parseDatum(new String(entry.getValue(), StandardCharsets.UTF_8), entry.getKey());
+            if (datum == null) {
                 continue;
             }
-            datum = readDatum(cache, StringUtils.EMPTY);
-            if (datum != null) {
-                datums.put(datum.key, datum);
+            datums.put(datum.key, datum);
+            if (StringUtils.isNotBlank(KeyBuilder.getNamespace(datum.key))) {
+                notifier.addTask(datum.key, ApplyAction.CHANGE);
             }
+            recordOldFormatKey(entry.getKey());
         }
 
         Loggers.RAFT.info("finish loading all datums, size: {} cost {} ms.", datums.size(), (System.currentTimeMillis() - start));
     }
 
+    /**
+     * Replay the log into the latest value of every key and rebuild the index served by {@link #load(String)}
+     *
+     * @param values        receives the latest value of every key, or null if only the index is needed
+     * @param recoveredTerm receives the latest term
+     */
+    private void replay(final Map<String, byte[]> values, final long[] recoveredTerm) throws IOException {
+        final Map<String, RaftLog.Position> positions = new HashMap<>(1024);
+        getLog().replay(new RaftLog.EntryVisitor() {
+            @Override
+            public void visit(RaftLog.Entry entry) {
+                switch (entry.type) {
+                    case RaftLog.TYPE_PUT:
+                        positions.put(entry.key, entry.position);
+                        if (values != null) {
+                            values.put(entry.key, entry.value);
+                        }
+                        break;
+                    case RaftLog.TYPE_DELETE:
+                        positions.remove(entry.key);
+                        if (values != null) {
+                            values.remove(entry.key);
+                        }
+                        break;
+                    case RaftLog.TYPE_TERM:
+                        recoveredTerm[0] = entry.term;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+
+        index.clear();
+        index.putAll(positions);
+        indexed = true;
+    }
+
     public synchronized Properties loadMeta() throws Exception {
-        File metaFile = new File(metaFileName);
-        if (!metaFile.exists() && !metaFile.getParentFile().mkdirs() && !metaFile.createNewFile()) {
-            throw new IllegalStateException("failed to create meta file: " + metaFile.getAbsolutePath());
+
+        if (term < 0) {
+            final long[] recoveredTerm = new long[]{-1L};
+            getLog().replay(new RaftLog.EntryVisitor() {
+                @Override
+                public void visit(RaftLog.Entry entry) {
+                    if (entry.type == RaftLog.TYPE_TERM) {
+                        recoveredTerm[0] = entry.term;
+                    }
+                }
+            });
+            term = recoveredTerm[0];
         }
 
-        try (FileInputStream inStream = new FileInputStream(metaFile)) {
-            meta.load(inStream);
+        if (term >= 0) {
+            meta.setProperty("term", String.valueOf(term));
+            return meta;
+        }
+
+        // fall back to the meta file written by older versions:
+        File metaFile = new File(metaFileName);
+        if (metaFile.exists()) {
+            try (FileInputStream inStream = new FileInputStream(metaFile)) {
+                meta.load(inStream);
+            }
         }
         return meta;
     }
 
-    public synchronized Datum load(String key) throws Exception {
-        long start = System.currentTimeMillis();
-        // load data
-        for (File cache : listCaches()) {
-            if (!cache.isFile()) {
-                Loggers.RAFT.warn("warning: encountered directory in cache dir: {}", cache.getAbsolutePath());
-            }
+    public synchronized Datum load(final String key) throws Exception {
+        if (!indexed) {
+            replay(null, new long[]{-1L});
+        }
 
-            if (!StringUtils.equals(cache.getName(), encodeFileName(key))) {
-                continue;
-            }
+        if (!index.containsKey(key)) {
+            return null;
+        }
 
-            Loggers.RAFT.info("finish loading datum, key: {} cost {} ms.",
-                key, (System.currentTimeMillis() - start));
-            return readDatum(cache, StringUtils.EMPTY);
+        RaftLog.Entry entry = read(key);
+        if (entry == null) {
+            // the segment holding the value may have been compacted into a snapshot meanwhile:
+            replay(null, new long[]{-1L});
+            entry = read(key);
         }
+        if (entry == null) {
+            return null;
+        }
+        return parseDatum(new String(entry.value, StandardCharsets.UTF_8), key);
+    }
 
-        return null;
+    private RaftLog.Entry read(String key) throws IOException {
+        RaftLog.Position position = index.get(key);
+        if (position == null) {
+            return null;
+        }
+        RaftLog.Entry entry = getLog().read(position);
+        if (entry == null || entry.type != RaftLog.TYPE_PUT || !key.equals(entry.key)) {
+            return null;
+        }
+        return entry;
     }
 
     public synchronized Datum readDatum(File file, String namespaceId) throws IOException {
@@ -120,77 +247,7 @@ public class RaftStore {
             buffer = ByteBuffer.allocate((int) file.length());
             fc.read(buffer);
 
-            String json = new String(buffer.array(), StandardCharsets.UTF_8);
-            if (StringUtils.isBlank(json)) {
-                return null;
-            }
-
-            if (KeyBuilder.matchSwitchKey(file.getName())) {
-                return JSON.parseObject(json, new TypeReference<Datum<SwitchDomain>>() {
-                });
-            }
-
-            if (KeyBuilder.matchServiceMetaKey(file.getName())) {
-
-                Datum<Service> serviceDatum;
-
-                try {
-                    serviceDatum = JSON.parseObject(json.replace("\\", ""), new TypeReference<Datum<Service>>() {
-                    });
-                } catch (Exception e) {
-                    JSONObject jsonObject = JSON.parseObject(json);
-
-                    serviceDatum = new Datum<>();
-                    serviceDatum.timestamp.set(jsonObject.getLongValue("timestamp"));
-                    serviceDatum.key = jsonObject.getString("key");
-                    serviceDatum.value = JSON.parseObject(jsonObject.getString("value"), Service.class);
-                }
-
-                if (StringUtils.isBlank(serviceDatum.value.getGroupName())) {
-                    serviceDatum.value.setGroupName(Constants.DEFAULT_GROUP);
-                }
-                if (!serviceDatum.value.getName().contains(Constants.SERVICE_INFO_SPLITER)) {
-                    serviceDatum.value.setName(Constants.DEFAULT_GROUP
-                        + Constants.SERVICE_INFO_SPLITER + serviceDatum.value.getName());
-                }
-
-                return serviceDatum;
-            }
-
-            if (KeyBuilder.matchInstanceListKey(file.getName())) {
-
-                Datum<Instances> instancesDatum;
-
-                try {
-                    instancesDatum = JSON.parseObject(json, new TypeReference<Datum<Instances>>() {
-                    });
-                } catch (Exception e) {
-                    JSONObject jsonObject = JSON.parseObject(json);
-                    instancesDatum = new Datum<>();
-                    instancesDatum.timestamp.set(jsonObject.getLongValue("timestamp"));
-
-                    String key = jsonObject.getString("key");
-                    String serviceName = KeyBuilder.getServiceName(key);
-                    key = key.substring(0, key.indexOf(serviceName)) +
-                        Constants.DEFAULT_GROUP + Constants.SERVICE_INFO_SPLITER + serviceName;
-
-                    instancesDatum.key = key;
-                    instancesDatum.value = new Instances();
-                    instancesDatum.value.setInstanceList(JSON.parseObject(jsonObject.getString("value"),
-                        new TypeReference<List<Instance>>() {
-                        }));
-                    if (!instancesDatum.value.getInstanceList().isEmpty()) {
-                        for (Instance instance : instancesDatum.value.getInstanceList()) {
-                            instance.setEphemeral(false);
-                        }
-                    }
-                }
-
-                return instancesDatum;
-            }
-
-            return JSON.parseObject(json, Datum.class);
-
+            return parseDatum(new String(buffer.array(), StandardCharsets.UTF_8), file.getName());
         } catch (Exception e) {
             Loggers.RAFT.warn("waning: failed to deserialize key: {}", file.getName());
             throw e;
@@ -201,65 +258,108 @@ public class RaftStore {
         }
     }
 
-    public synchronized void write(final Datum datum) throws Exception {
-
-        String namespaceId = KeyBuilder.getNamespace(datum.key);
+    private Datum parseDatum(String json, String name) {
 
-        File cacheFile;
+        if (StringUtils.isBlank(json)) {
+            return null;
+        }
 
-        if (StringUtils.isNotBlank(namespaceId)) {
-            cacheFile = new File(cacheDir + File.separator + namespaceId + File.separator + encodeFileName(datum.key));
-        } else {
-            cacheFile = new File(cacheDir + File.separator + encodeFileName(datum.key));
+        if (KeyBuilder.matchSwitchKey(name)) {
+            return JSON.parseObject(json, new TypeReference<Datum<SwitchDomain>>() {
+            });
         }
 
-        if (!cacheFile.exists() && !cacheFile.getParentFile().mkdirs() && !cacheFile.createNewFile()) {
-            MetricsMonitor.getDiskException().increment();
+        if (KeyBuilder.matchServiceMetaKey(name)) {
 
-            throw new IllegalStateException("can not make cache file: " + cacheFile.getName());
-        }
+            Datum<Service> serviceDatum;
 
-        FileChannel fc = null;
-        ByteBuffer data;
+            try {
+                serviceDatum = JSON.parseObject(json.replace("\\", ""), new TypeReference<Datum<Service>>() {
+                });
+            } catch (Exception e) {
+                JSONObject jsonObject = JSON.parseObject(json);
 
-        data = ByteBuffer.wrap(JSON.toJSONString(datum).getBytes(StandardCharsets.UTF_8));
+                serviceDatum = new Datum<>();
+                serviceDatum.timestamp.set(jsonObject.getLongValue("timestamp"));
+                serviceDatum.key = jsonObject.getString("key");
+                serviceDatum.value = JSON.parseObject(jsonObject.getString("value"), Service.class);
+            }
 
-        try {
-            fc = new FileOutputStream(cacheFile, false).getChannel();
-            fc.write(data, data.position());
-            fc.force(true);
-        } catch (Exception e) {
-            MetricsMonitor.getDiskException().increment();
-            throw e;
-        } finally {
-            if (fc != null) {
-                fc.close();
+            if (StringUtils.isBlank(serviceDatum.value.getGroupName())) {
+                serviceDatum.value.setGroupName(Constants.DEFAULT_GROUP);
+            }
+            if (!serviceDatum.value.getName().contains(Constants.SERVICE_INFO_SPLITER)) {
+                serviceDatum.value.setName(Constants.DEFAULT_GROUP
+                    + Constants.SERVICE_INFO_SPLITER + serviceDatum.value.getName());
             }
+
+            return serviceDatum;
         }
 
-        // remove old format file:
-        if (StringUtils.isNoneBlank(namespaceId)) {
-            if (datum.key.contains(Constants.DEFAULT_GROUP + Constants.SERVICE_INFO_SPLITER)) {
-                String oldFormatKey =
-                    datum.key.replace(Constants.DEFAULT_GROUP + Constants.SERVICE_INFO_SPLITER, StringUtils.EMPTY);
+        if (KeyBuilder.matchInstanceListKey(name)) {
 
-                cacheFile = new File(cacheDir + File.separator + namespaceId + File.separator + encodeFileName(oldFormatKey));
-                if (cacheFile.exists() && !cacheFile.delete()) {
-                    Loggers.RAFT.error("[RAFT-DELETE] failed to delete old format datum: {}, value: {}",
-                        datum.key, datum.value);
-                    throw new IllegalStateException("failed to delete old format datum: " + datum.key);
+            Datum<Instances> instancesDatum;
+
+            try {
+                instancesDatum = JSON.parseObject(json, new TypeReference<Datum<Instances>>() {
+                });
+            } catch (Exception e) {
+                JSONObject jsonObject = JSON.parseObject(json);
+                instancesDatum = new Datum<>();
+                instancesDatum.timestamp.set(jsonObject.getLongValue("timestamp"));
+
+                String key = jsonObject.getString("key");
+                String serviceName = KeyBuilder.getServiceName(key);
+                key = key.substring(0, key.indexOf(serviceName)) +
+                    Constants.DEFAULT_GROUP + Constants.SERVICE_INFO_SPLITER + serviceName;
+
+                instancesDatum.key = key;
+                instancesDatum.value = new Instances();
+                instancesDatum.value.setInstanceList(JSON.parseObject(jsonObject.getString("value"),
+                    new TypeReference<List<Instance>>() {
+                    }));
+                if (!instancesDatum.value.getInstanceList().isEmpty()) {
+                    for (Instance instance : instancesDatum.value.getInstanceList()) {
+                        instance.setEphemeral(false);
+                    }
                 }
             }
+
+            return instancesDatum;
         }
+
+        return JSON.parseObject(json, Datum.class);
     }
 
-    private File[] listCaches() throws Exception {
-        File cacheDir = new File(this.cacheDir);
-        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
-            throw new IllegalStateException("cloud not make out directory: " + cacheDir.getName());
+    public void write(final Datum datum) throws Exception {
+        write(Collections.singletonList(datum));
+    }
+
+    /**
+     * Write several datums with one append, they become durable together
+     *
+     * @param datums datums to write
+     * @throws Exception if the append failed or timed out
+     */
+    public void write(final List<Datum> datums) throws Exception {
+
+        List<RaftLog.Entry> entries = new ArrayList<>(datums.size());
+        for (Datum datum : datums) {
+            entries.add(RaftLog.put(datum.key, JSON.toJSONString(datum).getBytes(StandardCharsets.UTF_8)));
+
+            // remove old format datum:
+            if (StringUtils.isNotBlank(KeyBuilder.getNamespace(datum.key))
+                && datum.key.contains(Constants.DEFAULT_GROUP + Constants.SERVICE_INFO_SPLITER)) {
+                String oldFormatKey =
+                    datum.key.replace(Constants.DEFAULT_GROUP + Constants.SERVICE_INFO_SPLITER, StringUtils.EMPTY);
+                if (oldFormatKeys.remove(oldFormatKey)) {
+                    entries.add(RaftLog.delete(oldFormatKey));
+                }
+            }
         }
 
-        return cacheDir.listFiles();
+        await(getLog().append(entries, true));
+        updateIndex(entries);
     }
 
     public void delete(Datum datum) {
@@ -268,33 +368,116 @@ public class RaftStore {
         String namespaceId = KeyBuilder.getNamespace(datum.key);
 
         if (StringUtils.isNotBlank(namespaceId)) {
-
-            File cacheFile = new File(cacheDir + File.separator + namespaceId + File.separator + encodeFileName(datum.key));
-            if (cacheFile.exists() && !cacheFile.delete()) {
-                Loggers.RAFT.error("[RAFT-DELETE] failed to delete datum: {}, value: {}", datum.key, datum.value);
+            try {
+                await(getLog().append(Collections.singletonList(RaftLog.delete(datum.key)), true));
+                index.remove(datum.key);
+            } catch (Exception e) {
+                Loggers.RAFT.error("[RAFT-DELETE] failed to delete datum: {}, value: {}", datum.key, datum.value, e);
                 throw new IllegalStateException("failed to delete datum: " + datum.key);
             }
         }
     }
 
     public void updateTerm(long term) throws Exception {
-        File file = new File(metaFileName);
-        if (!file.exists() && !file.getParentFile().mkdirs() && !file.createNewFile()) {
-            throw new IllegalStateException("failed to create meta file");
+        this.term = term;
+        // the term rides along with the next forced batch instead of paying an fsync of its own:
+        getLog().append(Collections.singletonList(RaftLog.term(term)), false);
+    }
+
+    private synchronized RaftLog getLog() throws IOException {
+        if (raftLog == null) {
+            RaftLog log = new RaftLog(new File(logDir), LOG_SEGMENT_SIZE, LOG_COMPACT_THRESHOLD);
+            log.open();
+            raftLog = log;
         }
+        return raftLog;
+    }
 
-        try (FileOutputStream outStream = new FileOutputStream(file)) {
-            // write meta
-            meta.setProperty("term", String.valueOf(term));
-            meta.store(outStream, null);
+    private void await(Future<Long> future) throws Exception {
+        try {
+            future.get(WRITE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            MetricsMonitor.getDiskException().increment();
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } catch (TimeoutException e) {
+            MetricsMonitor.getDiskException().increment();
+            throw new IllegalStateException("write raft log timeout after " + WRITE_TIMEOUT_MS + " ms.");
+        }
+    }
+
+    private void updateIndex(List<RaftLog.Entry> entries) {
+        for (RaftLog.Entry entry : entries) {
+            if (entry.type == RaftLog.TYPE_PUT) {
+                index.put(entry.key, entry.position);
+            } else if (entry.type == RaftLog.TYPE_DELETE) {
+                index.remove(entry.key);
+            }
         }
     }
 
-    private static String encodeFileName(String fileName) {
-        return fileName.replace(':', '#');
+    private void recordOldFormatKey(String key) {
+        if (StringUtils.isNotBlank(KeyBuilder.getNamespace(key))
+            && !KeyBuilder.getServiceName(key).contains(Constants.SERVICE_INFO_SPLITER)) {
+            oldFormatKeys.add(key);
+        }
     }
 
-    private static String decodeFileName(String fileName) {
-        return fileName.replace("#", ":");
+    /**
+     * Load the file-per-datum cache written by older versions and append it to the log
+     */
+    private void migrateCaches(RaftCore.Notifier notifier, ConcurrentMap<String, Datum> datums) throws Exception {
+
+        List<Datum> loaded = new ArrayList<>();
+        Datum datum;
+        for (File cache : listCaches()) {
+            if (cache.isDirectory() && cache.listFiles() != null) {
+                for (File datumFile : cache.listFiles()) {
+                    datum = readDatum(datumFile, cache.getName());
+                    if (datum != null) {
+                        datums.put(datum.key, datum);
+                        notifier.addTask(datum.key, ApplyAction.CHANGE);
+                        loaded.add(datum);
+                        recordOldFormatKey(datum.key);
+                    }
+                }
+                continue;
+            }
+            datum = readDatum(cache, StringUtils.EMPTY);
+            if (datum != null) {
+                datums.put(datum.key, datum);
+                loaded.add(datum);
+            }
+        }
+
+        if (loaded.isEmpty()) {
+            return;
+        }
+
+        List<RaftLog.Entry> entries = new ArrayList<>(loaded.size() + 1);
+        for (Datum d : loaded) {
+            entries.add(RaftLog.put(d.key, JSON.toJSONString(d).getBytes(StandardCharsets.UTF_8)));
+        }
+
+        Properties legacyMeta = loadMeta();
+        if (legacyMeta.getProperty("term") != null) {
+            entries.add(RaftLog.term(Long.parseLong(legacyMeta.getProperty("term"))));
+        }
+
+        await(getLog().append(entries, true));
+        updateIndex(entries);
+
+        Loggers.RAFT.info("migrated {} datums from legacy cache dir {} to raft log", loaded.size(), cacheDir);
+    }
+
+    private File[] listCaches() throws Exception {
+        File cacheDir = new File(this.cacheDir);
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            throw new IllegalStateException("cloud not make out directory: " + cacheDir.getName());
+        }
+
+        return cacheDir.listFiles();
     }
 }
@@ -23,6 +23,7 @@ import com.alibaba.nacos.api.naming.pojo.Cluster;
 import com.alibaba.nacos.api.naming.utils.NamingUtils;
 import com.alibaba.nacos.core.utils.WebUtils;
 import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.core.InstanceIpIndex;
 import com.alibaba.nacos.naming.core.Service;
 import com.alibaba.nacos.naming.core.ServiceManager;
 import com.alibaba.nacos.naming.exception.NacosException;
@@ -139,6 +140,39 @@ public class CatalogController {
         return result;
     }
 
+    /**
+     * List the services with instances of an ip, optionally of a port, in a namespace or in all namespaces
+     */
+    @RequestMapping(value = "/ip/services", method = RequestMethod.GET)
+    public JSONObject servicesOfIp(HttpServletRequest request) {
+
+        String namespaceId = WebUtils.optional(request, CommonParams.NAMESPACE_ID, StringUtils.EMPTY);
+        String ip = WebUtils.required(request, "ip");
+        int port = Integer.parseInt(WebUtils.optional(request, "port", "-1"));
+
+        JSONArray services = new JSONArray();
+        for (InstanceIpIndex.Location location : serviceManager.getInstanceIpIndex().locate(ip, port)) {
+            if (StringUtils.isNotBlank(namespaceId) && !namespaceId.equals(location.getNamespaceId())) {
+                continue;
+            }
+
+            JSONObject service = new JSONObject();
+            service.put(CommonParams.NAMESPACE_ID, location.getNamespaceId());
+            service.put("name", NamingUtils.getServiceName(location.getServiceName()));
+            service.put("groupName", NamingUtils.getGroupName(location.getServiceName()));
+            service.put(CommonParams.CLUSTER_NAME, location.getClusterName());
+            service.put("port", location.getPort());
+            services.add(service);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("ip", ip);
+        result.put("services", services);
+        result.put("count", services.size());
+
+        return result;
+    }
+
     @RequestMapping(value = "/services", method = RequestMethod.GET)
     public Object listDetail(HttpServletRequest request) {
 
@@ -255,14 +289,24 @@ public class CatalogController {
             Constants.DEFAULT_NAMESPACE_ID);
         JSONObject result = new JSONObject();
 
-        int page = Integer.parseInt(WebUtils.required(request, "pageNo"));
         int pageSize = Integer.parseInt(WebUtils.required(request, "pageSize"));
         String keyword = WebUtils.optional(request, "keyword", StringUtils.EMPTY);
         String containedInstance = WebUtils.optional(request, "instance", StringUtils.EMPTY);
         boolean hasIpCount = Boolean.parseBoolean(WebUtils.optional(request, "hasIpCount", "false"));
+        String cursor = request.getParameter("cursor");
 
         List<Service> services = new ArrayList<>();
-        int total = serviceManager.getPagedService(namespaceId, page - 1, pageSize, keyword, containedInstance, services, hasIpCount);
+        int total;
+        if (cursor != null) {
+            // cursor paging reads the page only and does not count the total:
+            String nextCursor = serviceManager.getServicesAfter(namespaceId, cursor, pageSize, keyword,
+                containedInstance, hasIpCount, services);
+            result.put("nextCursor", nextCursor);
+            total = services.size();
+        } else {
+            int page = Integer.parseInt(WebUtils.required(request, "pageNo"));
+            total = serviceManager.getPagedService(namespaceId, page - 1, pageSize, keyword, containedInstance, services, hasIpCount);
+        }
 
         if (CollectionUtils.isEmpty(services)) {
             result.put("serviceList", Collections.emptyList());
@@ -278,16 +322,7 @@ public class CatalogController {
             serviceView.setClusterCount(service.getClusterMap().size());
             serviceView.setIpCount(service.allIPs().size());
 
-            // FIXME should be optimized:
-            int validCount = 0;
-            for (Instance instance : service.allIPs()) {
-                if (instance.isHealthy()) {
-                    validCount++;
-                }
-
-            }
-
-            serviceView.setHealthyInstanceCount(validCount);
+            serviceView.setHealthyInstanceCount(service.healthyInstanceCount());
 
             serviceJsonArray.add(serviceView);
         }
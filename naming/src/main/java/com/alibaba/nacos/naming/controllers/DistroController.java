@@ -16,13 +16,19 @@
 package com.alibaba.nacos.naming.controllers;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
 import com.alibaba.fastjson.TypeReference;
 import com.alibaba.nacos.core.utils.WebUtils;
+import com.alibaba.nacos.naming.cluster.transport.DatumChunkStream;
 import com.alibaba.nacos.naming.cluster.transport.Serializer;
+import com.alibaba.nacos.naming.cluster.transport.SerializerNegotiator;
 import com.alibaba.nacos.naming.consistency.Datum;
 import com.alibaba.nacos.naming.consistency.KeyBuilder;
 import com.alibaba.nacos.naming.consistency.ephemeral.distro.DataStore;
+import com.alibaba.nacos.naming.consistency.ephemeral.distro.DataSyncer;
+import com.alibaba.nacos.naming.consistency.ephemeral.distro.DistroHashTree;
 import com.alibaba.nacos.naming.consistency.ephemeral.distro.DistroConsistencyServiceImpl;
+import com.alibaba.nacos.naming.consistency.ephemeral.distro.InstancesDelta;
 import com.alibaba.nacos.naming.core.Instances;
 import com.alibaba.nacos.naming.core.ServiceManager;
 import com.alibaba.nacos.naming.exception.NacosException;
@@ -41,6 +47,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -53,8 +60,10 @@ import java.util.Map;
 @RequestMapping(UtilsAndCommons.NACOS_NAMING_CONTEXT + "/distro")
 public class DistroController {
 
+    private static final int STREAM_CHUNK_SIZE = 500;
+
     @Autowired
-    private Serializer serializer;
+    private SerializerNegotiator serializerNegotiator;
 
     @Autowired
     private DistroConsistencyServiceImpl consistencyService;
@@ -62,6 +71,9 @@ public class DistroController {
     @Autowired
     private DataStore dataStore;
 
+    @Autowired
+    private DataSyncer dataSyncer;
+
     @Autowired
     private ServiceManager serviceManager;
 
@@ -71,15 +83,17 @@ public class DistroController {
     @RequestMapping(value = "/datum", method = RequestMethod.PUT)
     public String onSyncDatum(HttpServletRequest request, HttpServletResponse response) throws Exception {
 
-        String entity = IOUtils.toString(request.getInputStream(), "UTF-8");
+        byte[] entity = IOUtils.toByteArray(request.getInputStream());
 
-        if (StringUtils.isBlank(entity)) {
+        if (entity.length == 0) {
             Loggers.DISTRO.error("[onSync] receive empty entity!");
             throw new NacosException(NacosException.INVALID_PARAM, "receive empty entity!");
         }
 
+        response.setHeader(SerializerNegotiator.SERIALIZER_HEADER, serializerNegotiator.advertise());
+
         Map<String, Datum<Instances>> dataMap =
-            serializer.deserializeMap(entity.getBytes(), Instances.class);
+            serializerNegotiator.select(entity).deserializeMap(entity, Instances.class);
 
         for (Map.Entry<String, Datum<Instances>> entry : dataMap.entrySet()) {
             if (KeyBuilder.matchEphemeralInstanceListKey(entry.getKey())) {
@@ -89,23 +103,72 @@ public class DistroController {
                     && switchDomain.isDefaultInstanceEphemeral()) {
                     serviceManager.createEmptyService(namespaceId, serviceName, true);
                 }
-                consistencyService.onPut(entry.getKey(), entry.getValue().value);
+                consistencyService.onPut(entry.getKey(), entry.getValue().value, entry.getValue().timestamp.get());
             }
         }
         return "ok";
     }
 
+    @RequestMapping(value = "/delta", method = RequestMethod.PUT)
+    public String onSyncDelta(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        String entity = IOUtils.toString(request.getInputStream(), "UTF-8");
+        List<InstancesDelta> deltas = JSON.parseArray(entity, InstancesDelta.class);
+        return JSON.toJSONString(consistencyService.onReceiveDeltas(deltas));
+    }
+
     @RequestMapping(value = "/checksum", method = RequestMethod.PUT)
     public String syncChecksum(HttpServletRequest request, HttpServletResponse response) throws Exception {
         String source = WebUtils.required(request, "source");
         String entity = IOUtils.toString(request.getInputStream(), "UTF-8");
         Map<String, String> dataMap =
-            serializer.deserialize(entity.getBytes(), new TypeReference<Map<String, String>>() {
+            serializerNegotiator.json().deserialize(entity.getBytes(), new TypeReference<Map<String, String>>() {
         });
+        response.setHeader(SerializerNegotiator.SERIALIZER_HEADER, serializerNegotiator.advertise());
         consistencyService.onReceiveChecksums(dataMap, source);
         return "ok";
     }
 
+    @RequestMapping(value = "/tree/root", method = RequestMethod.PUT)
+    public String syncTreeRoot(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        String source = WebUtils.required(request, "source");
+        String entity = IOUtils.toString(request.getInputStream(), "UTF-8");
+        JSONObject body = JSON.parseObject(entity);
+        response.setHeader(SerializerNegotiator.SERIALIZER_HEADER, serializerNegotiator.advertise());
+        consistencyService.onReceiveTreeRoot(body.getLongValue("root"), source);
+        return "ok";
+    }
+
+    @RequestMapping(value = "/tree/nodes", method = RequestMethod.GET)
+    public JSONObject getTreeNodes(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        String entity = IOUtils.toString(request.getInputStream(), "UTF-8");
+        JSONObject body = JSON.parseObject(entity);
+        int level = body.getIntValue("level");
+        if (level < 0 || level >= DistroHashTree.DEPTH) {
+            throw new NacosException(NacosException.INVALID_PARAM, "invalid tree level: " + level);
+        }
+
+        DistroHashTree tree = dataSyncer.getLocalTree();
+        JSONObject result = new JSONObject();
+        for (Integer index : body.getJSONArray("indexes").toJavaList(Integer.class)) {
+            if (index < 0 || index >= DistroHashTree.nodeCount(level)) {
+                throw new NacosException(NacosException.INVALID_PARAM, "invalid tree node: " + index);
+            }
+            result.put(String.valueOf(index), tree.getChildren(level, index));
+        }
+        return result;
+    }
+
+    @RequestMapping(value = "/tree/leaves", method = RequestMethod.GET)
+    public JSONObject getTreeLeaves(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        String entity = IOUtils.toString(request.getInputStream(), "UTF-8");
+        JSONObject body = JSON.parseObject(entity);
+        List<Integer> leaves = body.getJSONArray("leaves").toJavaList(Integer.class);
+
+        JSONObject result = new JSONObject();
+        result.putAll(dataSyncer.getLocalTree().getChecksums(leaves));
+        return result;
+    }
+
     @RequestMapping(value = "/datum", method = RequestMethod.GET)
     public void get(HttpServletRequest request, HttpServletResponse response) throws Exception {
 
@@ -116,11 +179,64 @@ public class DistroController {
         for (String key : keys.split(keySplitter)) {
             datumMap.put(key, consistencyService.get(key));
         }
-        response.getWriter().write(new String(serializer.serialize(datumMap), StandardCharsets.UTF_8));
+        writeDatums(request, response, datumMap);
     }
 
     @RequestMapping(value = "/datums", method = RequestMethod.GET)
     public void getAllDatums(HttpServletRequest request, HttpServletResponse response) throws Exception {
-        response.getWriter().write(new String(serializer.serialize(dataStore.getDataMap()), StandardCharsets.UTF_8));
+
+        String partitionCount = WebUtils.optional(request, "partitionCount", StringUtils.EMPTY);
+        if (StringUtils.isEmpty(partitionCount)) {
+            writeDatums(request, response, dataStore.getDataMap());
+            return;
+        }
+
+        int count = Integer.parseInt(partitionCount);
+        int partition = Integer.parseInt(WebUtils.required(request, "partition"));
+        if (count <= 0 || partition < 0 || partition >= count) {
+            throw new NacosException(NacosException.INVALID_PARAM,
+                "invalid partition: " + partition + ", partition count: " + partitionCount);
+        }
+
+        Serializer serializer = serializerNegotiator.acceptBinary(request.getHeader(SerializerNegotiator.SERIALIZER_HEADER)) ?
+            serializerNegotiator.binary() : serializerNegotiator.json();
+
+        response.setHeader(SerializerNegotiator.SERIALIZER_HEADER, serializerNegotiator.advertise());
+        response.setContentType(DatumChunkStream.CONTENT_TYPE);
+
+        DatumChunkStream stream = new DatumChunkStream(response.getOutputStream());
+        Map<String, Datum> chunk = new HashMap<>(STREAM_CHUNK_SIZE * 2);
+        for (Map.Entry<String, Datum> entry : dataStore.getDataMap().entrySet()) {
+            if (DistroHashTree.leafOf(entry.getKey()) % count != partition) {
+                continue;
+            }
+
+            chunk.put(entry.getKey(), entry.getValue());
+            if (chunk.size() >= STREAM_CHUNK_SIZE) {
+                stream.write(serializer.serialize(chunk));
+                chunk.clear();
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            stream.write(serializer.serialize(chunk));
+        }
+        stream.finish();
+    }
+
+    private void writeDatums(HttpServletRequest request, HttpServletResponse response,
+                             Map<String, Datum> datumMap) throws Exception {
+
+        response.setHeader(SerializerNegotiator.SERIALIZER_HEADER, serializerNegotiator.advertise());
+
+        if (serializerNegotiator.acceptBinary(request.getHeader(SerializerNegotiator.SERIALIZER_HEADER))) {
+            byte[] data = serializerNegotiator.binary().serialize(datumMap);
+            response.setContentType(SerializerNegotiator.BINARY_CONTENT_TYPE);
+            response.setContentLength(data.length);
+            response.getOutputStream().write(data);
+            return;
+        }
+
+        response.getWriter().write(new String(serializerNegotiator.json().serialize(datumMap), StandardCharsets.UTF_8));
     }
 }
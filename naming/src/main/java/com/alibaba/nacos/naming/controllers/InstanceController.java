@@ -20,22 +20,23 @@ import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.alibaba.nacos.api.common.Constants;
 import com.alibaba.nacos.api.naming.CommonParams;
-import com.alibaba.nacos.api.naming.utils.NamingUtils;
 import com.alibaba.nacos.core.utils.WebUtils;
 import com.alibaba.nacos.naming.core.DistroMapper;
 import com.alibaba.nacos.naming.core.Instance;
 import com.alibaba.nacos.naming.core.Service;
 import com.alibaba.nacos.naming.core.ServiceManager;
+import com.alibaba.nacos.naming.core.ServiceSnapshot;
 import com.alibaba.nacos.naming.exception.NacosException;
 import com.alibaba.nacos.naming.healthcheck.RsInfo;
 import com.alibaba.nacos.naming.misc.Loggers;
+import com.alibaba.nacos.naming.misc.NamingProxy;
 import com.alibaba.nacos.naming.misc.SwitchDomain;
 import com.alibaba.nacos.naming.misc.UtilsAndCommons;
 import com.alibaba.nacos.naming.push.ClientInfo;
 import com.alibaba.nacos.naming.push.DataSource;
 import com.alibaba.nacos.naming.push.PushService;
+import com.alibaba.nacos.naming.selector.NoneSelector;
 import com.alibaba.nacos.naming.web.CanDistro;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.codehaus.jackson.util.VersionUtil;
@@ -71,6 +72,17 @@ public class InstanceController {
 
     private DataSource pushDataSource = new DataSource() {
 
+        @Override
+        public ServiceSnapshot getSnapshot(PushService.PushClient client) throws Exception {
+            Service service = serviceManager.getService(client.getNamespaceId(), client.getServiceName());
+            if (service == null || !service.getEnabled()
+                || (service.getSelector() != null && !(service.getSelector() instanceof NoneSelector))) {
+                return null;
+            }
+
+            return service.getSnapshot(client.getClusters(), false, isFullNameSupported(client.getAgent()));
+        }
+
         @Override
         public String getData(PushService.PushClient client) throws Exception {
 
@@ -165,7 +177,10 @@ public class InstanceController {
 
         boolean healthyOnly = Boolean.parseBoolean(WebUtils.optional(request, "healthyOnly", "false"));
 
-        return doSrvIPXT(namespaceId, serviceName, agent, clusters, clientIP, udpPort, env, isCheck, app, tenant, healthyOnly);
+        boolean pushDelta = Boolean.parseBoolean(WebUtils.optional(request, "pushDelta", "false"));
+
+        return doSrvIPXT(namespaceId, serviceName, agent, clusters, clientIP, udpPort, env, isCheck, app, tenant,
+            healthyOnly, pushDelta);
     }
 
     @RequestMapping(value = "", method = RequestMethod.GET)
@@ -266,6 +281,107 @@ public class InstanceController {
         return result;
     }
 
+    /**
+     * Renew instances of many services in one request.
+     * <p>
+     * Beats are grouped by service name, beats of services this server is not responsible for are
+     * forwarded to their servers, one request for each server. Beats of instances not registered,
+     * or not renewed for any other reason, are returned to be sent again as single beats.
+     */
+    @RequestMapping(value = "/beats", method = {RequestMethod.PUT, RequestMethod.POST})
+    public JSONObject batchBeat(HttpServletRequest request) throws Exception {
+
+        String namespaceId = WebUtils.optional(request, CommonParams.NAMESPACE_ID,
+            Constants.DEFAULT_NAMESPACE_ID);
+        JSONObject beats = JSON.parseObject(WebUtils.required(request, "beats"));
+
+        // beats forwarded by a peer are never forwarded again:
+        String agent = request.getHeader("User-Agent");
+        boolean fromPeer = StringUtils.startsWith(agent, UtilsAndCommons.NACOS_SERVER_HEADER);
+
+        long clientBeatInterval = Long.MAX_VALUE;
+        JSONArray unhandled = new JSONArray();
+        Map<String, JSONObject> forwards = new HashMap<>(4);
+
+        for (String serviceName : beats.keySet()) {
+            JSONArray serviceBeats = beats.getJSONArray(serviceName);
+
+            if (!fromPeer && !distroMapper.responsible(serviceName)) {
+                String server = distroMapper.mapSrv(serviceName);
+                JSONObject forward = forwards.get(server);
+                if (forward == null) {
+                    forward = new JSONObject();
+                    forwards.put(server, forward);
+                }
+                forward.put(serviceName, serviceBeats);
+                continue;
+            }
+
+            Service service = serviceManager.getService(namespaceId, serviceName);
+            Map<String, Instance> instances = new HashMap<>(16);
+            if (service != null) {
+                for (Instance instance : service.allIPs(true)) {
+                    instances.put(instance.toIPAddr() + UtilsAndCommons.IP_PORT_SPLITER + instance.getClusterName(), instance);
+                }
+            }
+
+            List<RsInfo> rsInfos = new ArrayList<>(serviceBeats.size());
+            for (int i = 0; i < serviceBeats.size(); i++) {
+                RsInfo clientBeat = serviceBeats.getObject(i, RsInfo.class);
+                if (!switchDomain.isDefaultInstanceEphemeral() && !clientBeat.isEphemeral()) {
+                    continue;
+                }
+
+                if (StringUtils.isBlank(clientBeat.getCluster())) {
+                    clientBeat.setCluster(UtilsAndCommons.DEFAULT_CLUSTER_NAME);
+                }
+
+                Instance instance = instances.get(clientBeat.getIp() + UtilsAndCommons.IP_PORT_SPLITER
+                    + clientBeat.getPort() + UtilsAndCommons.IP_PORT_SPLITER + clientBeat.getCluster());
+                if (instance == null) {
+                    unhandled.add(serviceName + Constants.NAMING_INSTANCE_ID_SPLITTER + clientBeat.getIp()
+                        + Constants.NAMING_INSTANCE_ID_SPLITTER + clientBeat.getPort());
+                    continue;
+                }
+
+                rsInfos.add(clientBeat);
+                clientBeatInterval = Math.min(clientBeatInterval, instance.getInstanceHeartBeatInterval());
+            }
+
+            if (!rsInfos.isEmpty()) {
+                service.processClientBeats(rsInfos);
+            }
+        }
+
+        for (Map.Entry<String, JSONObject> entry : forwards.entrySet()) {
+            try {
+                JSONObject forwardResult = NamingProxy.syncBeats(namespaceId, entry.getValue().toJSONString(), entry.getKey());
+                if (forwardResult.containsKey("unhandled")) {
+                    unhandled.addAll(forwardResult.getJSONArray("unhandled"));
+                }
+                if (forwardResult.getLongValue("clientBeatInterval") > 0) {
+                    clientBeatInterval = Math.min(clientBeatInterval, forwardResult.getLongValue("clientBeatInterval"));
+                }
+            } catch (Exception e) {
+                Loggers.SRV_LOG.warn("[CLIENT-BEAT] failed to forward beats to server: " + entry.getKey(), e);
+                for (String serviceName : entry.getValue().keySet()) {
+                    JSONArray serviceBeats = entry.getValue().getJSONArray(serviceName);
+                    for (int i = 0; i < serviceBeats.size(); i++) {
+                        JSONObject clientBeat = serviceBeats.getJSONObject(i);
+                        unhandled.add(serviceName + Constants.NAMING_INSTANCE_ID_SPLITTER + clientBeat.getString("ip")
+                            + Constants.NAMING_INSTANCE_ID_SPLITTER + clientBeat.getIntValue("port"));
+                    }
+                }
+            }
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("clientBeatInterval", clientBeatInterval == Long.MAX_VALUE ?
+            switchDomain.getClientBeatInterval() : clientBeatInterval);
+        result.put("unhandled", unhandled);
+        return result;
+    }
+
 
     @RequestMapping("/statuses")
     public JSONObject listWithHealthStatus(HttpServletRequest request) throws NacosException {
@@ -364,10 +480,28 @@ public class InstanceController {
         }
     }
 
+    /**
+     * Clients since Java 1.0.0 get service names with their group
+     */
+    private static boolean isFullNameSupported(String agent) {
+        ClientInfo clientInfo = new ClientInfo(agent);
+        return clientInfo.type == ClientInfo.ClientType.JAVA &&
+            clientInfo.version.compareTo(VersionUtil.parseVersion("1.0.0")) >= 0;
+    }
+
     public JSONObject doSrvIPXT(String namespaceId, String serviceName, String agent, String clusters, String clientIP, int udpPort,
                                 String env, boolean isCheck, String app, String tid, boolean healthyOnly) throws Exception {
+        return doSrvIPXT(namespaceId, serviceName, agent, clusters, clientIP, udpPort, env, isCheck, app, tid,
+            healthyOnly, false);
+    }
+
+    /**
+     * @param pushDelta whether the client accepts pushes of the changed instances only
+     */
+    public JSONObject doSrvIPXT(String namespaceId, String serviceName, String agent, String clusters, String clientIP, int udpPort,
+                                String env, boolean isCheck, String app, String tid, boolean healthyOnly,
+                                boolean pushDelta) throws Exception {
 
-        ClientInfo clientInfo = new ClientInfo(agent);
         JSONObject result = new JSONObject();
         Service service = serviceManager.getService(namespaceId, serviceName);
 
@@ -384,17 +518,19 @@ public class InstanceController {
         checkIfDisabled(service);
 
         long cacheMillis = switchDomain.getDefaultCacheMillis();
+        PushService.PushClient pushClient = null;
 
         // now try to enable the push
         try {
             if (udpPort > 0 && pushService.canEnablePush(agent)) {
-                pushService.addClient(namespaceId, serviceName,
+                pushClient = pushService.addClient(namespaceId, serviceName,
                     clusters,
                     agent,
                     new InetSocketAddress(clientIP, udpPort),
                     pushDataSource,
                     tid,
-                    app);
+                    app,
+                    pushDelta);
                 cacheMillis = switchDomain.getPushCacheMillis(serviceName);
             }
         } catch (Exception e) {
@@ -402,129 +538,32 @@ public class InstanceController {
             cacheMillis = switchDomain.getDefaultCacheMillis();
         }
 
-        List<Instance> srvedIPs;
-
-        srvedIPs = service.srvIPs(Arrays.asList(StringUtils.split(clusters, ",")));
-
-        // filter ips using selector:
-        if (service.getSelector() != null && StringUtils.isNotBlank(clientIP)) {
-            srvedIPs = service.getSelector().select(clientIP, srvedIPs);
-        }
-
-        if (CollectionUtils.isEmpty(srvedIPs)) {
-
-            if (Loggers.SRV_LOG.isDebugEnabled()) {
-                Loggers.SRV_LOG.debug("no instance to serve for service: " + serviceName);
-            }
+        boolean fullName = isFullNameSupported(agent);
+        ServiceSnapshot snapshot;
+        if (service.getSelector() != null && !(service.getSelector() instanceof NoneSelector)
+            && StringUtils.isNotBlank(clientIP)) {
+            // filter ips using selector, the result depends on the client and is not shared:
+            List<Instance> srvedIPs = service.getSelector().select(clientIP,
+                service.srvIPs(Arrays.asList(StringUtils.split(clusters, ","))));
+            snapshot = ServiceSnapshot.build(service, -1L, clusters, srvedIPs, healthyOnly, fullName);
+        } else {
+            snapshot = service.getSnapshot(clusters, healthyOnly, fullName);
 
-            if (clientInfo.type == ClientInfo.ClientType.JAVA &&
-                clientInfo.version.compareTo(VersionUtil.parseVersion("1.0.0")) >= 0) {
-                result.put("dom", serviceName);
-            } else {
-                result.put("dom", NamingUtils.getServiceName(serviceName));
+            // the next push to this client can be a delta of what it queried:
+            if (pushClient != null && !healthyOnly && !isCheck) {
+                pushClient.setLastSnapshot(snapshot);
             }
-
-            result.put("hosts", new JSONArray());
-            result.put("name", serviceName);
-            result.put("cacheMillis", cacheMillis);
-            result.put("lastRefTime", System.currentTimeMillis());
-            result.put("checksum", service.getChecksum());
-            result.put("useSpecifiedURL", false);
-            result.put("clusters", clusters);
-            result.put("env", env);
-            result.put("metadata", service.getMetadata());
-            return result;
         }
 
-        Map<Boolean, List<Instance>> ipMap = new HashMap<>(2);
-        ipMap.put(Boolean.TRUE, new ArrayList<>());
-        ipMap.put(Boolean.FALSE, new ArrayList<>());
-
-        for (Instance ip : srvedIPs) {
-            ipMap.get(ip.isHealthy()).add(ip);
-        }
-
-        if (isCheck) {
-            result.put("reachProtectThreshold", false);
+        if (snapshot.isEmpty() && Loggers.SRV_LOG.isDebugEnabled()) {
+            Loggers.SRV_LOG.debug("no instance to serve for service: " + serviceName);
         }
 
-        double threshold = service.getProtectThreshold();
-
-        if ((float) ipMap.get(Boolean.TRUE).size() / srvedIPs.size() <= threshold) {
-
-            Loggers.SRV_LOG.warn("protect threshold reached, return all ips, service: {}", serviceName);
-            if (isCheck) {
-                result.put("reachProtectThreshold", true);
-            }
-
-            ipMap.get(Boolean.TRUE).addAll(ipMap.get(Boolean.FALSE));
-            ipMap.get(Boolean.FALSE).clear();
-        }
-
-        if (isCheck) {
-            result.put("protectThreshold", service.getProtectThreshold());
-            result.put("reachLocalSiteCallThreshold", false);
-
+        if (isCheck && !snapshot.isEmpty()) {
             return new JSONObject();
         }
 
-        JSONArray hosts = new JSONArray();
-
-        for (Map.Entry<Boolean, List<Instance>> entry : ipMap.entrySet()) {
-            List<Instance> ips = entry.getValue();
-
-            if (healthyOnly && !entry.getKey()) {
-                continue;
-            }
-
-            for (Instance instance : ips) {
-
-                // remove disabled instance:
-                if (!instance.isEnabled()) {
-                    continue;
-                }
-
-                JSONObject ipObj = new JSONObject();
-
-                ipObj.put("ip", instance.getIp());
-                ipObj.put("port", instance.getPort());
-                // deprecated since nacos 1.0.0:
-                ipObj.put("valid", entry.getKey());
-                ipObj.put("healthy", entry.getKey());
-                ipObj.put("marked", instance.isMarked());
-                ipObj.put("instanceId", instance.getInstanceId());
-                ipObj.put("metadata", instance.getMetadata());
-                ipObj.put("enabled", instance.isEnabled());
-                ipObj.put("weight", instance.getWeight());
-                ipObj.put("clusterName", instance.getClusterName());
-                if (clientInfo.type == ClientInfo.ClientType.JAVA &&
-                    clientInfo.version.compareTo(VersionUtil.parseVersion("1.0.0")) >= 0) {
-                    ipObj.put("serviceName", instance.getServiceName());
-                } else {
-                    ipObj.put("serviceName", NamingUtils.getServiceName(instance.getServiceName()));
-                }
-
-                ipObj.put("ephemeral", instance.isEphemeral());
-                hosts.add(ipObj);
-
-            }
-        }
-
-        result.put("hosts", hosts);
-        if (clientInfo.type == ClientInfo.ClientType.JAVA &&
-            clientInfo.version.compareTo(VersionUtil.parseVersion("1.0.0")) >= 0) {
-            result.put("dom", serviceName);
-        } else {
-            result.put("dom", NamingUtils.getServiceName(serviceName));
-        }
-        result.put("name", serviceName);
-        result.put("cacheMillis", cacheMillis);
-        result.put("lastRefTime", System.currentTimeMillis());
-        result.put("checksum", service.getChecksum());
-        result.put("useSpecifiedURL", false);
-        result.put("clusters", clusters);
-        result.put("env", env);
-        result.put("metadata", service.getMetadata());
+        result = snapshot.toJSON(cacheMillis, env);
         return result;
     }
 }
@@ -23,6 +23,7 @@ import com.alibaba.nacos.core.utils.SystemUtils;
 import com.alibaba.nacos.core.utils.WebUtils;
 import com.alibaba.nacos.naming.cluster.ServerListManager;
 import com.alibaba.nacos.naming.cluster.ServerStatusManager;
+import com.alibaba.nacos.naming.consistency.ephemeral.distro.DistroConsistencyServiceImpl;
 import com.alibaba.nacos.naming.consistency.persistent.raft.RaftCore;
 import com.alibaba.nacos.naming.consistency.persistent.raft.RaftPeer;
 import com.alibaba.nacos.naming.consistency.persistent.raft.RaftPeerSet;
@@ -31,7 +32,9 @@ import com.alibaba.nacos.naming.core.Service;
 import com.alibaba.nacos.naming.core.ServiceManager;
 import com.alibaba.nacos.naming.misc.*;
 import com.alibaba.nacos.naming.pojo.ClusterStateView;
+import com.alibaba.nacos.naming.push.PushDebouncer;
 import com.alibaba.nacos.naming.push.PushService;
+import com.alibaba.nacos.naming.push.UdpPushEngine;
 import com.alibaba.nacos.naming.web.NeedAuth;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -82,6 +85,9 @@ public class OperatorController {
     @Autowired
     private RaftPeerSet raftPeerSet;
 
+    @Autowired
+    private DistroConsistencyServiceImpl distroConsistencyService;
+
     @RequestMapping("/push/state")
     public JSONObject pushState(HttpServletRequest request) {
 
@@ -113,6 +119,19 @@ public class OperatorController {
             result.put("data", dataArray);
         }
 
+        PushDebouncer pushDebouncer = pushService.getPushDebouncer();
+        if (pushDebouncer != null) {
+            result.put("coalesced", pushDebouncer.getCoalescedCount());
+            result.put("rounds", pushDebouncer.getFiredCount());
+        }
+
+        UdpPushEngine pushEngine = PushService.getPushEngine();
+        if (pushEngine != null) {
+            result.put("queued", pushEngine.getQueueSize());
+            result.put("shaped", pushEngine.getShapedCount());
+            result.put("sent", pushEngine.getSentCount());
+        }
+
         if (reset) {
             PushService.resetPushState();
         }
@@ -154,6 +173,10 @@ public class OperatorController {
         result.put("serviceCount", serviceCount);
         result.put("instanceCount", ipCount);
         result.put("raftNotifyTaskCount", raftCore.getNotifyTaskCount());
+        result.put("raftNotifyDelay", raftCore.notifier.getAvgDispatchDelay());
+        result.put("distroNotifyTaskCount", distroConsistencyService.notifier.getTaskSize());
+        result.put("distroNotifyShardTaskCount", distroConsistencyService.notifier.getShardTaskSizes());
+        result.put("distroNotifyDelay", distroConsistencyService.notifier.getAvgDispatchDelay());
         result.put("responsibleServiceCount", responsibleDomCount);
         result.put("responsibleInstanceCount", responsibleIPCount);
         result.put("cpu", SystemUtils.getCPU());
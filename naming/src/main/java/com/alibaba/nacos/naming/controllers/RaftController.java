@@ -93,7 +93,9 @@ public class RaftController {
 
         RaftPeer peer = raftCore.receivedBeat(beat);
 
-        return JSON.parseObject(JSON.toJSONString(peer));
+        JSONObject result = JSON.parseObject(JSON.toJSONString(peer));
+        result.put(RaftCore.INCREMENTAL_BEAT_KEY, true);
+        return result;
     }
 
     @NeedAuth
@@ -186,6 +188,16 @@ public class RaftController {
         return JSON.toJSONString(datums);
     }
 
+    @NeedAuth
+    @RequestMapping(value = "/datum/changes", method = RequestMethod.GET)
+    public JSONObject getChanges(HttpServletRequest request, HttpServletResponse response) throws Exception {
+
+        long epoch = Long.parseLong(WebUtils.required(request, "epoch"));
+        long index = Long.parseLong(WebUtils.required(request, "index"));
+
+        return raftCore.getChanges(epoch, index);
+    }
+
     @RequestMapping(value = "/state", method = RequestMethod.GET)
     public JSONObject state(HttpServletRequest request, HttpServletResponse response) throws Exception {
 
@@ -216,22 +228,40 @@ public class RaftController {
         RaftPeer source = JSON.parseObject(jsonObject.getString("source"), RaftPeer.class);
         JSONObject datumJson = jsonObject.getJSONObject("datum");
 
-        Datum datum = null;
-        if (KeyBuilder.matchInstanceListKey(datumJson.getString(key))) {
-            datum = JSON.parseObject(jsonObject.getString("datum"), new TypeReference<Datum<Instances>>() {
-            });
-        } else if (KeyBuilder.matchSwitchKey(datumJson.getString(key))) {
-            datum = JSON.parseObject(jsonObject.getString("datum"), new TypeReference<Datum<SwitchDomain>>() {
-            });
-        } else if (KeyBuilder.matchServiceMetaKey(datumJson.getString(key))) {
-            datum = JSON.parseObject(jsonObject.getString("datum"), new TypeReference<Datum<Service>>() {
-            });
-        }
+        Datum datum = parseDatum(datumJson.getString(key), jsonObject.getString("datum"));
 
         raftConsistencyService.onPut(datum, source);
         return "ok";
     }
 
+    @NeedAuth
+    @RequestMapping(value = "/datum/batch/commit", method = RequestMethod.POST)
+    public String onBatchPublish(HttpServletRequest request, HttpServletResponse response) throws Exception {
+
+        response.setHeader("Content-Type", "application/json; charset=" + getAcceptEncoding(request));
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("Content-Encode", "gzip");
+
+        String entity = new String(IoUtils.tryDecompress(request.getInputStream()), StandardCharsets.UTF_8);
+        JSONObject jsonObject = JSON.parseObject(entity);
+
+        RaftPeer source = JSON.parseObject(jsonObject.getString("source"), RaftPeer.class);
+        JSONArray datumArray = jsonObject.getJSONArray("datums");
+
+        List<Datum> datums = new ArrayList<>(datumArray.size());
+        for (int i = 0; i < datumArray.size(); i++) {
+            String key = datumArray.getJSONObject(i).getString("key");
+            Datum datum = parseDatum(key, datumArray.getString(i));
+            if (datum == null) {
+                throw new NacosException(NacosException.INVALID_PARAM, "unknown type publish key: " + key);
+            }
+            datums.add(datum);
+        }
+
+        raftConsistencyService.onBatchPut(datums, source);
+        return "ok";
+    }
+
     @NeedAuth
     @RequestMapping(value = "/datum/commit", method = RequestMethod.DELETE)
     public String onDelete(HttpServletRequest request, HttpServletResponse response) throws Exception {
@@ -275,6 +305,22 @@ public class RaftController {
         return result;
     }
 
+    private Datum parseDatum(String key, String datumJson) {
+        if (KeyBuilder.matchInstanceListKey(key)) {
+            return JSON.parseObject(datumJson, new TypeReference<Datum<Instances>>() {
+            });
+        }
+        if (KeyBuilder.matchSwitchKey(key)) {
+            return JSON.parseObject(datumJson, new TypeReference<Datum<SwitchDomain>>() {
+            });
+        }
+        if (KeyBuilder.matchServiceMetaKey(key)) {
+            return JSON.parseObject(datumJson, new TypeReference<Datum<Service>>() {
+            });
+        }
+        return null;
+    }
+
     public static String getAcceptEncoding(HttpServletRequest req) {
         String encode = StringUtils.defaultIfEmpty(req.getHeader("Accept-Charset"), "UTF-8");
         encode = encode.contains(",") ? encode.substring(0, encode.indexOf(",")) : encode;
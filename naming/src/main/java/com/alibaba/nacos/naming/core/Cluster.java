@@ -16,11 +16,11 @@
 package com.alibaba.nacos.naming.core;
 
 import com.alibaba.fastjson.annotation.JSONField;
+import com.alibaba.nacos.api.naming.pojo.AbstractHealthChecker;
 import com.alibaba.nacos.naming.healthcheck.HealthCheckReactor;
 import com.alibaba.nacos.naming.healthcheck.HealthCheckStatus;
 import com.alibaba.nacos.naming.healthcheck.HealthCheckTask;
 import com.alibaba.nacos.naming.misc.Loggers;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -28,6 +28,7 @@ import org.springframework.util.Assert;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author nkorange
@@ -57,6 +58,18 @@ public class Cluster extends com.alibaba.nacos.api.naming.pojo.Cluster implement
     @JSONField(serialize = false)
     private Service service;
 
+    /**
+     * Count of changes of the instances, bumped after the instance sets are replaced or instances are changed in place
+     */
+    @JSONField(serialize = false)
+    private final AtomicLong modCount = new AtomicLong();
+
+    @JSONField(serialize = false)
+    private volatile InstancePartitions partitions = InstancePartitions.EMPTY;
+
+    @JSONField(serialize = false)
+    private final IncrementalChecksum checksum = new IncrementalChecksum();
+
     @JSONField(serialize = false)
     private volatile boolean inited = false;
 
@@ -93,15 +106,48 @@ public class Cluster extends com.alibaba.nacos.api.naming.pojo.Cluster implement
         this.defIPPort = defIPPort;
     }
 
+    /**
+     * @return all instances of this cluster, the list can not be modified
+     */
     public List<Instance> allIPs() {
-        List<Instance> allInstances = new ArrayList<>();
-        allInstances.addAll(persistentInstances);
-        allInstances.addAll(ephemeralInstances);
-        return allInstances;
+        return partitions().all();
     }
 
+    /**
+     * @return ephemeral or persistent instances of this cluster, the list can not be modified
+     */
     public List<Instance> allIPs(boolean ephemeral) {
-        return ephemeral ? new ArrayList<>(ephemeralInstances) : new ArrayList<>(persistentInstances);
+        return ephemeral ? partitions().ephemeral() : partitions().persistent();
+    }
+
+    /**
+     * Get the current partitions of the instances, rebuilt once after the instances changed.
+     */
+    public InstancePartitions partitions() {
+        InstancePartitions current = partitions;
+        long version = modCount.get();
+        if (current.getVersion() == version) {
+            return current;
+        }
+
+        // an older build published concurrently is rebuilt by the next reader:
+        current = new InstancePartitions(version, persistentInstances, ephemeralInstances);
+        partitions = current;
+        return current;
+    }
+
+    /**
+     * Add the checksum of the instances of this cluster to the given sum.
+     */
+    void addChecksumTo(long[] sum) {
+        checksum.addTo(sum);
+    }
+
+    /**
+     * Mark instances as changed in place, such as their health status.
+     */
+    public void instancesChanged() {
+        modCount.incrementAndGet();
     }
 
     public void init() {
@@ -184,19 +230,22 @@ public class Cluster extends com.alibaba.nacos.api.naming.pojo.Cluster implement
     }
 
     public void updateIPs(List<Instance> ips, boolean ephemeral) {
+        updateIPs(ips, ephemeral, null);
+    }
 
-        Set<Instance> toUpdateInstances = ephemeral ? ephemeralInstances : persistentInstances;
+    /**
+     * Update instances of this cluster, and the instances gained and lost in the reverse index if any.
+     */
+    void updateIPs(List<Instance> ips, boolean ephemeral, InstanceIpIndex ipIndex) {
 
-        HashMap<String, Instance> oldIPMap = new HashMap<>(toUpdateInstances.size());
+        Set<Instance> toUpdateInstances = ephemeral ? ephemeralInstances : persistentInstances;
 
-        for (Instance ip : toUpdateInstances) {
-            oldIPMap.put(ip.getDatumKey(), ip);
-        }
+        Map<Object, Instance> oldIPMap = toKeyMap(toUpdateInstances);
 
-        List<Instance> updatedIPs = updatedIPs(ips, oldIPMap.values());
+        List<Instance> updatedIPs = updatedIPs(ips, oldIPMap);
         if (updatedIPs.size() > 0) {
             for (Instance ip : updatedIPs) {
-                Instance oldIP = oldIPMap.get(ip.getDatumKey());
+                Instance oldIP = oldIPMap.get(ipPortKey(ip));
 
                 // do not update the ip validation status of updated ips
                 // because the checker has the most precise result
@@ -218,7 +267,7 @@ public class Cluster extends com.alibaba.nacos.api.naming.pojo.Cluster implement
             }
         }
 
-        List<Instance> newIPs = subtract(ips, oldIPMap.values());
+        List<Instance> newIPs = subtract(ips, oldIPMap);
         if (newIPs.size() > 0) {
             Loggers.EVT_LOG.info("{} {SYNC} {IP-NEW} cluster: {}, new ips size: {}, content: {}",
                 getService().getName(), getName(), newIPs.size(), newIPs.toString());
@@ -228,7 +277,7 @@ public class Cluster extends com.alibaba.nacos.api.naming.pojo.Cluster implement
             }
         }
 
-        List<Instance> deadIPs = subtract(oldIPMap.values(), ips);
+        List<Instance> deadIPs = subtract(oldIPMap.values(), toKeyMap(ips));
 
         if (deadIPs.size() > 0) {
             Loggers.EVT_LOG.info("{} {SYNC} {IP-DEAD} cluster: {}, dead ips size: {}, content: {}",
@@ -239,73 +288,67 @@ public class Cluster extends com.alibaba.nacos.api.naming.pojo.Cluster implement
             }
         }
 
+        if (ipIndex != null) {
+            for (Instance ip : deadIPs) {
+                ipIndex.remove(getService().getNamespaceId(), getService().getName(), getName(), ip);
+            }
+            for (Instance ip : newIPs) {
+                ipIndex.add(getService().getNamespaceId(), getService().getName(), getName(), ip);
+            }
+        }
+
         toUpdateInstances = new HashSet<>(ips);
 
+        // only the hashes of the instances changed or replaced are updated:
+        for (Instance ip : deadIPs) {
+            ip.leaveChecksum();
+        }
+        for (Instance ip : toUpdateInstances) {
+            Instance oldIP = oldIPMap.get(ipPortKey(ip));
+            if (oldIP != null && oldIP != ip) {
+                oldIP.leaveChecksum();
+            }
+            ip.joinChecksum(checksum, oldIP);
+        }
+
         if (ephemeral) {
             ephemeralInstances = toUpdateInstances;
         } else {
             persistentInstances = toUpdateInstances;
         }
+        instancesChanged();
     }
 
     public List<Instance> updatedIPs(Collection<Instance> a, Collection<Instance> b) {
+        return updatedIPs(a, toKeyMap(b));
+    }
 
-        List<Instance> intersects = (List<Instance>) CollectionUtils.intersection(a, b);
-        Map<String, Instance> stringIPAddressMap = new ConcurrentHashMap<>(intersects.size());
-
-        for (Instance instance : intersects) {
-            stringIPAddressMap.put(instance.getIp() + ":" + instance.getPort(), instance);
-        }
-
-        Map<String, Integer> intersectMap = new ConcurrentHashMap<>(a.size() + b.size());
-        Map<String, Instance> instanceMap = new ConcurrentHashMap<>(a.size());
-        Map<String, Instance> instanceMap1 = new ConcurrentHashMap<>(a.size());
-
-        for (Instance instance : b) {
-            if (stringIPAddressMap.containsKey(instance.getIp() + ":" + instance.getPort())) {
-                intersectMap.put(instance.toString(), 1);
-            }
-        }
-
+    /**
+     * @return instances of {@code a} present in {@code b} with the same ip and port but different attributes
+     */
+    private List<Instance> updatedIPs(Collection<Instance> a, Map<Object, Instance> b) {
 
+        List<Instance> result = new ArrayList<>();
         for (Instance instance : a) {
-            if (stringIPAddressMap.containsKey(instance.getIp() + ":" + instance.getPort())) {
-
-                if (intersectMap.containsKey(instance.toString())) {
-                    intersectMap.put(instance.toString(), 2);
-                } else {
-                    intersectMap.put(instance.toString(), 1);
-                }
+            Instance old = b.get(ipPortKey(instance));
+            if (old != null && old.isEphemeral() == instance.isEphemeral()
+                && !old.toString().equals(instance.toString())) {
+                result.add(instance);
             }
-
-            instanceMap1.put(instance.toString(), instance);
-
         }
-
-        for (Map.Entry<String, Integer> entry : intersectMap.entrySet()) {
-            String key = entry.getKey();
-            Integer value = entry.getValue();
-
-            if (value == 1) {
-                if (instanceMap1.containsKey(key)) {
-                    instanceMap.put(key, instanceMap1.get(key));
-                }
-            }
-        }
-
-        return new ArrayList<>(instanceMap.values());
+        return result;
     }
 
     public List<Instance> subtract(Collection<Instance> a, Collection<Instance> b) {
-        Map<String, Instance> mapa = new HashMap<>(b.size());
-        for (Instance o : b) {
-            mapa.put(o.getIp() + ":" + o.getPort(), o);
-        }
+        return subtract(a, toKeyMap(b));
+    }
+
+    private List<Instance> subtract(Collection<Instance> a, Map<Object, Instance> b) {
 
         List<Instance> result = new ArrayList<>();
 
         for (Instance o : a) {
-            if (!mapa.containsKey(o.getIp() + ":" + o.getPort())) {
+            if (!b.containsKey(ipPortKey(o))) {
                 result.add(o);
             }
         }
@@ -313,6 +356,22 @@ public class Cluster extends com.alibaba.nacos.api.naming.pojo.Cluster implement
         return result;
     }
 
+    private static Map<Object, Instance> toKeyMap(Collection<Instance> instances) {
+        Map<Object, Instance> map = new HashMap<>(instances.size() * 4 / 3 + 1);
+        for (Instance instance : instances) {
+            map.put(ipPortKey(instance), instance);
+        }
+        return map;
+    }
+
+    /**
+     * The packed IPv4 key of the instance, or its ip:port string for other addresses
+     */
+    private static Object ipPortKey(Instance instance) {
+        long key = instance.getIpPortKey();
+        return key >= 0 ? (Object) key : instance.toIPAddr();
+    }
+
     @Override
     public int hashCode() {
         return new HashCodeBuilder(17, 37)
@@ -406,5 +465,12 @@ public class Cluster extends com.alibaba.nacos.api.naming.pojo.Cluster implement
         if (!getName().matches(CLUSTER_NAME_SYNTAX)) {
             throw new IllegalArgumentException("cluster name can only have these characters: 0-9a-zA-Z-, current: " + getName());
         }
+        if (getHealthChecker() instanceof AbstractHealthChecker.Http) {
+            String method = ((AbstractHealthChecker.Http) getHealthChecker()).getMethod();
+            if (!AbstractHealthChecker.Http.METHOD_GET.equals(method)
+                && !AbstractHealthChecker.Http.METHOD_HEAD.equals(method)) {
+                throw new IllegalArgumentException("health check method can only be GET or HEAD, current: " + method);
+            }
+        }
     }
 }
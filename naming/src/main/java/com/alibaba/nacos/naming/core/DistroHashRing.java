@@ -0,0 +1,109 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.core;
+
+import java.util.*;
+
+/**
+ * Consistent hash ring of servers, each placed on the ring as a number of virtual nodes.
+ * <p>
+ * A service belongs to the first virtual node clockwise from its own hash, so adding or
+ * removing one of N servers only moves about 1/N of the services. The ring is immutable
+ * and only depends on its input, so every server computes the same mapping.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class DistroHashRing {
+
+    private final List<String> servers;
+
+    private final int virtualNodes;
+
+    private final Map<String, Integer> weights;
+
+    private final long[] points;
+
+    private final String[] owners;
+
+    /**
+     * @param servers      servers on the ring, duplicates are ignored
+     * @param virtualNodes virtual nodes of a server with weight 1
+     * @param weights      optional weight by server, servers absent from it have weight 1
+     */
+    public DistroHashRing(List<String> servers, int virtualNodes, Map<String, Integer> weights) {
+        this.servers = servers;
+        this.virtualNodes = virtualNodes;
+        this.weights = weights;
+
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String server : new TreeSet<>(servers)) {
+            int weight = 1;
+            if (weights != null && weights.get(server) != null) {
+                weight = Math.max(0, weights.get(server));
+            }
+
+            for (int i = 0; i < virtualNodes * weight; i++) {
+                long point = hash(server + "#" + i);
+                String owner = ring.get(point);
+                // keep the result independent of iteration order on the (unlikely) collision:
+                if (owner == null || owner.compareTo(server) > 0) {
+                    ring.put(point, server);
+                }
+            }
+        }
+
+        points = new long[ring.size()];
+        owners = new String[ring.size()];
+        int index = 0;
+        for (Map.Entry<Long, String> entry : ring.entrySet()) {
+            points[index] = entry.getKey();
+            owners[index] = entry.getValue();
+            index++;
+        }
+    }
+
+    /**
+     * @return owner of the service, or null if the ring is empty
+     */
+    public String map(String serviceName) {
+        if (points.length == 0) {
+            return null;
+        }
+
+        int index = Arrays.binarySearch(points, hash(serviceName));
+        if (index < 0) {
+            index = -index - 1;
+        }
+
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public boolean builtFrom(List<String> servers, int virtualNodes, Map<String, Integer> weights) {
+        return this.servers == servers && this.virtualNodes == virtualNodes && this.weights == weights;
+    }
+
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
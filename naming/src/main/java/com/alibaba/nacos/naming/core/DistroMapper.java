@@ -29,6 +29,7 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author nkorange
@@ -36,7 +37,12 @@ import java.util.List;
 @Component("distroMapper")
 public class DistroMapper implements ServerChangeListener {
 
-    private List<String> healthyList = new ArrayList<>();
+    private volatile List<String> healthyList = new ArrayList<>();
+
+    /**
+     * Rebuilt lazily whenever the healthy list or the ring switches change.
+     */
+    private volatile DistroHashRing ring;
 
     public List<String> getHealthyList() {
         return healthyList;
@@ -68,28 +74,39 @@ public class DistroMapper implements ServerChangeListener {
             return true;
         }
 
-        if (CollectionUtils.isEmpty(healthyList)) {
+        List<String> servers = healthyList;
+        if (CollectionUtils.isEmpty(servers)) {
             // means distro config is not ready yet
             return false;
         }
 
-        int index = healthyList.indexOf(NetUtils.localServer());
-        int lastIndex = healthyList.lastIndexOf(NetUtils.localServer());
+        int index = servers.indexOf(NetUtils.localServer());
+        int lastIndex = servers.lastIndexOf(NetUtils.localServer());
         if (lastIndex < 0 || index < 0) {
             return true;
         }
 
-        int target = distroHash(serviceName) % healthyList.size();
-        return target >= index && target <= lastIndex;
+        if (switchDomain.getDistroVirtualNodes() <= 0) {
+            int target = distroHash(serviceName) % servers.size();
+            return target >= index && target <= lastIndex;
+        }
+
+        return NetUtils.localServer().equals(mapByRing(servers, serviceName));
     }
 
     public String mapSrv(String serviceName) {
-        if (CollectionUtils.isEmpty(healthyList) || !switchDomain.isDistroEnabled()) {
+        List<String> servers = healthyList;
+        if (CollectionUtils.isEmpty(servers) || !switchDomain.isDistroEnabled()) {
             return NetUtils.localServer();
         }
 
         try {
-            return healthyList.get(distroHash(serviceName) % healthyList.size());
+            if (switchDomain.getDistroVirtualNodes() <= 0) {
+                return servers.get(distroHash(serviceName) % servers.size());
+            }
+
+            String server = mapByRing(servers, serviceName);
+            return server == null ? NetUtils.localServer() : server;
         } catch (Exception e) {
             Loggers.SRV_LOG.warn("distro mapper failed, return localhost: " + NetUtils.localServer(), e);
 
@@ -101,6 +118,19 @@ public class DistroMapper implements ServerChangeListener {
         return Math.abs(serviceName.hashCode() % Integer.MAX_VALUE);
     }
 
+    private String mapByRing(List<String> servers, String serviceName) {
+        int virtualNodes = switchDomain.getDistroVirtualNodes();
+        Map<String, Integer> weights = switchDomain.getDistroServerWeights();
+
+        DistroHashRing current = ring;
+        if (current == null || !current.builtFrom(servers, virtualNodes, weights)) {
+            current = new DistroHashRing(servers, virtualNodes, weights);
+            ring = current;
+        }
+
+        return current.map(serviceName);
+    }
+
     @Override
     public void onChangeServerList(List<Server> latestMembers) {
 
@@ -0,0 +1,78 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.core;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Order independent checksum of a set of instances, kept up to date one instance at a time.
+ * <p>
+ * Every instance contributes a 128-bit hash of the attributes compared between servers, the
+ * checksum is the sum of them, modulo 2^64 per long. So an instance joining, leaving or changing
+ * costs one hash and one addition, whatever the count of instances.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+final class IncrementalChecksum {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private long high;
+
+    private long low;
+
+    synchronized void add(long[] hash) {
+        high += hash[0];
+        low += hash[1];
+    }
+
+    synchronized void subtract(long[] hash) {
+        high -= hash[0];
+        low -= hash[1];
+    }
+
+    synchronized void replace(long[] oldHash, long[] newHash) {
+        high += newHash[0] - oldHash[0];
+        low += newHash[1] - oldHash[1];
+    }
+
+    /**
+     * Add this checksum to the given sum
+     */
+    synchronized void addTo(long[] sum) {
+        sum[0] += high;
+        sum[1] += low;
+    }
+
+    static long[] hash(String content) {
+        ByteBuffer buffer = ByteBuffer.wrap(HASH_FUNCTION.hashString(content, StandardCharsets.UTF_8).asBytes());
+        return new long[]{buffer.getLong(), buffer.getLong()};
+    }
+
+    static long[] hash(Instance instance) {
+        return hash(instance.getIp() + ":" + instance.getPort() + "_" + instance.getWeight() + "_"
+            + instance.isHealthy() + "_" + instance.getClusterName());
+    }
+
+    static String toString(long[] sum) {
+        return String.format("%016x%016x", sum[0], sum[1]);
+    }
+}
@@ -20,8 +20,11 @@ import com.alibaba.fastjson.annotation.JSONField;
 import com.alibaba.nacos.naming.healthcheck.HealthCheckStatus;
 import com.alibaba.nacos.naming.misc.Loggers;
 import com.alibaba.nacos.naming.misc.UtilsAndCommons;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -48,6 +51,18 @@ public class Instance extends com.alibaba.nacos.api.naming.pojo.Instance impleme
 
     private String app;
 
+    /**
+     * Checksum of the cluster this instance is counted in, null if it is not counted in any
+     */
+    @JSONField(serialize = false)
+    private IncrementalChecksum checksum;
+
+    /**
+     * Hash this instance contributes to the checksum
+     */
+    @JSONField(serialize = false)
+    private long[] checksumHash;
+
     private static final Pattern IP_PATTERN
         = Pattern.compile("(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}):?(\\d{1,5})?");
 
@@ -57,6 +72,7 @@ public class Instance extends com.alibaba.nacos.api.naming.pojo.Instance impleme
     private static final String SPLITER = "_";
 
     public Instance() {
+        super.setMetadata(InstanceInterner.EMPTY_METADATA);
     }
 
     public boolean isMockValid() {
@@ -76,23 +92,26 @@ public class Instance extends com.alibaba.nacos.api.naming.pojo.Instance impleme
     }
 
     public Instance(String ip, int port) {
+        this();
         this.setIp(ip);
         this.setPort(port);
         this.setClusterName(UtilsAndCommons.DEFAULT_CLUSTER_NAME);
     }
 
     public Instance(String ip, int port, String clusterName) {
+        this();
         this.setIp(ip.trim());
         this.setPort(port);
         this.setClusterName(clusterName);
     }
 
     public Instance(String ip, int port, String clusterName, String tenant, String app) {
+        this();
         this.setIp(ip.trim());
         this.setPort(port);
         this.setClusterName(clusterName);
-        this.tenant = tenant;
-        this.app = app;
+        this.setTenant(tenant);
+        this.setApp(app);
     }
 
     public static Instance fromString(String config) {
@@ -283,7 +302,7 @@ public class Instance extends com.alibaba.nacos.api.naming.pojo.Instance impleme
     }
 
     public void setApp(String app) {
-        this.app = app;
+        this.app = InstanceInterner.intern(app);
     }
 
     public String getTenant() {
@@ -291,7 +310,142 @@ public class Instance extends com.alibaba.nacos.api.naming.pojo.Instance impleme
     }
 
     public void setTenant(String tenant) {
-        this.tenant = tenant;
+        this.tenant = InstanceInterner.intern(tenant);
+    }
+
+    @Override
+    public void setClusterName(String clusterName) {
+        super.setClusterName(InstanceInterner.intern(clusterName));
+    }
+
+    @Override
+    public void setServiceName(String serviceName) {
+        super.setServiceName(InstanceInterner.intern(serviceName));
+    }
+
+    /**
+     * Metadata is shared by all instances with the same content and can not be modified in place
+     */
+    @Override
+    public void setMetadata(Map<String, String> metadata) {
+        super.setMetadata(InstanceInterner.intern(metadata));
+    }
+
+    @Override
+    public void addMetadata(String key, String value) {
+        Map<String, String> metadata = getMetadata() == null ?
+            new HashMap<String, String>(4) : new HashMap<>(getMetadata());
+        metadata.put(key, value);
+        setMetadata(metadata);
+    }
+
+    @Override
+    public void setHealthy(boolean healthy) {
+        synchronized (this) {
+            boolean changed = healthy != isHealthy();
+            super.setHealthy(healthy);
+            if (changed) {
+                refreshChecksum();
+            }
+        }
+    }
+
+    @Override
+    public void setWeight(double weight) {
+        synchronized (this) {
+            boolean changed = weight != getWeight();
+            super.setWeight(weight);
+            if (changed) {
+                refreshChecksum();
+            }
+        }
+    }
+
+    /**
+     * Count this instance in the checksum of a cluster.
+     *
+     * @param previous the instance replaced by this one, whose hash is reused if nothing compared has changed
+     */
+    synchronized void joinChecksum(IncrementalChecksum checksum, Instance previous) {
+        if (this.checksum == checksum) {
+            return;
+        }
+        leaveChecksum();
+
+        long[] hash = null;
+        if (previous != null) {
+            synchronized (previous) {
+                if (previous.checksumHash != null && previous.isHealthy() == isHealthy()
+                    && previous.getWeight() == getWeight()
+                    && StringUtils.equals(previous.getClusterName(), getClusterName())) {
+                    hash = previous.checksumHash;
+                }
+            }
+        }
+
+        checksumHash = hash != null ? hash : IncrementalChecksum.hash(this);
+        checksum.add(checksumHash);
+        this.checksum = checksum;
+    }
+
+    synchronized void leaveChecksum() {
+        if (checksum == null) {
+            return;
+        }
+        checksum.subtract(checksumHash);
+        checksum = null;
+    }
+
+    private void refreshChecksum() {
+        if (checksum == null) {
+            return;
+        }
+        long[] hash = IncrementalChecksum.hash(this);
+        checksum.replace(checksumHash, hash);
+        checksumHash = hash;
+    }
+
+    /**
+     * IPv4 address and port packed into one long: the address in bits 16 to 47 and the port in
+     * the low 16 bits.
+     *
+     * @return the packed key, or -1 if the ip is not an IPv4 address
+     */
+    @JSONField(serialize = false)
+    public long getIpPortKey() {
+        return ipPortKey(getIp(), getPort());
+    }
+
+    public static long ipPortKey(String ip, int port) {
+        if (ip == null || port < 0 || port > 0xFFFF) {
+            return -1L;
+        }
+
+        long address = 0L;
+        int octet = -1;
+        int dots = 0;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1L;
+                }
+            } else if (c == '.' && octet >= 0 && dots < 3) {
+                address = (address << 8) | octet;
+                octet = -1;
+                dots++;
+            } else {
+                return -1L;
+            }
+        }
+
+        if (dots != 3 || octet < 0) {
+            return -1L;
+        }
+
+        address = (address << 8) | octet;
+        return (address << 16) | port;
     }
 
     public String generateInstanceId() {
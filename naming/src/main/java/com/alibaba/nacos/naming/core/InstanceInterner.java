@@ -0,0 +1,62 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.core;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Canonical copies of the values repeated across instances, such as cluster names, service
+ * names and metadata. Values are weakly referenced and dropped once no instance uses them.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class InstanceInterner {
+
+    public static final Map<String, String> EMPTY_METADATA = Collections.emptyMap();
+
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+    private static final Interner<Map<String, String>> METADATA = Interners.newWeakInterner();
+
+    public static String intern(String value) {
+        return value == null ? null : STRINGS.intern(value);
+    }
+
+    /**
+     * @return an unmodifiable map equal to the given one, shared by all instances with the same metadata
+     */
+    public static Map<String, String> intern(Map<String, String> metadata) {
+        if (metadata == null) {
+            return null;
+        }
+
+        if (metadata.isEmpty()) {
+            return EMPTY_METADATA;
+        }
+
+        Map<String, String> copy = new HashMap<>(Math.max(4, metadata.size() * 4 / 3 + 1));
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            copy.put(intern(entry.getKey()), intern(entry.getValue()));
+        }
+        return METADATA.intern(Collections.unmodifiableMap(copy));
+    }
+}
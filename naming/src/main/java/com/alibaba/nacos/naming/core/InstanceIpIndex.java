@@ -0,0 +1,173 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reverse index from instance IP to the clusters of services holding it.
+ * <p>
+ * Clusters add and remove the instances they gain and lose on every update of their instance
+ * list, so finding the services of a host costs one lookup instead of a scan over all instances.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public final class InstanceIpIndex {
+
+    private final ConcurrentMap<String, Set<Location>> locations = new ConcurrentHashMap<>(1024);
+
+    void add(String namespaceId, String serviceName, String clusterName, Instance instance) {
+        final Location location = new Location(namespaceId, serviceName, clusterName, instance.getPort(),
+            instance.isEphemeral());
+        locations.compute(instance.getIp(), (ip, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet();
+            }
+            set.add(location);
+            return set;
+        });
+    }
+
+    void remove(String namespaceId, String serviceName, String clusterName, Instance instance) {
+        final Location location = new Location(namespaceId, serviceName, clusterName, instance.getPort(),
+            instance.isEphemeral());
+        locations.computeIfPresent(instance.getIp(), (ip, set) -> {
+            set.remove(location);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * @param port port of the instances, or a negative number for any port
+     * @return locations of instances with the ip and port
+     */
+    public List<Location> locate(String ip, int port) {
+        Set<Location> set = locations.get(ip);
+        if (set == null) {
+            return Collections.emptyList();
+        }
+
+        List<Location> result = new ArrayList<>(set.size());
+        for (Location location : set) {
+            if (port < 0 || location.port == port) {
+                result.add(location);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find services with an instance of the ip and port in a namespace.
+     *
+     * @param address ip, or ip and port joined by a colon
+     * @return names of the services
+     */
+    public Set<String> services(String namespaceId, String address) {
+        String ip = address;
+        int port = -1;
+        int index = address.lastIndexOf(':');
+        if (index > 0) {
+            ip = address.substring(0, index);
+            try {
+                port = Integer.parseInt(address.substring(index + 1));
+            } catch (NumberFormatException e) {
+                return Collections.emptySet();
+            }
+        }
+
+        Set<String> services = new HashSet<>();
+        for (Location location : locate(ip, port)) {
+            if (location.namespaceId.equals(namespaceId)) {
+                services.add(location.serviceName);
+            }
+        }
+        return services;
+    }
+
+    /**
+     * @return count of distinct ips indexed
+     */
+    public int size() {
+        return locations.size();
+    }
+
+    public static final class Location {
+
+        private final String namespaceId;
+
+        private final String serviceName;
+
+        private final String clusterName;
+
+        private final int port;
+
+        private final boolean ephemeral;
+
+        Location(String namespaceId, String serviceName, String clusterName, int port, boolean ephemeral) {
+            this.namespaceId = namespaceId;
+            this.serviceName = serviceName;
+            this.clusterName = clusterName;
+            this.port = port;
+            this.ephemeral = ephemeral;
+        }
+
+        public String getNamespaceId() {
+            return namespaceId;
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public String getClusterName() {
+            return clusterName;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public boolean isEphemeral() {
+            return ephemeral;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Location)) {
+                return false;
+            }
+            Location location = (Location) o;
+            return port == location.port && ephemeral == location.ephemeral
+                && namespaceId.equals(location.namespaceId) && serviceName.equals(location.serviceName) && clusterName.equals(location.clusterName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(namespaceId, serviceName, clusterName, port, ephemeral);
+        }
+
+        @Override
+        public String toString() {
+            return namespaceId + "##" + serviceName + "@" + clusterName + ":" + port + (ephemeral ? "" : "(persistent)");
+        }
+    }
+}
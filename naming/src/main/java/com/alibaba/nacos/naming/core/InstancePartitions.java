@@ -0,0 +1,171 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.core;
+
+import java.util.*;
+
+/**
+ * Immutable instances of a cluster or a service, partitioned by ephemeral and health status.
+ * <p>
+ * Partitions are published through a volatile reference and replaced as a whole after instances
+ * change, so readers get the lists without copying or locking. The lists can not be modified.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public final class InstancePartitions {
+
+    public static final InstancePartitions EMPTY = new InstancePartitions(0L,
+        Collections.<Instance>emptyList(), Collections.<Instance>emptyList());
+
+    /**
+     * Modification count of the cluster these partitions are built from
+     */
+    private final long version;
+
+    /**
+     * Partitions of the clusters these partitions are merged from, null if built from a cluster
+     */
+    private final InstancePartitions[] sources;
+
+    private final List<Instance> all;
+
+    private final List<Instance> ephemeral;
+
+    private final List<Instance> persistent;
+
+    private final List<Instance> healthy;
+
+    private final List<Instance> unhealthy;
+
+    InstancePartitions(long version, Collection<Instance> persistentInstances, Collection<Instance> ephemeralInstances) {
+        this.version = version;
+        this.sources = null;
+        this.persistent = immutable(new ArrayList<>(persistentInstances));
+        this.ephemeral = immutable(new ArrayList<>(ephemeralInstances));
+
+        List<Instance> all = new ArrayList<>(persistent.size() + ephemeral.size());
+        all.addAll(persistent);
+        all.addAll(ephemeral);
+        this.all = immutable(all);
+
+        List<Instance> healthy = new ArrayList<>(all.size());
+        List<Instance> unhealthy = new ArrayList<>();
+        for (Instance instance : all) {
+            if (instance.isHealthy()) {
+                healthy.add(instance);
+            } else {
+                unhealthy.add(instance);
+            }
+        }
+        this.healthy = immutable(healthy);
+        this.unhealthy = immutable(unhealthy);
+    }
+
+    private InstancePartitions(InstancePartitions[] sources) {
+        this.version = 0L;
+        this.sources = sources;
+
+        if (sources.length == 1) {
+            // lists of a single cluster are shared as they are:
+            InstancePartitions source = sources[0];
+            this.all = source.all;
+            this.ephemeral = source.ephemeral;
+            this.persistent = source.persistent;
+            this.healthy = source.healthy;
+            this.unhealthy = source.unhealthy;
+            return;
+        }
+
+        List<Instance> all = new ArrayList<>();
+        List<Instance> ephemeral = new ArrayList<>();
+        List<Instance> persistent = new ArrayList<>();
+        List<Instance> healthy = new ArrayList<>();
+        List<Instance> unhealthy = new ArrayList<>();
+        for (InstancePartitions source : sources) {
+            all.addAll(source.all);
+            ephemeral.addAll(source.ephemeral);
+            persistent.addAll(source.persistent);
+            healthy.addAll(source.healthy);
+            unhealthy.addAll(source.unhealthy);
+        }
+        this.all = immutable(all);
+        this.ephemeral = immutable(ephemeral);
+        this.persistent = immutable(persistent);
+        this.healthy = immutable(healthy);
+        this.unhealthy = immutable(unhealthy);
+    }
+
+    /**
+     * Merge partitions of the clusters of a service.
+     */
+    static InstancePartitions merge(Collection<Cluster> clusters) {
+        InstancePartitions[] sources = new InstancePartitions[clusters.size()];
+        int index = 0;
+        for (Cluster cluster : clusters) {
+            sources[index++] = cluster.partitions();
+        }
+        return new InstancePartitions(sources);
+    }
+
+    /**
+     * @return true if these partitions are merged from the current partitions of exactly the given clusters
+     */
+    boolean isMergedFrom(Collection<Cluster> clusters) {
+        if (sources == null || sources.length != clusters.size()) {
+            return false;
+        }
+
+        int index = 0;
+        for (Cluster cluster : clusters) {
+            if (sources[index++] != cluster.partitions()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    public List<Instance> all() {
+        return all;
+    }
+
+    public List<Instance> ephemeral() {
+        return ephemeral;
+    }
+
+    public List<Instance> persistent() {
+        return persistent;
+    }
+
+    public List<Instance> healthy() {
+        return healthy;
+    }
+
+    public List<Instance> unhealthy() {
+        return unhealthy;
+    }
+
+    private static List<Instance> immutable(List<Instance> instances) {
+        if (instances.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(instances);
+    }
+}
@@ -20,7 +20,7 @@ import com.alibaba.fastjson.annotation.JSONField;
 import com.alibaba.nacos.naming.boot.SpringContext;
 import com.alibaba.nacos.naming.consistency.KeyBuilder;
 import com.alibaba.nacos.naming.consistency.RecordListener;
-import com.alibaba.nacos.naming.healthcheck.ClientBeatCheckTask;
+import com.alibaba.nacos.naming.healthcheck.ClientBeatExpirer;
 import com.alibaba.nacos.naming.healthcheck.ClientBeatProcessor;
 import com.alibaba.nacos.naming.healthcheck.HealthCheckReactor;
 import com.alibaba.nacos.naming.healthcheck.RsInfo;
@@ -32,13 +32,11 @@ import com.alibaba.nacos.naming.selector.NoneSelector;
 import com.alibaba.nacos.naming.selector.Selector;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.ListUtils;
-import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 
-import java.math.BigInteger;
-import java.nio.charset.Charset;
-import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service of Nacos server side
@@ -54,9 +52,6 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
 
     private static final String SERVICE_NAME_SYNTAX = "[0-9a-zA-Z@\\.:_-]+";
 
-    @JSONField(serialize = false)
-    private ClientBeatCheckTask clientBeatCheckTask = new ClientBeatCheckTask(this);
-
     private String token;
     private List<String> owners = new ArrayList<>();
     private Boolean resetWeight = false;
@@ -71,7 +66,11 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
 
     private volatile long lastModifiedMillis = 0L;
 
-    private volatile String checksum;
+    /**
+     * Hash of the service attributes compared between servers
+     */
+    @JSONField(serialize = false)
+    private volatile long[] attributesHash;
 
     /**
      * TODO set customized push expire time:
@@ -80,6 +79,18 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
 
     private Map<String, Cluster> clusterMap = new HashMap<>();
 
+    /**
+     * Bumped on every change of the instances or attributes served to clients
+     */
+    @JSONField(serialize = false)
+    private final AtomicLong snapshotVersion = new AtomicLong();
+
+    @JSONField(serialize = false)
+    private volatile InstancePartitions partitions = InstancePartitions.EMPTY;
+
+    @JSONField(serialize = false)
+    private final Map<String, ServiceSnapshot> snapshots = new ConcurrentHashMap<>(4);
+
     public Service() {
     }
 
@@ -92,6 +103,15 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
         return SpringContext.getAppContext().getBean(PushService.class);
     }
 
+    /**
+     * @return the reverse index of instance ips, null if not available
+     */
+    @JSONField(serialize = false)
+    public InstanceIpIndex getInstanceIpIndex() {
+        ServiceManager serviceManager = SpringContext.getAppContext().getBean(ServiceManager.class);
+        return serviceManager == null ? null : serviceManager.getInstanceIpIndex();
+    }
+
     public long getIpDeleteTimeout() {
         return ipDeleteTimeout;
     }
@@ -107,6 +127,13 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
         HealthCheckReactor.scheduleNow(clientBeatProcessor);
     }
 
+    public void processClientBeats(final List<RsInfo> rsInfos) {
+        ClientBeatProcessor clientBeatProcessor = new ClientBeatProcessor();
+        clientBeatProcessor.setService(this);
+        clientBeatProcessor.setRsInfos(rsInfos);
+        HealthCheckReactor.scheduleNow(clientBeatProcessor);
+    }
+
     public Boolean getEnabled() {
         return enabled;
     }
@@ -181,14 +208,7 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
     }
 
     public int healthyInstanceCount() {
-
-        int healthyCount = 0;
-        for (Instance instance : allIPs()) {
-            if (instance.isHealthy()) {
-                healthyCount++;
-            }
-        }
-        return healthyCount;
+        return partitions().healthy().size();
     }
 
     public boolean meetProtectThreshold() {
@@ -227,18 +247,24 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
                 }
 
                 clusterIPs.add(instance);
+
+                if (ephemeral) {
+                    ClientBeatExpirer.watch(this, instance);
+                }
             } catch (Exception e) {
                 Loggers.SRV_LOG.error("[NACOS-DOM] failed to process ip: " + instance, e);
             }
         }
 
+        InstanceIpIndex ipIndex = getInstanceIpIndex();
         for (Map.Entry<String, List<Instance>> entry : ipMap.entrySet()) {
             //make every ip mine
             List<Instance> entryIPs = entry.getValue();
-            clusterMap.get(entry.getKey()).updateIPs(entryIPs, ephemeral);
+            clusterMap.get(entry.getKey()).updateIPs(entryIPs, ephemeral, ipIndex);
         }
 
         setLastModifiedMillis(System.currentTimeMillis());
+        invalidateSnapshots();
         getPushService().serviceChanged(this);
         StringBuilder stringBuilder = new StringBuilder();
 
@@ -253,8 +279,6 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
 
     public void init() {
 
-        HealthCheckReactor.scheduleCheck(clientBeatCheckTask);
-
         for (Map.Entry<String, Cluster> entry : clusterMap.entrySet()) {
             entry.getValue().setService(this);
             entry.getValue().init();
@@ -265,28 +289,28 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
         for (Map.Entry<String, Cluster> entry : clusterMap.entrySet()) {
             entry.getValue().destroy();
         }
-        HealthCheckReactor.cancelCheck(clientBeatCheckTask);
     }
 
+    /**
+     * @return all instances of this service, the list can not be modified
+     */
     public List<Instance> allIPs() {
-        List<Instance> allIPs = new ArrayList<>();
-        for (Map.Entry<String, Cluster> entry : clusterMap.entrySet()) {
-            allIPs.addAll(entry.getValue().allIPs());
-        }
-
-        return allIPs;
+        return partitions().all();
     }
 
+    /**
+     * @return ephemeral or persistent instances of this service, the list can not be modified
+     */
     public List<Instance> allIPs(boolean ephemeral) {
-        List<Instance> allIPs = new ArrayList<>();
-        for (Map.Entry<String, Cluster> entry : clusterMap.entrySet()) {
-            allIPs.addAll(entry.getValue().allIPs(ephemeral));
-        }
-
-        return allIPs;
+        return ephemeral ? partitions().ephemeral() : partitions().persistent();
     }
 
     public List<Instance> allIPs(List<String> clusters) {
+        if (clusters.size() == 1) {
+            Cluster clusterObj = clusterMap.get(clusters.get(0));
+            return clusterObj == null ? Collections.<Instance>emptyList() : clusterObj.allIPs();
+        }
+
         List<Instance> allIPs = new ArrayList<>();
         for (String cluster : clusters) {
             Cluster clusterObj = clusterMap.get(cluster);
@@ -300,29 +324,74 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
         return allIPs;
     }
 
+    /**
+     * Get the current partitions of the instances of all clusters, merged again once a cluster changed.
+     */
+    public InstancePartitions partitions() {
+        InstancePartitions current = partitions;
+        if (current.isMergedFrom(clusterMap.values())) {
+            return current;
+        }
+
+        current = InstancePartitions.merge(clusterMap.values());
+        partitions = current;
+        return current;
+    }
+
     public List<Instance> srvIPs(List<String> clusters) {
         if (CollectionUtils.isEmpty(clusters)) {
-            clusters = new ArrayList<>();
-            clusters.addAll(clusterMap.keySet());
+            return allIPs();
         }
         return allIPs(clusters);
     }
 
+    /**
+     * Get the instances of this service as served to clients, built once per change of the service.
+     *
+     * @param clusters    clusters requested, separated by comma, empty for all clusters
+     * @param healthyOnly whether to leave out unhealthy instances
+     * @param fullName    whether service names are returned with their group
+     * @return snapshot of the current version of this service
+     */
+    public ServiceSnapshot getSnapshot(String clusters, boolean healthyOnly, boolean fullName) {
+        String key = clusters + UtilsAndCommons.CACHE_KEY_SPLITER + healthyOnly + UtilsAndCommons.CACHE_KEY_SPLITER + fullName;
+        long version = snapshotVersion.get();
+
+        ServiceSnapshot snapshot = snapshots.get(key);
+        if (snapshot != null && snapshot.getVersion() == version) {
+            return snapshot;
+        }
+
+        snapshot = ServiceSnapshot.build(this, version, clusters,
+            srvIPs(Arrays.asList(StringUtils.split(clusters, ","))), healthyOnly, fullName);
+
+        // a snapshot read while the service changed is still stored, but never hit again:
+        snapshots.put(key, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Drop the snapshots of this service, called when anything served to clients changed.
+     */
+    public void invalidateSnapshots() {
+        for (Cluster cluster : clusterMap.values()) {
+            cluster.instancesChanged();
+        }
+        snapshotVersion.incrementAndGet();
+        snapshots.clear();
+    }
+
     public String toJSON() {
         return JSON.toJSONString(this);
     }
 
     @JSONField(serialize = false)
     public String getServiceString() {
-        Map<Object, Object> serviceObject = new HashMap<Object, Object>(10);
-        Service service = this;
-
-        serviceObject.put("name", service.getName());
+        Map<Object, Object> serviceObject = getAttributesObject();
 
-        List<Instance> ips = service.allIPs();
         int invalidIPCount = 0;
         int ipCount = 0;
-        for (Instance ip : ips) {
+        for (Instance ip : allIPs()) {
             if (!ip.isHealthy()) {
                 invalidIPCount++;
             }
@@ -333,6 +402,15 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
         serviceObject.put("ipCount", ipCount);
         serviceObject.put("invalidIPCount", invalidIPCount);
 
+        return JSON.toJSONString(serviceObject);
+    }
+
+    private Map<Object, Object> getAttributesObject() {
+        Map<Object, Object> serviceObject = new HashMap<Object, Object>(10);
+        Service service = this;
+
+        serviceObject.put("name", service.getName());
+
         serviceObject.put("owners", service.getOwners());
         serviceObject.put("token", service.getToken());
 
@@ -355,8 +433,7 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
         }
 
         serviceObject.put("clusters", clustersList);
-
-        return JSON.toJSONString(serviceObject);
+        return serviceObject;
     }
 
     public String getToken() {
@@ -427,51 +504,34 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
         recalculateChecksum();
     }
 
+    /**
+     * Checksum of the attributes and instances compared between servers, kept up to date as
+     * instances change. Service attributes are hashed again by {@link #recalculateChecksum()}.
+     */
     @Override
     public String getChecksum() {
-        if (StringUtils.isEmpty(checksum)) {
+        long[] attributes = attributesHash;
+        if (attributes == null) {
             recalculateChecksum();
+            attributes = attributesHash;
         }
 
-        return checksum;
+        long[] sum = new long[]{attributes[0], attributes[1]};
+        for (Cluster cluster : clusterMap.values()) {
+            cluster.addChecksumTo(sum);
+        }
+        return IncrementalChecksum.toString(sum);
     }
 
     public synchronized void recalculateChecksum() {
-        List<Instance> ips = allIPs();
-
-        StringBuilder ipsString = new StringBuilder();
-        ipsString.append(getServiceString());
+        invalidateSnapshots();
 
+        String attributes = JSON.toJSONString(getAttributesObject());
         if (Loggers.SRV_LOG.isDebugEnabled()) {
-            Loggers.SRV_LOG.debug("service to json: " + getServiceString());
-        }
-
-        if (CollectionUtils.isNotEmpty(ips)) {
-            Collections.sort(ips);
+            Loggers.SRV_LOG.debug("service to json: " + attributes);
         }
 
-        for (Instance ip : ips) {
-            String string = ip.getIp() + ":" + ip.getPort() + "_" + ip.getWeight() + "_"
-                + ip.isHealthy() + "_" + ip.getClusterName();
-            ipsString.append(string);
-            ipsString.append(",");
-        }
-
-        try {
-            String result;
-            try {
-                MessageDigest md5 = MessageDigest.getInstance("MD5");
-                result = new BigInteger(1, md5.digest((ipsString.toString()).getBytes(Charset.forName("UTF-8")))).toString(16);
-            } catch (Exception e) {
-                Loggers.SRV_LOG.error("[NACOS-DOM] error while calculating checksum(md5)", e);
-                result = RandomStringUtils.randomAscii(32);
-            }
-
-            checksum = result;
-        } catch (Exception e) {
-            Loggers.SRV_LOG.error("[NACOS-DOM] error while calculating checksum(md5)", e);
-            checksum = RandomStringUtils.randomAscii(32);
-        }
+        attributesHash = IncrementalChecksum.hash(attributes);
     }
 
     private void updateOrAddCluster(Collection<Cluster> clusters) {
@@ -495,6 +555,12 @@ public class Service extends com.alibaba.nacos.api.naming.pojo.Service implement
         for (Cluster cluster : deadClusters) {
             oldDom.getClusterMap().remove(cluster.getName());
 
+            InstanceIpIndex ipIndex = getInstanceIpIndex();
+            if (ipIndex != null) {
+                for (Instance instance : cluster.allIPs()) {
+                    ipIndex.remove(getNamespaceId(), getName(), cluster.getName(), instance);
+                }
+            }
             cluster.destroy();
         }
     }
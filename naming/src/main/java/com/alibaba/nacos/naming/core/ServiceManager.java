@@ -36,7 +36,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
-import org.springframework.util.CollectionUtils;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
@@ -46,7 +45,7 @@ import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 
 /**
  * Core manager storing all services in Nacos
@@ -62,6 +61,13 @@ public class ServiceManager implements RecordListener<Service> {
      */
     private Map<String, Map<String, Service>> serviceMap = new ConcurrentHashMap<>();
 
+    /**
+     * Map<namespace, index of service names>
+     */
+    private Map<String, ServiceNameIndex> serviceNameIndexes = new ConcurrentHashMap<>();
+
+    private final InstanceIpIndex instanceIpIndex = new InstanceIpIndex();
+
     private LinkedBlockingDeque<ServiceKey> toBeUpdatedServicesQueue = new LinkedBlockingDeque<>(1024 * 1024);
 
     private Synchronizer synchronizer = new ServiceStatusSynchronizer();
@@ -85,6 +91,11 @@ public class ServiceManager implements RecordListener<Service> {
 
     private final Object putServiceLock = new Object();
 
+    /**
+     * Keywords containing any of these are searched as regular expressions
+     */
+    private static final String REGEX_SYNTAX = "\\.*+?^$|()[]{}";
+
     @PostConstruct
     public void init() {
 
@@ -100,6 +111,10 @@ public class ServiceManager implements RecordListener<Service> {
         }
     }
 
+    public InstanceIpIndex getInstanceIpIndex() {
+        return instanceIpIndex;
+    }
+
     public Map<String, Service> chooseServiceMap(String namespaceId) {
         return serviceMap.get(namespaceId);
     }
@@ -145,6 +160,7 @@ public class ServiceManager implements RecordListener<Service> {
 
             if (oldDom != null) {
                 oldDom.update(service);
+                serviceNameIndexes.get(oldDom.getNamespaceId()).setOwners(oldDom.getName(), ownersKey(oldDom));
                 // re-listen to handle the situation when the underlying listener is removed:
                 consistencyService.listen(KeyBuilder.buildInstanceListKey(service.getNamespaceId(), service.getName(), true), oldDom);
                 consistencyService.listen(KeyBuilder.buildInstanceListKey(service.getNamespaceId(), service.getName(), false), oldDom);
@@ -180,6 +196,7 @@ public class ServiceManager implements RecordListener<Service> {
         }
 
         chooseServiceMap(namespace).remove(name);
+        serviceNameIndexes.get(namespace).remove(name);
     }
 
     private class UpdatedServiceProcessor implements Runnable {
@@ -624,11 +641,15 @@ public class ServiceManager implements RecordListener<Service> {
         if (!serviceMap.containsKey(service.getNamespaceId())) {
             synchronized (putServiceLock) {
                 if (!serviceMap.containsKey(service.getNamespaceId())) {
+                    serviceNameIndexes.put(service.getNamespaceId(), new ServiceNameIndex());
                     serviceMap.put(service.getNamespaceId(), new ConcurrentHashMap<>(16));
                 }
             }
         }
         serviceMap.get(service.getNamespaceId()).put(service.getName(), service);
+        ServiceNameIndex index = serviceNameIndexes.get(service.getNamespaceId());
+        index.add(service.getName());
+        index.setOwners(service.getName(), ownersKey(service));
     }
 
     private void putServiceAndInit(Service service) throws NacosException {
@@ -642,10 +663,11 @@ public class ServiceManager implements RecordListener<Service> {
 
     public List<Service> searchServices(String namespaceId, String regex) {
         List<Service> result = new ArrayList<>();
+        Pattern pattern = Pattern.compile(regex);
         for (Map.Entry<String, Service> entry : chooseServiceMap(namespaceId).entrySet()) {
             Service service = entry.getValue();
-            String key = service.getName() + ":" + ArrayUtils.toString(service.getOwners());
-            if (key.matches(regex)) {
+            String key = service.getName() + ":" + ownersKey(service);
+            if (pattern.matcher(key).matches()) {
                 result.add(service);
             }
         }
@@ -653,6 +675,35 @@ public class ServiceManager implements RecordListener<Service> {
         return result;
     }
 
+    /**
+     * Search services whose names or owners contain the keyword, sorted by name.
+     * <p>
+     * A keyword with regular expression syntax is matched as {@code .*keyword.*} against names and
+     * owners as before. A plain keyword is looked up in the name index, which groups the services
+     * by their owners as well.
+     */
+    public List<Service> searchServicesByKeyword(String namespaceId, String keyword) {
+        Map<String, Service> services = chooseServiceMap(namespaceId);
+        if (services == null) {
+            return new ArrayList<>();
+        }
+
+        if (StringUtils.containsAny(keyword, REGEX_SYNTAX)) {
+            List<Service> result = searchServices(namespaceId, ".*" + keyword + ".*");
+            result.sort(Comparator.comparing(Service::getName));
+            return result;
+        }
+
+        List<Service> result = new ArrayList<>();
+        for (String name : serviceNameIndexes.get(namespaceId).searchWithOwners(keyword)) {
+            Service service = services.get(name);
+            if (service != null) {
+                result.add(service);
+            }
+        }
+        return result;
+    }
+
     public int getServiceCount() {
         int serviceCount = 0;
         for (String namespaceId : serviceMap.keySet()) {
@@ -677,67 +728,144 @@ public class ServiceManager implements RecordListener<Service> {
 
     public int getPagedService(String namespaceId, int startPage, int pageSize, String keyword, String containedInstance, List<Service> serviceList, boolean hasIpCount) {
 
-        List<Service> matchList;
-
-        if (chooseServiceMap(namespaceId) == null) {
+        Map<String, Service> services = chooseServiceMap(namespaceId);
+        if (services == null) {
             return 0;
         }
 
+        Iterable<String> names;
         if (StringUtils.isNotBlank(keyword)) {
-            matchList = searchServices(namespaceId, ".*" + keyword + ".*");
+            names = searchServiceNames(namespaceId, keyword);
         } else {
-            matchList = new ArrayList<>(chooseServiceMap(namespaceId).values());
+            names = serviceNameIndexes.get(namespaceId).names();
         }
 
-        if (!CollectionUtils.isEmpty(matchList) && hasIpCount) {
-            matchList = matchList.stream().filter(s -> !CollectionUtils.isEmpty(s.allIPs())).collect(Collectors.toList());
+        // without a keyword or filters, all services match and the total is known:
+        boolean counted = StringUtils.isBlank(keyword) && !hasIpCount && StringUtils.isBlank(containedInstance);
+        int start = startPage * pageSize;
+        // all matches are returned if they fit in one page, whatever the page number:
+        List<Service> firstPage = new ArrayList<>();
+        List<Service> page = new ArrayList<>();
+        int total = 0;
+
+        Set<String> containing = servicesContaining(namespaceId, containedInstance);
+        if (containing != null && StringUtils.isBlank(keyword)) {
+            // the services with the instance are usually much fewer:
+            List<String> sorted = new ArrayList<>(containing);
+            Collections.sort(sorted);
+            names = sorted;
         }
 
-        if (StringUtils.isNotBlank(containedInstance)) {
+        for (String name : names) {
+            Service service = services.get(name);
+            if (service == null || !matches(service, containing, hasIpCount)) {
+                continue;
+            }
 
-            boolean contained;
-            for (int i = 0; i < matchList.size(); i++) {
-                Service service = matchList.get(i);
-                contained = false;
-                List<Instance> instances = service.allIPs();
-                for (Instance instance : instances) {
-                    if (containedInstance.contains(":")) {
-                        if (StringUtils.equals(instance.getIp() + ":" + instance.getPort(), containedInstance)) {
-                            contained = true;
-                            break;
-                        }
-                    } else {
-                        if (StringUtils.equals(instance.getIp(), containedInstance)) {
-                            contained = true;
-                            break;
-                        }
-                    }
-                }
-                if (!contained) {
-                    matchList.remove(i);
-                    i--;
-                }
+            if (total < pageSize) {
+                firstPage.add(service);
+            }
+            if (total >= start && page.size() < pageSize) {
+                page.add(service);
+            }
+            total++;
+
+            if (counted && page.size() >= pageSize && total > pageSize) {
+                total = services.size();
+                break;
             }
         }
 
-        if (pageSize >= matchList.size()) {
-            serviceList.addAll(matchList);
-            return matchList.size();
+        serviceList.addAll(total <= pageSize ? firstPage : page);
+        return total;
+    }
+
+    /**
+     * Read a page of services in the order of their names, starting after the cursor.
+     * <p>
+     * Unlike {@link #getPagedService} the services before the cursor are not visited, and the
+     * total is not counted, so a page costs the page itself plus the services filtered out.
+     *
+     * @param cursor name of the last service of the previous page, blank for the first page
+     * @return cursor of the next page, or null if there are no more services
+     */
+    public String getServicesAfter(String namespaceId, String cursor, int pageSize, String keyword,
+                                   String containedInstance, boolean hasIpCount, List<Service> serviceList) {
+
+        Map<String, Service> services = chooseServiceMap(namespaceId);
+        if (services == null || pageSize <= 0) {
+            return null;
         }
 
-        for (int i = 0; i < matchList.size(); i++) {
-            if (i < startPage * pageSize) {
-                continue;
-            }
+        Set<String> containing = servicesContaining(namespaceId, containedInstance);
 
-            serviceList.add(matchList.get(i));
+        Iterable<String> names;
+        if (StringUtils.isNotBlank(keyword) || containing != null) {
+            List<String> matched;
+            if (StringUtils.isNotBlank(keyword)) {
+                matched = searchServiceNames(namespaceId, keyword);
+            } else {
+                matched = new ArrayList<>(containing);
+                Collections.sort(matched);
+            }
+            int from = 0;
+            if (StringUtils.isNotBlank(cursor)) {
+                int index = Collections.binarySearch(matched, cursor);
+                from = index < 0 ? -index - 1 : index + 1;
+            }
+            names = matched.subList(from, matched.size());
+        } else {
+            names = serviceNameIndexes.get(namespaceId).namesAfter(cursor);
+        }
 
+        String last = null;
+        for (String name : names) {
             if (serviceList.size() >= pageSize) {
-                break;
+                return last;
+            }
+
+            Service service = services.get(name);
+            if (service != null && matches(service, containing, hasIpCount)) {
+                serviceList.add(service);
+                last = name;
             }
         }
+        return null;
+    }
 
-        return matchList.size();
+    private List<String> searchServiceNames(String namespaceId, String keyword) {
+        if (!StringUtils.containsAny(keyword, REGEX_SYNTAX)) {
+            return serviceNameIndexes.get(namespaceId).searchWithOwners(keyword);
+        }
+
+        List<String> names = new ArrayList<>();
+        for (Service service : searchServicesByKeyword(namespaceId, keyword)) {
+            names.add(service.getName());
+        }
+        return names;
+    }
+
+    private static String ownersKey(Service service) {
+        return ArrayUtils.toString(service.getOwners());
+    }
+
+    private boolean matches(Service service, Set<String> containing, boolean hasIpCount) {
+
+        if (hasIpCount && service.allIPs().isEmpty()) {
+            return false;
+        }
+
+        return containing == null || containing.contains(service.getName());
+    }
+
+    /**
+     * @return names of the services with the instance, or null if the instance is blank
+     */
+    private Set<String> servicesContaining(String namespaceId, String containedInstance) {
+        if (StringUtils.isBlank(containedInstance)) {
+            return null;
+        }
+        return instanceIpIndex.services(namespaceId, containedInstance);
     }
 
     public static class ServiceChecksum {
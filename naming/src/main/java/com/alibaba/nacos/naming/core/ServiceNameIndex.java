@@ -0,0 +1,216 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Index of the service names of a namespace, maintained as services are added and removed.
+ * <p>
+ * Names are kept sorted, so a page is read from a cursor without walking the names before it.
+ * Every name is also indexed by its trigrams, a substring search only verifies the names sharing
+ * the rarest trigram of the keyword instead of matching every name of the namespace.
+ * <p>
+ * Services are grouped by their owners as well, the few distinct owners are scanned for a keyword
+ * instead of the services.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+final class ServiceNameIndex {
+
+    static final int GRAM_LENGTH = 3;
+
+    private final NavigableSet<String> names = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentMap<String, Set<String>> grams = new ConcurrentHashMap<>(1024);
+
+    private final ConcurrentMap<String, String> ownersOfNames = new ConcurrentHashMap<>(1024);
+
+    private final ConcurrentMap<String, Set<String>> namesOfOwners = new ConcurrentHashMap<>(16);
+
+    void add(String name) {
+        if (!names.add(name)) {
+            return;
+        }
+
+        for (String gram : grams(name)) {
+            grams.compute(gram, (key, posting) -> {
+                if (posting == null) {
+                    posting = ConcurrentHashMap.newKeySet();
+                }
+                posting.add(name);
+                return posting;
+            });
+        }
+    }
+
+    /**
+     * @param owners owners of the service as they are matched by keywords
+     */
+    void setOwners(String name, String owners) {
+        String old = ownersOfNames.put(name, owners);
+        if (owners.equals(old)) {
+            return;
+        }
+
+        if (old != null) {
+            removeOwners(old, name);
+        }
+        namesOfOwners.compute(owners, (key, posting) -> {
+            if (posting == null) {
+                posting = ConcurrentHashMap.newKeySet();
+            }
+            posting.add(name);
+            return posting;
+        });
+    }
+
+    void remove(String name) {
+        String owners = ownersOfNames.remove(name);
+        if (owners != null) {
+            removeOwners(owners, name);
+        }
+
+        if (!names.remove(name)) {
+            return;
+        }
+
+        for (String gram : grams(name)) {
+            grams.computeIfPresent(gram, (key, posting) -> {
+                posting.remove(name);
+                return posting.isEmpty() ? null : posting;
+            });
+        }
+    }
+
+    boolean contains(String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * @return all names in ascending order, a weakly consistent view
+     */
+    NavigableSet<String> names() {
+        return names;
+    }
+
+    /**
+     * @return names after the cursor in ascending order, all names if the cursor is blank
+     */
+    NavigableSet<String> namesAfter(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return names;
+        }
+        return names.tailSet(cursor, false);
+    }
+
+    /**
+     * Find names containing the keyword.
+     *
+     * @return matched names in ascending order
+     */
+    List<String> search(String keyword) {
+        List<String> result = new ArrayList<>();
+
+        if (keyword.length() < GRAM_LENGTH) {
+            for (String name : names) {
+                if (name.contains(keyword)) {
+                    result.add(name);
+                }
+            }
+            return result;
+        }
+
+        Set<String> rarest = null;
+        for (String gram : grams(keyword)) {
+            Set<String> posting = grams.get(gram);
+            if (posting == null) {
+                return result;
+            }
+            if (rarest == null || posting.size() < rarest.size()) {
+                rarest = posting;
+            }
+        }
+
+        for (String name : rarest) {
+            // the posting may hold a name removed meanwhile:
+            if (name.contains(keyword) && names.contains(name)) {
+                result.add(name);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Find names of the services whose name and owners, joined by a colon, contain the keyword.
+     *
+     * @return matched names in ascending order
+     */
+    List<String> searchWithOwners(String keyword) {
+        Set<String> result = new TreeSet<>(search(keyword));
+
+        for (Map.Entry<String, Set<String>> entry : namesOfOwners.entrySet()) {
+            String owners = entry.getKey();
+            if (owners.contains(keyword)) {
+                for (String name : entry.getValue()) {
+                    if (names.contains(name)) {
+                        result.add(name);
+                    }
+                }
+                continue;
+            }
+
+            // a keyword spanning the colon starts with the end of the name and ends with the start of
+            // the owners:
+            for (int i = keyword.indexOf(':'); i >= 0; i = keyword.indexOf(':', i + 1)) {
+                if (!owners.startsWith(keyword.substring(i + 1))) {
+                    continue;
+                }
+                String suffix = keyword.substring(0, i);
+                for (String name : entry.getValue()) {
+                    if (name.endsWith(suffix) && names.contains(name)) {
+                        result.add(name);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    private void removeOwners(String owners, String name) {
+        namesOfOwners.computeIfPresent(owners, (key, posting) -> {
+            posting.remove(name);
+            return posting.isEmpty() ? null : posting;
+        });
+    }
+
+    private static Set<String> grams(String name) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+            result.add(name.substring(i, i + GRAM_LENGTH));
+        }
+        return result;
+    }
+}
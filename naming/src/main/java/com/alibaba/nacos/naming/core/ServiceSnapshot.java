@@ -0,0 +1,378 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.core;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.nacos.api.naming.utils.NamingUtils;
+import com.alibaba.nacos.naming.misc.Loggers;
+import com.alibaba.nacos.naming.misc.UtilsAndCommons;
+import com.alibaba.nacos.naming.push.PushService;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Instances of a service as served to clients, for one version of the service and one
+ * combination of clusters, healthyOnly and naming style.
+ * <p>
+ * A snapshot is built once after each change of the service and shared by all queries and
+ * pushes of that version, so the host list is split, filtered and serialized only once. It
+ * must not be modified after it is built.
+ * <p>
+ * The checksum of a snapshot only depends on the hosts served, not on their order or on the
+ * server, so that a client can tell whether a delta pushed by any server applies to its data.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class ServiceSnapshot {
+
+    private static final String[] HOST_FIELDS = {"ip", "port", "healthy", "marked", "instanceId", "enabled",
+        "weight", "clusterName", "serviceName", "ephemeral"};
+
+    private final long version;
+
+    private final String name;
+
+    private final String dom;
+
+    private final String clusters;
+
+    private final boolean empty;
+
+    private final boolean reachProtectThreshold;
+
+    private final JSONArray hosts;
+
+    private final String checksum;
+
+    private final Map<String, String> metadata;
+
+    private final long lastRefTime;
+
+    private volatile PushPacket pushPacket;
+
+    private Map<String, JSONObject> hostMap;
+
+    private long deltaRefTime = -1L;
+
+    private final Map<String, PushPacket> deltaPackets = new HashMap<>(4);
+
+    private ServiceSnapshot(long version, Service service, String clusters, boolean fullName, boolean empty,
+                            boolean reachProtectThreshold, JSONArray hosts) {
+        this.version = version;
+        this.name = service.getName();
+        this.dom = fullName ? service.getName() : NamingUtils.getServiceName(service.getName());
+        this.clusters = clusters;
+        this.empty = empty;
+        this.reachProtectThreshold = reachProtectThreshold;
+        this.hosts = hosts;
+        this.checksum = checksum(hosts);
+        this.metadata = service.getMetadata();
+        this.lastRefTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Build a snapshot from the given instances of a service.
+     *
+     * @param service     service the instances belong to
+     * @param version     snapshot version of the service the instances were read at
+     * @param clusters    clusters requested, as passed by the client
+     * @param instances   instances of the requested clusters, already filtered by the selector if any
+     * @param healthyOnly whether to leave out unhealthy instances
+     * @param fullName    whether service names are returned with their group
+     */
+    public static ServiceSnapshot build(Service service, long version, String clusters, List<Instance> instances,
+                                        boolean healthyOnly, boolean fullName) {
+
+        if (instances == null || instances.isEmpty()) {
+            return new ServiceSnapshot(version, service, clusters, fullName, true, false, new JSONArray());
+        }
+
+        Map<Boolean, List<Instance>> ipMap = new HashMap<>(2);
+        ipMap.put(Boolean.TRUE, new ArrayList<>());
+        ipMap.put(Boolean.FALSE, new ArrayList<>());
+
+        for (Instance ip : instances) {
+            ipMap.get(ip.isHealthy()).add(ip);
+        }
+
+        boolean reachProtectThreshold = false;
+        if ((float) ipMap.get(Boolean.TRUE).size() / instances.size() <= service.getProtectThreshold()) {
+
+            Loggers.SRV_LOG.warn("protect threshold reached, return all ips, service: {}", service.getName());
+            reachProtectThreshold = true;
+
+            ipMap.get(Boolean.TRUE).addAll(ipMap.get(Boolean.FALSE));
+            ipMap.get(Boolean.FALSE).clear();
+        }
+
+        JSONArray hosts = new JSONArray();
+
+        for (Map.Entry<Boolean, List<Instance>> entry : ipMap.entrySet()) {
+            List<Instance> ips = entry.getValue();
+
+            if (healthyOnly && !entry.getKey()) {
+                continue;
+            }
+
+            for (Instance instance : ips) {
+
+                // remove disabled instance:
+                if (!instance.isEnabled()) {
+                    continue;
+                }
+
+                JSONObject ipObj = new JSONObject();
+
+                ipObj.put("ip", instance.getIp());
+                ipObj.put("port", instance.getPort());
+                // deprecated since nacos 1.0.0:
+                ipObj.put("valid", entry.getKey());
+                ipObj.put("healthy", entry.getKey());
+                ipObj.put("marked", instance.isMarked());
+                ipObj.put("instanceId", instance.getInstanceId());
+                ipObj.put("metadata", instance.getMetadata());
+                ipObj.put("enabled", instance.isEnabled());
+                ipObj.put("weight", instance.getWeight());
+                ipObj.put("clusterName", instance.getClusterName());
+                if (fullName) {
+                    ipObj.put("serviceName", instance.getServiceName());
+                } else {
+                    ipObj.put("serviceName", NamingUtils.getServiceName(instance.getServiceName()));
+                }
+
+                ipObj.put("ephemeral", instance.isEphemeral());
+                hosts.add(ipObj);
+            }
+        }
+
+        return new ServiceSnapshot(version, service, clusters, fullName, false, reachProtectThreshold, hosts);
+    }
+
+    /**
+     * @return a new result object for a query of this snapshot, sharing the host list of the snapshot
+     */
+    public JSONObject toJSON(long cacheMillis, String env) {
+        JSONObject result = new JSONObject();
+        result.put("hosts", hosts);
+        result.put("dom", dom);
+        result.put("name", name);
+        result.put("cacheMillis", cacheMillis);
+        result.put("lastRefTime", lastRefTime);
+        result.put("checksum", checksum);
+        result.put("useSpecifiedURL", false);
+        result.put("clusters", clusters);
+        result.put("env", env);
+        result.put("metadata", metadata);
+        return result;
+    }
+
+    /**
+     * Get the UDP packet data pushing this snapshot, serialized and compressed once for all
+     * clients pushed in the same round.
+     *
+     * @param cacheMillis cache millis told to the clients
+     * @param pushRefTime sequence of the push round, acknowledged by the clients
+     * @return packet data, compressed if it is large
+     */
+    public PushPacket getPushPacket(long cacheMillis, long pushRefTime) throws IOException {
+        PushPacket packet = pushPacket;
+        if (packet != null && packet.cacheMillis == cacheMillis && packet.pushRefTime == pushRefTime) {
+            return packet;
+        }
+
+        synchronized (this) {
+            packet = pushPacket;
+            if (packet != null && packet.cacheMillis == cacheMillis && packet.pushRefTime == pushRefTime) {
+                return packet;
+            }
+
+            Map<String, Object> data = new HashMap<>(4);
+            data.put("type", "dom");
+            data.put("data", toJSON(cacheMillis, "").toJSONString());
+            data.put("lastRefTime", pushRefTime);
+
+            byte[] bytes = PushService.compressIfNecessary(JSON.toJSONString(data).getBytes(StandardCharsets.UTF_8));
+            packet = new PushPacket(cacheMillis, pushRefTime, bytes, Collections.unmodifiableMap(data));
+            pushPacket = packet;
+            return packet;
+        }
+    }
+
+    /**
+     * Get the UDP packet data pushing the changes from an earlier snapshot of the same service,
+     * serialized and compressed once for all clients of the same base in the same round.
+     *
+     * @param base        snapshot the client has received before
+     * @param cacheMillis cache millis told to the clients
+     * @param pushRefTime sequence of the push round, acknowledged by the clients
+     * @return packet data, or null if the delta is not much smaller than this snapshot
+     */
+    public synchronized PushPacket getDeltaPacket(ServiceSnapshot base, long cacheMillis, long pushRefTime) throws IOException {
+
+        if (deltaRefTime != pushRefTime) {
+            deltaPackets.clear();
+            deltaRefTime = pushRefTime;
+        }
+
+        String deltaKey = base.checksum + UtilsAndCommons.CACHE_KEY_SPLITER + cacheMillis;
+        if (deltaPackets.containsKey(deltaKey)) {
+            return deltaPackets.get(deltaKey);
+        }
+
+        Map<String, JSONObject> baseHosts = base.getHostMap();
+        Map<String, JSONObject> currentHosts = getHostMap();
+
+        JSONArray added = new JSONArray();
+        JSONArray changed = new JSONArray();
+        JSONArray removed = new JSONArray();
+
+        for (Map.Entry<String, JSONObject> entry : currentHosts.entrySet()) {
+            JSONObject old = baseHosts.get(entry.getKey());
+            if (old == null) {
+                added.add(entry.getValue());
+            } else if (!old.equals(entry.getValue())) {
+                changed.add(entry.getValue());
+            }
+        }
+
+        for (String inetAddr : baseHosts.keySet()) {
+            if (!currentHosts.containsKey(inetAddr)) {
+                removed.add(inetAddr);
+            }
+        }
+
+        PushPacket packet = null;
+        // a large delta costs more to the client than a full list:
+        if ((added.size() + changed.size() + removed.size()) * 2 <= hosts.size()) {
+
+            JSONObject delta = new JSONObject();
+            delta.put("dom", dom);
+            delta.put("name", name);
+            delta.put("clusters", clusters);
+            delta.put("cacheMillis", cacheMillis);
+            delta.put("lastRefTime", lastRefTime);
+            delta.put("baseChecksum", base.checksum);
+            delta.put("checksum", checksum);
+            delta.put("added", added);
+            delta.put("changed", changed);
+            delta.put("removed", removed);
+
+            Map<String, Object> data = new HashMap<>(4);
+            data.put("type", "dom-delta");
+            data.put("data", delta.toJSONString());
+            data.put("lastRefTime", pushRefTime);
+
+            byte[] bytes = PushService.compressIfNecessary(JSON.toJSONString(data).getBytes(StandardCharsets.UTF_8));
+            packet = new PushPacket(cacheMillis, pushRefTime, bytes, Collections.unmodifiableMap(data));
+        }
+
+        deltaPackets.put(deltaKey, packet);
+        return packet;
+    }
+
+    private synchronized Map<String, JSONObject> getHostMap() {
+        if (hostMap == null) {
+            Map<String, JSONObject> map = new HashMap<>(hosts.size() * 2);
+            for (Object host : hosts) {
+                JSONObject ipObj = (JSONObject) host;
+                map.put(ipObj.getString("ip") + ":" + ipObj.getIntValue("port"), ipObj);
+            }
+            hostMap = map;
+        }
+        return hostMap;
+    }
+
+    /**
+     * Sum of the hashes of all hosts, independent of their order
+     */
+    private static String checksum(JSONArray hosts) {
+        long sum = 0L;
+        for (Object host : hosts) {
+            JSONObject ipObj = (JSONObject) host;
+
+            long h = 0xcbf29ce484222325L;
+            for (String field : HOST_FIELDS) {
+                h = fnv(h, String.valueOf(ipObj.get(field)));
+            }
+
+            Object metadata = ipObj.get("metadata");
+            if (metadata instanceof Map) {
+                for (Map.Entry<?, ?> entry : new TreeMap<>((Map<?, ?>) metadata).entrySet()) {
+                    h = fnv(h, String.valueOf(entry.getKey()));
+                    h = fnv(h, String.valueOf(entry.getValue()));
+                }
+            }
+            sum += h;
+        }
+        return Long.toHexString(sum) + Integer.toHexString(hosts.size());
+    }
+
+    private static long fnv(long h, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // separator, so that adjacent fields can not shift into each other:
+        return (h ^ 0xfe) * 0x100000001b3L;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    public boolean isReachProtectThreshold() {
+        return reachProtectThreshold;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public static class PushPacket {
+
+        private final long cacheMillis;
+
+        private final long pushRefTime;
+
+        private final byte[] bytes;
+
+        private final Map<String, Object> data;
+
+        private PushPacket(long cacheMillis, long pushRefTime, byte[] bytes, Map<String, Object> data) {
+            this.cacheMillis = cacheMillis;
+            this.pushRefTime = pushRefTime;
+            this.bytes = bytes;
+            this.data = data;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public Map<String, Object> getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.healthcheck;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.nacos.naming.boot.SpringContext;
+import com.alibaba.nacos.naming.core.DistroMapper;
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.core.Service;
+import com.alibaba.nacos.naming.core.ServiceManager;
+import com.alibaba.nacos.naming.healthcheck.events.InstanceHeartbeatTimeoutEvent;
+import com.alibaba.nacos.naming.misc.GlobalConfig;
+import com.alibaba.nacos.naming.misc.Loggers;
+import com.alibaba.nacos.naming.misc.TimingWheel;
+import com.alibaba.nacos.naming.misc.UtilsAndCommons;
+import com.alibaba.nacos.naming.push.PushService;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Check and update statues of ephemeral instances, remove them if they have been expired.
+ * <p>
+ * Every ephemeral instance has one timeout on a timing wheel, due at its next expiry. A beat only
+ * updates the last beat time of the instance, the timeout reads it when due and is moved to the new
+ * expiry if the instance has beaten meanwhile, so neither beats nor idle services cost a scan.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class ClientBeatExpirer {
+
+    private static final TimingWheel TIMING_WHEEL = new TimingWheel("com.alibaba.nacos.naming.beat.expirer", 500L, 512);
+
+    private static final ConcurrentMap<String, Expiry> EXPIRIES = new ConcurrentHashMap<>(1024);
+
+    static {
+        TIMING_WHEEL.start();
+    }
+
+    /**
+     * Watch the expiry of an ephemeral instance, does nothing if it is already watched.
+     */
+    public static void watch(Service service, Instance instance) {
+        String key = buildKey(service.getNamespaceId(), service.getName(), instance);
+        if (EXPIRIES.containsKey(key)) {
+            return;
+        }
+
+        Expiry expiry = new Expiry(key, service.getNamespaceId(), service.getName(), instance);
+        if (EXPIRIES.putIfAbsent(key, expiry) == null) {
+            expiry.schedule(Math.max(0L, instance.getLastBeat() + instance.getInstanceHeartBeatTimeOut()
+                - System.currentTimeMillis()));
+        }
+    }
+
+    public static boolean isWatched(Service service, Instance instance) {
+        return EXPIRIES.containsKey(buildKey(service.getNamespaceId(), service.getName(), instance));
+    }
+
+    public static int getWatchedCount() {
+        return EXPIRIES.size();
+    }
+
+    private static String buildKey(String namespaceId, String serviceName, Instance instance) {
+        return namespaceId + UtilsAndCommons.NAMESPACE_SERVICE_CONNECTOR + serviceName
+            + UtilsAndCommons.NAMESPACE_SERVICE_CONNECTOR + instance.getDatumKey();
+    }
+
+    static class Expiry implements Runnable {
+
+        private final String key;
+
+        private final String namespaceId;
+
+        private final String serviceName;
+
+        private final String clusterName;
+
+        private final String ip;
+
+        private final int port;
+
+        Expiry(String key, String namespaceId, String serviceName, Instance instance) {
+            this.key = key;
+            this.namespaceId = namespaceId;
+            this.serviceName = serviceName;
+            this.clusterName = instance.getClusterName();
+            this.ip = instance.getIp();
+            this.port = instance.getPort();
+        }
+
+        private void schedule(long delayMillis) {
+            TIMING_WHEEL.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // the wheel thread only hands the check over:
+                    HealthCheckReactor.scheduleNow(Expiry.this);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            try {
+                long next = check();
+                if (next < 0) {
+                    EXPIRIES.remove(key, this);
+                    return;
+                }
+                schedule(next);
+            } catch (Exception e) {
+                Loggers.SRV_LOG.warn("Exception while processing client beat time out.", e);
+                schedule(ClientBeatProcessor.CLIENT_BEAT_TIMEOUT);
+            }
+        }
+
+        /**
+         * @return millis until the next check, or -1 if the instance is no longer watched
+         */
+        long check() throws Exception {
+            ServiceManager serviceManager = getServiceManager();
+            Service service = serviceManager.getService(namespaceId, serviceName);
+            if (service == null) {
+                return -1L;
+            }
+
+            Instance instance = serviceManager.getInstance(namespaceId, serviceName, clusterName, ip, port);
+            if (instance == null || !instance.isEphemeral()) {
+                return -1L;
+            }
+
+            if (!getDistroMapper().responsible(serviceName)) {
+                // checked again later, the responsible server may change:
+                return instance.getInstanceHeartBeatTimeOut();
+            }
+
+            long now = System.currentTimeMillis();
+            long elapsed = now - instance.getLastBeat();
+
+            // first set health status of instance:
+            if (elapsed > instance.getInstanceHeartBeatTimeOut() && !instance.isMarked() && instance.isHealthy()) {
+                instance.setHealthy(false);
+                Loggers.EVT_LOG.info("{POS} {IP-DISABLED} valid: {}:{}@{}@{}, region: {}, msg: client timeout after {}, last beat: {}",
+                    instance.getIp(), instance.getPort(), instance.getClusterName(), service.getName(),
+                    UtilsAndCommons.LOCALHOST_SITE, instance.getInstanceHeartBeatTimeOut(), instance.getLastBeat());
+                getPushService().serviceChanged(service);
+                SpringContext.getAppContext().publishEvent(new InstanceHeartbeatTimeoutEvent(this, instance));
+            }
+
+            boolean expire = getGlobalConfig().isExpireInstance() && !instance.isMarked();
+
+            // then remove obsolete instance:
+            if (expire && elapsed > instance.getIpDeleteTimeout()) {
+                Loggers.SRV_LOG.info("[AUTO-DELETE-IP] service: {}, ip: {}", service.getName(), JSON.toJSONString(instance));
+                serviceManager.removeInstance(namespaceId, serviceName, true, service, instance);
+                return -1L;
+            }
+
+            if (elapsed <= instance.getInstanceHeartBeatTimeOut()) {
+                return instance.getInstanceHeartBeatTimeOut() - elapsed + 1;
+            }
+
+            if (expire) {
+                return instance.getIpDeleteTimeout() - elapsed + 1;
+            }
+
+            return instance.getInstanceHeartBeatTimeOut();
+        }
+
+        ServiceManager getServiceManager() {
+            return SpringContext.getAppContext().getBean(ServiceManager.class);
+        }
+
+        DistroMapper getDistroMapper() {
+            return SpringContext.getAppContext().getBean(DistroMapper.class);
+        }
+
+        GlobalConfig getGlobalConfig() {
+            return SpringContext.getAppContext().getBean(GlobalConfig.class);
+        }
+
+        PushService getPushService() {
+            return SpringContext.getAppContext().getBean(PushService.class);
+        }
+    }
+}
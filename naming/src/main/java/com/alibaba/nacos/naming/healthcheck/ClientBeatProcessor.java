@@ -25,17 +25,21 @@ import com.alibaba.nacos.naming.misc.Loggers;
 import com.alibaba.nacos.naming.misc.UtilsAndCommons;
 import com.alibaba.nacos.naming.push.PushService;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Thread to update ephemeral instance triggered by client beat
+ * Thread to update ephemeral instances triggered by client beats, one or a batch of one service
  *
  * @author nkorange
  */
 public class ClientBeatProcessor implements Runnable {
     public static final long CLIENT_BEAT_TIMEOUT = TimeUnit.SECONDS.toMillis(15);
     private RsInfo rsInfo;
+    private List<RsInfo> rsInfos;
     private Service service;
 
     @JSONField(serialize = false)
@@ -59,34 +63,65 @@ public class ClientBeatProcessor implements Runnable {
         this.service = service;
     }
 
+    public List<RsInfo> getRsInfos() {
+        return rsInfos;
+    }
+
+    public void setRsInfos(List<RsInfo> rsInfos) {
+        this.rsInfos = rsInfos;
+    }
+
     @Override
     public void run() {
         Service service = this.service;
-        if (Loggers.EVT_LOG.isDebugEnabled()) {
-            Loggers.EVT_LOG.debug("[CLIENT-BEAT] processing beat: {}", rsInfo.toString());
-        }
+        List<RsInfo> beats = rsInfos != null ? rsInfos : Collections.singletonList(rsInfo);
+
+        // beats of one cluster are matched against one index of its instances:
+        Map<String, Map<String, Instance>> indexes = new HashMap<>(4);
+        boolean changed = false;
+
+        for (RsInfo beat : beats) {
+            if (Loggers.EVT_LOG.isDebugEnabled()) {
+                Loggers.EVT_LOG.debug("[CLIENT-BEAT] processing beat: {}", beat.toString());
+            }
 
-        String ip = rsInfo.getIp();
-        String clusterName = rsInfo.getCluster();
-        int port = rsInfo.getPort();
-        Cluster cluster = service.getClusterMap().get(clusterName);
-        List<Instance> instances = cluster.allIPs(true);
+            Cluster cluster = service.getClusterMap().get(beat.getCluster());
+            if (cluster == null) {
+                continue;
+            }
 
-        for (Instance instance : instances) {
-            if (instance.getIp().equals(ip) && instance.getPort() == port) {
-                if (Loggers.EVT_LOG.isDebugEnabled()) {
-                    Loggers.EVT_LOG.debug("[CLIENT-BEAT] refresh beat: {}", rsInfo.toString());
+            Map<String, Instance> index = indexes.get(cluster.getName());
+            if (index == null) {
+                List<Instance> instances = cluster.allIPs(true);
+                index = new HashMap<>(instances.size());
+                for (Instance instance : instances) {
+                    index.put(instance.toIPAddr(), instance);
                 }
-                instance.setLastBeat(System.currentTimeMillis());
-                if (!instance.isMarked()) {
-                    if (!instance.isHealthy()) {
-                        instance.setHealthy(true);
-                        Loggers.EVT_LOG.info("service: {} {POS} {IP-ENABLED} valid: {}:{}@{}, region: {}, msg: client beat ok",
-                            cluster.getService().getName(), ip, port, cluster.getName(), UtilsAndCommons.LOCALHOST_SITE);
-                        getPushService().serviceChanged(service);
-                    }
+                indexes.put(cluster.getName(), index);
+            }
+
+            Instance instance = index.get(beat.getIp() + UtilsAndCommons.IP_PORT_SPLITER + beat.getPort());
+            if (instance == null) {
+                continue;
+            }
+
+            if (Loggers.EVT_LOG.isDebugEnabled()) {
+                Loggers.EVT_LOG.debug("[CLIENT-BEAT] refresh beat: {}", beat.toString());
+            }
+            instance.setLastBeat(System.currentTimeMillis());
+            ClientBeatExpirer.watch(service, instance);
+            if (!instance.isMarked()) {
+                if (!instance.isHealthy()) {
+                    instance.setHealthy(true);
+                    Loggers.EVT_LOG.info("service: {} {POS} {IP-ENABLED} valid: {}:{}@{}, region: {}, msg: client beat ok",
+                        cluster.getService().getName(), beat.getIp(), beat.getPort(), cluster.getName(), UtilsAndCommons.LOCALHOST_SITE);
+                    changed = true;
                 }
             }
         }
+
+        if (changed) {
+            getPushService().serviceChanged(service);
+        }
     }
 }
@@ -135,6 +135,13 @@ public class HealthCheckCommon {
     public void checkOK(Instance ip, HealthCheckTask task, String msg) {
         Cluster cluster = task.getCluster();
 
+        HealthCheckStatus status = HealthCheckStatus.get(ip);
+        if (ip.isHealthy() && ip.isMockValid()) {
+            status.stableCount.incrementAndGet();
+        } else {
+            status.stableCount.set(0);
+        }
+
         try {
             if (!ip.isHealthy() || !ip.isMockValid()) {
                 if (ip.getOKCount().incrementAndGet() >= switchDomain.getCheckTimes()) {
@@ -172,6 +179,9 @@ public class HealthCheckCommon {
     public void checkFail(Instance ip, HealthCheckTask task, String msg) {
         Cluster cluster = task.getCluster();
 
+        // checked again in the next round:
+        resetBackOff(ip);
+
         try {
             if (ip.isHealthy() || ip.isMockValid()) {
                 if (ip.getFailCount().incrementAndGet() >= switchDomain.getCheckTimes()) {
@@ -208,6 +218,9 @@ public class HealthCheckCommon {
 
     public void checkFailNow(Instance ip, HealthCheckTask task, String msg) {
         Cluster cluster = task.getCluster();
+
+        // checked again in the next round:
+        resetBackOff(ip);
         try {
             if (ip.isHealthy() || ip.isMockValid()) {
                 if (distroMapper.responsible(cluster, ip)) {
@@ -239,6 +252,12 @@ public class HealthCheckCommon {
         ip.setBeingChecked(false);
     }
 
+    private void resetBackOff(Instance ip) {
+        HealthCheckStatus status = HealthCheckStatus.get(ip);
+        status.stableCount.set(0);
+        status.nextCheckRound = 0L;
+    }
+
     private void addResult(HealthCheckResult result) {
 
         if (!switchDomain.getIncrementalList().contains(result.getServiceName())) {
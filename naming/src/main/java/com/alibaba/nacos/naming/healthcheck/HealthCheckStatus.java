@@ -32,6 +32,14 @@ public class HealthCheckStatus {
     public AtomicInteger checkFailCount = new AtomicInteger(0);
     public AtomicInteger checkOKCount = new AtomicInteger(0);
     public long checkRT = -1L;
+    /**
+     * Count of successful checks in a row of a healthy instance
+     */
+    public AtomicInteger stableCount = new AtomicInteger(0);
+    /**
+     * Round of its cluster check task the instance is next checked in
+     */
+    public volatile long nextCheckRound = 0L;
 
     private static ConcurrentMap<String, HealthCheckStatus> statusMap = new ConcurrentHashMap<>();
 
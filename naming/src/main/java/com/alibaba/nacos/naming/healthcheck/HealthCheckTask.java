@@ -19,17 +19,46 @@ import com.alibaba.fastjson.annotation.JSONField;
 import com.alibaba.nacos.naming.boot.SpringContext;
 import com.alibaba.nacos.naming.core.Cluster;
 import com.alibaba.nacos.naming.core.DistroMapper;
+import com.alibaba.nacos.naming.core.Instance;
 import com.alibaba.nacos.naming.misc.Loggers;
 import com.alibaba.nacos.naming.misc.SwitchDomain;
 import org.apache.commons.lang3.RandomUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
+ * Health check of the persistent instances of a cluster.
+ * <p>
+ * A check period, the normalized check RT, is cut into slices, and an instance is checked in the
+ * slice picked by the hash of its address. So the probes of a cluster are spread evenly over the
+ * period, always at the same offsets, instead of all fired at once. Instances healthy for a long
+ * time are checked every 2 or 4 periods, any failure brings them back to every period.
+ *
  * @author nacos
  */
 public class HealthCheckTask implements Runnable {
 
+    static final int MAX_SLICES = 10;
+
+    /**
+     * Count of successful checks in a row doubling the check interval of a healthy instance
+     */
+    static final int STABLE_CHECKS_TO_BACK_OFF = 10;
+
+    static final int MAX_BACK_OFF_SHIFT = 2;
+
     private Cluster cluster;
 
+    private long round = 0L;
+
+    private int slice = 0;
+
+    private int slices = 1;
+
+    private List<Instance> dueInstances = Collections.emptyList();
+
     private long checkRTNormalized = -1;
     private long checkRTBest = -1;
     private long checkRTWorst = -1;
@@ -71,7 +100,15 @@ public class HealthCheckTask implements Runnable {
         try {
             if (distroMapper.responsible(cluster.getService().getName()) &&
                 switchDomain.isHealthCheckEnabled(cluster.getService().getName())) {
-                healthCheckProcessor.process(this);
+                List<Instance> instances = cluster.allIPs(false);
+                if (slice == 0) {
+                    slices = Math.max(1, Math.min(MAX_SLICES, instances.size()));
+                }
+
+                dueInstances = selectDueInstances(instances);
+                if (!dueInstances.isEmpty()) {
+                    healthCheckProcessor.process(this);
+                }
                 if (Loggers.EVT_LOG.isDebugEnabled()) {
                     Loggers.EVT_LOG.debug("[HEALTH-CHECK] schedule health check task: {}", cluster.getService().getName());
                 }
@@ -80,11 +117,18 @@ public class HealthCheckTask implements Runnable {
             Loggers.SRV_LOG.error("[HEALTH-CHECK] error while process health check for {}:{}",
                 cluster.getService().getName(), cluster.getName(), e);
         } finally {
+            dueInstances = Collections.emptyList();
+            boolean roundEnded = ++slice >= slices;
+            if (roundEnded) {
+                slice = 0;
+                round++;
+            }
+
             if (!cancelled) {
                 HealthCheckReactor.scheduleCheck(this);
 
                 // worst == 0 means never checked
-                if (this.getCheckRTWorst() > 0
+                if (roundEnded && this.getCheckRTWorst() > 0
                     && switchDomain.isHealthCheckEnabled(cluster.getService().getName())
                     && distroMapper.responsible(cluster.getService().getName())) {
                     // TLog doesn't support float so we must convert it into long
@@ -106,6 +150,48 @@ public class HealthCheckTask implements Runnable {
         }
     }
 
+    /**
+     * @return instances of the current slice due for a check
+     */
+    private List<Instance> selectDueInstances(List<Instance> instances) {
+        List<Instance> result = new ArrayList<>();
+        for (Instance instance : instances) {
+            if (sliceOf(instance, slices) != slice) {
+                continue;
+            }
+
+            HealthCheckStatus status = HealthCheckStatus.get(instance);
+            // a round beyond the max back off was set by a former task of the cluster:
+            if (round < status.nextCheckRound && status.nextCheckRound <= round + (1L << MAX_BACK_OFF_SHIFT)) {
+                continue;
+            }
+
+            int shift = Math.min(MAX_BACK_OFF_SHIFT, status.stableCount.get() / STABLE_CHECKS_TO_BACK_OFF);
+            status.nextCheckRound = round + (1L << shift);
+            result.add(instance);
+        }
+        return result;
+    }
+
+    static int sliceOf(Instance instance, int slices) {
+        return ((instance.getIp().hashCode() * 31 + instance.getPort()) & Integer.MAX_VALUE) % slices;
+    }
+
+    /**
+     * @return millis until the next slice of the check period
+     */
+    public long getNextCheckDelay() {
+        return Math.max(1L, checkRTNormalized / slices);
+    }
+
+    /**
+     * @return instances to check in this run, only valid while the processor is processing this task
+     */
+    @JSONField(serialize = false)
+    public List<Instance> getDueInstances() {
+        return dueInstances;
+    }
+
     public Cluster getCluster() {
         return cluster;
     }
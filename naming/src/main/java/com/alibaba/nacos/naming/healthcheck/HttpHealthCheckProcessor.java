@@ -20,27 +20,42 @@ import com.alibaba.nacos.naming.core.Cluster;
 import com.alibaba.nacos.naming.core.Instance;
 import com.alibaba.nacos.naming.misc.SwitchDomain;
 import com.alibaba.nacos.naming.monitor.MetricsMonitor;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.ConnectionsPool;
 import com.ning.http.client.Response;
+import com.ning.http.client.providers.netty.NettyConnectionsPool;
 import io.netty.channel.ConnectTimeoutException;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jboss.netty.channel.Channel;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.net.ConnectException;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.alibaba.nacos.naming.misc.Loggers.SRV_LOG;
 
 /**
  * HTTP health check processor
+ * <p>
+ * Probes go through a client of their own which keeps connections to every target alive between
+ * rounds, at most {@link #MAX_IN_FLIGHT_PER_TARGET} of them for a target at a time.
  *
  * @author xuanyin.zy
  */
@@ -55,15 +70,32 @@ public class HttpHealthCheckProcessor implements HealthCheckProcessor {
 
     private static AsyncHttpClient asyncHttpClient;
 
+    private static ProbeConnectionsPool connectionsPool;
+
     private static final int CONNECT_TIMEOUT_MS = 500;
 
+    /**
+     * Probes running at a time against the same ip and port, which is also the size of its keep-alive pool.
+     */
+    static final int MAX_IN_FLIGHT_PER_TARGET = 2;
+
+    /**
+     * Pooled connections idle longer than this are closed, kept below the keep-alive timeout of common servers.
+     */
+    private static final int IDLE_IN_POOL_TIMEOUT_MS = 15000;
+
     static {
         try {
+            connectionsPool = new ProbeConnectionsPool(new NettyConnectionsPool(-1, MAX_IN_FLIGHT_PER_TARGET,
+                IDLE_IN_POOL_TIMEOUT_MS, false));
+
             AsyncHttpClientConfig.Builder builder = new AsyncHttpClientConfig.Builder();
 
             builder.setMaximumConnectionsTotal(-1);
-            builder.setMaximumConnectionsPerHost(-1);
-            builder.setAllowPoolingConnection(false);
+            builder.setMaximumConnectionsPerHost(MAX_IN_FLIGHT_PER_TARGET);
+            builder.setAllowPoolingConnection(true);
+            builder.setConnectionsPool(connectionsPool);
+            builder.setIdleConnectionInPoolTimeoutInMs(IDLE_IN_POOL_TIMEOUT_MS);
             builder.setFollowRedirects(false);
             builder.setIdleConnectionTimeoutInMs(CONNECT_TIMEOUT_MS);
             builder.setConnectionTimeoutInMs(CONNECT_TIMEOUT_MS);
@@ -77,6 +109,13 @@ public class HttpHealthCheckProcessor implements HealthCheckProcessor {
         }
     }
 
+    /**
+     * Request templates of the clusters, dropped along with their check tasks.
+     */
+    private final Cache<HealthCheckTask, RequestTemplate> templates = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final ConcurrentMap<String, Integer> inFlight = new ConcurrentHashMap<>();
+
     @Override
     public String getType() {
         return "HTTP";
@@ -84,7 +123,7 @@ public class HttpHealthCheckProcessor implements HealthCheckProcessor {
 
     @Override
     public void process(HealthCheckTask task) {
-        List<Instance> ips = task.getCluster().allIPs(false);
+        List<Instance> ips = task.getDueInstances();
         if (CollectionUtils.isEmpty(ips)) {
             return;
         }
@@ -94,6 +133,7 @@ public class HttpHealthCheckProcessor implements HealthCheckProcessor {
         }
 
         Cluster cluster = task.getCluster();
+        RequestTemplate template = null;
 
         for (Instance ip : ips) {
             try {
@@ -113,24 +153,27 @@ public class HttpHealthCheckProcessor implements HealthCheckProcessor {
                     continue;
                 }
 
-                AbstractHealthChecker.Http healthChecker = (AbstractHealthChecker.Http) cluster.getHealthChecker();
-
                 int ckPort = cluster.isUseIPPort4Check() ? ip.getPort() : cluster.getDefCkport();
-                URL host = new URL("http://" + ip.getIp() + ":" + ckPort);
-                URL target = new URL(host, healthChecker.getPath());
-
-                AsyncHttpClient.BoundRequestBuilder builder = asyncHttpClient.prepareGet(target.toString());
-                Map<String, String> customHeaders = healthChecker.getCustomHeaders();
-                for (Map.Entry<String, String> entry : customHeaders.entrySet()) {
-                    if ("Host".equals(entry.getKey())) {
-                        builder.setVirtualHost(entry.getValue());
-                        continue;
+                String target = ip.getIp() + ":" + ckPort;
+                if (!acquire(target)) {
+                    // the target is still busy answering other probes, check it next round:
+                    ip.setBeingChecked(false);
+                    if (SRV_LOG.isDebugEnabled()) {
+                        SRV_LOG.debug("http check, too many checks in flight, target: {}", target);
                     }
-
-                    builder.setHeader(entry.getKey(), entry.getValue());
+                    continue;
                 }
 
-                builder.execute(new HttpHealthCheckCallback(ip, task));
+                try {
+                    if (template == null) {
+                        template = getTemplate(task, (AbstractHealthChecker.Http) cluster.getHealthChecker());
+                    }
+
+                    template.prepare(target).execute(new HttpHealthCheckCallback(ip, task, target));
+                } catch (Throwable e) {
+                    release(target);
+                    throw e;
+                }
                 MetricsMonitor.getHttpHealthCheckMonitor().incrementAndGet();
             } catch (Throwable e) {
                 ip.setCheckRT(switchDomain.getHttpHealthParams().getMax());
@@ -140,20 +183,185 @@ public class HttpHealthCheckProcessor implements HealthCheckProcessor {
         }
     }
 
+    /**
+     * @return count of probes sent over a pooled connection
+     */
+    public long getReusedCount() {
+        return connectionsPool.reused.get();
+    }
+
+    /**
+     * @return count of probes sent, over a pooled connection or a new one
+     */
+    public long getRequestCount() {
+        return connectionsPool.reused.get() + connectionsPool.opened.get();
+    }
+
+    RequestTemplate getTemplate(HealthCheckTask task, AbstractHealthChecker.Http healthChecker)
+        throws CloneNotSupportedException {
+
+        RequestTemplate template = templates.getIfPresent(task);
+        if (template == null || !template.healthChecker.equals(healthChecker)) {
+            template = new RequestTemplate(healthChecker.clone());
+            templates.put(task, template);
+        }
+        return template;
+    }
+
+    private boolean acquire(String target) {
+        final boolean[] acquired = new boolean[1];
+        inFlight.compute(target, (key, count) -> {
+            int running = count == null ? 0 : count;
+            if (running >= MAX_IN_FLIGHT_PER_TARGET) {
+                return count;
+            }
+            acquired[0] = true;
+            return running + 1;
+        });
+        return acquired[0];
+    }
+
+    private void release(String target) {
+        inFlight.computeIfPresent(target, (key, count) -> count <= 1 ? null : count - 1);
+    }
+
+    /**
+     * Request of a cluster's HTTP check, built once and bound to a target on every probe.
+     */
+    static class RequestTemplate {
+
+        private final AbstractHealthChecker.Http healthChecker;
+
+        private final boolean head;
+
+        /**
+         * path relative to the target, or null if the checker points somewhere else
+         */
+        private final String path;
+
+        private final String virtualHost;
+
+        private final String[][] headers;
+
+        RequestTemplate(AbstractHealthChecker.Http healthChecker) {
+            this.healthChecker = healthChecker;
+            this.head = AbstractHealthChecker.Http.METHOD_HEAD.equalsIgnoreCase(healthChecker.getMethod());
+
+            String path = StringUtils.defaultString(healthChecker.getPath());
+            if (path.startsWith("//") || path.contains("://")) {
+                // resolved against every target the way URL does
+                this.path = null;
+            } else if (path.isEmpty() || path.startsWith("/")) {
+                this.path = path;
+            } else {
+                this.path = "/" + path;
+            }
+
+            String virtualHost = null;
+            List<String[]> headers = new ArrayList<>();
+            for (Map.Entry<String, String> entry : healthChecker.getCustomHeaders().entrySet()) {
+                if ("Host".equals(entry.getKey())) {
+                    virtualHost = entry.getValue();
+                    continue;
+                }
+
+                headers.add(new String[]{entry.getKey(), entry.getValue()});
+            }
+            this.virtualHost = virtualHost;
+            this.headers = headers.toArray(new String[0][]);
+        }
+
+        String url(String target) throws MalformedURLException {
+            if (path == null) {
+                return new URL(new URL("http://" + target), healthChecker.getPath()).toString();
+            }
+            return "http://" + target + path;
+        }
+
+        AsyncHttpClient.BoundRequestBuilder prepare(String target) throws MalformedURLException {
+            String url = url(target);
+            AsyncHttpClient.BoundRequestBuilder builder = head ? asyncHttpClient.prepareHead(url) : asyncHttpClient.prepareGet(url);
+
+            if (virtualHost != null) {
+                builder.setVirtualHost(virtualHost);
+            }
+            for (String[] header : headers) {
+                builder.setHeader(header[0], header[1]);
+            }
+            return builder;
+        }
+    }
+
+    /**
+     * Keep-alive pool of the probe client, counting the probes which found a pooled connection.
+     */
+    private static class ProbeConnectionsPool implements ConnectionsPool<String, Channel> {
+
+        private final ConnectionsPool<String, Channel> delegate;
+
+        private final AtomicLong reused = new AtomicLong();
+
+        private final AtomicLong opened = new AtomicLong();
+
+        ProbeConnectionsPool(ConnectionsPool<String, Channel> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean offer(String uri, Channel connection) {
+            return delegate.offer(uri, connection);
+        }
+
+        @Override
+        public Channel poll(String uri) {
+            Channel channel = delegate.poll(uri);
+            if (channel != null) {
+                reused.incrementAndGet();
+            } else {
+                opened.incrementAndGet();
+            }
+            return channel;
+        }
+
+        @Override
+        public boolean removeAll(Channel connection) {
+            return delegate.removeAll(connection);
+        }
+
+        @Override
+        public boolean canCacheConnection() {
+            return delegate.canCacheConnection();
+        }
+
+        @Override
+        public void destroy() {
+            delegate.destroy();
+        }
+    }
+
     private class HttpHealthCheckCallback extends AsyncCompletionHandler<Integer> {
         private Instance ip;
         private HealthCheckTask task;
+        private String target;
 
         private long startTime = System.currentTimeMillis();
 
-        public HttpHealthCheckCallback(Instance ip, HealthCheckTask task) {
+        public HttpHealthCheckCallback(Instance ip, HealthCheckTask task, String target) {
             this.ip = ip;
             this.task = task;
+            this.target = target;
+        }
+
+        private void finish() {
+            long elapsed = System.currentTimeMillis() - startTime;
+            release(target);
+            ip.setCheckRT(elapsed);
+            MetricsMonitor.getHttpHealthCheckTimer().record(elapsed, TimeUnit.MILLISECONDS);
         }
 
         @Override
         public Integer onCompleted(Response response) throws Exception {
-            ip.setCheckRT(System.currentTimeMillis() - startTime);
+            finish();
 
             int httpCode = response.getStatusCode();
             if (HttpURLConnection.HTTP_OK == httpCode) {
@@ -174,7 +382,7 @@ public class HttpHealthCheckProcessor implements HealthCheckProcessor {
 
         @Override
         public void onThrowable(Throwable t) {
-            ip.setCheckRT(System.currentTimeMillis() - startTime);
+            finish();
 
             Throwable cause = t;
             int maxStackDepth = 50;
@@ -16,7 +16,6 @@
 package com.alibaba.nacos.naming.healthcheck;
 
 import com.alibaba.nacos.api.naming.pojo.AbstractHealthChecker;
-import com.alibaba.nacos.naming.core.Cluster;
 import com.alibaba.nacos.naming.core.Instance;
 import com.alibaba.nacos.naming.misc.Loggers;
 import com.alibaba.nacos.naming.misc.SwitchDomain;
@@ -32,13 +31,22 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.alibaba.nacos.naming.misc.Loggers.SRV_LOG;
 
 /**
  * MYSQL health check processor
+ * <p>
+ * Connections are pooled per database target, that is per address and credentials, and shared by
+ * all services checking the target, with a bounded count of checks running on a target at once.
+ * Targets slow to connect or failing to are isolated on their own executor until they connect in
+ * time again, so they can not hold the threads checking healthy targets.
  *
  * @author nacos
  */
@@ -56,11 +64,22 @@ public class MysqlHealthCheckProcessor implements HealthCheckProcessor {
     private static final String CHECK_MYSQL_MASTER_SQL = "show global variables where variable_name='read_only'";
     private static final String MYSQL_SLAVE_READONLY = "ON";
 
-    private static ConcurrentMap<String, Connection> CONNECTION_POOL
-            = new ConcurrentHashMap<String, Connection>();
+    /**
+     * Max count of checks running on a target at once, also the max count of its idle connections
+     */
+    static final int MAX_CONCURRENCY_PER_TARGET = 2;
+
+    /**
+     * Count of consecutive slow or failed connects isolating a target
+     */
+    static final int SLOW_CONNECTS_TO_ISOLATE = 3;
+
+    private static final long TARGET_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10L);
 
     private static ExecutorService EXECUTOR;
 
+    private static ExecutorService ISOLATED_EXECUTOR;
+
     static {
 
         int processorCount = Runtime.getRuntime().availableProcessors();
@@ -76,8 +95,42 @@ public class MysqlHealthCheckProcessor implements HealthCheckProcessor {
                     }
                 }
         );
+
+        ISOLATED_EXECUTOR
+                = Executors.newFixedThreadPool(1,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r);
+                        thread.setDaemon(true);
+                        thread.setName("com.nacos.mysql.checker.isolated");
+                        return thread;
+                    }
+                }
+        );
     }
 
+    private final ConcurrentMap<String, MysqlTarget> targets = new ConcurrentHashMap<>();
+
+    private volatile long lastCleanMillis = System.currentTimeMillis();
+
+    private ConnectionFactory connectionFactory = new ConnectionFactory() {
+        @Override
+        public Connection connect(String ip, int port, AbstractHealthChecker.Mysql config) throws SQLException {
+            MysqlDataSource dataSource = new MysqlDataSource();
+            dataSource.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            dataSource.setSocketTimeout(CONNECT_TIMEOUT_MS);
+            dataSource.setUser(config.getUser());
+            dataSource.setPassword(config.getPwd());
+            dataSource.setLoginTimeout(1);
+
+            dataSource.setServerName(ip);
+            dataSource.setPort(port);
+
+            return dataSource.getConnection();
+        }
+    };
+
     public MysqlHealthCheckProcessor() {
     }
 
@@ -88,13 +141,17 @@ public class MysqlHealthCheckProcessor implements HealthCheckProcessor {
 
     @Override
     public void process(HealthCheckTask task) {
-        List<Instance> ips = task.getCluster().allIPs(false);
+        List<Instance> ips = task.getDueInstances();
 
         SRV_LOG.debug("mysql check, ips:" + ips);
         if (CollectionUtils.isEmpty(ips)) {
             return;
         }
 
+        cleanIdleTargets();
+
+        AbstractHealthChecker.Mysql config = (AbstractHealthChecker.Mysql) task.getCluster().getHealthChecker();
+
         for (Instance ip : ips) {
             try {
 
@@ -113,7 +170,8 @@ public class MysqlHealthCheckProcessor implements HealthCheckProcessor {
                     continue;
                 }
 
-                EXECUTOR.execute(new MysqlCheckTask(ip, task));
+                MysqlTarget target = getTarget(ip, config);
+                (target.isIsolated() ? ISOLATED_EXECUTOR : EXECUTOR).execute(new MysqlCheckTask(ip, task, config, target));
                 MetricsMonitor.getMysqlHealthCheckMonitor().incrementAndGet();
             } catch (Exception e) {
                 ip.setCheckRT(switchDomain.getMysqlHealthParams().getMax());
@@ -123,55 +181,188 @@ public class MysqlHealthCheckProcessor implements HealthCheckProcessor {
         }
     }
 
+    MysqlTarget getTarget(Instance ip, AbstractHealthChecker.Mysql config) {
+        String key = ip.getIp() + ":" + ip.getPort() + ":" + config.getUser() + ":" + String.valueOf(config.getPwd()).hashCode();
+        MysqlTarget target = targets.get(key);
+        if (target == null) {
+            target = new MysqlTarget(ip.getIp(), ip.getPort());
+            MysqlTarget old = targets.putIfAbsent(key, target);
+            if (old != null) {
+                target = old;
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Close connections of targets no longer checked, at most once per minute
+     */
+    private void cleanIdleTargets() {
+        long now = System.currentTimeMillis();
+        if (now - lastCleanMillis < TimeUnit.MINUTES.toMillis(1L)) {
+            return;
+        }
+        lastCleanMillis = now;
+
+        Iterator<Map.Entry<String, MysqlTarget>> iterator = targets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            MysqlTarget target = iterator.next().getValue();
+            if (now - target.lastUsedMillis > TARGET_IDLE_MILLIS) {
+                iterator.remove();
+                target.close();
+            }
+        }
+    }
+
+    /**
+     * Opens connections to the database of an instance
+     */
+    interface ConnectionFactory {
+
+        Connection connect(String ip, int port, AbstractHealthChecker.Mysql config) throws SQLException;
+    }
+
+    class MysqlTarget {
+
+        private final String ip;
+
+        private final int port;
+
+        private final Semaphore permits = new Semaphore(MAX_CONCURRENCY_PER_TARGET);
+
+        private final Queue<Connection> idleConnections = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger slowConnects = new AtomicInteger();
+
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        private volatile boolean closed = false;
+
+        MysqlTarget(String ip, int port) {
+            this.ip = ip;
+            this.port = port;
+        }
+
+        boolean isIsolated() {
+            return slowConnects.get() >= SLOW_CONNECTS_TO_ISOLATE;
+        }
+
+        int getRunningCount() {
+            return MAX_CONCURRENCY_PER_TARGET - permits.availablePermits();
+        }
+
+        /**
+         * @return an idle connection, or null if there is none
+         */
+        Connection pollIdle() throws SQLException {
+            lastUsedMillis = System.currentTimeMillis();
+
+            Connection connection;
+            while ((connection = idleConnections.poll()) != null) {
+                if (!connection.isClosed()) {
+                    return connection;
+                }
+            }
+            return null;
+        }
+
+        Connection connect(AbstractHealthChecker.Mysql config) throws SQLException {
+            lastUsedMillis = System.currentTimeMillis();
+
+            long start = System.currentTimeMillis();
+            Connection connection;
+            try {
+                connection = connectionFactory.connect(ip, port, config);
+            } catch (SQLException e) {
+                slowConnects.incrementAndGet();
+                throw e;
+            }
+
+            if (System.currentTimeMillis() - start > CONNECT_TIMEOUT_MS) {
+                slowConnects.incrementAndGet();
+            } else {
+                slowConnects.set(0);
+            }
+            return connection;
+        }
+
+        void release(Connection connection) {
+            if (closed || idleConnections.size() >= MAX_CONCURRENCY_PER_TARGET) {
+                discard(connection);
+                return;
+            }
+
+            idleConnections.offer(connection);
+            // the target closed meanwhile has already drained its idle connections:
+            if (closed && idleConnections.remove(connection)) {
+                discard(connection);
+            }
+        }
+
+        void discard(Connection connection) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                Loggers.SRV_LOG.warn("[MYSQL-CHECK] failed to close connection to {}:{}, {}", ip, port, e.getMessage());
+            }
+        }
+
+        void close() {
+            closed = true;
+
+            Connection connection;
+            while ((connection = idleConnections.poll()) != null) {
+                discard(connection);
+            }
+        }
+    }
+
     private class MysqlCheckTask implements Runnable {
         private Instance ip;
         private HealthCheckTask task;
+        private AbstractHealthChecker.Mysql config;
+        private MysqlTarget target;
         private long startTime = System.currentTimeMillis();
+        private boolean reusable = false;
 
-        public MysqlCheckTask(Instance ip, HealthCheckTask task) {
+        public MysqlCheckTask(Instance ip, HealthCheckTask task, AbstractHealthChecker.Mysql config, MysqlTarget target) {
             this.ip = ip;
             this.task = task;
+            this.config = config;
+            this.target = target;
         }
 
         @Override
         public void run() {
 
-            Statement statement = null;
-            ResultSet resultSet = null;
-
-            try {
-
-                Cluster cluster = task.getCluster();
-                String key = cluster.getService().getName() + ":" + cluster.getName() + ":" + ip.getIp() + ":" + ip.getPort();
-                Connection connection = CONNECTION_POOL.get(key);
-                AbstractHealthChecker.Mysql config = (AbstractHealthChecker.Mysql) cluster.getHealthChecker();
+            if (!target.permits.tryAcquire()) {
+                // other checks of the same database are running, skip this round:
+                ip.setBeingChecked(false);
+                healthCheckCommon.reEvaluateCheckRT(task.getCheckRTNormalized() * 2, task, switchDomain.getMysqlHealthParams());
+                return;
+            }
 
-                if (connection == null || connection.isClosed()) {
-                    MysqlDataSource dataSource = new MysqlDataSource();
-                    dataSource.setConnectTimeout(CONNECT_TIMEOUT_MS);
-                    dataSource.setSocketTimeout(CONNECT_TIMEOUT_MS);
-                    dataSource.setUser(config.getUser());
-                    dataSource.setPassword(config.getPwd());
-                    dataSource.setLoginTimeout(1);
+            Connection connection = null;
 
-                    dataSource.setServerName(ip.getIp());
-                    dataSource.setPort(ip.getPort());
+            try {
 
-                    connection = dataSource.getConnection();
-                    CONNECTION_POOL.put(key, connection);
+                connection = target.pollIdle();
+                if (connection != null) {
+                    try {
+                        check(connection);
+                    } catch (SQLException e) {
+                        // the idle connection may have been closed by the database, retry once on a new one:
+                        SRV_LOG.debug("[MYSQL-CHECK] idle connection to {}:{} failed, {}",
+                            ip.getIp(), ip.getPort(), e.getMessage());
+                        target.discard(connection);
+                        connection = null;
+                        reusable = false;
+                    }
                 }
 
-                statement = connection.createStatement();
-                statement.setQueryTimeout(1);
-
-                resultSet = statement.executeQuery(config.getCmd());
-                int resultColumnIndex = 2;
-
-                if (CHECK_MYSQL_MASTER_SQL.equals(config.getCmd())) {
-                    resultSet.next();
-                    if (MYSQL_SLAVE_READONLY.equals(resultSet.getString(resultColumnIndex))) {
-                        throw new IllegalStateException("current node is slave!");
-                    }
+                if (connection == null) {
+                    connection = target.connect(config);
+                    check(connection);
                 }
 
                 healthCheckCommon.checkOK(ip, task, "mysql:+ok");
@@ -201,7 +392,38 @@ public class MysqlHealthCheckProcessor implements HealthCheckProcessor {
                 healthCheckCommon.checkFail(ip, task, "mysql:error:" + t.getMessage());
                 healthCheckCommon.reEvaluateCheckRT(switchDomain.getMysqlHealthParams().getMax(), task, switchDomain.getMysqlHealthParams());
             } finally {
-                ip.setCheckRT(System.currentTimeMillis() - startTime);
+                long cost = System.currentTimeMillis() - startTime;
+                ip.setCheckRT(cost);
+                MetricsMonitor.getMysqlHealthCheckTimer().record(cost, TimeUnit.MILLISECONDS);
+                if (connection != null) {
+                    if (reusable) {
+                        target.release(connection);
+                    } else {
+                        target.discard(connection);
+                    }
+                }
+                target.permits.release();
+            }
+        }
+
+        private void check(Connection connection) throws SQLException {
+            Statement statement = null;
+            ResultSet resultSet = null;
+            try {
+                statement = connection.createStatement();
+                statement.setQueryTimeout(1);
+
+                resultSet = statement.executeQuery(config.getCmd());
+                reusable = true;
+                int resultColumnIndex = 2;
+
+                if (CHECK_MYSQL_MASTER_SQL.equals(config.getCmd())) {
+                    resultSet.next();
+                    if (MYSQL_SLAVE_READONLY.equals(resultSet.getString(resultColumnIndex))) {
+                        throw new IllegalStateException("current node is slave!");
+                    }
+                }
+            } finally {
                 if (statement != null) {
                     try {
                         statement.close();
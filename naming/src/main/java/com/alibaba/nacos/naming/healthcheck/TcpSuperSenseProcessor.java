@@ -19,6 +19,7 @@ import com.alibaba.nacos.naming.core.Cluster;
 import com.alibaba.nacos.naming.core.Instance;
 import com.alibaba.nacos.naming.misc.Loggers;
 import com.alibaba.nacos.naming.misc.SwitchDomain;
+import com.alibaba.nacos.naming.misc.TimingWheel;
 import com.alibaba.nacos.naming.monitor.MetricsMonitor;
 import org.apache.commons.collections.CollectionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,22 +27,32 @@ import org.springframework.stereotype.Component;
 
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.*;
-import java.util.concurrent.*;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.alibaba.nacos.naming.misc.Loggers.SRV_LOG;
 
 /**
  * TCP health check processor
+ * <p>
+ * Checks are spread over a few reactor threads, each owning a selector. A reactor blocks in
+ * {@link Selector#select()} until a connect completes or a check is submitted, and handles both on
+ * its own thread. Connect timeouts are kept on a timing wheel, so an idle processor costs no CPU.
  *
  * @author nacos
  */
 @Component
-public class TcpSuperSenseProcessor implements HealthCheckProcessor, Runnable {
+public class TcpSuperSenseProcessor implements HealthCheckProcessor {
 
     @Autowired
     private HealthCheckCommon healthCheckCommon;
@@ -51,53 +62,38 @@ public class TcpSuperSenseProcessor implements HealthCheckProcessor, Runnable {
 
     public static final int CONNECT_TIMEOUT_MS = 500;
 
-    private Map<String, BeatKey> keyMap = new ConcurrentHashMap<>();
-
-    private BlockingQueue<Beat> taskQueue = new LinkedBlockingQueue<Beat>();
-
     /**
      * this value has been carefully tuned, do not modify unless you're confident
      */
     private static final int NIO_THREAD_COUNT = Runtime.getRuntime().availableProcessors() <= 1 ?
         1 : Runtime.getRuntime().availableProcessors() / 2;
 
-    /**
-     * because some hosts doesn't support keep-alive connections, disabled temporarily
-     */
-    private static final long TCP_KEEP_ALIVE_MILLIS = 0;
+    private static final int MAX_WAIT_TIME_MILLISECONDS = 500;
 
-    private static ScheduledExecutorService TCP_CHECK_EXECUTOR
-        = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
-        @Override
-        public Thread newThread(Runnable r) {
-            Thread t = new Thread(r);
-            t.setName("nacos.naming.tcp.check.worker");
-            t.setDaemon(true);
-            return t;
-        }
-    });
-
-    private static ScheduledExecutorService NIO_EXECUTOR
-        = Executors.newScheduledThreadPool(NIO_THREAD_COUNT,
-        new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread thread = new Thread(r);
-                thread.setDaemon(true);
-                thread.setName("nacos.supersense.checker");
-                return thread;
-            }
-        }
-    );
+    private static final TimingWheel TIMEOUT_WHEEL
+        = new TimingWheel("com.alibaba.nacos.naming.tcp.check.timeout", 10L, 512);
+
+    static {
+        TIMEOUT_WHEEL.start();
+    }
 
-    private Selector selector;
+    private final Reactor[] reactors;
+
+    private final AtomicInteger nextReactor = new AtomicInteger();
+
+    private final AtomicLong finishedCount = new AtomicLong();
 
     public TcpSuperSenseProcessor() {
         try {
-            selector = Selector.open();
-
-            TCP_CHECK_EXECUTOR.submit(this);
+            reactors = new Reactor[NIO_THREAD_COUNT];
+            for (int i = 0; i < reactors.length; i++) {
+                reactors[i] = new Reactor(Selector.open());
 
+                Thread thread = new Thread(reactors[i]);
+                thread.setName("nacos.naming.tcp.check.reactor-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
         } catch (Exception e) {
             throw new IllegalStateException("Error while initializing SuperSense(TM).");
         }
@@ -105,7 +101,7 @@ public class TcpSuperSenseProcessor implements HealthCheckProcessor, Runnable {
 
     @Override
     public void process(HealthCheckTask task) {
-        List<Instance> ips = task.getCluster().allIPs(false);
+        List<Instance> ips = task.getDueInstances();
 
         if (CollectionUtils.isEmpty(ips)) {
             return;
@@ -132,99 +128,130 @@ public class TcpSuperSenseProcessor implements HealthCheckProcessor, Runnable {
             }
 
             Beat beat = new Beat(ip, task);
-            taskQueue.add(beat);
+            reactors[(nextReactor.getAndIncrement() & Integer.MAX_VALUE) % reactors.length].submit(beat);
             MetricsMonitor.getTcpHealthCheckMonitor().incrementAndGet();
         }
     }
 
-    private void processTask() throws Exception {
-        Collection<Callable<Void>> tasks = new LinkedList<>();
-        do {
-            Beat beat = taskQueue.poll(CONNECT_TIMEOUT_MS / 2, TimeUnit.MILLISECONDS);
-            if (beat == null) {
-                return;
-            }
+    /**
+     * @return count of checks finished, whatever their results
+     */
+    public long getFinishedCount() {
+        return finishedCount.get();
+    }
+
+    private class Reactor implements Runnable {
 
-            tasks.add(new TaskProcessor(beat));
-        } while (taskQueue.size() > 0 && tasks.size() < NIO_THREAD_COUNT * 64);
+        private final Selector selector;
 
-        for (Future<?> f : NIO_EXECUTOR.invokeAll(tasks)) {
-            f.get();
+        private final Queue<Beat> submitted = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Whether the selector has been woken up since the reactor last went to select
+         */
+        private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+        Reactor(Selector selector) {
+            this.selector = selector;
         }
-    }
 
-    @Override
-    public void run() {
-        while (true) {
-            try {
-                processTask();
+        void submit(Beat beat) {
+            submitted.offer(beat);
+            if (wakenUp.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
 
-                int readyCount = selector.selectNow();
-                if (readyCount <= 0) {
-                    continue;
-                }
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    wakenUp.set(false);
+                    if (submitted.isEmpty()) {
+                        selector.select();
+                    } else {
+                        selector.selectNow();
+                    }
+
+                    Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                    while (iter.hasNext()) {
+                        SelectionKey key = iter.next();
+                        iter.remove();
 
-                Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
-                while (iter.hasNext()) {
-                    SelectionKey key = iter.next();
-                    iter.remove();
+                        finishConnect(key);
+                    }
 
-                    NIO_EXECUTOR.execute(new PostProcessor(key));
+                    Beat beat;
+                    while ((beat = submitted.poll()) != null) {
+                        connect(beat);
+                    }
+                } catch (Throwable e) {
+                    SRV_LOG.error("[HEALTH-CHECK] error while processing NIO task", e);
                 }
-            } catch (Throwable e) {
-                SRV_LOG.error("[HEALTH-CHECK] error while processing NIO task", e);
             }
         }
-    }
 
-    public class PostProcessor implements Runnable {
-        SelectionKey key;
+        private void connect(Beat beat) {
+            long waited = System.currentTimeMillis() - beat.getStartTime();
+            if (waited > MAX_WAIT_TIME_MILLISECONDS) {
+                Loggers.SRV_LOG.warn("beat task waited too long: " + waited + "ms");
+            }
+
+            SocketChannel channel = null;
+            try {
+                Instance instance = beat.getIp();
+                Cluster cluster = beat.getTask().getCluster();
+
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                // only by setting this can we make the socket close event asynchronous
+                channel.socket().setSoLinger(false, -1);
+                channel.socket().setReuseAddress(true);
+                channel.socket().setKeepAlive(true);
+                channel.socket().setTcpNoDelay(true);
+
+                beat.setStartTime(System.currentTimeMillis());
+                beat.setChannel(channel);
+
+                int port = cluster.isUseIPPort4Check() ? instance.getPort() : cluster.getDefCkport();
+                if (channel.connect(new InetSocketAddress(instance.getIp(), port))) {
+                    beat.finishCheck(true, false, System.currentTimeMillis() - beat.getStartTime(), "tcp:ok+");
+                    return;
+                }
+
+                channel.register(selector, SelectionKey.OP_CONNECT, beat);
+                beat.setTimeout(TIMEOUT_WHEEL.schedule(new TimeOutTask(beat), CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            } catch (Exception e) {
+                beat.finishCheck(false, false, switchDomain.getTcpHealthParams().getMax(), "tcp:error:" + e.getMessage());
 
-        public PostProcessor(SelectionKey key) {
-            this.key = key;
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (Exception ignore) {
+                    }
+                }
+            }
         }
 
-        @Override
-        public void run() {
+        private void finishConnect(SelectionKey key) {
             Beat beat = (Beat) key.attachment();
             SocketChannel channel = (SocketChannel) key.channel();
             try {
                 if (!beat.isHealthy()) {
                     //invalid beat means this server is no longer responsible for the current service
-                    key.cancel();
-                    key.channel().close();
-
                     beat.finishCheck();
                     return;
                 }
 
-                if (key.isValid() && key.isConnectable()) {
+                if (key.isValid() && key.isConnectable() && channel.finishConnect()) {
                     //connected
-                    channel.finishConnect();
-                    beat.finishCheck(true, false, System.currentTimeMillis() - beat.getTask().getStartTime(), "tcp:ok+");
-                }
-
-                if (key.isValid() && key.isReadable()) {
-                    //disconnected
-                    ByteBuffer buffer = ByteBuffer.allocate(128);
-                    if (channel.read(buffer) == -1) {
-                        key.cancel();
-                        key.channel().close();
-                    } else {
-                        // not terminate request, ignore
-                    }
+                    beat.finishCheck(true, false, System.currentTimeMillis() - beat.getStartTime(), "tcp:ok+");
                 }
             } catch (ConnectException e) {
                 // unable to connect, possibly port not opened
                 beat.finishCheck(false, true, switchDomain.getTcpHealthParams().getMax(), "tcp:unable2connect:" + e.getMessage());
             } catch (Exception e) {
                 beat.finishCheck(false, false, switchDomain.getTcpHealthParams().getMax(), "tcp:error:" + e.getMessage());
-
-                try {
-                    key.cancel();
-                    key.channel().close();
-                } catch (Exception ignore) {
-                }
             }
         }
     }
@@ -236,6 +263,15 @@ public class TcpSuperSenseProcessor implements HealthCheckProcessor, Runnable {
 
         long startTime = System.currentTimeMillis();
 
+        SocketChannel channel;
+
+        TimingWheel.Timeout timeout;
+
+        /**
+         * Set once the check is finished, by a connect result or by the timeout, whichever comes first
+         */
+        final AtomicBoolean finished = new AtomicBoolean();
+
         Beat(Instance ip, HealthCheckTask task) {
             this.ip = ip;
             this.task = task;
@@ -257,6 +293,14 @@ public class TcpSuperSenseProcessor implements HealthCheckProcessor, Runnable {
             return task;
         }
 
+        public void setChannel(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        public void setTimeout(TimingWheel.Timeout timeout) {
+            this.timeout = timeout;
+        }
+
         public boolean isHealthy() {
             return System.currentTimeMillis() - startTime < TimeUnit.SECONDS.toMillis(30L);
         }
@@ -265,11 +309,20 @@ public class TcpSuperSenseProcessor implements HealthCheckProcessor, Runnable {
          * finish check only, no ip state will be changed
          */
         public void finishCheck() {
-            ip.setBeingChecked(false);
+            if (finish()) {
+                ip.setBeingChecked(false);
+            }
         }
 
         public void finishCheck(boolean success, boolean now, long rt, String msg) {
-            ip.setCheckRT(System.currentTimeMillis() - startTime);
+            if (!finish()) {
+                return;
+            }
+
+            long cost = System.currentTimeMillis() - startTime;
+            ip.setCheckRT(cost);
+            finishedCount.incrementAndGet();
+            MetricsMonitor.getTcpHealthCheckTimer().record(cost, TimeUnit.MILLISECONDS);
 
             if (success) {
                 healthCheckCommon.checkOK(ip, task, msg);
@@ -279,13 +332,35 @@ public class TcpSuperSenseProcessor implements HealthCheckProcessor, Runnable {
                 } else {
                     healthCheckCommon.checkFail(ip, task, msg);
                 }
-
-                keyMap.remove(task.toString());
             }
 
             healthCheckCommon.reEvaluateCheckRT(rt, task, switchDomain.getTcpHealthParams());
         }
 
+        /**
+         * Release the connection and the timeout of this check
+         *
+         * @return false if the check has been finished already
+         */
+        private boolean finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+
+            if (timeout != null) {
+                timeout.cancel();
+            }
+
+            if (channel != null) {
+                try {
+                    // closing the channel cancels its key as well:
+                    channel.close();
+                } catch (Exception ignore) {
+                }
+            }
+            return true;
+        }
+
         @Override
         public String toString() {
             return task.getCluster().getService().getName() + ":"
@@ -309,112 +384,16 @@ public class TcpSuperSenseProcessor implements HealthCheckProcessor, Runnable {
         }
     }
 
-    private static class BeatKey {
-        public SelectionKey key;
-        public long birthTime;
-
-        public BeatKey(SelectionKey key) {
-            this.key = key;
-            this.birthTime = System.currentTimeMillis();
-        }
-    }
-
     private static class TimeOutTask implements Runnable {
-        SelectionKey key;
-
-        public TimeOutTask(SelectionKey key) {
-            this.key = key;
-        }
-
-        @Override
-        public void run() {
-            if (key != null && key.isValid()) {
-                SocketChannel channel = (SocketChannel) key.channel();
-                Beat beat = (Beat) key.attachment();
-
-                if (channel.isConnected()) {
-                    return;
-                }
-
-                try {
-                    channel.finishConnect();
-                } catch (Exception ignore) {
-                }
-
-                try {
-                    beat.finishCheck(false, false, beat.getTask().getCheckRTNormalized() * 2, "tcp:timeout");
-                    key.cancel();
-                    key.channel().close();
-                } catch (Exception ignore) {
-                }
-            }
-        }
-    }
-
-    private class TaskProcessor implements Callable<Void> {
-
-        private static final int MAX_WAIT_TIME_MILLISECONDS = 500;
         Beat beat;
 
-        public TaskProcessor(Beat beat) {
+        public TimeOutTask(Beat beat) {
             this.beat = beat;
         }
 
         @Override
-        public Void call() {
-            long waited = System.currentTimeMillis() - beat.getStartTime();
-            if (waited > MAX_WAIT_TIME_MILLISECONDS) {
-                Loggers.SRV_LOG.warn("beat task waited too long: " + waited + "ms");
-            }
-
-            SocketChannel channel = null;
-            try {
-                Instance instance = beat.getIp();
-                Cluster cluster = beat.getTask().getCluster();
-
-                BeatKey beatKey = keyMap.get(beat.toString());
-                if (beatKey != null && beatKey.key.isValid()) {
-                    if (System.currentTimeMillis() - beatKey.birthTime < TCP_KEEP_ALIVE_MILLIS) {
-                        instance.setBeingChecked(false);
-                        return null;
-                    }
-
-                    beatKey.key.cancel();
-                    beatKey.key.channel().close();
-                }
-
-                channel = SocketChannel.open();
-                channel.configureBlocking(false);
-                // only by setting this can we make the socket close event asynchronous
-                channel.socket().setSoLinger(false, -1);
-                channel.socket().setReuseAddress(true);
-                channel.socket().setKeepAlive(true);
-                channel.socket().setTcpNoDelay(true);
-
-                int port = cluster.isUseIPPort4Check() ? instance.getPort() : cluster.getDefCkport();
-                channel.connect(new InetSocketAddress(instance.getIp(), port));
-
-                SelectionKey key
-                    = channel.register(selector, SelectionKey.OP_CONNECT | SelectionKey.OP_READ);
-                key.attach(beat);
-                keyMap.put(beat.toString(), new BeatKey(key));
-
-                beat.setStartTime(System.currentTimeMillis());
-
-                NIO_EXECUTOR.schedule(new TimeOutTask(key),
-                    CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            } catch (Exception e) {
-                beat.finishCheck(false, false, switchDomain.getTcpHealthParams().getMax(), "tcp:error:" + e.getMessage());
-
-                if (channel != null) {
-                    try {
-                        channel.close();
-                    } catch (Exception ignore) {
-                    }
-                }
-            }
-
-            return null;
+        public void run() {
+            beat.finishCheck(false, false, beat.getTask().getCheckRTNormalized() * 2, "tcp:timeout");
         }
     }
 
@@ -42,6 +42,33 @@ public class GlobalConfig {
     @Value("${nacos.naming.expireInstance:true}")
     private boolean expireInstance = true;
 
+    @Value("${nacos.naming.distro.binarySerializer:true}")
+    private boolean binarySerializer = true;
+
+    @Value("${nacos.naming.distro.deltaSync:true}")
+    private boolean deltaSync = true;
+
+    @Value("${nacos.naming.distro.deltaSyncFullInterval:32}")
+    private int deltaSyncFullInterval = 32;
+
+    @Value("${nacos.naming.push.channelCount:0}")
+    private int pushChannelCount = 0;
+
+    @Value("${nacos.naming.push.clientRate:100}")
+    private double pushClientRate = 100D;
+
+    @Value("${nacos.naming.push.clientBurst:100}")
+    private int pushClientBurst = 100;
+
+    @Value("${nacos.naming.push.delta:true}")
+    private boolean pushDelta = true;
+
+    @Value("${nacos.naming.push.minDelay:1000}")
+    private long pushMinDelay = 1000L;
+
+    @Value("${nacos.naming.push.maxDelay:3000}")
+    private long pushMaxDelay = 3000L;
+
     public int getTaskDispatchPeriod() {
         return taskDispatchPeriod;
     }
@@ -61,4 +88,40 @@ public class GlobalConfig {
     public boolean isExpireInstance() {
         return expireInstance;
     }
+
+    public boolean isBinarySerializer() {
+        return binarySerializer;
+    }
+
+    public boolean isDeltaSync() {
+        return deltaSync;
+    }
+
+    public int getDeltaSyncFullInterval() {
+        return deltaSyncFullInterval;
+    }
+
+    public int getPushChannelCount() {
+        return pushChannelCount;
+    }
+
+    public double getPushClientRate() {
+        return pushClientRate;
+    }
+
+    public int getPushClientBurst() {
+        return pushClientBurst;
+    }
+
+    public boolean isPushDelta() {
+        return pushDelta;
+    }
+
+    public long getPushMinDelay() {
+        return pushMinDelay;
+    }
+
+    public long getPushMaxDelay() {
+        return pushMaxDelay;
+    }
 }
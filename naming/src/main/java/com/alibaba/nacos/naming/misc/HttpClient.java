@@ -26,16 +26,21 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.http.*;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -43,6 +48,7 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
@@ -389,6 +395,85 @@ public class HttpClient {
         }
     }
 
+    public static BinaryHttpResult httpPutLargeBinary(String url, Map<String, String> headers, byte[] content,
+                                                      String contentType) {
+        HttpPut httpPut = new HttpPut(url);
+        httpPut.setEntity(new ByteArrayEntity(content, ContentType.create(contentType)));
+        return executeBinary(httpPut, headers);
+    }
+
+    public static BinaryHttpResult httpGetLargeBinary(String url, Map<String, String> headers, String content) {
+        try {
+            HttpGetWithEntity httpGetWithEntity = new HttpGetWithEntity();
+            httpGetWithEntity.setURI(new URI(url));
+            if (content != null) {
+                httpGetWithEntity.setEntity(new StringEntity(content, ContentType.create("application/json", "UTF-8")));
+            }
+            return executeBinary(httpGetWithEntity, headers);
+        } catch (Exception e) {
+            return new BinaryHttpResult(500, e.toString().getBytes(StandardCharsets.UTF_8),
+                Collections.<String, String>emptyMap());
+        }
+    }
+
+    /**
+     * Issue a GET request and hand the response body to the handler as a stream, so large responses
+     * can be consumed without being buffered in memory.
+     */
+    public static <T> T httpGetLargeStream(String url, Map<String, String> headers,
+                                           ResponseStreamHandler<T> handler) throws Exception {
+        HttpClientBuilder builder = HttpClients.custom();
+        builder.setUserAgent(UtilsAndCommons.SERVER_VERSION);
+        builder.setConnectionTimeToLive(500, TimeUnit.MILLISECONDS);
+
+        HttpGetWithEntity request = new HttpGetWithEntity();
+        request.setURI(new URI(url));
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            request.setHeader(entry.getKey(), entry.getValue());
+        }
+
+        try (CloseableHttpClient httpClient = builder.build();
+             CloseableHttpResponse response = httpClient.execute(request)) {
+
+            Map<String, String> respHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (Header header : response.getAllHeaders()) {
+                respHeaders.put(header.getName(), header.getValue());
+            }
+
+            HttpEntity entity = response.getEntity();
+            try (InputStream inputStream = entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent()) {
+                return handler.handle(response.getStatusLine().getStatusCode(), respHeaders, inputStream);
+            }
+        }
+    }
+
+    private static BinaryHttpResult executeBinary(HttpRequestBase request, Map<String, String> headers) {
+        HttpClientBuilder builder = HttpClients.custom();
+        builder.setUserAgent(UtilsAndCommons.SERVER_VERSION);
+        builder.setConnectionTimeToLive(500, TimeUnit.MILLISECONDS);
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            request.setHeader(entry.getKey(), entry.getValue());
+        }
+
+        try (CloseableHttpClient httpClient = builder.build();
+             CloseableHttpResponse response = httpClient.execute(request)) {
+
+            Map<String, String> respHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (Header header : response.getAllHeaders()) {
+                respHeaders.put(header.getName(), header.getValue());
+            }
+
+            HttpEntity entity = response.getEntity();
+            byte[] body = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+
+            return new BinaryHttpResult(response.getStatusLine().getStatusCode(), body, respHeaders);
+        } catch (Exception e) {
+            return new BinaryHttpResult(500, e.toString().getBytes(StandardCharsets.UTF_8),
+                Collections.<String, String>emptyMap());
+        }
+    }
+
     private static HttpResult getResult(HttpURLConnection conn) throws IOException {
         int respCode = conn.getResponseCode();
 
@@ -501,6 +586,40 @@ public class HttpClient {
         }
     }
 
+    public interface ResponseStreamHandler<T> {
+
+        /**
+         * Consume a response, the stream is closed after this method returns.
+         *
+         * @param code        status code
+         * @param respHeaders response headers, keys are case insensitive
+         * @param body        response body
+         * @return result of the request
+         * @throws Exception any exception while reading the response
+         */
+        T handle(int code, Map<String, String> respHeaders, InputStream body) throws Exception;
+    }
+
+    public static class BinaryHttpResult {
+        final public int code;
+        final public byte[] content;
+        final private Map<String, String> respHeaders;
+
+        public BinaryHttpResult(int code, byte[] content, Map<String, String> respHeaders) {
+            this.code = code;
+            this.content = content;
+            this.respHeaders = respHeaders;
+        }
+
+        public String getHeader(String name) {
+            return respHeaders.get(name);
+        }
+
+        public String getContentAsString() {
+            return new String(content, StandardCharsets.UTF_8);
+        }
+    }
+
     public static class HttpGetWithEntity extends HttpEntityEnclosingRequestBase {
 
         public final static String METHOD_NAME = "GET";
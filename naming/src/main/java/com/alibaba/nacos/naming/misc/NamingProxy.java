@@ -16,13 +16,22 @@
 package com.alibaba.nacos.naming.misc;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.TypeReference;
 import com.alibaba.nacos.naming.boot.RunningConfig;
+import com.alibaba.nacos.naming.boot.SpringContext;
+import com.alibaba.nacos.naming.cluster.transport.BinarySerializer;
+import com.alibaba.nacos.naming.cluster.transport.DatumChunkStream;
+import com.alibaba.nacos.naming.cluster.transport.SerializerNegotiator;
 import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.Response;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -38,6 +47,16 @@ public class NamingProxy {
 
     private static final String TIMESTAMP_SYNC_URL = "/distro/checksum";
 
+    private static final String TREE_ROOT_SYNC_URL = "/distro/tree/root";
+
+    private static final String TREE_NODES_GET_URL = "/distro/tree/nodes";
+
+    private static final String TREE_LEAVES_GET_URL = "/distro/tree/leaves";
+
+    private static final String DELTA_ON_SYNC_URL = "/distro/delta";
+
+    private static final String BEATS_URL = "/instance/beats";
+
     public static void syncCheckSums(Map<String, String> checksumMap, String server) {
 
         try {
@@ -46,6 +65,7 @@ public class NamingProxy {
             headers.put("Client-Version", UtilsAndCommons.SERVER_VERSION);
             headers.put("User-Agent", UtilsAndCommons.SERVER_VERSION);
             headers.put("Connection", "Keep-Alive");
+            headers.put(SerializerNegotiator.SERIALIZER_HEADER, negotiator().advertise());
 
             HttpClient.asyncHttpPutLarge("http://" + server + RunningConfig.getContextPath()
                     + UtilsAndCommons.NACOS_NAMING_CONTEXT + TIMESTAMP_SYNC_URL + "?source=" + NetUtils.localServer(),
@@ -58,7 +78,9 @@ public class NamingProxy {
                                 "http://" + server + RunningConfig.getContextPath() +
                                     UtilsAndCommons.NACOS_NAMING_CONTEXT + TIMESTAMP_SYNC_URL,
                                 response.getStatusCode(), response.getResponseBody());
+                            return null;
                         }
+                        negotiator().onResponse(server, response.getHeader(SerializerNegotiator.SERIALIZER_HEADER));
                         return null;
                     }
 
@@ -74,41 +96,126 @@ public class NamingProxy {
         }
     }
 
-    public static byte[] getData(List<String> keys, String server) throws Exception {
+    public static void syncTreeRoot(long root, int count, String server, AsyncCompletionHandler handler) throws Exception {
+
+        Map<String, String> headers = new HashMap<>(8);
+
+        headers.put("Client-Version", UtilsAndCommons.SERVER_VERSION);
+        headers.put("User-Agent", UtilsAndCommons.SERVER_VERSION);
+        headers.put("Connection", "Keep-Alive");
+        headers.put(SerializerNegotiator.SERIALIZER_HEADER, negotiator().advertise());
+
+        JSONObject body = new JSONObject();
+        body.put("root", root);
+        body.put("count", count);
+
+        HttpClient.asyncHttpPutLarge("http://" + server + RunningConfig.getContextPath()
+                + UtilsAndCommons.NACOS_NAMING_CONTEXT + TREE_ROOT_SYNC_URL + "?source=" + NetUtils.localServer(),
+            headers, body.toJSONString().getBytes(StandardCharsets.UTF_8), handler);
+    }
+
+    public static Map<Integer, long[]> getTreeNodes(int level, List<Integer> indexes, String server) throws Exception {
+
+        JSONObject body = new JSONObject();
+        body.put("level", level);
+        body.put("indexes", indexes);
 
-        Map<String, String> params = new HashMap<>(8);
-        params.put("keys", StringUtils.join(keys, ","));
         HttpClient.HttpResult result = HttpClient.httpGetLarge("http://" + server + RunningConfig.getContextPath()
-            + UtilsAndCommons.NACOS_NAMING_CONTEXT + DATA_GET_URL, new HashMap<>(8), JSON.toJSONString(params));
+            + UtilsAndCommons.NACOS_NAMING_CONTEXT + TREE_NODES_GET_URL, new HashMap<>(8), body.toJSONString());
 
         if (HttpURLConnection.HTTP_OK == result.code) {
-            return result.content.getBytes();
+            return JSON.parseObject(result.content, new TypeReference<Map<Integer, long[]>>() {
+            });
         }
 
         throw new IOException("failed to req API: " + "http://" + server
             + RunningConfig.getContextPath()
-            + UtilsAndCommons.NACOS_NAMING_CONTEXT + DATA_GET_URL + ". code: "
+            + UtilsAndCommons.NACOS_NAMING_CONTEXT + TREE_NODES_GET_URL + ". code: "
             + result.code + " msg: " + result.content);
     }
 
-    public static byte[] getAllData(String server) throws Exception {
+    public static Map<String, String> getTreeLeaves(List<Integer> leaves, String server) throws Exception {
+
+        JSONObject body = new JSONObject();
+        body.put("leaves", leaves);
+
+        HttpClient.HttpResult result = HttpClient.httpGetLarge("http://" + server + RunningConfig.getContextPath()
+            + UtilsAndCommons.NACOS_NAMING_CONTEXT + TREE_LEAVES_GET_URL, new HashMap<>(8), body.toJSONString());
+
+        if (HttpURLConnection.HTTP_OK == result.code) {
+            return JSON.parseObject(result.content, new TypeReference<Map<String, String>>() {
+            });
+        }
+
+        throw new IOException("failed to req API: " + "http://" + server
+            + RunningConfig.getContextPath()
+            + UtilsAndCommons.NACOS_NAMING_CONTEXT + TREE_LEAVES_GET_URL + ". code: "
+            + result.code + " msg: " + result.content);
+    }
+
+    public static byte[] getData(List<String> keys, String server) throws Exception {
 
         Map<String, String> params = new HashMap<>(8);
-        HttpClient.HttpResult result = HttpClient.httpGet("http://" + server + RunningConfig.getContextPath()
-            + UtilsAndCommons.NACOS_NAMING_CONTEXT + ALL_DATA_GET_URL, new ArrayList<>(), params);
+        params.put("keys", StringUtils.join(keys, ","));
+
+        Map<String, String> headers = new HashMap<>(8);
+        headers.put(SerializerNegotiator.SERIALIZER_HEADER, negotiator().advertise());
+
+        HttpClient.BinaryHttpResult result = HttpClient.httpGetLargeBinary("http://" + server + RunningConfig.getContextPath()
+            + UtilsAndCommons.NACOS_NAMING_CONTEXT + DATA_GET_URL, headers, JSON.toJSONString(params));
 
         if (HttpURLConnection.HTTP_OK == result.code) {
-            return result.content.getBytes();
+            negotiator().onResponse(server, result.getHeader(SerializerNegotiator.SERIALIZER_HEADER));
+            return result.content;
         }
 
         throw new IOException("failed to req API: " + "http://" + server
             + RunningConfig.getContextPath()
             + UtilsAndCommons.NACOS_NAMING_CONTEXT + DATA_GET_URL + ". code: "
-            + result.code + " msg: " + result.content);
+            + result.code + " msg: " + result.getContentAsString());
     }
 
+    /**
+     * Stream one partition of all data from a server, chunk by chunk.
+     *
+     * @return true if the server streamed the requested partition, false if it is an older server
+     * that returned all of its data as one chunk
+     */
+    public static boolean getAllData(final String server, int partition, int partitionCount,
+                                     final DatumChunkStream.ChunkHandler handler) throws Exception {
+
+        Map<String, String> headers = new HashMap<>(8);
+        headers.put(SerializerNegotiator.SERIALIZER_HEADER, negotiator().advertise());
+
+        final String url = "http://" + server + RunningConfig.getContextPath()
+            + UtilsAndCommons.NACOS_NAMING_CONTEXT + ALL_DATA_GET_URL;
+
+        return HttpClient.httpGetLargeStream(url + "?partition=" + partition + "&partitionCount=" + partitionCount,
+            headers, new HttpClient.ResponseStreamHandler<Boolean>() {
+                @Override
+                public Boolean handle(int code, Map<String, String> respHeaders, InputStream body) throws Exception {
+
+                    if (HttpURLConnection.HTTP_OK != code) {
+                        throw new IOException("failed to req API: " + url + ". code: " + code + " msg: "
+                            + IOUtils.toString(body, "UTF-8"));
+                    }
+
+                    negotiator().onResponse(server, respHeaders.get(SerializerNegotiator.SERIALIZER_HEADER));
+
+                    String contentType = respHeaders.get("Content-Type");
+                    if (contentType != null && contentType.startsWith(DatumChunkStream.CONTENT_TYPE)) {
+                        DatumChunkStream.read(body, handler);
+                        return true;
+                    }
+
+                    handler.onChunk(IOUtils.toByteArray(body));
+                    return false;
+                }
+            });
+    }
 
     public static boolean syncData(byte[] data, String curServer) throws Exception {
+        boolean binary = BinarySerializer.isBinary(data);
         try {
             Map<String, String> headers = new HashMap<>(128);
 
@@ -117,28 +224,99 @@ public class NamingProxy {
             headers.put("Accept-Encoding", "gzip,deflate,sdch");
             headers.put("Connection", "Keep-Alive");
             headers.put("Content-Encoding", "gzip");
+            headers.put(SerializerNegotiator.SERIALIZER_HEADER, negotiator().advertise());
 
-            HttpClient.HttpResult result = HttpClient.httpPutLarge("http://" + curServer + RunningConfig.getContextPath()
-                + UtilsAndCommons.NACOS_NAMING_CONTEXT + DATA_ON_SYNC_URL, headers, data);
-
-            if (HttpURLConnection.HTTP_OK == result.code) {
-                return true;
-            }
+            HttpClient.BinaryHttpResult result = HttpClient.httpPutLargeBinary("http://" + curServer
+                    + RunningConfig.getContextPath() + UtilsAndCommons.NACOS_NAMING_CONTEXT + DATA_ON_SYNC_URL,
+                headers, data, binary ? SerializerNegotiator.BINARY_CONTENT_TYPE : "application/json; charset=UTF-8");
 
-            if (HttpURLConnection.HTTP_NOT_MODIFIED == result.code) {
+            if (HttpURLConnection.HTTP_OK == result.code || HttpURLConnection.HTTP_NOT_MODIFIED == result.code) {
+                negotiator().onResponse(curServer, result.getHeader(SerializerNegotiator.SERIALIZER_HEADER));
                 return true;
             }
 
             throw new IOException("failed to req API:" + "http://" + curServer
                 + RunningConfig.getContextPath()
                 + UtilsAndCommons.NACOS_NAMING_CONTEXT + DATA_ON_SYNC_URL + ". code:"
-                + result.code + " msg: " + result.content);
+                + result.code + " msg: " + result.getContentAsString());
         } catch (Exception e) {
             Loggers.SRV_LOG.warn("NamingProxy", e);
         }
+
+        if (binary) {
+            // the peer may have been replaced by a version without binary support, retry with json:
+            negotiator().downgrade(curServer);
+        }
         return false;
     }
 
+    /**
+     * Send instance deltas to a peer.
+     *
+     * @param deltas serialized deltas
+     * @return keys the peer could not apply, or null if the peer does not accept deltas
+     * @throws IOException if the request failed
+     */
+    public static List<String> syncDeltas(byte[] deltas, String server) throws IOException {
+
+        Map<String, String> headers = new HashMap<>(8);
+
+        headers.put("Client-Version", UtilsAndCommons.SERVER_VERSION);
+        headers.put("User-Agent", UtilsAndCommons.SERVER_VERSION);
+        headers.put("Connection", "Keep-Alive");
+
+        HttpClient.BinaryHttpResult result = HttpClient.httpPutLargeBinary("http://" + server
+                + RunningConfig.getContextPath() + UtilsAndCommons.NACOS_NAMING_CONTEXT + DELTA_ON_SYNC_URL,
+            headers, deltas, "application/json; charset=UTF-8");
+
+        if (HttpURLConnection.HTTP_OK == result.code) {
+            return JSON.parseArray(result.getContentAsString(), String.class);
+        }
+
+        if (HttpURLConnection.HTTP_NOT_FOUND == result.code) {
+            return null;
+        }
+
+        throw new IOException("failed to req API: " + "http://" + server
+            + RunningConfig.getContextPath()
+            + UtilsAndCommons.NACOS_NAMING_CONTEXT + DELTA_ON_SYNC_URL + ". code: "
+            + result.code + " msg: " + result.getContentAsString());
+    }
+
+    /**
+     * Forward client beats to the peer responsible for their services.
+     *
+     * @param beats beats grouped by service name
+     * @return result of the peer, with the beats it could not renew
+     * @throws IOException if the request failed
+     */
+    public static JSONObject syncBeats(String namespaceId, String beats, String server) throws IOException {
+
+        Map<String, String> params = new HashMap<>(4);
+        params.put("namespaceId", namespaceId);
+        params.put("beats", beats);
+
+        List<String> headers = Arrays.asList("Client-Version", UtilsAndCommons.SERVER_VERSION,
+            "User-Agent", UtilsAndCommons.SERVER_VERSION,
+            "Connection", "Keep-Alive");
+
+        HttpClient.HttpResult result = HttpClient.httpPost("http://" + server
+            + RunningConfig.getContextPath() + UtilsAndCommons.NACOS_NAMING_CONTEXT + BEATS_URL, headers, params);
+
+        if (HttpURLConnection.HTTP_OK == result.code) {
+            return JSON.parseObject(result.content);
+        }
+
+        throw new IOException("failed to req API: " + "http://" + server
+            + RunningConfig.getContextPath()
+            + UtilsAndCommons.NACOS_NAMING_CONTEXT + BEATS_URL + ". code: "
+            + result.code + " msg: " + result.content);
+    }
+
+    private static SerializerNegotiator negotiator() {
+        return SpringContext.getAppContext().getBean(SerializerNegotiator.class);
+    }
+
     public static String reqAPI(String api, Map<String, String> params, String curServer) throws Exception {
         try {
             List<String> headers = Arrays.asList("Client-Version", UtilsAndCommons.SERVER_VERSION,
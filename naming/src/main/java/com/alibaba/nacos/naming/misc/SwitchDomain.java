@@ -73,6 +73,21 @@ public class SwitchDomain implements Record, Cloneable {
      */
     private long distroServerExpiredMillis = TimeUnit.SECONDS.toMillis(30);
 
+    /**
+     * Virtual nodes per server on the distro hash ring. Zero or less, the default, maps services by hash
+     * modulo server count, the same as servers of older versions do.
+     * <p>
+     * All servers of a cluster have to map services the same way, so the ring is only enabled once every
+     * server has been upgraded, by setting this switch, e.g. to 128, through
+     * {@code PUT /nacos/v1/ns/operator/switches?entry=distroVirtualNodes&value=128}.
+     */
+    private int distroVirtualNodes = 0;
+
+    /**
+     * Weight of servers on the distro hash ring, servers absent from the map have weight 1.
+     */
+    private Map<String, Integer> distroServerWeights = new HashMap<>();
+
     /**
      * since which version, push can be enabled
      */
@@ -290,6 +305,22 @@ public class SwitchDomain implements Record, Cloneable {
         this.limitedUrlMap = limitedUrlMap;
     }
 
+    public int getDistroVirtualNodes() {
+        return distroVirtualNodes;
+    }
+
+    public void setDistroVirtualNodes(int distroVirtualNodes) {
+        this.distroVirtualNodes = distroVirtualNodes;
+    }
+
+    public Map<String, Integer> getDistroServerWeights() {
+        return distroServerWeights;
+    }
+
+    public void setDistroServerWeights(Map<String, Integer> distroServerWeights) {
+        this.distroServerWeights = distroServerWeights;
+    }
+
     public long getDistroServerExpiredMillis() {
         return distroServerExpiredMillis;
     }
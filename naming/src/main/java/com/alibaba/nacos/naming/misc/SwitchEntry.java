@@ -34,6 +34,8 @@ public class SwitchEntry {
     public static final String DEFAULT_CACHE_MILLIS = "defaultCacheMillis";
     public static final String MASTERS = "masters";
     public static final String DISTRO = "distro";
+    public static final String DISTRO_VIRTUAL_NODES = "distroVirtualNodes";
+    public static final String DISTRO_SERVER_WEIGHTS = "distroServerWeights";
     public static final String CHECK = "check";
     public static final String PUSH_ENABLED = "pushEnabled";
     public static final String SERVICE_STATUS_SYNC_PERIOD = "serviceStatusSynchronizationPeriodMillis";
@@ -47,6 +49,8 @@ public class SwitchEntry {
     public static final int MIN_CACHE_TIME_MIILIS = 1000;
     public static final int MIN_SERVICE_SYNC_TIME_MIILIS = 5000;
     public static final int MIN_SERVER_SYNC_TIME_MIILIS = 15000;
+    public static final int MAX_DISTRO_VIRTUAL_NODES = 4096;
+    public static final int MAX_DISTRO_SERVER_WEIGHT = 100;
 
     public static final String ACTION_ADD = "add";
     public static final String ACTION_REPLACE = "replace";
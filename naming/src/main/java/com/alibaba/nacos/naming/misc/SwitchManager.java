@@ -168,6 +168,38 @@ public class SwitchManager implements RecordListener<SwitchDomain> {
                 switchDomain.setDistroEnabled(enabled);
             }
 
+            if (entry.equals(SwitchEntry.DISTRO_VIRTUAL_NODES)) {
+                int virtualNodes = Integer.parseInt(value);
+                if (virtualNodes > SwitchEntry.MAX_DISTRO_VIRTUAL_NODES) {
+                    throw new IllegalArgumentException("distroVirtualNodes is too large(>"
+                        + SwitchEntry.MAX_DISTRO_VIRTUAL_NODES + "): " + virtualNodes);
+                }
+                switchDomain.setDistroVirtualNodes(virtualNodes);
+            }
+
+            if (entry.equals(SwitchEntry.DISTRO_SERVER_WEIGHTS)) {
+                Map<String, Integer> weights = new HashMap<>(16);
+
+                if (!StringUtils.isEmpty(value)) {
+                    // format: ip:port=weight,ip:port=weight
+                    for (String weightEntry : value.split(",")) {
+                        String[] parts = weightEntry.split("=");
+                        if (parts.length != 2 || StringUtils.isEmpty(parts[0])) {
+                            throw new IllegalArgumentException("invalid input for distro server weights");
+                        }
+
+                        int weight = Integer.parseInt(parts[1].trim());
+                        if (weight < 0 || weight > SwitchEntry.MAX_DISTRO_SERVER_WEIGHT) {
+                            throw new IllegalArgumentException("illegal distro server weight: " + weight);
+                        }
+
+                        weights.put(parts[0].trim(), weight);
+                    }
+                }
+
+                switchDomain.setDistroServerWeights(weights);
+            }
+
             if (entry.equals(SwitchEntry.CHECK)) {
                 boolean enabled = Boolean.parseBoolean(value);
                 switchDomain.setHealthCheckEnabled(enabled);
@@ -301,6 +333,8 @@ public class SwitchManager implements RecordListener<SwitchDomain> {
         switchDomain.setSendBeatOnly(newSwitchDomain.isSendBeatOnly());
         switchDomain.setLimitedUrlMap(newSwitchDomain.getLimitedUrlMap());
         switchDomain.setDistroServerExpiredMillis(newSwitchDomain.getDistroServerExpiredMillis());
+        switchDomain.setDistroVirtualNodes(newSwitchDomain.getDistroVirtualNodes());
+        switchDomain.setDistroServerWeights(newSwitchDomain.getDistroServerWeights());
         switchDomain.setPushGoVersion(newSwitchDomain.getPushGoVersion());
         switchDomain.setPushJavaVersion(newSwitchDomain.getPushJavaVersion());
         switchDomain.setPushPythonVersion(newSwitchDomain.getPushPythonVersion());
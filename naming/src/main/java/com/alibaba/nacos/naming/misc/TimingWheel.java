@@ -0,0 +1,200 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.misc;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel for large numbers of short, mostly cancelled or re-armed timeouts.
+ * <p>
+ * Scheduling is a queue offer and cancelling only sets a flag, so the cost does not grow with the
+ * number of timeouts as it does for a {@link java.util.concurrent.ScheduledExecutorService}.
+ * Timeouts fire on the single wheel thread within one tick after their deadline, tasks must be
+ * short and hand longer work over to other threads.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class TimingWheel implements Runnable {
+
+    private final String name;
+
+    private final long tickNanos;
+
+    private final int mask;
+
+    private final Queue<Timeout>[] buckets;
+
+    /**
+     * Timeouts scheduled but not yet moved to their bucket, only the wheel thread touches buckets
+     */
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private volatile long startNanos;
+
+    private volatile boolean started = false;
+
+    private volatile boolean stopped = false;
+
+    private long tick = 0L;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(String name, long tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tick and size of timing wheel must be positive");
+        }
+
+        int normalized = Integer.highestOneBit(wheelSize - 1) << 1;
+        if (wheelSize == 1) {
+            normalized = 1;
+        }
+
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = normalized - 1;
+        this.buckets = new Queue[normalized];
+        for (int i = 0; i < normalized; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.startNanos = System.nanoTime();
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+
+        started = true;
+        startNanos = System.nanoTime();
+
+        Thread thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Run a task once after the given delay.
+     *
+     * @return handle to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0L, delay)));
+        size.incrementAndGet();
+        pending.offer(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return count of timeouts neither fired nor cleaned up after cancelling
+     */
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public void run() {
+        while (!stopped) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long now;
+            while ((now = System.nanoTime()) < deadline) {
+                LockSupport.parkNanos(this, deadline - now);
+                if (stopped) {
+                    return;
+                }
+            }
+
+            tick++;
+            transferPending();
+            expire(buckets[(int) (tick & mask)]);
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                size.decrementAndGet();
+                continue;
+            }
+
+            long target = (timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos;
+            timeout.targetTick = Math.max(target, tick);
+            buckets[(int) (timeout.targetTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+
+            if (timeout.cancelled) {
+                iterator.remove();
+                size.decrementAndGet();
+                continue;
+            }
+
+            if (timeout.targetTick > tick) {
+                // due in a later round of the wheel:
+                continue;
+            }
+
+            iterator.remove();
+            size.decrementAndGet();
+            try {
+                timeout.task.run();
+            } catch (Throwable e) {
+                Loggers.SRV_LOG.error("[TIMING-WHEEL] " + name + " failed to run task", e);
+            }
+        }
+    }
+
+    public static class Timeout {
+
+        private final Runnable task;
+
+        private final long deadlineNanos;
+
+        private long targetTick;
+
+        private volatile boolean cancelled = false;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.ImmutableTag;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -41,6 +42,18 @@ public class MetricsMonitor {
     private static AtomicLong leaderStatus = new AtomicLong();
     private static AtomicInteger totalPush = new AtomicInteger();
     private static AtomicInteger failedPush = new AtomicInteger();
+    private static AtomicInteger distroNotifyTaskCount = new AtomicInteger();
+    private static AtomicLong distroNotifyMaxDelay = new AtomicLong();
+    private static AtomicInteger raftNotifyTaskCount = new AtomicInteger();
+    private static AtomicLong raftNotifyMaxDelay = new AtomicLong();
+    private static AtomicLong pushCoalescedCount = new AtomicLong();
+    private static AtomicLong pushRoundCount = new AtomicLong();
+    private static AtomicLong tcpHealthCheckRate = new AtomicLong();
+    private static AtomicLong httpHealthCheckReuseRatio = new AtomicLong();
+    private static Timer tcpHealthCheckTimer;
+    private static Timer mysqlHealthCheckTimer;
+    private static Timer httpHealthCheckTimer;
+    private static Timer distroProxyTimer;
 
     static {
         List<Tag> tags = new ArrayList<Tag>();
@@ -92,6 +105,66 @@ public class MetricsMonitor {
         tags.add(new ImmutableTag("module", "naming"));
         tags.add(new ImmutableTag("name", "failedPush"));
         Metrics.gauge("nacos_monitor", tags, failedPush);
+
+        tags = new ArrayList<Tag>();
+        tags.add(new ImmutableTag("module", "naming"));
+        tags.add(new ImmutableTag("name", "distroNotifyTaskCount"));
+        Metrics.gauge("nacos_monitor", tags, distroNotifyTaskCount);
+
+        tags = new ArrayList<Tag>();
+        tags.add(new ImmutableTag("module", "naming"));
+        tags.add(new ImmutableTag("name", "distroNotifyMaxDelay"));
+        Metrics.gauge("nacos_monitor", tags, distroNotifyMaxDelay);
+
+        tags = new ArrayList<Tag>();
+        tags.add(new ImmutableTag("module", "naming"));
+        tags.add(new ImmutableTag("name", "raftNotifyTaskCount"));
+        Metrics.gauge("nacos_monitor", tags, raftNotifyTaskCount);
+
+        tags = new ArrayList<Tag>();
+        tags.add(new ImmutableTag("module", "naming"));
+        tags.add(new ImmutableTag("name", "raftNotifyMaxDelay"));
+        Metrics.gauge("nacos_monitor", tags, raftNotifyMaxDelay);
+
+        tags = new ArrayList<Tag>();
+        tags.add(new ImmutableTag("module", "naming"));
+        tags.add(new ImmutableTag("name", "pushCoalescedCount"));
+        Metrics.gauge("nacos_monitor", tags, pushCoalescedCount);
+
+        tags = new ArrayList<Tag>();
+        tags.add(new ImmutableTag("module", "naming"));
+        tags.add(new ImmutableTag("name", "pushRoundCount"));
+        Metrics.gauge("nacos_monitor", tags, pushRoundCount);
+
+        tags = new ArrayList<Tag>();
+        tags.add(new ImmutableTag("module", "naming"));
+        tags.add(new ImmutableTag("name", "tcpHealthCheckRate"));
+        Metrics.gauge("nacos_monitor", tags, tcpHealthCheckRate);
+
+        tags = new ArrayList<Tag>();
+        tags.add(new ImmutableTag("module", "naming"));
+        tags.add(new ImmutableTag("name", "httpHealthCheckReuseRatio"));
+        Metrics.gauge("nacos_monitor", tags, httpHealthCheckReuseRatio);
+
+        tcpHealthCheckTimer = Timer.builder("nacos_health_check")
+            .tags("module", "naming", "name", "tcp")
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry);
+
+        mysqlHealthCheckTimer = Timer.builder("nacos_health_check")
+            .tags("module", "naming", "name", "mysql")
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry);
+
+        httpHealthCheckTimer = Timer.builder("nacos_health_check")
+            .tags("module", "naming", "name", "http")
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry);
+
+        distroProxyTimer = Timer.builder("nacos_distro_proxy")
+            .tags("module", "naming", "name", "proxyHop")
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry);
     }
 
     public static AtomicInteger getMysqlHealthCheckMonitor() {
@@ -134,6 +207,69 @@ public class MetricsMonitor {
         return failedPush;
     }
 
+    public static AtomicInteger getDistroNotifyTaskCountMonitor() {
+        return distroNotifyTaskCount;
+    }
+
+    public static AtomicLong getDistroNotifyMaxDelayMonitor() {
+        return distroNotifyMaxDelay;
+    }
+
+    public static AtomicInteger getRaftNotifyTaskCountMonitor() {
+        return raftNotifyTaskCount;
+    }
+
+    public static AtomicLong getRaftNotifyMaxDelayMonitor() {
+        return raftNotifyMaxDelay;
+    }
+
+    public static AtomicLong getPushCoalescedCountMonitor() {
+        return pushCoalescedCount;
+    }
+
+    public static AtomicLong getPushRoundCountMonitor() {
+        return pushRoundCount;
+    }
+
+    public static AtomicLong getTcpHealthCheckRateMonitor() {
+        return tcpHealthCheckRate;
+    }
+
+    /**
+     * @return percentage of http health checks sent over a kept-alive connection
+     */
+    public static AtomicLong getHttpHealthCheckReuseRatioMonitor() {
+        return httpHealthCheckReuseRatio;
+    }
+
+    /**
+     * @return latency of finished tcp health checks
+     */
+    public static Timer getTcpHealthCheckTimer() {
+        return tcpHealthCheckTimer;
+    }
+
+    /**
+     * @return latency of finished mysql health checks
+     */
+    public static Timer getMysqlHealthCheckTimer() {
+        return mysqlHealthCheckTimer;
+    }
+
+    /**
+     * @return latency of finished http health checks
+     */
+    public static Timer getHttpHealthCheckTimer() {
+        return httpHealthCheckTimer;
+    }
+
+    /**
+     * @return latency of requests proxied to the responsible server, until their responses are written back
+     */
+    public static Timer getDistroProxyTimer() {
+        return distroProxyTimer;
+    }
+
     public static Counter getDiskException() {
         return Metrics.counter("nacos_exception",
             "module", "naming", "name", "disk");
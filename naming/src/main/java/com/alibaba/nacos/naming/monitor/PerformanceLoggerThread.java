@@ -15,9 +15,13 @@
  */
 package com.alibaba.nacos.naming.monitor;
 
+import com.alibaba.nacos.naming.consistency.ShardedNotifier;
+import com.alibaba.nacos.naming.consistency.ephemeral.distro.DistroConsistencyServiceImpl;
 import com.alibaba.nacos.naming.consistency.persistent.raft.RaftCore;
 import com.alibaba.nacos.naming.consistency.persistent.raft.RaftPeer;
 import com.alibaba.nacos.naming.core.ServiceManager;
+import com.alibaba.nacos.naming.healthcheck.HttpHealthCheckProcessor;
+import com.alibaba.nacos.naming.healthcheck.TcpSuperSenseProcessor;
 import com.alibaba.nacos.naming.misc.Loggers;
 import com.alibaba.nacos.naming.push.PushService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -47,6 +51,23 @@ public class PerformanceLoggerThread {
     @Autowired
     private RaftCore raftCore;
 
+    @Autowired
+    private DistroConsistencyServiceImpl distroConsistencyService;
+
+    @Autowired
+    private TcpSuperSenseProcessor tcpProcessor;
+
+    @Autowired
+    private HttpHealthCheckProcessor httpProcessor;
+
+    private long lastTcpCheckCount = 0L;
+
+    private long lastHttpRequestCount = 0L;
+
+    private long lastHttpReusedCount = 0L;
+
+    private long lastCollectMillis = System.currentTimeMillis();
+
     private ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
         @Override
         public Thread newThread(Runnable r) {
@@ -94,6 +115,35 @@ public class PerformanceLoggerThread {
 
         MetricsMonitor.getTotalPushMonitor().set(pushService.getTotalPush());
         MetricsMonitor.getFailedPushMonitor().set(pushService.getFailedPushCount());
+        MetricsMonitor.getPushCoalescedCountMonitor().set(pushService.getPushDebouncer().getCoalescedCount());
+        MetricsMonitor.getPushRoundCountMonitor().set(pushService.getPushDebouncer().getFiredCount());
+
+        ShardedNotifier distroNotifier = distroConsistencyService.notifier;
+        MetricsMonitor.getDistroNotifyTaskCountMonitor().set(distroNotifier.getTaskSize());
+        MetricsMonitor.getDistroNotifyMaxDelayMonitor().set(distroNotifier.getMaxDispatchDelay());
+        distroNotifier.resetDispatchDelay();
+
+        ShardedNotifier raftNotifier = raftCore.notifier;
+        MetricsMonitor.getRaftNotifyTaskCountMonitor().set(raftNotifier.getTaskSize());
+        MetricsMonitor.getRaftNotifyMaxDelayMonitor().set(raftNotifier.getMaxDispatchDelay());
+        raftNotifier.resetDispatchDelay();
+
+        long now = System.currentTimeMillis();
+        long tcpCheckCount = tcpProcessor.getFinishedCount();
+        if (now > lastCollectMillis) {
+            MetricsMonitor.getTcpHealthCheckRateMonitor().set((tcpCheckCount - lastTcpCheckCount) * 1000L / (now - lastCollectMillis));
+        }
+        lastTcpCheckCount = tcpCheckCount;
+        lastCollectMillis = now;
+
+        long httpRequestCount = httpProcessor.getRequestCount();
+        long httpReusedCount = httpProcessor.getReusedCount();
+        if (httpRequestCount > lastHttpRequestCount) {
+            MetricsMonitor.getHttpHealthCheckReuseRatioMonitor().set(
+                (httpReusedCount - lastHttpReusedCount) * 100L / (httpRequestCount - lastHttpRequestCount));
+        }
+        lastHttpRequestCount = httpRequestCount;
+        lastHttpReusedCount = httpReusedCount;
 
         if (raftCore.isLeader()) {
             MetricsMonitor.getLeaderStatusMonitor().set(1);
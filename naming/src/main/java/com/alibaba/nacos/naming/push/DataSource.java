@@ -15,6 +15,8 @@
  */
 package com.alibaba.nacos.naming.push;
 
+import com.alibaba.nacos.naming.core.ServiceSnapshot;
+
 /**
  * @author nacos
  */
@@ -27,4 +29,15 @@ public interface DataSource {
      * @throws Exception
      */
     String getData(PushService.PushClient client) throws Exception;
+
+    /**
+     * Get the snapshot pushed to a specified client, if the data can be shared with other clients
+     *
+     * @param client target client
+     * @return snapshot to push, or null to push the data from {@link #getData}
+     * @throws Exception
+     */
+    default ServiceSnapshot getSnapshot(PushService.PushClient client) throws Exception {
+        return null;
+    }
 }
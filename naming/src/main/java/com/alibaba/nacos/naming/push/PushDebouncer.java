@@ -0,0 +1,160 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.push;
+
+import com.alibaba.nacos.naming.misc.Loggers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Merges the changes of one service into one push.
+ * <p>
+ * A push runs once no change came in for the minimum delay, but no later than the maximum delay
+ * after the first change it merged, so a service changing all the time is still pushed. A change
+ * coming in while the push is running is pushed by the next one.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class PushDebouncer {
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Current time in milliseconds
+     */
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<String, Pending> pendings = new ConcurrentHashMap<>(1024);
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private final AtomicLong firedCount = new AtomicLong();
+
+    private volatile long minDelayMillis;
+
+    private volatile long maxDelayMillis;
+
+    public PushDebouncer(ScheduledExecutorService executor, long minDelayMillis, long maxDelayMillis) {
+        this(executor, System::currentTimeMillis, minDelayMillis, maxDelayMillis);
+    }
+
+    PushDebouncer(ScheduledExecutorService executor, LongSupplier clock, long minDelayMillis, long maxDelayMillis) {
+        this.executor = executor;
+        this.clock = clock;
+        setDelay(minDelayMillis, maxDelayMillis);
+    }
+
+    public void setDelay(long minDelayMillis, long maxDelayMillis) {
+        this.minDelayMillis = Math.max(0L, minDelayMillis);
+        this.maxDelayMillis = Math.max(this.minDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * Merge a change into the push pending for the key, if there is one.
+     *
+     * @return true if the change is merged, false if nothing is pending and a push must be submitted
+     */
+    public boolean coalesce(String key) {
+        Pending pending = pendings.get(key);
+        if (pending == null) {
+            return false;
+        }
+
+        pending.lastChangeMillis = clock.getAsLong();
+        coalescedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Submit a push for the key, or merge it into the pending one.
+     */
+    public void submit(String key, Runnable push) {
+        Pending pending = new Pending(key, push, clock.getAsLong());
+        Pending old = pendings.putIfAbsent(key, pending);
+        if (old != null) {
+            old.lastChangeMillis = pending.firstChangeMillis;
+            coalescedCount.incrementAndGet();
+            return;
+        }
+
+        executor.schedule(pending, minDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isPending(String key) {
+        return pendings.containsKey(key);
+    }
+
+    public int getPendingCount() {
+        return pendings.size();
+    }
+
+    /**
+     * @return count of changes merged into a push already pending
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return count of pushes run
+     */
+    public long getFiredCount() {
+        return firedCount.get();
+    }
+
+    private class Pending implements Runnable {
+
+        private final String key;
+
+        private final Runnable push;
+
+        private final long firstChangeMillis;
+
+        private volatile long lastChangeMillis;
+
+        private Pending(String key, Runnable push, long firstChangeMillis) {
+            this.key = key;
+            this.push = push;
+            this.firstChangeMillis = firstChangeMillis;
+            this.lastChangeMillis = firstChangeMillis;
+        }
+
+        @Override
+        public void run() {
+            long now = clock.getAsLong();
+            long fireAt = Math.min(lastChangeMillis + minDelayMillis, firstChangeMillis + maxDelayMillis);
+            if (now < fireAt) {
+                executor.schedule(this, fireAt - now, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            // removed before pushing, so that a change during the push is not merged into it:
+            pendings.remove(key, this);
+            firedCount.incrementAndGet();
+            try {
+                push.run();
+            } catch (Throwable e) {
+                Loggers.PUSH.error("[NACOS-PUSH] failed to push key: " + key, e);
+            }
+        }
+    }
+}
@@ -17,6 +17,8 @@ package com.alibaba.nacos.naming.push;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.nacos.naming.core.Service;
+import com.alibaba.nacos.naming.core.ServiceSnapshot;
+import com.alibaba.nacos.naming.misc.GlobalConfig;
 import com.alibaba.nacos.naming.misc.Loggers;
 import com.alibaba.nacos.naming.misc.SwitchDomain;
 import com.alibaba.nacos.naming.misc.UtilsAndCommons;
@@ -31,12 +33,12 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
-import java.net.SocketException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -53,6 +55,9 @@ public class PushService implements ApplicationContextAware, ApplicationListener
     @Autowired
     private SwitchDomain switchDomain;
 
+    @Autowired
+    private GlobalConfig globalConfig;
+
     private ApplicationContext applicationContext;
 
     private static final long ACK_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10L);
@@ -75,15 +80,14 @@ public class PushService implements ApplicationContextAware, ApplicationListener
 
     private static ConcurrentHashMap<String, Long> lastPushMillisMap = new ConcurrentHashMap<>();
 
-    private static DatagramSocket udpSocket;
+    private static volatile UdpPushEngine pushEngine;
 
-    private static Map<String, Future> futureMap = new ConcurrentHashMap<>();
     private static ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
         @Override
         public Thread newThread(Runnable r) {
             Thread t = new Thread(r);
             t.setDaemon(true);
-            t.setName("com.alibaba.nacos.naming.push.retransmitter");
+            t.setName("com.alibaba.nacos.naming.push.cleaner");
             return t;
         }
     });
@@ -99,29 +103,41 @@ public class PushService implements ApplicationContextAware, ApplicationListener
     });
 
     static {
-        try {
-            udpSocket = new DatagramSocket();
-
-            Receiver receiver = new Receiver();
-
-            Thread inThread = new Thread(receiver);
-            inThread.setDaemon(true);
-            inThread.setName("com.alibaba.nacos.naming.push.receiver");
-            inThread.start();
-
-            executorService.scheduleWithFixedDelay(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        removeClientIfZombie();
-                    } catch (Throwable e) {
-                        Loggers.PUSH.warn("[NACOS-PUSH] failed to remove client zombie");
-                    }
+        executorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    removeClientIfZombie();
+                } catch (Throwable e) {
+                    Loggers.PUSH.warn("[NACOS-PUSH] failed to remove client zombie");
                 }
-            }, 0, 20, TimeUnit.SECONDS);
+            }
+        }, 0, 20, TimeUnit.SECONDS);
+    }
+
+    private PushDebouncer pushDebouncer = new PushDebouncer(udpSender, 1000L, 1000L);
+
+    @PostConstruct
+    public void init() {
+        pushDebouncer.setDelay(globalConfig.getPushMinDelay(), globalConfig.getPushMaxDelay());
+
+        int channelCount = globalConfig.getPushChannelCount() > 0 ?
+            globalConfig.getPushChannelCount() : UdpPushEngine.DEFAULT_CHANNEL_COUNT;
+
+        UdpPushEngine engine = new UdpPushEngine(channelCount, globalConfig.getPushClientRate(),
+            globalConfig.getPushClientBurst(), new Receiver());
+        try {
+            engine.start();
+            pushEngine = engine;
+        } catch (IOException e) {
+            Loggers.SRV_LOG.error("[NACOS-PUSH] failed to init push service", e);
+        }
+    }
 
-        } catch (SocketException e) {
-            Loggers.SRV_LOG.error("[NACOS-PUSH] failed to init push service");
+    @PreDestroy
+    public void destroy() {
+        if (pushEngine != null) {
+            pushEngine.close();
         }
     }
 
@@ -136,7 +152,7 @@ public class PushService implements ApplicationContextAware, ApplicationListener
         String serviceName = service.getName();
         String namespaceId = service.getNamespaceId();
 
-        Future future = udpSender.schedule(new Runnable() {
+        pushDebouncer.submit(UtilsAndCommons.assembleFullServiceName(namespaceId, serviceName), new Runnable() {
             @Override
             public void run() {
                 try {
@@ -161,7 +177,26 @@ public class PushService implements ApplicationContextAware, ApplicationListener
                         String key = getPushCacheKey(serviceName, client.getIp(), client.getAgent());
                         byte[] compressData = null;
                         Map<String, Object> data = null;
-                        if (switchDomain.getDefaultPushCacheMillis() >= 20000 && cache.containsKey(key)) {
+
+                        // clients of the same snapshot share the same packet data in this round:
+                        ServiceSnapshot snapshot = client.getDataSource().getSnapshot(client);
+                        if (snapshot != null) {
+                            long cacheMillis = switchDomain.getPushCacheMillis(serviceName);
+                            ServiceSnapshot.PushPacket packet = null;
+
+                            // push only the changes to clients knowing the previous snapshot:
+                            ServiceSnapshot base = client.getLastSnapshot();
+                            if (globalConfig.isPushDelta() && client.isDeltaSupported() && base != null) {
+                                packet = snapshot.getDeltaPacket(base, cacheMillis, lastRefTime);
+                            }
+                            if (packet == null) {
+                                packet = snapshot.getPushPacket(cacheMillis, lastRefTime);
+                            }
+                            client.setLastSnapshot(snapshot);
+
+                            compressData = packet.getBytes();
+                            data = packet.getData();
+                        } else if (switchDomain.getDefaultPushCacheMillis() >= 20000 && cache.containsKey(key)) {
                             org.javatuples.Pair pair = (org.javatuples.Pair) cache.get(key);
                             compressData = (byte[]) (pair.getValue0());
                             data = (Map<String, Object>) pair.getValue1();
@@ -185,16 +220,9 @@ public class PushService implements ApplicationContextAware, ApplicationListener
                     }
                 } catch (Exception e) {
                     Loggers.PUSH.error("[NACOS-PUSH] failed to push serviceName: {} to client, error: {}", serviceName, e);
-
-                } finally {
-                    futureMap.remove(UtilsAndCommons.assembleFullServiceName(namespaceId, serviceName));
                 }
-
             }
-        }, 1000, TimeUnit.MILLISECONDS);
-
-        futureMap.put(UtilsAndCommons.assembleFullServiceName(namespaceId, serviceName), future);
-
+        });
     }
 
     public int getTotalPush() {
@@ -205,14 +233,15 @@ public class PushService implements ApplicationContextAware, ApplicationListener
         PushService.totalPush = totalPush;
     }
 
-    public void addClient(String namespaceId,
+    public PushClient addClient(String namespaceId,
                           String serviceName,
                           String clusters,
                           String agent,
                           InetSocketAddress socketAddr,
                           DataSource dataSource,
                           String tenant,
-                          String app) {
+                          String app,
+                          boolean deltaSupported) {
 
         PushClient client = new PushClient(namespaceId,
             serviceName,
@@ -222,10 +251,14 @@ public class PushService implements ApplicationContextAware, ApplicationListener
             dataSource,
             tenant,
             app);
-        addClient(client);
+        client.setDeltaSupported(deltaSupported);
+        return addClient(client);
     }
 
-    public static void addClient(PushClient client) {
+    /**
+     * @return the client registered, which is an earlier one of the same address if there is
+     */
+    public static PushClient addClient(PushClient client) {
         // client is stored by key 'serviceName' because notify event is driven by serviceName change
         String serviceKey = UtilsAndCommons.assembleFullServiceName(client.getNamespaceId(), client.getServiceName());
         ConcurrentMap<String, PushClient> clients =
@@ -238,13 +271,17 @@ public class PushService implements ApplicationContextAware, ApplicationListener
         PushClient oldClient = clients.get(client.toString());
         if (oldClient != null) {
             oldClient.refresh();
-        } else {
-            PushClient res = clients.putIfAbsent(client.toString(), client);
-            if (res != null) {
-                Loggers.PUSH.warn("client: {} already associated with key {}", res.getAddrStr(), res.toString());
-            }
-            Loggers.PUSH.debug("client: {} added for serviceName: {}", client.getAddrStr(), client.getServiceName());
+            oldClient.setDeltaSupported(client.isDeltaSupported());
+            return oldClient;
+        }
+
+        PushClient res = clients.putIfAbsent(client.toString(), client);
+        if (res != null) {
+            Loggers.PUSH.warn("client: {} already associated with key {}", res.getAddrStr(), res.toString());
+            return res;
         }
+        Loggers.PUSH.debug("client: {} added for serviceName: {}", client.getAddrStr(), client.getServiceName());
+        return client;
     }
 
     public List<Subscriber> getClients(String serviceName, String namespaceId) {
@@ -310,8 +347,11 @@ public class PushService implements ApplicationContextAware, ApplicationListener
     }
 
     public void serviceChanged(Service service) {
+        // instances may be changed in place, so the served snapshots are dropped before merging:
+        service.invalidateSnapshots();
+
         // merge some change events to reduce the push frequency:
-        if (futureMap.containsKey(UtilsAndCommons.assembleFullServiceName(service.getNamespaceId(), service.getName()))) {
+        if (pushDebouncer.coalesce(UtilsAndCommons.assembleFullServiceName(service.getNamespaceId(), service.getName()))) {
             return;
         }
 
@@ -360,6 +400,14 @@ public class PushService implements ApplicationContextAware, ApplicationListener
         ackMap.clear();
     }
 
+    public PushDebouncer getPushDebouncer() {
+        return pushDebouncer;
+    }
+
+    public static UdpPushEngine getPushEngine() {
+        return pushEngine;
+    }
+
     public class PushClient {
         private String namespaceId;
         private String serviceName;
@@ -370,6 +418,12 @@ public class PushService implements ApplicationContextAware, ApplicationListener
         private InetSocketAddress socketAddr;
         private DataSource dataSource;
         private Map<String, String[]> params;
+        private volatile boolean deltaSupported = false;
+
+        /**
+         * Snapshot last pushed to this client, base of the next delta
+         */
+        private volatile ServiceSnapshot lastSnapshot;
 
         public Map<String, String[]> getParams() {
             return params;
@@ -495,9 +549,25 @@ public class PushService implements ApplicationContextAware, ApplicationListener
         public void refresh() {
             lastRefTime = System.currentTimeMillis();
         }
+
+        public boolean isDeltaSupported() {
+            return deltaSupported;
+        }
+
+        public void setDeltaSupported(boolean deltaSupported) {
+            this.deltaSupported = deltaSupported;
+        }
+
+        public ServiceSnapshot getLastSnapshot() {
+            return lastSnapshot;
+        }
+
+        public void setLastSnapshot(ServiceSnapshot lastSnapshot) {
+            this.lastSnapshot = lastSnapshot;
+        }
     }
 
-    private static byte[] compressIfNecessary(byte[] dataBytes) throws IOException {
+    public static byte[] compressIfNecessary(byte[] dataBytes) throws IOException {
         // enable compression when data is larger than 1KB
         int maxDataSizeUncompress = 1024;
         if (dataBytes.length < maxDataSizeUncompress) {
@@ -576,11 +646,11 @@ public class PushService implements ApplicationContextAware, ApplicationListener
             udpSendTimeMap.put(ackEntry.key, System.currentTimeMillis());
 
             Loggers.PUSH.info("send udp packet: " + ackEntry.key);
-            udpSocket.send(ackEntry.origin);
+            pushEngine.send((InetSocketAddress) ackEntry.origin.getSocketAddress(), ackEntry.origin.getData());
 
             ackEntry.increaseRetryTime();
 
-            executorService.schedule(new Retransmitter(ackEntry), TimeUnit.NANOSECONDS.toMillis(ACK_TIMEOUT_NANOS),
+            pushEngine.schedule(new Retransmitter(ackEntry), TimeUnit.NANOSECONDS.toMillis(ACK_TIMEOUT_NANOS),
                 TimeUnit.MILLISECONDS);
 
             return ackEntry;
@@ -615,46 +685,38 @@ public class PushService implements ApplicationContextAware, ApplicationListener
         }
     }
 
-    public static class Receiver implements Runnable {
+    public static class Receiver implements UdpPushEngine.PacketListener {
         @Override
-        public void run() {
-            while (true) {
-                byte[] buffer = new byte[1024 * 64];
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-
-                try {
-                    udpSocket.receive(packet);
-
-                    String json = new String(packet.getData(), 0, packet.getLength(), Charset.forName("UTF-8")).trim();
-                    AckPacket ackPacket = JSON.parseObject(json, AckPacket.class);
+        public void onPacket(byte[] data, InetSocketAddress socketAddress) {
+            try {
+                String json = new String(data, Charset.forName("UTF-8")).trim();
+                AckPacket ackPacket = JSON.parseObject(json, AckPacket.class);
 
-                    InetSocketAddress socketAddress = (InetSocketAddress) packet.getSocketAddress();
-                    String ip = socketAddress.getAddress().getHostAddress();
-                    int port = socketAddress.getPort();
+                String ip = socketAddress.getAddress().getHostAddress();
+                int port = socketAddress.getPort();
 
-                    if (System.nanoTime() - ackPacket.lastRefTime > ACK_TIMEOUT_NANOS) {
-                        Loggers.PUSH.warn("ack takes too long from {} ack json: {}", packet.getSocketAddress(), json);
-                    }
+                if (System.nanoTime() - ackPacket.lastRefTime > ACK_TIMEOUT_NANOS) {
+                    Loggers.PUSH.warn("ack takes too long from {} ack json: {}", socketAddress, json);
+                }
 
-                    String ackKey = getACKKey(ip, port, ackPacket.lastRefTime);
-                    AckEntry ackEntry = ackMap.remove(ackKey);
-                    if (ackEntry == null) {
-                        throw new IllegalStateException("unable to find ackEntry for key: " + ackKey
-                            + ", ack json: " + json);
-                    }
+                String ackKey = getACKKey(ip, port, ackPacket.lastRefTime);
+                AckEntry ackEntry = ackMap.remove(ackKey);
+                if (ackEntry == null) {
+                    throw new IllegalStateException("unable to find ackEntry for key: " + ackKey
+                        + ", ack json: " + json);
+                }
 
-                    long pushCost = System.currentTimeMillis() - udpSendTimeMap.get(ackKey);
+                long pushCost = System.currentTimeMillis() - udpSendTimeMap.get(ackKey);
 
-                    Loggers.PUSH.info("received ack: {} from: {}:, cost: {} ms, unacked: {}, total push: {}",
-                        json, ip, port, pushCost, ackMap.size(), totalPush);
+                Loggers.PUSH.info("received ack: {} from: {}:, cost: {} ms, unacked: {}, total push: {}",
+                    json, ip, port, pushCost, ackMap.size(), totalPush);
 
-                    pushCostMap.put(ackKey, pushCost);
+                pushCostMap.put(ackKey, pushCost);
 
-                    udpSendTimeMap.remove(ackKey);
+                udpSendTimeMap.remove(ackKey);
 
-                } catch (Throwable e) {
-                    Loggers.PUSH.error("[NACOS-PUSH] error while receiving ack data", e);
-                }
+            } catch (Throwable e) {
+                Loggers.PUSH.error("[NACOS-PUSH] error while receiving ack data", e);
             }
         }
 
@@ -0,0 +1,399 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.push;
+
+import com.alibaba.nacos.naming.misc.Loggers;
+import com.alibaba.nacos.naming.misc.TimingWheel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends UDP push packets through several datagram channels.
+ * <p>
+ * Clients are partitioned by address over the channels, each channel has its own sender thread,
+ * so a client is always pushed from the same local port and in order. Packets to one client are
+ * shaped by a token bucket, packets over the rate are delayed on the timing wheel instead of
+ * being dropped. ACKs from all channels are read by one selector thread.
+ *
+ * @author nkorange
+ * @since 1.0.0
+ */
+public class UdpPushEngine {
+
+    public static final int DEFAULT_CHANNEL_COUNT = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private static final int MAX_PACKET_SIZE = 64 * 1024;
+
+    /**
+     * Tick of the timer, delays shorter than one tick are rounded up to a full tick
+     */
+    private static final long TIMER_TICK_MILLIS = 100L;
+
+    private static final long BUCKET_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Sender[] senders;
+
+    private final TimingWheel timingWheel;
+
+    private final PacketListener listener;
+
+    private final double clientRate;
+
+    private final int clientBurst;
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong shapedCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private Selector selector;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param channelCount count of channels and sender threads
+     * @param clientRate   packets per second allowed to one client
+     * @param clientBurst  packets one client can be sent at once before being shaped
+     * @param listener     listener of the packets received, which are the ACKs from clients
+     */
+    public UdpPushEngine(int channelCount, double clientRate, int clientBurst, PacketListener listener) {
+        this.senders = new Sender[channelCount];
+        this.clientRate = clientRate;
+        this.clientBurst = Math.max(1, clientBurst);
+        this.listener = listener;
+        this.timingWheel = new TimingWheel("com.alibaba.nacos.naming.push.timer", TIMER_TICK_MILLIS, 512);
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+
+        for (int i = 0; i < senders.length; i++) {
+            DatagramChannel channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.bind(null);
+            channel.register(selector, SelectionKey.OP_READ);
+
+            senders[i] = new Sender(channel);
+            Thread thread = new Thread(senders[i]);
+            thread.setDaemon(true);
+            thread.setName("com.alibaba.nacos.naming.push.udpSender." + i);
+            thread.start();
+            threads.add(thread);
+        }
+
+        Thread receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        });
+        receiver.setDaemon(true);
+        receiver.setName("com.alibaba.nacos.naming.push.receiver");
+        receiver.start();
+        threads.add(receiver);
+
+        timingWheel.start();
+    }
+
+    /**
+     * Stop the sender and receiver threads and the timer, and close the channels. Packets still queued
+     * or delayed are dropped.
+     */
+    public void close() {
+        closed = true;
+        timingWheel.stop();
+
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        threads.clear();
+
+        for (Sender sender : senders) {
+            if (sender != null) {
+                closeQuietly(sender.channel);
+                sender.queue.clear();
+            }
+        }
+        if (selector != null) {
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Queue a packet to be sent to a client.
+     */
+    public void send(InetSocketAddress target, byte[] data) {
+        senders[partition(target)].queue.offer(new Outbound(target, data, false));
+    }
+
+    /**
+     * Run a short task after the given delay on the timer of this engine. Delays are rounded up to the
+     * 100 ms tick of the timer, so even a 1 ms delay waits a full tick.
+     */
+    public TimingWheel.Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return timingWheel.schedule(task, delay, unit);
+    }
+
+    public int getQueueSize() {
+        int size = 0;
+        for (Sender sender : senders) {
+            if (sender != null) {
+                size += sender.queue.size();
+            }
+        }
+        return size;
+    }
+
+    public int getTimerSize() {
+        return timingWheel.size();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getShapedCount() {
+        return shapedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    private int partition(SocketAddress target) {
+        return (target.hashCode() & Integer.MAX_VALUE) % senders.length;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Loggers.PUSH.warn("[NACOS-PUSH] failed to close {}", closeable, e);
+        }
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_PACKET_SIZE);
+        while (!closed) {
+            try {
+                selector.select();
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    SocketAddress from;
+                    while ((from = channel.receive(buffer)) != null) {
+                        buffer.flip();
+                        byte[] data = new byte[buffer.remaining()];
+                        buffer.get(data);
+                        buffer.clear();
+
+                        try {
+                            listener.onPacket(data, (InetSocketAddress) from);
+                        } catch (Throwable e) {
+                            Loggers.PUSH.error("[NACOS-PUSH] error while receiving ack data", e);
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (Throwable e) {
+                if (closed) {
+                    return;
+                }
+                Loggers.PUSH.error("[NACOS-PUSH] error while receiving udp packets", e);
+            }
+        }
+    }
+
+    public interface PacketListener {
+
+        /**
+         * Handle a packet received from a client
+         *
+         * @param data packet data
+         * @param from address of the client
+         */
+        void onPacket(byte[] data, InetSocketAddress from);
+    }
+
+    private static class Outbound {
+
+        private final InetSocketAddress target;
+
+        private final byte[] data;
+
+        /**
+         * Whether the token of this packet has already been taken when it was shaped
+         */
+        private final boolean reserved;
+
+        private Outbound(InetSocketAddress target, byte[] data, boolean reserved) {
+            this.target = target;
+            this.data = data;
+            this.reserved = reserved;
+        }
+    }
+
+    /**
+     * Token bucket of one client, only touched by the sender thread of its channel
+     */
+    private static class TokenBucket {
+
+        private double tokens;
+
+        private long lastRefillMillis;
+
+        private TokenBucket(int burst, long now) {
+            this.tokens = burst;
+            this.lastRefillMillis = now;
+        }
+
+        /**
+         * Take a token, going into debt if there is none.
+         *
+         * @return millis until the taken token is available, 0 if it is available now
+         */
+        private long reserve(long now, double rate, int burst) {
+            tokens = Math.min(burst, tokens + (now - lastRefillMillis) * rate / 1000D);
+            lastRefillMillis = now;
+            tokens -= 1D;
+
+            if (tokens >= 0D) {
+                return 0L;
+            }
+            return (long) Math.ceil(-tokens * 1000D / rate);
+        }
+    }
+
+    private class Sender implements Runnable {
+
+        private final DatagramChannel channel;
+
+        private final BlockingQueue<Outbound> queue = new LinkedBlockingQueue<>();
+
+        private final Map<SocketAddress, TokenBucket> buckets = new HashMap<>(1024);
+
+        private long lastCleanMillis = System.currentTimeMillis();
+
+        private Sender(DatagramChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void run() {
+            List<Outbound> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            while (!closed) {
+                try {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                    long now = System.currentTimeMillis();
+                    for (Outbound outbound : batch) {
+                        send(outbound, now);
+                    }
+
+                    if (now - lastCleanMillis > BUCKET_IDLE_MILLIS) {
+                        cleanBuckets(now);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Throwable e) {
+                    if (closed) {
+                        return;
+                    }
+                    Loggers.PUSH.error("[NACOS-PUSH] error while sending udp packets", e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        private void send(final Outbound outbound, long now) {
+
+            if (!outbound.reserved && clientRate > 0) {
+                TokenBucket bucket = buckets.get(outbound.target);
+                if (bucket == null) {
+                    bucket = new TokenBucket(clientBurst, now);
+                    buckets.put(outbound.target, bucket);
+                }
+
+                long wait = bucket.reserve(now, clientRate, clientBurst);
+                if (wait > 0) {
+                    shapedCount.incrementAndGet();
+                    requeue(outbound, wait);
+                    return;
+                }
+            }
+
+            try {
+                if (channel.send(ByteBuffer.wrap(outbound.data), outbound.target) == 0) {
+                    // no room in the socket buffer, try again on the next tick:
+                    requeue(outbound, 1L);
+                    return;
+                }
+                sentCount.incrementAndGet();
+            } catch (IOException e) {
+                failedCount.incrementAndGet();
+                Loggers.PUSH.error("[NACOS-PUSH] failed to send udp packet to: {}, error: {}", outbound.target, e);
+            }
+        }
+
+        /**
+         * Send the packet again after the delay, delays below one tick of the timer wait a full tick
+         */
+        private void requeue(final Outbound outbound, long delayMillis) {
+            timingWheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    queue.offer(new Outbound(outbound.target, outbound.data, true));
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void cleanBuckets(long now) {
+            Iterator<TokenBucket> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().lastRefillMillis > BUCKET_IDLE_MILLIS) {
+                    iterator.remove();
+                }
+            }
+            lastCleanMillis = now;
+        }
+    }
+}
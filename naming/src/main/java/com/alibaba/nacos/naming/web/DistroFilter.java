@@ -18,10 +18,11 @@ package com.alibaba.nacos.naming.web;
 import com.alibaba.nacos.api.common.Constants;
 import com.alibaba.nacos.api.naming.CommonParams;
 import com.alibaba.nacos.naming.core.DistroMapper;
-import com.alibaba.nacos.naming.misc.HttpClient;
 import com.alibaba.nacos.naming.misc.Loggers;
 import com.alibaba.nacos.naming.misc.SwitchDomain;
 import com.alibaba.nacos.naming.misc.UtilsAndCommons;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -32,18 +33,21 @@ import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.security.AccessControlException;
-import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author nacos
  */
 public class DistroFilter implements Filter {
 
-    private static final int PROXY_CONNECT_TIMEOUT = 2000;
-    private static final int PROXY_READ_TIMEOUT = 2000;
+    /**
+     * Routes are dropped as soon as the healthy servers change, this only bounds how long a switch
+     * change takes to apply.
+     */
+    private static final long ROUTE_EXPIRE_MILLIS = 3000L;
+
+    private static final int MAX_ROUTES = 10000;
 
     @Autowired
     private DistroMapper distroMapper;
@@ -54,6 +58,13 @@ public class DistroFilter implements Filter {
     @Autowired
     private FilterBase filterBase;
 
+    private final DistroProxy proxy = new DistroProxy();
+
+    private final Cache<String, Route> routes = CacheBuilder.newBuilder()
+        .maximumSize(MAX_ROUTES)
+        .expireAfterWrite(ROUTE_EXPIRE_MILLIS, TimeUnit.MILLISECONDS)
+        .build();
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
 
@@ -95,7 +106,8 @@ public class DistroFilter implements Filter {
             }
 
             // proxy request to other server if necessary:
-            if (method.isAnnotationPresent(CanDistro.class) && !distroMapper.responsible(groupedServiceName)) {
+            String server = method.isAnnotationPresent(CanDistro.class) ? route(groupedServiceName) : null;
+            if (server != null) {
 
                 String userAgent = req.getHeader("User-Agent");
 
@@ -107,24 +119,14 @@ public class DistroFilter implements Filter {
                     return;
                 }
 
-                List<String> headerList = new ArrayList<>(16);
-                Enumeration<String> headers = req.getHeaderNames();
-                while (headers.hasMoreElements()) {
-                    String headerName = headers.nextElement();
-                    headerList.add(headerName);
-                    headerList.add(req.getHeader(headerName));
-                }
-                HttpClient.HttpResult result =
-                    HttpClient.request("http://" + distroMapper.mapSrv(groupedServiceName) + urlString, headerList,
-                        StringUtils.isBlank(req.getQueryString()) ? HttpClient.translateParameterMap(req.getParameterMap()) : new HashMap<>(2)
-                        , PROXY_CONNECT_TIMEOUT, PROXY_READ_TIMEOUT, "UTF-8", req.getMethod());
-
                 try {
-                    resp.setCharacterEncoding("UTF-8");
-                    resp.getWriter().write(result.content);
-                    resp.setStatus(result.code);
-                } catch (Exception ignore) {
-                    Loggers.SRV_LOG.warn("[DISTRO-FILTER] request failed: " + distroMapper.mapSrv(groupedServiceName) + urlString);
+                    proxy.proxy(server, req, resp);
+                } catch (IOException e) {
+                    Loggers.SRV_LOG.warn("[DISTRO-FILTER] request failed: " + server + urlString, e);
+                    if (!resp.isCommitted()) {
+                        resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                            "proxy to " + server + " failed, " + UtilsAndCommons.getAllExceptionMsg(e));
+                    }
                 }
                 return;
             }
@@ -146,8 +148,40 @@ public class DistroFilter implements Filter {
 
     }
 
+    /**
+     * @return server to send requests of the service to, or null if this server is responsible for it
+     */
+    String route(String serviceName) {
+        List<String> servers = distroMapper.getHealthyList();
+        Route route = routes.getIfPresent(serviceName);
+        if (route == null || route.servers != servers) {
+            route = new Route(servers, distroMapper.responsible(serviceName) ? null : distroMapper.mapSrv(serviceName));
+            routes.put(serviceName, route);
+        }
+        return route.server;
+    }
+
     @Override
     public void destroy() {
+        try {
+            proxy.close();
+        } catch (IOException e) {
+            Loggers.SRV_LOG.warn("[DISTRO-FILTER] failed to close proxy", e);
+        }
+    }
+
+    private static class Route {
 
+        /**
+         * healthy servers the route was decided on
+         */
+        private final List<String> servers;
+
+        private final String server;
+
+        Route(List<String> servers, String server) {
+            this.servers = servers;
+            this.server = server;
+        }
     }
 }
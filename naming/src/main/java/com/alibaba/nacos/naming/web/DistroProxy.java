@@ -0,0 +1,276 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.web;
+
+import com.alibaba.nacos.naming.misc.UtilsAndCommons;
+import com.alibaba.nacos.naming.monitor.MetricsMonitor;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proxy of requests to the server responsible for their services.
+ * <p>
+ * Requests go to peers over keep-alive connections pooled per peer, and bodies are copied through a
+ * small buffer in both directions instead of being read into strings.
+ *
+ * @author nkorange
+ */
+class DistroProxy implements Closeable {
+
+    private static final int PROXY_CONNECT_TIMEOUT = 2000;
+    private static final int PROXY_READ_TIMEOUT = 2000;
+
+    static final int MAX_CONNECTIONS_PER_PEER = 64;
+
+    private static final int MAX_CONNECTIONS = 512;
+
+    private static final long MAX_IDLE_SECONDS = 30L;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    /**
+     * Headers of a single connection, not forwarded in either direction.
+     */
+    private static final Set<String> HOP_BY_HOP_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        Collections.addAll(HOP_BY_HOP_HEADERS, "Connection", "Keep-Alive", "Proxy-Authenticate",
+            "Proxy-Authorization", "TE", "Trailer", "Transfer-Encoding", "Upgrade", "Host", "Content-Length");
+    }
+
+    /**
+     * Headers of the client replaced by the ones of this server.
+     */
+    private static final Set<String> SERVER_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        Collections.addAll(SERVER_HEADERS, "Client-Version", "User-Agent");
+    }
+
+    private final CloseableHttpClient httpClient;
+
+    DistroProxy() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_PEER);
+        connectionManager.setValidateAfterInactivity(PROXY_READ_TIMEOUT);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(PROXY_CONNECT_TIMEOUT)
+            .setConnectionRequestTimeout(PROXY_CONNECT_TIMEOUT)
+            .setSocketTimeout(PROXY_READ_TIMEOUT)
+            .setRedirectsEnabled(false)
+            .build();
+
+        httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .evictIdleConnections(MAX_IDLE_SECONDS, TimeUnit.SECONDS)
+            // bodies are passed on as they are, compressed or not:
+            .disableContentCompression()
+            .disableAutomaticRetries()
+            .disableCookieManagement()
+            .build();
+    }
+
+    /**
+     * Send the request to a peer and write its response back.
+     *
+     * @param server address of the peer, ip and port joined by a colon
+     */
+    void proxy(String server, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String url = "http://" + server + req.getRequestURI();
+        if (StringUtils.isNotBlank(req.getQueryString())) {
+            url += "?" + req.getQueryString();
+        }
+
+        RequestBuilder builder = RequestBuilder.create(req.getMethod()).setUri(url);
+        Enumeration<String> headerNames = req.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+            String headerName = headerNames.nextElement();
+            if (HOP_BY_HOP_HEADERS.contains(headerName) || SERVER_HEADERS.contains(headerName)) {
+                continue;
+            }
+
+            Enumeration<String> values = req.getHeaders(headerName);
+            while (values.hasMoreElements()) {
+                builder.addHeader(headerName, values.nextElement());
+            }
+        }
+        // peers tell proxied requests by the agent of the server:
+        builder.addHeader("Client-Version", UtilsAndCommons.SERVER_VERSION);
+        builder.addHeader("User-Agent", UtilsAndCommons.SERVER_VERSION);
+        builder.setEntity(buildEntity(req));
+        HttpUriRequest request = builder.build();
+
+        long start = System.currentTimeMillis();
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            resp.setStatus(response.getStatusLine().getStatusCode());
+            for (Header header : response.getAllHeaders()) {
+                if (!HOP_BY_HOP_HEADERS.contains(header.getName())) {
+                    resp.addHeader(header.getName(), header.getValue());
+                }
+            }
+
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                if (entity.getContentLength() >= 0) {
+                    resp.setContentLengthLong(entity.getContentLength());
+                }
+                // reading the content to its end hands the connection back to the pool:
+                try (InputStream in = entity.getContent()) {
+                    copy(in, resp.getOutputStream());
+                }
+            }
+        } finally {
+            MetricsMonitor.getDistroProxyTimer().record(System.currentTimeMillis() - start, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private HttpEntity buildEntity(HttpServletRequest req) throws IOException {
+        if (HttpGet.METHOD_NAME.equals(req.getMethod()) || HttpHead.METHOD_NAME.equals(req.getMethod())) {
+            return null;
+        }
+
+        String contentType = req.getContentType();
+        if (contentType != null && contentType.toLowerCase().startsWith(FORM_CONTENT_TYPE)) {
+            // the container has already read form bodies into the parameters:
+            return new FormEntity(req);
+        }
+
+        long length = req.getContentLengthLong();
+        if (length == 0 || (length < 0 && req.getHeader("Transfer-Encoding") == null)) {
+            return null;
+        }
+        return new InputStreamEntity(req.getInputStream(), length);
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        out.flush();
+    }
+
+    /**
+     * Form body written straight from the parameters of the request, leaving out the values taken from
+     * its query string which is sent along as it is.
+     */
+    static class FormEntity extends AbstractHttpEntity {
+
+        private final HttpServletRequest req;
+
+        private final String encoding;
+
+        FormEntity(HttpServletRequest req) {
+            this.req = req;
+            this.encoding = StringUtils.defaultIfEmpty(req.getCharacterEncoding(), "UTF-8");
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTo(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            Map<String, Integer> queryCounts = countQueryParameters(req.getQueryString(), encoding);
+
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.ISO_8859_1), BUFFER_SIZE);
+            boolean first = true;
+            for (Map.Entry<String, String[]> entry : req.getParameterMap().entrySet()) {
+                Integer skip = queryCounts.get(entry.getKey());
+                String[] values = entry.getValue();
+                for (int i = skip == null ? 0 : skip; i < values.length; i++) {
+                    if (!first) {
+                        writer.write('&');
+                    }
+                    first = false;
+                    writer.write(URLEncoder.encode(entry.getKey(), encoding));
+                    writer.write('=');
+                    writer.write(URLEncoder.encode(values[i], encoding));
+                }
+            }
+            writer.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+
+        static Map<String, Integer> countQueryParameters(String query, String encoding)
+            throws UnsupportedEncodingException {
+
+            if (StringUtils.isBlank(query)) {
+                return Collections.emptyMap();
+            }
+
+            Map<String, Integer> counts = new HashMap<>(16);
+            for (String pair : query.split("&")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                int index = pair.indexOf('=');
+                String name = URLDecoder.decode(index < 0 ? pair : pair.substring(0, index), encoding);
+                counts.merge(name, 1, Integer::sum);
+            }
+            return counts;
+        }
+    }
+}
@@ -69,7 +69,9 @@ public class FilterBase {
                 requestMethods[0] = RequestMethod.GET;
             }
             for (String methodPath : requestMapping.value()) {
-                methodCache.put(requestMethods[0].name() + "-->" + classPath + methodPath, method);
+                for (RequestMethod requestMethod : requestMethods) {
+                    methodCache.put(requestMethod.name() + "-->" + classPath + methodPath, method);
+                }
             }
         }
     }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.cluster.transport;
+
+import com.alibaba.fastjson.TypeReference;
+import com.alibaba.nacos.naming.consistency.Datum;
+import com.alibaba.nacos.naming.consistency.KeyBuilder;
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.core.Instances;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * @author nkorange
+ */
+public class BinarySerializerTest {
+
+    private BinarySerializer binarySerializer = new BinarySerializer();
+
+    private FastJsonSerializer jsonSerializer = new FastJsonSerializer();
+
+    @Test
+    public void roundTrip() {
+        Map<String, Datum<Instances>> datumMap = buildDatums(3, 5);
+        Instance special = datumMap.values().iterator().next().value.getInstanceList().get(0);
+        special.setWeight(2.5D);
+        special.setHealthy(false);
+        special.setMarked(true);
+        special.setApp(null);
+
+        byte[] data = binarySerializer.serialize(datumMap);
+        Assert.assertTrue(BinarySerializer.isBinary(data));
+        Assert.assertFalse(BinarySerializer.isBinary(jsonSerializer.serialize(datumMap)));
+
+        Map<String, Datum<Instances>> result = binarySerializer.deserializeMap(data, Instances.class);
+        Assert.assertEquals(datumMap.size(), result.size());
+
+        for (Map.Entry<String, Datum<Instances>> entry : datumMap.entrySet()) {
+            Datum<Instances> expected = entry.getValue();
+            Datum<Instances> actual = result.get(entry.getKey());
+
+            Assert.assertEquals(expected.key, actual.key);
+            Assert.assertEquals(expected.timestamp.get(), actual.timestamp.get());
+            Assert.assertEquals(expected.value.getChecksum(), actual.value.getChecksum());
+
+            for (int i = 0; i < expected.value.getInstanceList().size(); i++) {
+                Instance expectedInstance = expected.value.getInstanceList().get(i);
+                Instance actualInstance = actual.value.getInstanceList().get(i);
+                Assert.assertEquals(expectedInstance.getLastBeat(), actualInstance.getLastBeat());
+                Assert.assertEquals(expectedInstance.isMarked(), actualInstance.isMarked());
+                Assert.assertEquals(expectedInstance.getServiceName(), actualInstance.getServiceName());
+                Assert.assertEquals(expectedInstance.getApp(), actualInstance.getApp());
+                Assert.assertEquals(expectedInstance.getTenant(), actualInstance.getTenant());
+            }
+        }
+    }
+
+    @Test
+    public void skipNullDatum() {
+        Map<String, Datum> datumMap = new HashMap<>(4);
+        datumMap.put("absent", null);
+        Datum<Instances> empty = new Datum<>();
+        empty.key = "empty";
+        datumMap.put("empty", empty);
+
+        Map<String, Datum<Instances>> result =
+            binarySerializer.deserializeMap(binarySerializer.serialize(datumMap), Instances.class);
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertNull(result.get("empty").value);
+    }
+
+    @Test
+    public void deserializeAsMap() {
+        Map<String, Datum<Instances>> datumMap = buildDatums(2, 3);
+        byte[] data = binarySerializer.serialize(datumMap);
+
+        Map<?, ?> result = binarySerializer.deserialize(data, Map.class);
+        Assert.assertEquals(datumMap.keySet(), result.keySet());
+
+        Map<String, Datum<Instances>> typed =
+            binarySerializer.deserialize(data, new TypeReference<Map<String, Datum<Instances>>>() {
+            });
+        for (Map.Entry<String, Datum<Instances>> entry : datumMap.entrySet()) {
+            Assert.assertEquals(entry.getValue().value.getChecksum(), typed.get(entry.getKey()).value.getChecksum());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deserializeOtherType() {
+        binarySerializer.deserialize(binarySerializer.serialize(buildDatums(1, 1)), Instances.class);
+    }
+
+    @Test
+    public void smallerThanJson() {
+        Map<String, Datum<Instances>> datumMap = buildDatums(20, 50);
+
+        byte[] json = jsonSerializer.serialize(datumMap);
+        byte[] binary = binarySerializer.serialize(datumMap);
+
+        Assert.assertTrue(binary.length * 3 < json.length);
+    }
+
+    /**
+     * Bytes on the wire and time per instance against FastJSON, run with {@code -Dnacos.benchmark=true}.
+     */
+    @Test
+    public void compareWithFastJson() {
+        Assume.assumeTrue(Boolean.getBoolean("nacos.benchmark"));
+
+        int services = 200;
+        int instancesPerService = 50;
+        int rounds = 20;
+        Map<String, Datum<Instances>> datumMap = buildDatums(services, instancesPerService);
+        long instanceCount = (long) services * instancesPerService;
+
+        byte[] json = jsonSerializer.serialize(datumMap);
+        byte[] binary = binarySerializer.serialize(datumMap);
+
+        long jsonEncode = 0, jsonDecode = 0, binaryEncode = 0, binaryDecode = 0;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            json = jsonSerializer.serialize(datumMap);
+            jsonEncode += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            jsonSerializer.deserializeMap(json, Instances.class);
+            jsonDecode += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            binary = binarySerializer.serialize(datumMap);
+            binaryEncode += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            binarySerializer.deserializeMap(binary, Instances.class);
+            binaryDecode += System.nanoTime() - start;
+        }
+
+        long perInstance = instanceCount * rounds;
+        System.out.println(String.format("[serializer benchmark] %d instances, json: %d bytes, encode %d ns/instance, "
+                + "decode %d ns/instance; binary: %d bytes, encode %d ns/instance, decode %d ns/instance",
+            instanceCount, json.length, jsonEncode / perInstance, jsonDecode / perInstance,
+            binary.length, binaryEncode / perInstance, binaryDecode / perInstance));
+    }
+
+    private Map<String, Datum<Instances>> buildDatums(int services, int instancesPerService) {
+        Map<String, Datum<Instances>> datumMap = new HashMap<>(services * 2);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < services; i++) {
+            String serviceName = "DEFAULT_GROUP@@service-" + i;
+            List<Instance> instanceList = new ArrayList<>();
+            for (int j = 0; j < instancesPerService; j++) {
+                Instance instance = new Instance("10.0." + (j / 250) + "." + (j % 250), 8080 + i,
+                    j % 2 == 0 ? "DEFAULT" : "cluster-b", "public", "app-" + (i % 5));
+                instance.setServiceName(serviceName);
+                instance.setLastBeat(now - j * 37L);
+                instance.setInstanceId(instance.generateInstanceId());
+                instance.addMetadata("version", "1.0." + (j % 3));
+                instance.addMetadata("region", "cn-hangzhou");
+                instanceList.add(instance);
+            }
+
+            Instances instances = new Instances();
+            instances.setInstanceList(instanceList);
+
+            Datum<Instances> datum = new Datum<>();
+            datum.key = KeyBuilder.buildInstanceListKey("public", serviceName, true);
+            datum.value = instances;
+            datum.timestamp.set(i + 1);
+            datumMap.put(datum.key, datum);
+        }
+        return datumMap;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.cluster.transport;
+
+import com.alibaba.nacos.naming.consistency.Datum;
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.core.Instances;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.util.*;
+
+/**
+ * @author nkorange
+ */
+public class DatumChunkStreamTest {
+
+    private BinarySerializer serializer = new BinarySerializer();
+
+    @Test
+    public void writeAndRead() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DatumChunkStream stream = new DatumChunkStream(out);
+        stream.write(serializer.serialize(buildChunk(0, 10)));
+        stream.write(serializer.serialize(buildChunk(10, 5)));
+        stream.finish();
+
+        final Map<String, Datum<Instances>> received = new HashMap<>(32);
+        int chunks = DatumChunkStream.read(new ByteArrayInputStream(out.toByteArray()),
+            new DatumChunkStream.ChunkHandler() {
+                @Override
+                public void onChunk(byte[] chunk) {
+                    received.putAll(serializer.deserializeMap(chunk, Instances.class));
+                }
+            });
+
+        Assert.assertEquals(2, chunks);
+        Assert.assertEquals(15, received.size());
+        Assert.assertEquals("1.1.1.1", received.get("key-12").value.getInstanceList().get(0).getIp());
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DatumChunkStream stream = new DatumChunkStream(out);
+        stream.write(serializer.serialize(buildChunk(0, 10)));
+
+        DatumChunkStream.read(new ByteArrayInputStream(out.toByteArray()), new DatumChunkStream.ChunkHandler() {
+            @Override
+            public void onChunk(byte[] chunk) {
+            }
+        });
+    }
+
+    private Map<String, Datum> buildChunk(int from, int count) {
+        Map<String, Datum> chunk = new HashMap<>(count * 2);
+        for (int i = from; i < from + count; i++) {
+            Instances instances = new Instances();
+            instances.setInstanceList(new ArrayList<>(Collections.singletonList(new Instance("1.1.1.1", i))));
+
+            Datum<Instances> datum = new Datum<>();
+            datum.key = "key-" + i;
+            datum.value = instances;
+            chunk.put(datum.key, datum);
+        }
+        return chunk;
+    }
+}
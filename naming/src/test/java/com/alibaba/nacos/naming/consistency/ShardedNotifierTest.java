@@ -0,0 +1,107 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.consistency;
+
+import com.alibaba.nacos.naming.misc.Loggers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author nkorange
+ */
+public class ShardedNotifierTest {
+
+    @Test
+    public void keepOrderOfKey() throws Exception {
+        final Map<String, List<ApplyAction>> notified = new ConcurrentHashMap<>(16);
+        final CountDownLatch latch = new CountDownLatch(300);
+
+        ShardedNotifier notifier = new ShardedNotifier("test.notifier", Loggers.SRV_LOG, 4, 1024) {
+            @Override
+            protected void handle(String datumKey, ApplyAction action) {
+                notified.get(datumKey).add(action);
+                latch.countDown();
+            }
+        };
+
+        for (int i = 0; i < 100; i++) {
+            notified.put("key-" + i, Collections.synchronizedList(new ArrayList<ApplyAction>()));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            notifier.addTask("key-" + i, ApplyAction.CHANGE);
+            notifier.addTask("key-" + i, ApplyAction.DELETE);
+            notifier.addTask("key-" + i, ApplyAction.CHANGE);
+        }
+        notifier.start();
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (List<ApplyAction> actions : notified.values()) {
+            Assert.assertEquals(Arrays.asList(ApplyAction.CHANGE, ApplyAction.DELETE, ApplyAction.CHANGE), actions);
+        }
+        Assert.assertEquals(0, notifier.getTaskSize());
+    }
+
+    @Test
+    public void coalescePendingChanges() throws Exception {
+        final List<String> notified = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch = new CountDownLatch(2);
+
+        ShardedNotifier notifier = new ShardedNotifier("test.notifier", Loggers.SRV_LOG, 2, 1024) {
+            @Override
+            protected void handle(String datumKey, ApplyAction action) {
+                notified.add(datumKey);
+                latch.countDown();
+            }
+        };
+
+        for (int i = 0; i < 10; i++) {
+            notifier.addTask("key-a", ApplyAction.CHANGE);
+            notifier.addTask("key-b", ApplyAction.CHANGE);
+        }
+        Assert.assertEquals(2, notifier.getTaskSize());
+
+        notifier.start();
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        // a change after dispatch is queued again:
+        notifier.addTask("key-a", ApplyAction.CHANGE);
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (notified.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(3, notified.size());
+        Assert.assertEquals(3, notifier.getDispatchCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectWhenFull() {
+        ShardedNotifier notifier = new ShardedNotifier("test.notifier", Loggers.SRV_LOG, 1, 2) {
+            @Override
+            protected void handle(String datumKey, ApplyAction action) {
+            }
+        };
+
+        notifier.addTask("key-0", ApplyAction.CHANGE);
+        notifier.addTask("key-1", ApplyAction.CHANGE);
+        notifier.addTask("key-2", ApplyAction.CHANGE);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.consistency.ephemeral.distro;
+
+import com.alibaba.nacos.naming.consistency.Datum;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * @author nkorange
+ */
+public class DataStoreTest {
+
+    @Test
+    public void changedKeys() {
+        DataStore dataStore = new DataStore();
+        dataStore.put("key-1", new Datum());
+        long version = dataStore.getVersion();
+
+        dataStore.put("key-2", new Datum());
+        dataStore.put("key-2", new Datum());
+        dataStore.remove("key-1");
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("key-1", "key-2")),
+            dataStore.getChangedKeys(version, dataStore.getVersion()));
+        Assert.assertTrue(dataStore.getChangedKeys(dataStore.getVersion(), dataStore.getVersion()).isEmpty());
+
+        for (int i = 0; i < DataStore.MAX_CHANGE_LOG_SIZE; i++) {
+            dataStore.put("key-" + i, new Datum());
+        }
+        // no longer covered by the change log:
+        Assert.assertNull(dataStore.getChangedKeys(version, dataStore.getVersion()));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.consistency.ephemeral.distro;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.core.Instances;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author nkorange
+ */
+public class DeltaLogTest {
+
+    private static final String KEY = "com.alibaba.nacos.naming.iplist.ephemeral.public##DEFAULT_GROUP@@test";
+
+    @Test
+    public void mergeDeltas() {
+        DeltaLog deltaLog = new DeltaLog();
+        List<Instance> list = buildInstances(2000);
+
+        deltaLog.record(KEY, 100L, build(list));
+        Assert.assertNull(deltaLog.getDelta(KEY, 99L));
+        Assert.assertTrue(deltaLog.getDelta(KEY, 100L).getUpdated().isEmpty());
+
+        // one instance changed in place, as a health check does:
+        list.get(10).setHealthy(false);
+        deltaLog.record(KEY, 101L, build(list));
+
+        Instance removed = list.remove(20);
+        list.add(new Instance("2.2.2.2", 80));
+        deltaLog.record(KEY, 102L, build(list));
+
+        InstancesDelta delta = deltaLog.getDelta(KEY, 100L);
+        Assert.assertEquals(102L, delta.getVersion());
+        Assert.assertEquals(2, delta.getUpdated().size());
+        Assert.assertEquals(1, delta.getRemoved().size());
+        Assert.assertEquals(removed.getDatumKey(), delta.getRemoved().get(0));
+
+        Assert.assertEquals(2, deltaLog.getDelta(KEY, 101L).getUpdated().size() + deltaLog.getDelta(KEY, 101L).getRemoved().size());
+    }
+
+    @Test
+    public void applyDelta() {
+        DeltaLog deltaLog = new DeltaLog();
+        List<Instance> list = buildInstances(100);
+        Instances base = build(new ArrayList<>(list));
+
+        deltaLog.record(KEY, 1L, build(list));
+        list.remove(0);
+        Instance changed = new Instance(list.get(0).getIp(), list.get(0).getPort());
+        changed.setWeight(5.0D);
+        list.set(0, changed);
+        deltaLog.record(KEY, 2L, build(list));
+
+        String json = JSON.toJSONString(deltaLog.getDelta(KEY, 1L));
+        Instances result = DeltaLog.apply(base, JSON.parseObject(json, InstancesDelta.class));
+
+        Assert.assertEquals(build(list).getChecksum(), result.getChecksum());
+    }
+
+    @Test
+    public void gapResetsLog() {
+        DeltaLog deltaLog = new DeltaLog();
+        List<Instance> list = buildInstances(10);
+
+        deltaLog.record(KEY, 1L, build(list));
+        deltaLog.record(KEY, 2L, build(list));
+        deltaLog.record(KEY, 5L, build(list));
+
+        Assert.assertNull(deltaLog.getDelta(KEY, 1L));
+        Assert.assertNotNull(deltaLog.getDelta(KEY, 5L));
+
+        for (int i = 6; i < 6 + DeltaLog.MAX_DELTAS_PER_KEY + 1; i++) {
+            deltaLog.record(KEY, i, build(list));
+        }
+        Assert.assertNull(deltaLog.getDelta(KEY, 5L));
+        Assert.assertNotNull(deltaLog.getDelta(KEY, 6L));
+    }
+
+    private List<Instance> buildInstances(int count) {
+        List<Instance> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(new Instance("1.1." + (i / 256) + "." + (i % 256), 8080));
+        }
+        return list;
+    }
+
+    private Instances build(List<Instance> list) {
+        Instances instances = new Instances();
+        instances.setInstanceList(new ArrayList<>(list));
+        return instances;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.consistency.ephemeral.distro;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * @author nkorange
+ */
+public class DistroHashTreeTest {
+
+    @Test
+    public void sameDataSameRoot() {
+        Map<String, String> checksums = buildChecksums(10000);
+        Map<String, String> reordered = new TreeMap<>(Collections.<String>reverseOrder());
+        reordered.putAll(checksums);
+
+        Assert.assertEquals(new DistroHashTree(checksums).getRoot(), new DistroHashTree(reordered).getRoot());
+    }
+
+    @Test
+    public void descendToDifferentLeaves() {
+        Map<String, String> local = buildChecksums(10000);
+        Map<String, String> remote = new HashMap<>(local);
+        remote.put("key-42", "changed");
+        remote.remove("key-4242");
+        remote.put("key-new", "new");
+
+        DistroHashTree localTree = new DistroHashTree(local);
+        DistroHashTree remoteTree = new DistroHashTree(remote);
+        Assert.assertNotEquals(localTree.getRoot(), remoteTree.getRoot());
+
+        List<Integer> diff = Collections.singletonList(0);
+        for (int level = 0; level < DistroHashTree.DEPTH; level++) {
+            List<Integer> next = new ArrayList<>();
+            for (Integer index : diff) {
+                next.addAll(localTree.diffChildren(level, index, remoteTree.getChildren(level, index)));
+            }
+            diff = next;
+        }
+
+        Assert.assertTrue(diff.size() <= 3);
+        Assert.assertTrue(diff.contains(DistroHashTree.leafOf("key-42")));
+        Assert.assertTrue(diff.contains(DistroHashTree.leafOf("key-4242")));
+        Assert.assertTrue(diff.contains(DistroHashTree.leafOf("key-new")));
+
+        Map<String, String> remoteLeaves = remoteTree.getChecksums(diff);
+        Map<String, String> localLeaves = localTree.getChecksums(diff);
+        Assert.assertEquals("changed", remoteLeaves.get("key-42"));
+        Assert.assertTrue(localLeaves.containsKey("key-4242"));
+        Assert.assertFalse(remoteLeaves.containsKey("key-4242"));
+        Assert.assertTrue(remoteLeaves.size() < 50);
+    }
+
+    @Test
+    public void updateInPlace() {
+        Map<String, String> checksums = buildChecksums(10000);
+        DistroHashTree tree = new DistroHashTree(new HashMap<>(checksums));
+
+        tree.put("key-42", "changed");
+        tree.put("key-new", "new");
+        tree.put("key-7", checksums.get("key-7"));
+        tree.remove("key-4242");
+        tree.remove("key-absent");
+
+        checksums.put("key-42", "changed");
+        checksums.put("key-new", "new");
+        checksums.remove("key-4242");
+        DistroHashTree rebuilt = new DistroHashTree(checksums);
+
+        Assert.assertEquals(rebuilt.getRoot(), tree.getRoot());
+        Assert.assertEquals(rebuilt.size(), tree.size());
+        Assert.assertArrayEquals(rebuilt.getChildren(0, 0), tree.getChildren(0, 0));
+    }
+
+    private Map<String, String> buildChecksums(int count) {
+        Map<String, String> checksums = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            checksums.put("key-" + i, Integer.toHexString(("checksum-" + i).hashCode()));
+        }
+        return checksums;
+    }
+}
@@ -109,6 +109,47 @@ public class InstanceControllerTest extends BaseTest {
         Assert.assertEquals("ok", actualValue);
     }
 
+    @Test
+    public void batchBeat() throws Exception {
+
+        Service service = new Service();
+        service.setName(TEST_SERVICE_NAME);
+
+        Cluster cluster = new Cluster(UtilsAndCommons.DEFAULT_CLUSTER_NAME, service);
+        service.addCluster(cluster);
+
+        Instance instance = new Instance();
+        instance.setIp("1.1.1.1");
+        instance.setPort(9999);
+        instance.setLastBeat(0L);
+        List<Instance> ipList = new ArrayList<>();
+        ipList.add(instance);
+        service.updateIPs(ipList, true);
+
+        Mockito.when(serviceManager.getService(Constants.DEFAULT_NAMESPACE_ID, TEST_SERVICE_NAME)).thenReturn(service);
+        Mockito.when(distroMapper.responsible(TEST_SERVICE_NAME)).thenReturn(true);
+
+        JSONArray beats = new JSONArray();
+        beats.add(JSON.parseObject("{\"ip\":\"1.1.1.1\",\"port\":9999}"));
+        beats.add(JSON.parseObject("{\"ip\":\"2.2.2.2\",\"port\":9999}"));
+        JSONObject body = new JSONObject();
+        body.put(TEST_SERVICE_NAME, beats);
+
+        MockHttpServletRequestBuilder builder =
+            MockMvcRequestBuilders.put(UtilsAndCommons.NACOS_NAMING_CONTEXT + "/instance/beats")
+                .param("beats", body.toJSONString());
+        JSONObject result = JSON.parseObject(mockmvc.perform(builder).andReturn().getResponse().getContentAsString());
+
+        // the instance not registered is sent again as a single beat:
+        JSONArray unhandled = result.getJSONArray("unhandled");
+        Assert.assertEquals(1, unhandled.size());
+        Assert.assertEquals(TEST_SERVICE_NAME + "#2.2.2.2#9999", unhandled.getString(0));
+        Assert.assertEquals(Constants.DEFAULT_HEART_BEAT_INTERVAL, result.getLongValue("clientBeatInterval"));
+
+        Thread.sleep(500L);
+        Assert.assertTrue(service.allIPs(true).get(0).getLastBeat() > 0L);
+    }
+
     @Test
     public void getInstances() throws Exception {
 
@@ -15,6 +15,7 @@
  */
 package com.alibaba.nacos.naming.core;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.nacos.api.naming.pojo.AbstractHealthChecker;
 import org.junit.Assert;
 import org.junit.Before;
@@ -67,6 +68,41 @@ public class ClusterTest {
         Assert.assertEquals("Client-Version:nacos-test-1", httpHealthCheck.getHeaders());
     }
 
+    @Test
+    public void healthCheckMethod() {
+        AbstractHealthChecker.Http get = new AbstractHealthChecker.Http();
+        String json = JSON.toJSONString(get);
+        // as serialized before the method was added:
+        Assert.assertEquals("{\"expectedResponseCode\":200,\"headers\":\"\",\"path\":\"\",\"type\":\"HTTP\"}", json);
+
+        // methods read as GET serialize as before:
+        for (String method : new String[]{null, "", " get ", "GET"}) {
+            AbstractHealthChecker.Http checker = new AbstractHealthChecker.Http();
+            checker.setMethod(method);
+            Assert.assertEquals(json, JSON.toJSONString(checker));
+            Assert.assertEquals(get, checker);
+            Assert.assertEquals(get.hashCode(), checker.hashCode());
+        }
+        Assert.assertEquals(get, JSON.parseObject(json, AbstractHealthChecker.Http.class));
+
+        AbstractHealthChecker.Http head = new AbstractHealthChecker.Http();
+        head.setMethod("head ");
+        Assert.assertEquals(AbstractHealthChecker.Http.METHOD_HEAD, head.getMethod());
+        Assert.assertEquals(head, JSON.parseObject(JSON.toJSONString(head), AbstractHealthChecker.Http.class));
+        cluster.setHealthChecker(head);
+        cluster.validate();
+
+        AbstractHealthChecker.Http post = new AbstractHealthChecker.Http();
+        post.setMethod("post");
+        cluster.setHealthChecker(post);
+        try {
+            cluster.validate();
+            Assert.fail("POST accepted as a health check method");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("POST"));
+        }
+    }
+
     @Test
     public void updateIps() {
 
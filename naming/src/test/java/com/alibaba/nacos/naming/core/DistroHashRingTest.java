@@ -0,0 +1,91 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * @author nkorange
+ */
+public class DistroHashRingTest {
+
+    private static final int SERVICE_COUNT = 20000;
+
+    @Test
+    public void removeServerMovesOnlyItsServices() {
+        List<String> servers = buildServers(5);
+        DistroHashRing before = new DistroHashRing(servers, 128, null);
+
+        List<String> reduced = new ArrayList<>(servers);
+        reduced.remove(2);
+        DistroHashRing after = new DistroHashRing(reduced, 128, null);
+
+        int moved = 0;
+        for (int i = 0; i < SERVICE_COUNT; i++) {
+            String serviceName = "DEFAULT_GROUP@@service-" + i;
+            String owner = before.map(serviceName);
+            if (!owner.equals(after.map(serviceName))) {
+                moved++;
+                Assert.assertEquals(servers.get(2), owner);
+            }
+        }
+
+        // about 1/5 of all services, and far from the ~80% moved by hash modulo:
+        Assert.assertTrue(moved > SERVICE_COUNT / 10);
+        Assert.assertTrue(moved < SERVICE_COUNT * 3 / 10);
+    }
+
+    @Test
+    public void independentOfServerOrder() {
+        List<String> servers = buildServers(4);
+        List<String> shuffled = new ArrayList<>(servers);
+        Collections.reverse(shuffled);
+
+        DistroHashRing ring = new DistroHashRing(servers, 64, null);
+        DistroHashRing other = new DistroHashRing(shuffled, 64, null);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(ring.map("service-" + i), other.map("service-" + i));
+        }
+    }
+
+    @Test
+    public void weightedServerOwnsMore() {
+        List<String> servers = buildServers(3);
+        Map<String, Integer> weights = new HashMap<>(4);
+        weights.put(servers.get(0), 3);
+
+        DistroHashRing ring = new DistroHashRing(servers, 128, weights);
+        Map<String, Integer> counts = new HashMap<>(4);
+        for (int i = 0; i < SERVICE_COUNT; i++) {
+            String owner = ring.map("service-" + i);
+            counts.put(owner, counts.containsKey(owner) ? counts.get(owner) + 1 : 1);
+        }
+
+        Assert.assertTrue(counts.get(servers.get(0)) > SERVICE_COUNT / 2);
+        Assert.assertNull(new DistroHashRing(Collections.<String>emptyList(), 128, null).map("service-0"));
+    }
+
+    private List<String> buildServers(int count) {
+        List<String> servers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            servers.add("192.168.0." + (i + 1) + ":8848");
+        }
+        return servers;
+    }
+}
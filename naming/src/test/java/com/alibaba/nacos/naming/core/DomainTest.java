@@ -15,6 +15,8 @@
  */
 package com.alibaba.nacos.naming.core;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
 import com.alibaba.nacos.naming.boot.SpringContext;
 import com.alibaba.nacos.naming.misc.UtilsAndCommons;
 import com.alibaba.nacos.naming.push.PushService;
@@ -27,6 +29,7 @@ import org.mockito.Spy;
 import org.springframework.context.ApplicationContext;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -102,4 +105,168 @@ public class DomainTest {
         Assert.assertEquals("1.1.1.1", ips.get(0).getIp());
         Assert.assertEquals(1234, ips.get(0).getPort());
     }
+
+    @Test
+    public void shareSnapshot() throws Exception {
+
+        List<Instance> list = new ArrayList<Instance>();
+        for (int i = 0; i < 10; i++) {
+            Instance instance = new Instance("1.1.1." + i, 1234);
+            instance.setServiceName("nacos.service.1");
+            list.add(instance);
+        }
+        service.updateIPs(list, true);
+
+        ServiceSnapshot snapshot = service.getSnapshot("", false, true);
+        Assert.assertSame(snapshot, service.getSnapshot("", false, true));
+        Assert.assertEquals(10, snapshot.toJSON(1000L, "").getJSONArray("hosts").size());
+
+        ServiceSnapshot.PushPacket packet = snapshot.getPushPacket(10000L, 1L);
+        Assert.assertSame(packet, snapshot.getPushPacket(10000L, 1L));
+        Assert.assertNotSame(packet, snapshot.getPushPacket(10000L, 2L));
+
+        // health changed in place, as health checks do:
+        list.get(0).setHealthy(false);
+        service.invalidateSnapshots();
+
+        ServiceSnapshot changed = service.getSnapshot("", true, true);
+        Assert.assertNotSame(snapshot, service.getSnapshot("", false, true));
+        Assert.assertEquals(9, changed.toJSON(1000L, "").getJSONArray("hosts").size());
+    }
+
+    @Test
+    public void snapshotProtectThreshold() throws Exception {
+
+        service.setProtectThreshold(0.5f);
+        List<Instance> list = new ArrayList<Instance>();
+        for (int i = 0; i < 4; i++) {
+            Instance instance = new Instance("1.1.1." + i, 1234);
+            instance.setHealthy(i == 0);
+            list.add(instance);
+        }
+        service.updateIPs(list, true);
+
+        ServiceSnapshot snapshot = service.getSnapshot("", true, true);
+        Assert.assertTrue(snapshot.isReachProtectThreshold());
+        Assert.assertEquals(4, snapshot.toJSON(1000L, "").getJSONArray("hosts").size());
+
+        // the checksum does not depend on the order of the instances:
+        List<Instance> instances = new ArrayList<>(service.allIPs());
+        Collections.reverse(instances);
+        Assert.assertEquals(snapshot.getChecksum(),
+            ServiceSnapshot.build(service, 0L, "", instances, true, true).getChecksum());
+    }
+
+    @Test
+    public void partitionInstances() throws Exception {
+
+        List<Instance> list = new ArrayList<Instance>();
+        for (int i = 0; i < 4; i++) {
+            Instance instance = new Instance("1.1.1." + i, 1234);
+            instance.setHealthy(i % 2 == 0);
+            list.add(instance);
+        }
+        service.updateIPs(list, true);
+
+        // the same lists are read until instances change:
+        List<Instance> instances = service.allIPs();
+        Assert.assertSame(instances, service.allIPs());
+        Assert.assertEquals(4, instances.size());
+        Assert.assertEquals(4, service.allIPs(true).size());
+        Assert.assertEquals(0, service.allIPs(false).size());
+        Assert.assertEquals(2, service.healthyInstanceCount());
+
+        // changes in place are published once marked:
+        service.allIPs().get(1).setHealthy(true);
+        service.invalidateSnapshots();
+        Assert.assertEquals(3, service.healthyInstanceCount());
+        Assert.assertNotSame(instances, service.allIPs());
+
+        try {
+            service.allIPs().clear();
+            Assert.fail("instances must not be modified");
+        } catch (UnsupportedOperationException ignore) {
+        }
+    }
+
+    @Test
+    public void incrementalChecksum() throws Exception {
+
+        List<Instance> list = new ArrayList<Instance>();
+        for (int i = 0; i < 5; i++) {
+            list.add(new Instance("1.1.1." + i, 1234));
+        }
+        service.updateIPs(list, true);
+        String checksum = service.getChecksum();
+
+        // the same instances in another order, as new objects:
+        Service other = new Service();
+        other.setName("nacos.service.1");
+        other.addCluster(new Cluster(UtilsAndCommons.DEFAULT_CLUSTER_NAME, other));
+        List<Instance> reversed = new ArrayList<Instance>();
+        for (int i = 4; i >= 0; i--) {
+            reversed.add(new Instance("1.1.1." + i, 1234));
+        }
+        other.updateIPs(reversed, true);
+        Assert.assertEquals(checksum, other.getChecksum());
+
+        // health changed in place is counted at once, and changing it back restores the checksum:
+        Instance instance = service.allIPs().get(0);
+        instance.setHealthy(false);
+        Assert.assertNotEquals(checksum, service.getChecksum());
+        instance.setHealthy(true);
+        Assert.assertEquals(checksum, service.getChecksum());
+
+        // instances replaced by equal ones keep the checksum, removed ones leave it:
+        other.updateIPs(new ArrayList<>(reversed.subList(1, 5)), true);
+        list.remove(4);
+        List<Instance> copies = new ArrayList<Instance>();
+        for (Instance ip : list) {
+            copies.add(new Instance(ip.getIp(), ip.getPort()));
+        }
+        service.updateIPs(copies, true);
+        Assert.assertEquals(other.getChecksum(), service.getChecksum());
+        Assert.assertNotEquals(checksum, service.getChecksum());
+
+        // attributes of the service are hashed again when recalculated:
+        checksum = service.getChecksum();
+        service.setProtectThreshold(0.8f);
+        service.recalculateChecksum();
+        Assert.assertNotEquals(checksum, service.getChecksum());
+    }
+
+    @Test
+    public void deltaPacket() throws Exception {
+
+        List<Instance> list = new ArrayList<Instance>();
+        for (int i = 0; i < 10; i++) {
+            list.add(new Instance("1.1.1." + i, 1234));
+        }
+        service.updateIPs(list, true);
+        ServiceSnapshot base = service.getSnapshot("", false, true);
+
+        list.remove(0);
+        list.get(0).setWeight(2.0D);
+        list.add(new Instance("2.2.2.2", 1234));
+        service.updateIPs(list, true);
+        ServiceSnapshot snapshot = service.getSnapshot("", false, true);
+
+        ServiceSnapshot.PushPacket packet = snapshot.getDeltaPacket(base, 10000L, 1L);
+        Assert.assertSame(packet, snapshot.getDeltaPacket(base, 10000L, 1L));
+        Assert.assertEquals("dom-delta", packet.getData().get("type"));
+
+        JSONObject delta = JSON.parseObject((String) packet.getData().get("data"));
+        Assert.assertEquals(base.getChecksum(), delta.getString("baseChecksum"));
+        Assert.assertEquals(snapshot.getChecksum(), delta.getString("checksum"));
+        Assert.assertEquals("2.2.2.2", delta.getJSONArray("added").getJSONObject(0).getString("ip"));
+        Assert.assertEquals(2.0D, delta.getJSONArray("changed").getJSONObject(0).getDoubleValue("weight"), 0.001D);
+        Assert.assertEquals("1.1.1.0:1234", delta.getJSONArray("removed").getString(0));
+
+        // more than half of the instances changed:
+        for (Instance instance : list) {
+            instance.setWeight(3.0D);
+        }
+        service.invalidateSnapshots();
+        Assert.assertNull(service.getSnapshot("", false, true).getDeltaPacket(snapshot, 10000L, 1L));
+    }
 }
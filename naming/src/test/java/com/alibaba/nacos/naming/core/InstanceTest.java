@@ -18,11 +18,13 @@ package com.alibaba.nacos.naming.core;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.nacos.naming.healthcheck.RsInfo;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author nkorange
@@ -69,4 +71,114 @@ public class InstanceTest {
         RsInfo info1 = JSON.parseObject(json, RsInfo.class);
         System.out.println(info1);
     }
+
+    @Test
+    public void ipPortKey() {
+        Assert.assertEquals((((192L << 24) | (168L << 16) | (1L << 8) | 20L) << 16) | 8848L,
+            Instance.ipPortKey("192.168.1.20", 8848));
+        Assert.assertEquals(Instance.ipPortKey("10.0.0.1", 80), new Instance("10.0.0.1", 80).getIpPortKey());
+        Assert.assertNotEquals(Instance.ipPortKey("10.0.0.1", 80), Instance.ipPortKey("10.0.0.1", 81));
+        Assert.assertEquals(-1L, Instance.ipPortKey("nacos.io", 80));
+        Assert.assertEquals(-1L, Instance.ipPortKey("10.0.0.256", 80));
+        Assert.assertEquals(-1L, Instance.ipPortKey("10.0..1", 80));
+        Assert.assertEquals(-1L, Instance.ipPortKey("::1", 80));
+    }
+
+    @Test
+    public void shareMetadata() {
+        Instance a = new Instance("1.1.1.1", 80);
+        Instance b = new Instance("1.1.1.2", 80);
+        a.setMetadata(buildMetadata());
+        b.setMetadata(buildMetadata());
+        a.setClusterName(new String("TEST"));
+        b.setClusterName(new String("TEST"));
+
+        Assert.assertSame(a.getMetadata(), b.getMetadata());
+        Assert.assertSame(a.getClusterName(), b.getClusterName());
+
+        b.addMetadata("weight", "2");
+        Assert.assertEquals("2", b.getMetadata().get("weight"));
+        Assert.assertNull(a.getMetadata().get("weight"));
+
+        Instance parsed = JSON.parseObject(JSON.toJSONString(a), Instance.class);
+        Assert.assertSame(a.getMetadata(), parsed.getMetadata());
+    }
+
+    @Test
+    public void internSharedStrings() {
+        Instance a = new Instance("1.1.1.1", 80);
+        Instance b = new Instance("1.1.1.2", 80);
+        for (Instance instance : new Instance[]{a, b}) {
+            // every instance gets its own copies of the strings, as after deserialization:
+            instance.setServiceName(new String("DEFAULT_GROUP@@service"));
+            instance.setTenant(new String("public"));
+            instance.setApp(new String("app"));
+        }
+
+        Assert.assertSame(a.getServiceName(), b.getServiceName());
+        Assert.assertSame(a.getTenant(), b.getTenant());
+        Assert.assertSame(a.getApp(), b.getApp());
+    }
+
+    /**
+     * Retained heap of 1M instances, compared with the same data in plain api instances not interned.
+     * Run with {@code -Dnacos.benchmark=true}.
+     */
+    @Test
+    public void footprint() {
+        Assume.assumeTrue(Boolean.getBoolean("nacos.benchmark"));
+
+        int count = 1000 * 1000;
+
+        long base = usedHeap();
+        Object[] plain = new Object[count];
+        for (int i = 0; i < count; i++) {
+            com.alibaba.nacos.api.naming.pojo.Instance instance = new com.alibaba.nacos.api.naming.pojo.Instance();
+            fill(instance, i);
+            plain[i] = instance;
+        }
+        long plainBytes = usedHeap() - base;
+        plain = null;
+
+        long start = System.nanoTime();
+        base = usedHeap();
+        Object[] compact = new Object[count];
+        for (int i = 0; i < count; i++) {
+            Instance instance = new Instance();
+            fill(instance, i);
+            compact[i] = instance;
+        }
+        long compactBytes = usedHeap() - base;
+        long cost = System.nanoTime() - start;
+
+        System.out.println("heap of " + count + " instances, plain: " + plainBytes / count + " bytes/instance, compact: "
+            + compactBytes / count + " bytes/instance, built in " + TimeUnit.NANOSECONDS.toMillis(cost) + " ms");
+
+        Assert.assertEquals(count, compact.length);
+        Assert.assertTrue(compactBytes < plainBytes * 2 / 3);
+    }
+
+    private void fill(com.alibaba.nacos.api.naming.pojo.Instance instance, int i) {
+        // every instance gets its own copies of the strings, as after deserialization:
+        instance.setIp("10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF));
+        instance.setPort(8080);
+        instance.setClusterName(new String("DEFAULT"));
+        instance.setServiceName(new String("DEFAULT_GROUP@@service-" + (i % 1000)));
+        instance.setMetadata(buildMetadata());
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private Map<String, String> buildMetadata() {
+        Map<String, String> metadata = new HashMap<>(4);
+        metadata.put(new String("version"), new String("1.0.0"));
+        metadata.put(new String("protocol"), new String("dubbo"));
+        return metadata;
+    }
 }
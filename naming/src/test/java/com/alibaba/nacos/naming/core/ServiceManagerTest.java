@@ -27,8 +27,13 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.when;
 
 /**
@@ -84,4 +89,175 @@ public class ServiceManagerTest extends BaseTest {
         service.setNamespaceId(TEST_NAMESPACE);
         serviceManager.updateIpAddresses(service, UtilsAndCommons.UPDATE_INSTANCE_ACTION_ADD, true);
     }
+
+    @Test
+    public void testSearchServicesByKeyword() throws Exception {
+        ReflectionTestUtils.setField(serviceManager, "consistencyService", consistencyService);
+        for (String name : new String[]{"DEFAULT_GROUP@@order-service", "DEFAULT_GROUP@@user-service",
+            "DEFAULT_GROUP@@order-admin", "pay"}) {
+            Service service = new Service(name);
+            service.setNamespaceId(TEST_NAMESPACE);
+            serviceManager.putService(service);
+        }
+
+        Assert.assertEquals(Arrays.asList("DEFAULT_GROUP@@order-admin", "DEFAULT_GROUP@@order-service"),
+            names(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "order")));
+        Assert.assertEquals(Collections.singletonList("pay"), names(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "ay")));
+        Assert.assertEquals(4, serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "").size());
+        Assert.assertTrue(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "missing").isEmpty());
+        // regular expressions are still supported:
+        Assert.assertEquals(Arrays.asList("DEFAULT_GROUP@@order-service", "DEFAULT_GROUP@@user-service"),
+            names(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "(order|user)-service")));
+        Assert.assertEquals(Arrays.asList("DEFAULT_GROUP@@order-admin", "DEFAULT_GROUP@@order-service"),
+            names(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "order.")));
+        // owners are matched as well:
+        setOwners("pay", "alice");
+        Assert.assertEquals(Collections.singletonList("pay"), names(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "alice")));
+        Assert.assertEquals(Collections.singletonList("pay"), names(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "pay:")));
+        Assert.assertEquals(Collections.singletonList("pay"), names(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "ay:")));
+        setOwners("pay", "bob");
+        Assert.assertTrue(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "alice").isEmpty());
+        Assert.assertEquals(Collections.singletonList("pay"), names(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "bob")));
+
+        serviceManager.onDelete(KeyBuilder.buildServiceMetaKey(TEST_NAMESPACE, "DEFAULT_GROUP@@order-admin"));
+        Assert.assertEquals(Collections.singletonList("DEFAULT_GROUP@@order-service"),
+            names(serviceManager.searchServicesByKeyword(TEST_NAMESPACE, "order")));
+    }
+
+    @Test
+    public void testPagedService() {
+        for (int i = 0; i < 25; i++) {
+            Service service = new Service(String.format("service-%02d", i));
+            service.setNamespaceId(TEST_NAMESPACE);
+            serviceManager.putService(service);
+        }
+
+        List<Service> services = new ArrayList<>();
+        Assert.assertEquals(25, serviceManager.getPagedService(TEST_NAMESPACE, 1, 10, "", "", services, false));
+        Assert.assertEquals(10, services.size());
+        Assert.assertEquals("service-10", services.get(0).getName());
+
+        services.clear();
+        Assert.assertEquals(10, serviceManager.getPagedService(TEST_NAMESPACE, 1, 4, "service-1", "", services, false));
+        Assert.assertEquals(Arrays.asList("service-14", "service-15", "service-16", "service-17"), names(services));
+
+        services.clear();
+        Assert.assertEquals(0, serviceManager.getPagedService(TEST_NAMESPACE, 0, 10, "", "", services, true));
+
+        // cursor paging:
+        String cursor = "";
+        List<String> all = new ArrayList<>();
+        int pages = 0;
+        do {
+            services.clear();
+            cursor = serviceManager.getServicesAfter(TEST_NAMESPACE, cursor, 10, "", "", false, services);
+            all.addAll(names(services));
+            pages++;
+        } while (cursor != null);
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(25, all.size());
+        Assert.assertEquals("service-24", all.get(24));
+
+        services.clear();
+        Assert.assertEquals("service-15", serviceManager.getServicesAfter(TEST_NAMESPACE, "service-10", 5, "service-1", "", false, services));
+        Assert.assertEquals("service-11", services.get(0).getName());
+    }
+
+    @Test
+    public void testPagedServiceByOwner() throws Exception {
+        ReflectionTestUtils.setField(serviceManager, "consistencyService", consistencyService);
+        for (String name : new String[]{"order", "pay", "user"}) {
+            Service service = new Service(name);
+            service.setNamespaceId(TEST_NAMESPACE);
+            serviceManager.putService(service);
+        }
+        setOwners("pay", "alice");
+        setOwners("user", "alice");
+
+        List<Service> services = new ArrayList<>();
+        Assert.assertEquals(2, serviceManager.getPagedService(TEST_NAMESPACE, 0, 10, "alice", "", services, false));
+        Assert.assertEquals(Arrays.asList("pay", "user"), names(services));
+
+        services.clear();
+        Assert.assertNull(serviceManager.getServicesAfter(TEST_NAMESPACE, "pay", 10, "alice", "", false, services));
+        Assert.assertEquals(Collections.singletonList("user"), names(services));
+
+        // the keyword may span the name and the owners:
+        services.clear();
+        Assert.assertEquals(1, serviceManager.getPagedService(TEST_NAMESPACE, 0, 10, "user:", "", services, false));
+        Assert.assertEquals("user", services.get(0).getName());
+    }
+
+    @Test
+    public void testInstanceIpIndex() {
+        doReturn(serviceManager).when(context).getBean(ServiceManager.class);
+
+        Service order = new Service("order");
+        order.setNamespaceId(TEST_NAMESPACE);
+        serviceManager.putService(order);
+        Service user = new Service("user");
+        user.setNamespaceId(TEST_NAMESPACE);
+        serviceManager.putService(user);
+
+        order.updateIPs(Arrays.asList(new Instance("1.1.1.1", 80, "c1"), new Instance("2.2.2.2", 80, "c1")), true);
+        user.updateIPs(Collections.singletonList(new Instance("1.1.1.1", 90, "c2")), true);
+
+        InstanceIpIndex index = serviceManager.getInstanceIpIndex();
+        Assert.assertEquals(2, index.locate("1.1.1.1", -1).size());
+        Assert.assertEquals("c2", index.locate("1.1.1.1", 90).get(0).getClusterName());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("order", "user")), index.services(TEST_NAMESPACE, "1.1.1.1"));
+        Assert.assertEquals(Collections.singleton("order"), index.services(TEST_NAMESPACE, "1.1.1.1:80"));
+        Assert.assertTrue(index.services("other", "1.1.1.1").isEmpty());
+
+        List<Service> services = new ArrayList<>();
+        Assert.assertEquals(1, serviceManager.getPagedService(TEST_NAMESPACE, 0, 10, "", "2.2.2.2", services, false));
+        Assert.assertEquals("order", services.get(0).getName());
+
+        order.updateIPs(Collections.singletonList(new Instance("2.2.2.2", 80, "c1")), true);
+        Assert.assertEquals(Collections.singleton("user"), index.services(TEST_NAMESPACE, "1.1.1.1"));
+        user.updateIPs(Collections.<Instance>emptyList(), true);
+        Assert.assertTrue(index.locate("1.1.1.1", -1).isEmpty());
+        Assert.assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testInstanceIpIndexEphemeral() {
+        doReturn(serviceManager).when(context).getBean(ServiceManager.class);
+
+        Service order = new Service("order");
+        order.setNamespaceId(TEST_NAMESPACE);
+        serviceManager.putService(order);
+
+        Instance persistent = new Instance("1.1.1.1", 80, "c1");
+        persistent.setEphemeral(false);
+        order.updateIPs(Collections.singletonList(persistent), false);
+        order.updateIPs(Collections.singletonList(new Instance("1.1.1.1", 80, "c1")), true);
+
+        InstanceIpIndex index = serviceManager.getInstanceIpIndex();
+        Assert.assertEquals(2, index.locate("1.1.1.1", 80).size());
+
+        // removing the ephemeral instance keeps the persistent one of the same address:
+        order.updateIPs(Collections.<Instance>emptyList(), true);
+        List<InstanceIpIndex.Location> locations = index.locate("1.1.1.1", 80);
+        Assert.assertEquals(1, locations.size());
+        Assert.assertFalse(locations.get(0).isEphemeral());
+        Assert.assertEquals(Collections.singleton("order"), index.services(TEST_NAMESPACE, "1.1.1.1:80"));
+    }
+
+    private void setOwners(String name, String owner) throws Exception {
+        doReturn(serviceManager).when(context).getBean(ServiceManager.class);
+
+        Service service = new Service(name);
+        service.setNamespaceId(TEST_NAMESPACE);
+        service.setOwners(Collections.singletonList(owner));
+        serviceManager.onChange(KeyBuilder.buildServiceMetaKey(TEST_NAMESPACE, name), service);
+    }
+
+    private static List<String> names(List<Service> services) {
+        List<String> names = new ArrayList<>();
+        for (Service service : services) {
+            names.add(service.getName());
+        }
+        return names;
+    }
 }
@@ -15,6 +15,7 @@
  */
 package com.alibaba.nacos.naming.core;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.nacos.naming.BaseTest;
 import org.junit.Assert;
 import org.junit.Before;
@@ -55,4 +56,15 @@ public class ServiceTest extends BaseTest {
         instances.remove(null);
         Assert.assertEquals(instances, service.allIPs(true));
     }
+
+    @Test
+    public void serializeToken() {
+        Service service = new Service("test-service");
+        service.setNamespaceId("public");
+        service.setToken("secret");
+
+        // services are stored and replicated as JSON:
+        Service parsed = JSON.parseObject(JSON.toJSONString(service), Service.class);
+        Assert.assertEquals("secret", parsed.getToken());
+    }
 }
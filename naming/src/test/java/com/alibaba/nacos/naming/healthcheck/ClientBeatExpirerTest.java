@@ -0,0 +1,157 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.healthcheck;
+
+import com.alibaba.nacos.api.naming.PreservedMetadataKeys;
+import com.alibaba.nacos.naming.boot.SpringContext;
+import com.alibaba.nacos.naming.core.DistroMapper;
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.core.Service;
+import com.alibaba.nacos.naming.core.ServiceManager;
+import com.alibaba.nacos.naming.misc.GlobalConfig;
+import com.alibaba.nacos.naming.push.PushService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author nkorange
+ */
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class ClientBeatExpirerTest {
+
+    @Mock
+    private ApplicationContext context;
+    @Mock
+    private ServiceManager serviceManager;
+    @Mock
+    private DistroMapper distroMapper;
+    @Mock
+    private GlobalConfig globalConfig;
+    @Mock
+    private PushService pushService;
+    @Mock
+    private Service service;
+
+    private Instance instance;
+
+    private ClientBeatExpirer.Expiry expiry;
+
+    @Before
+    public void init() {
+        new SpringContext().setApplicationContext(context);
+        Mockito.doReturn(serviceManager).when(context).getBean(ServiceManager.class);
+        Mockito.doReturn(distroMapper).when(context).getBean(DistroMapper.class);
+        Mockito.doReturn(globalConfig).when(context).getBean(GlobalConfig.class);
+        Mockito.doReturn(pushService).when(context).getBean(PushService.class);
+
+        instance = new Instance("1.1.1.1", 8080, "test-cluster");
+        instance.setMarked(false);
+        instance.setHealthy(true);
+
+        Mockito.doReturn("test").when(service).getName();
+        Mockito.doReturn(service).when(serviceManager).getService("public", "test");
+        Mockito.doReturn(instance).when(serviceManager).getInstance("public", "test", "test-cluster", "1.1.1.1", 8080);
+        Mockito.doReturn(true).when(distroMapper).responsible("test");
+
+        expiry = new ClientBeatExpirer.Expiry("key", "public", "test", instance);
+    }
+
+    @Test
+    public void testHeartBeatNotTimeout() throws Exception {
+        instance.setLastBeat(System.currentTimeMillis());
+        setMetadata(PreservedMetadataKeys.HEART_BEAT_TIMEOUT, "1000000");
+
+        long next = expiry.check();
+        Assert.assertTrue(instance.isHealthy());
+        // checked again when the beat times out:
+        Assert.assertTrue(next > 990000L && next <= 1000001L);
+    }
+
+    @Test
+    public void testHeartBeatTimeout() throws Exception {
+        instance.setLastBeat(System.currentTimeMillis() - 1000);
+        setMetadata(PreservedMetadataKeys.HEART_BEAT_TIMEOUT, "10");
+
+        expiry.check();
+        Assert.assertFalse(instance.isHealthy());
+        Mockito.verify(pushService).serviceChanged(service);
+    }
+
+    @Test
+    public void testIpDeleteTimeOut() throws Exception {
+        instance.setLastBeat(System.currentTimeMillis() - 1000);
+        setMetadata(PreservedMetadataKeys.IP_DELETE_TIMEOUT, "10");
+        Mockito.doReturn(true).when(globalConfig).isExpireInstance();
+
+        Assert.assertEquals(-1L, expiry.check());
+        Mockito.verify(serviceManager).removeInstance("public", "test", true, service, instance);
+    }
+
+    @Test
+    public void testIpDeleteNotTimeOut() throws Exception {
+        instance.setLastBeat(System.currentTimeMillis() - 20000);
+        setMetadata(PreservedMetadataKeys.IP_DELETE_TIMEOUT, "60000");
+        Mockito.doReturn(true).when(globalConfig).isExpireInstance();
+
+        long next = expiry.check();
+        Assert.assertFalse(instance.isHealthy());
+        Mockito.verify(serviceManager, Mockito.never()).removeInstance(Mockito.anyString(), Mockito.anyString(),
+            Mockito.anyBoolean(), Mockito.any(Service.class), Mockito.<Instance>anyVararg());
+        // checked again when the instance is to be deleted:
+        Assert.assertTrue(next > 30000L && next <= 40001L);
+    }
+
+    @Test
+    public void testMarkedNotDeleted() throws Exception {
+        instance.setLastBeat(System.currentTimeMillis() - 1000);
+        instance.setMarked(true);
+        setMetadata(PreservedMetadataKeys.IP_DELETE_TIMEOUT, "10");
+        Mockito.doReturn(true).when(globalConfig).isExpireInstance();
+
+        Assert.assertTrue(expiry.check() > 0);
+        Assert.assertTrue(instance.isHealthy());
+    }
+
+    @Test
+    public void testInstanceRemoved() throws Exception {
+        Mockito.doReturn(null).when(serviceManager).getInstance("public", "test", "test-cluster", "1.1.1.1", 8080);
+        Assert.assertEquals(-1L, expiry.check());
+    }
+
+    @Test
+    public void testNotResponsible() throws Exception {
+        instance.setLastBeat(System.currentTimeMillis() - 1000000);
+        Mockito.doReturn(false).when(distroMapper).responsible("test");
+
+        Assert.assertEquals(ClientBeatProcessor.CLIENT_BEAT_TIMEOUT, expiry.check());
+        Assert.assertTrue(instance.isHealthy());
+    }
+
+    private void setMetadata(String key, String value) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(key, value);
+        instance.setMetadata(metadata);
+    }
+}
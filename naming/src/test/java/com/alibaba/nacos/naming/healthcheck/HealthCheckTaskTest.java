@@ -0,0 +1,137 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.healthcheck;
+
+import com.alibaba.nacos.naming.boot.SpringContext;
+import com.alibaba.nacos.naming.core.Cluster;
+import com.alibaba.nacos.naming.core.DistroMapper;
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.core.Service;
+import com.alibaba.nacos.naming.misc.SwitchDomain;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author nkorange
+ */
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class HealthCheckTaskTest {
+
+    @Mock
+    private ApplicationContext context;
+    @Mock
+    private DistroMapper distroMapper;
+    @Mock
+    private HealthCheckProcessorDelegate processor;
+    @Mock
+    private Cluster cluster;
+    @Mock
+    private Service service;
+
+    private List<Instance> instances = new ArrayList<>();
+
+    private List<Integer> checkedPerRun = new ArrayList<>();
+
+    private Map<Instance, Integer> checkCounts = new HashMap<>();
+
+    private HealthCheckTask task;
+
+    @Before
+    public void init() {
+        new SpringContext().setApplicationContext(context);
+        Mockito.doReturn(distroMapper).when(context).getBean(DistroMapper.class);
+        Mockito.doReturn(new SwitchDomain()).when(context).getBean(SwitchDomain.class);
+        Mockito.doReturn(processor).when(context).getBean(HealthCheckProcessorDelegate.class);
+
+        for (int i = 0; i < 40; i++) {
+            Instance instance = new Instance("10.9.0." + i, 8080, "test-cluster");
+            HealthCheckStatus.reset(instance);
+            instances.add(instance);
+        }
+        Mockito.doReturn(instances).when(cluster).allIPs(false);
+        Mockito.doReturn(service).when(cluster).getService();
+        Mockito.doReturn("test-task").when(service).getName();
+        Mockito.doReturn(true).when(distroMapper).responsible("test-task");
+
+        task = new HealthCheckTask(cluster);
+        // runs are driven by the test:
+        task.setCancelled(true);
+
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                HealthCheckTask task = (HealthCheckTask) invocation.getArguments()[0];
+                checkedPerRun.add(task.getDueInstances().size());
+                for (Instance instance : task.getDueInstances()) {
+                    Integer count = checkCounts.get(instance);
+                    checkCounts.put(instance, count == null ? 1 : count + 1);
+                }
+                return null;
+            }
+        }).when(processor).process(Mockito.any(HealthCheckTask.class));
+    }
+
+    @Test
+    public void spreadOverPeriod() {
+        runRound();
+
+        Assert.assertEquals(instances.size(), checkCounts.size());
+        for (Integer count : checkCounts.values()) {
+            Assert.assertEquals(1, count.intValue());
+        }
+        // no slice holds more than a fair share of the probes:
+        for (Integer checked : checkedPerRun) {
+            Assert.assertTrue(checked < instances.size() / 2);
+        }
+        Assert.assertEquals(task.getCheckRTNormalized() / HealthCheckTask.MAX_SLICES, task.getNextCheckDelay());
+    }
+
+    @Test
+    public void backOffStableInstances() {
+        Instance unstable = instances.get(0);
+        for (Instance instance : instances) {
+            HealthCheckStatus.get(instance).stableCount.set(instance == unstable ? 0 : 100);
+        }
+
+        int rounds = 1 << HealthCheckTask.MAX_BACK_OFF_SHIFT;
+        for (int i = 0; i < rounds; i++) {
+            runRound();
+        }
+
+        for (Instance instance : instances) {
+            Assert.assertEquals(instance == unstable ? rounds : 1, checkCounts.get(instance).intValue());
+        }
+    }
+
+    private void runRound() {
+        for (int i = 0; i < HealthCheckTask.MAX_SLICES; i++) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.healthcheck;
+
+import com.alibaba.nacos.api.naming.pojo.AbstractHealthChecker;
+import com.alibaba.nacos.naming.core.Cluster;
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.misc.SwitchDomain;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author nkorange
+ */
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class HttpHealthCheckProcessorTest {
+
+    private static final byte[] OK = "ok".getBytes();
+
+    @Mock
+    private HealthCheckCommon healthCheckCommon;
+    @Mock
+    private HealthCheckTask task;
+    @Mock
+    private Cluster cluster;
+
+    private HttpHealthCheckProcessor processor;
+
+    private AbstractHealthChecker.Http config;
+
+    private HttpServer server;
+
+    private List<String> requests = new CopyOnWriteArrayList<>();
+
+    private CountDownLatch answer = new CountDownLatch(0);
+
+    @Before
+    public void init() throws Exception {
+        processor = new HttpHealthCheckProcessor();
+        ReflectionTestUtils.setField(processor, "healthCheckCommon", healthCheckCommon);
+        ReflectionTestUtils.setField(processor, "switchDomain", new SwitchDomain());
+
+        config = new AbstractHealthChecker.Http();
+        config.setPath("/health");
+
+        Mockito.doReturn(cluster).when(task).getCluster();
+        Mockito.doReturn(true).when(cluster).isUseIPPort4Check();
+        Mockito.doReturn(config).when(cluster).getHealthChecker();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI()
+                + " " + exchange.getRequestHeaders().getFirst("Host")
+                + " " + exchange.getRequestHeaders().getFirst("X-Check")
+                + " " + exchange.getRemoteAddress().getPort());
+            try {
+                answer.await(3, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                // responses without a body close the connection
+                exchange.sendResponseHeaders(200, OK.length);
+                exchange.getResponseBody().write(OK);
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void destroy() {
+        server.stop(0);
+    }
+
+    @Test
+    public void reuseConnection() throws Exception {
+        Instance instance = instance("test-cluster");
+        long reused = processor.getReusedCount();
+
+        processor.process(task);
+        Mockito.verify(healthCheckCommon, Mockito.timeout(3000L))
+            .checkOK(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+        // the connection goes back to the pool once the response is read:
+        Thread.sleep(200L);
+        instance.setBeingChecked(false);
+
+        processor.process(task);
+        Mockito.verify(healthCheckCommon, Mockito.timeout(3000L).times(2))
+            .checkOK(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+
+        Assert.assertEquals(2, requests.size());
+        Assert.assertEquals(remotePort(requests.get(0)), remotePort(requests.get(1)));
+        Assert.assertTrue(processor.getReusedCount() > reused);
+    }
+
+    @Test
+    public void headWithTemplate() throws Exception {
+        config.setPath("health");
+        config.setHeaders("Host:nacos.io|X-Check:1");
+        config.setMethod(AbstractHealthChecker.Http.METHOD_HEAD);
+        Instance instance = instance("test-cluster");
+
+        processor.process(task);
+        Mockito.verify(healthCheckCommon, Mockito.timeout(3000L))
+            .checkOK(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+
+        Assert.assertEquals(1, requests.size());
+        Assert.assertTrue(requests.get(0).startsWith("HEAD /health nacos.io 1 "));
+        Assert.assertSame(processor.getTemplate(task, config), processor.getTemplate(task, config));
+    }
+
+    @Test
+    public void boundInFlightPerTarget() throws Exception {
+        answer = new CountDownLatch(1);
+        List<Instance> instances = new ArrayList<>();
+        for (int i = 0; i <= HttpHealthCheckProcessor.MAX_IN_FLIGHT_PER_TARGET; i++) {
+            instances.add(instance("test-cluster-" + i));
+        }
+        Mockito.doReturn(instances).when(task).getDueInstances();
+
+        processor.process(task);
+        Thread.sleep(200L);
+        answer.countDown();
+
+        Mockito.verify(healthCheckCommon, Mockito.timeout(3000L).times(HttpHealthCheckProcessor.MAX_IN_FLIGHT_PER_TARGET))
+            .checkOK(Mockito.any(Instance.class), Mockito.eq(task), Mockito.anyString());
+        Assert.assertEquals(HttpHealthCheckProcessor.MAX_IN_FLIGHT_PER_TARGET, requests.size());
+        // the skipped instance is checked again next round:
+        Assert.assertTrue(instances.get(HttpHealthCheckProcessor.MAX_IN_FLIGHT_PER_TARGET).markChecking());
+    }
+
+    private Instance instance(String clusterName) {
+        Instance instance = new Instance("127.0.0.1", server.getAddress().getPort(), clusterName);
+        HealthCheckStatus.reset(instance);
+        Mockito.doReturn(Collections.singletonList(instance)).when(task).getDueInstances();
+        return instance;
+    }
+
+    private static String remotePort(String request) {
+        return request.substring(request.lastIndexOf(' ') + 1);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.healthcheck;
+
+import com.alibaba.nacos.api.naming.pojo.AbstractHealthChecker;
+import com.alibaba.nacos.naming.core.Cluster;
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.misc.SwitchDomain;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+/**
+ * @author nkorange
+ */
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class MysqlHealthCheckProcessorTest {
+
+    @Mock
+    private HealthCheckCommon healthCheckCommon;
+    @Mock
+    private HealthCheckTask task;
+    @Mock
+    private Cluster cluster;
+    @Mock
+    private MysqlHealthCheckProcessor.ConnectionFactory connectionFactory;
+    @Mock
+    private Connection connection;
+    @Mock
+    private Statement statement;
+    @Mock
+    private ResultSet resultSet;
+
+    private MysqlHealthCheckProcessor processor;
+
+    private AbstractHealthChecker.Mysql config;
+
+    private Instance instance;
+
+    @Before
+    public void init() throws Exception {
+        processor = new MysqlHealthCheckProcessor();
+        ReflectionTestUtils.setField(processor, "healthCheckCommon", healthCheckCommon);
+        ReflectionTestUtils.setField(processor, "switchDomain", new SwitchDomain());
+        ReflectionTestUtils.setField(processor, "connectionFactory", connectionFactory);
+
+        config = new AbstractHealthChecker.Mysql();
+        config.setUser("user");
+        config.setPwd("pwd");
+        config.setCmd("select 1");
+
+        instance = new Instance("127.0.0.1", 3306, "test-cluster");
+        instance.setEphemeral(false);
+        instance.setBeingChecked(false);
+
+        Mockito.doReturn(cluster).when(task).getCluster();
+        Mockito.doReturn(config).when(cluster).getHealthChecker();
+        Mockito.doReturn(Collections.singletonList(instance)).when(task).getDueInstances();
+
+        Mockito.doReturn(statement).when(connection).createStatement();
+        Mockito.doReturn(resultSet).when(statement).executeQuery("select 1");
+    }
+
+    @Test
+    public void reuseConnection() throws Exception {
+        Mockito.doReturn(connection).when(connectionFactory).connect("127.0.0.1", 3306, config);
+
+        processor.process(task);
+        Mockito.verify(healthCheckCommon, Mockito.timeout(3000L))
+            .checkOK(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+        waitFinished();
+
+        processor.process(task);
+        Mockito.verify(healthCheckCommon, Mockito.timeout(3000L).times(2))
+            .checkOK(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+
+        Mockito.verify(connectionFactory, Mockito.times(1)).connect("127.0.0.1", 3306, config);
+        Mockito.verify(connection, Mockito.never()).close();
+    }
+
+    @Test
+    public void isolateFailingTarget() throws Exception {
+        Mockito.doThrow(new SQLException("refused")).when(connectionFactory).connect("127.0.0.1", 3306, config);
+
+        for (int i = 1; i <= MysqlHealthCheckProcessor.SLOW_CONNECTS_TO_ISOLATE; i++) {
+            processor.process(task);
+            Mockito.verify(healthCheckCommon, Mockito.timeout(3000L).times(i))
+                .checkFailNow(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+            waitFinished();
+        }
+        Assert.assertTrue(processor.getTarget(instance, config).isIsolated());
+
+        // back to the shared executor once connected in time:
+        Mockito.doReturn(connection).when(connectionFactory).connect("127.0.0.1", 3306, config);
+        processor.process(task);
+        Mockito.verify(healthCheckCommon, Mockito.timeout(3000L))
+            .checkOK(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+        Assert.assertFalse(processor.getTarget(instance, config).isIsolated());
+    }
+
+    @Test
+    public void retryStaleConnection() throws Exception {
+        Connection stale = Mockito.mock(Connection.class);
+        Mockito.doThrow(new SQLException("Communications link failure")).when(stale).createStatement();
+        Mockito.doReturn(connection).when(connectionFactory).connect("127.0.0.1", 3306, config);
+        processor.getTarget(instance, config).release(stale);
+
+        processor.process(task);
+        Mockito.verify(healthCheckCommon, Mockito.timeout(3000L))
+            .checkOK(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+        waitFinished();
+
+        Mockito.verify(stale).close();
+        Mockito.verify(connectionFactory, Mockito.times(1)).connect("127.0.0.1", 3306, config);
+        Mockito.verify(healthCheckCommon, Mockito.never())
+            .checkFailNow(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+    }
+
+    @Test
+    public void discardReleasedAfterClose() throws Exception {
+        MysqlHealthCheckProcessor.MysqlTarget target = processor.getTarget(instance, config);
+        target.close();
+
+        // released by a check still running when the target was closed:
+        target.release(connection);
+        Mockito.verify(connection).close();
+        Assert.assertNull(target.pollIdle());
+    }
+
+    private void waitFinished() throws InterruptedException {
+        long end = System.currentTimeMillis() + 3000L;
+        while (processor.getTarget(instance, config).getRunningCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10L);
+        }
+        // the mocked common does not finish checks:
+        instance.setBeingChecked(false);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.healthcheck;
+
+import com.alibaba.nacos.naming.core.Cluster;
+import com.alibaba.nacos.naming.core.Instance;
+import com.alibaba.nacos.naming.misc.SwitchDomain;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.ServerSocket;
+import java.util.Collections;
+
+/**
+ * @author nkorange
+ */
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class TcpSuperSenseProcessorTest {
+
+    @Mock
+    private HealthCheckCommon healthCheckCommon;
+    @Mock
+    private HealthCheckTask task;
+    @Mock
+    private Cluster cluster;
+
+    private TcpSuperSenseProcessor processor;
+
+    @Before
+    public void init() {
+        processor = new TcpSuperSenseProcessor();
+        ReflectionTestUtils.setField(processor, "healthCheckCommon", healthCheckCommon);
+        ReflectionTestUtils.setField(processor, "switchDomain", new SwitchDomain());
+
+        Mockito.doReturn(cluster).when(task).getCluster();
+        Mockito.doReturn(true).when(cluster).isUseIPPort4Check();
+    }
+
+    @Test
+    public void checkOpenPort() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            Instance instance = check(serverSocket.getLocalPort());
+
+            Mockito.verify(healthCheckCommon, Mockito.timeout(3000L))
+                .checkOK(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+            Assert.assertEquals(1L, processor.getFinishedCount());
+        }
+    }
+
+    @Test
+    public void checkClosedPort() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+
+        Instance instance = check(port);
+
+        Mockito.verify(healthCheckCommon, Mockito.timeout(3000L))
+            .checkFailNow(Mockito.eq(instance), Mockito.eq(task), Mockito.anyString());
+        Mockito.verify(healthCheckCommon, Mockito.never())
+            .checkOK(Mockito.any(Instance.class), Mockito.any(HealthCheckTask.class), Mockito.anyString());
+    }
+
+    private Instance check(int port) {
+        Instance instance = new Instance("127.0.0.1", port, "test-cluster");
+        instance.setEphemeral(false);
+        Mockito.doReturn(Collections.singletonList(instance)).when(task).getDueInstances();
+        processor.process(task);
+        return instance;
+    }
+}
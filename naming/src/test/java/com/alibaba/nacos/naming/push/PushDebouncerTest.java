@@ -0,0 +1,132 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.push;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author nkorange
+ */
+public class PushDebouncerTest {
+
+    private long now = 0L;
+
+    private PriorityQueue<Task> tasks = new PriorityQueue<>(Comparator.comparingLong((Task task) -> task.dueMillis));
+
+    private ScheduledExecutorService executor;
+
+    private AtomicInteger pushes = new AtomicInteger();
+
+    private Runnable push = pushes::incrementAndGet;
+
+    @Before
+    public void init() {
+        // tasks are run by advance() only, at the time they are due:
+        executor = Mockito.mock(ScheduledExecutorService.class);
+        Mockito.doAnswer(invocation -> {
+            Runnable runnable = (Runnable) invocation.getArguments()[0];
+            long delay = (Long) invocation.getArguments()[1];
+            tasks.add(new Task(runnable, now + delay));
+            return null;
+        }).when(executor).schedule(Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void coalesceBurst() {
+        PushDebouncer debouncer = new PushDebouncer(executor, () -> now, 100L, 1000L);
+
+        for (int i = 0; i < 200; i++) {
+            change(debouncer, "service");
+        }
+        debouncer.submit("other", push);
+
+        advance(99L);
+        Assert.assertEquals(0, pushes.get());
+
+        advance(1L);
+        Assert.assertEquals(2, pushes.get());
+        Assert.assertEquals(199, debouncer.getCoalescedCount());
+        Assert.assertEquals(2, debouncer.getFiredCount());
+        Assert.assertFalse(debouncer.isPending("service"));
+    }
+
+    @Test
+    public void delayedByLaterChanges() {
+        PushDebouncer debouncer = new PushDebouncer(executor, () -> now, 100L, 1000L);
+
+        change(debouncer, "service");
+        advance(60L);
+        change(debouncer, "service");
+
+        // fires the minimum delay after the last change:
+        advance(99L);
+        Assert.assertEquals(0, pushes.get());
+        advance(1L);
+        Assert.assertEquals(1, pushes.get());
+    }
+
+    @Test
+    public void pushWithinMaxDelay() {
+        PushDebouncer debouncer = new PushDebouncer(executor, () -> now, 100L, 300L);
+
+        // changes keep coming faster than the minimum delay:
+        for (int i = 0; i < 50; i++) {
+            change(debouncer, "service");
+            advance(20L);
+        }
+
+        // one push every 300 ms within the 1000 ms of changes:
+        Assert.assertEquals(3, pushes.get());
+        Assert.assertTrue(debouncer.isPending("service"));
+    }
+
+    private void change(PushDebouncer debouncer, String key) {
+        if (!debouncer.coalesce(key)) {
+            debouncer.submit(key, push);
+        }
+    }
+
+    private void advance(long millis) {
+        long until = now + millis;
+        while (!tasks.isEmpty() && tasks.peek().dueMillis <= until) {
+            Task task = tasks.poll();
+            now = task.dueMillis;
+            task.runnable.run();
+        }
+        now = until;
+    }
+
+    private static class Task {
+
+        private final Runnable runnable;
+
+        private final long dueMillis;
+
+        Task(Runnable runnable, long dueMillis) {
+            this.runnable = runnable;
+            this.dueMillis = dueMillis;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.push;
+
+import com.alibaba.nacos.naming.misc.TimingWheel;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author nkorange
+ */
+public class UdpPushEngineTest {
+
+    private UdpPushEngine engine;
+
+    @After
+    public void destroy() {
+        if (engine != null) {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void pushAndAck() throws Exception {
+        final List<String> acks = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch = new CountDownLatch(10);
+
+        engine = new UdpPushEngine(2, 0D, 1, new UdpPushEngine.PacketListener() {
+            @Override
+            public void onPacket(byte[] data, InetSocketAddress from) {
+                acks.add(new String(data, StandardCharsets.UTF_8));
+                latch.countDown();
+            }
+        });
+        engine.start();
+
+        DatagramSocket client = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        client.setSoTimeout(5000);
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), client.getLocalPort());
+
+        for (int i = 0; i < 10; i++) {
+            engine.send(address, ("push-" + i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+            client.receive(packet);
+            String data = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+            // one client is always pushed in order:
+            Assert.assertEquals("push-" + i, data);
+
+            byte[] ack = ("ack-" + i).getBytes(StandardCharsets.UTF_8);
+            client.send(new DatagramPacket(ack, ack.length, packet.getSocketAddress()));
+        }
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(10, engine.getSentCount());
+        client.close();
+    }
+
+    @Test
+    public void shapeClientRate() throws Exception {
+        engine = new UdpPushEngine(1, 20D, 5, new UdpPushEngine.PacketListener() {
+            @Override
+            public void onPacket(byte[] data, InetSocketAddress from) {
+            }
+        });
+        engine.start();
+
+        DatagramSocket client = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        client.setSoTimeout(5000);
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), client.getLocalPort());
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 15; i++) {
+            engine.send(address, ("push-" + i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (int i = 0; i < 15; i++) {
+            DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+            client.receive(packet);
+        }
+
+        // 5 packets at once, the other 10 at 20 per second, each delay rounded up to the 100 ms tick of the timer:
+        Assert.assertTrue(System.currentTimeMillis() - start >= 400L);
+        Assert.assertEquals(10, engine.getShapedCount());
+        client.close();
+    }
+
+    @Test
+    public void closeStopsThreads() throws Exception {
+        int before = engineThreads();
+        engine = new UdpPushEngine(2, 0D, 1, new UdpPushEngine.PacketListener() {
+            @Override
+            public void onPacket(byte[] data, InetSocketAddress from) {
+            }
+        });
+        engine.start();
+        // two senders, the receiver and the timer:
+        Assert.assertEquals(before + 4, engineThreads());
+
+        engine.close();
+
+        long end = System.currentTimeMillis() + 5000L;
+        while (engineThreads() > before && System.currentTimeMillis() < end) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(before, engineThreads());
+    }
+
+    @Test
+    public void fireAndCancelTimeouts() throws Exception {
+        TimingWheel wheel = new TimingWheel("test.wheel", 10L, 8);
+        wheel.start();
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        final List<Integer> fired = Collections.synchronizedList(new ArrayList<Integer>());
+
+        // longer than one round of the wheel:
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fired.add(2);
+                latch.countDown();
+            }
+        }, 200L, TimeUnit.MILLISECONDS);
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fired.add(1);
+                latch.countDown();
+            }
+        }, 20L, TimeUnit.MILLISECONDS);
+        TimingWheel.Timeout cancelled = wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fired.add(0);
+            }
+        }, 50L, TimeUnit.MILLISECONDS);
+        cancelled.cancel();
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50L);
+        Assert.assertEquals(2, fired.size());
+        Assert.assertEquals(1, (int) fired.get(0));
+        Assert.assertEquals(2, (int) fired.get(1));
+        Assert.assertEquals(0, wheel.size());
+        wheel.stop();
+    }
+
+    private static int engineThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith("com.alibaba.nacos.naming.push.")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
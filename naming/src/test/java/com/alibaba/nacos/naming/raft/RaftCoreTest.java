@@ -0,0 +1,66 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.raft;
+
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.nacos.naming.consistency.Datum;
+import com.alibaba.nacos.naming.consistency.KeyBuilder;
+import com.alibaba.nacos.naming.consistency.persistent.raft.RaftCore;
+import com.alibaba.nacos.naming.core.Instances;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author nkorange
+ */
+public class RaftCoreTest {
+
+    @Test
+    public void getChanges() {
+        RaftCore raftCore = new RaftCore();
+
+        raftCore.addDatum(buildDatum("service-1", 1L));
+        raftCore.addDatum(buildDatum("service-2", 1L));
+
+        JSONObject changes = raftCore.getChanges(-1L, -1L);
+        Assert.assertTrue(changes.getBooleanValue("full"));
+        Assert.assertEquals(2, changes.getJSONArray("datums").size());
+
+        JSONObject version = raftCore.getChangeVersion();
+        Assert.assertEquals(version.getLongValue("index"), changes.getLongValue("index"));
+
+        raftCore.addDatum(buildDatum("service-1", 2L));
+
+        changes = raftCore.getChanges(version.getLongValue("epoch"), version.getLongValue("index"));
+        Assert.assertFalse(changes.getBooleanValue("full"));
+        Assert.assertEquals(1, changes.getJSONArray("datums").size());
+        Assert.assertEquals(2L, changes.getJSONArray("datums").getJSONObject(0).getLongValue("timestamp"));
+        Assert.assertEquals(0, changes.getJSONArray("deleted").size());
+
+        version = raftCore.getChangeVersion();
+        changes = raftCore.getChanges(version.getLongValue("epoch"), version.getLongValue("index"));
+        Assert.assertFalse(changes.getBooleanValue("full"));
+        Assert.assertEquals(0, changes.getJSONArray("datums").size());
+    }
+
+    private Datum<Instances> buildDatum(String serviceName, long timestamp) {
+        Datum<Instances> datum = new Datum<>();
+        datum.key = KeyBuilder.buildInstanceListKey("public", serviceName, false);
+        datum.value = new Instances();
+        datum.timestamp.set(timestamp);
+        return datum;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.raft;
+
+import com.alibaba.nacos.naming.consistency.persistent.raft.RaftLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * @author nkorange
+ */
+public class RaftLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void appendAndReplay() throws Exception {
+        File dir = folder.newFolder();
+        RaftLog log = new RaftLog(dir, 1024 * 1024, 4);
+        log.open();
+
+        log.append(Arrays.asList(RaftLog.put("k1", bytes("v1")), RaftLog.put("k2", bytes("v2"))), true).get();
+        log.append(Collections.singletonList(RaftLog.term(100L)), false);
+        log.append(Arrays.asList(RaftLog.put("k1", bytes("v3")), RaftLog.delete("k2")), true).get();
+
+        Map<String, String> state = new HashMap<>();
+        long term = replay(new RaftLog(dir, 1024 * 1024, 4), state);
+
+        Assert.assertEquals(1, state.size());
+        Assert.assertEquals("v3", state.get("k1"));
+        Assert.assertEquals(100L, term);
+        Assert.assertEquals(5L, log.getLastIndex());
+    }
+
+    @Test
+    public void compactIntoSnapshot() throws Exception {
+        File dir = folder.newFolder();
+        RaftLog log = new RaftLog(dir, 256, 1000);
+        log.open();
+
+        for (int i = 0; i < 100; i++) {
+            log.append(Collections.singletonList(RaftLog.put("k" + (i % 10), bytes("v" + i))), true).get();
+        }
+        log.append(Collections.singletonList(RaftLog.delete("k0")), true).get();
+
+        log.compact();
+
+        File[] segments = dir.listFiles();
+        Assert.assertNotNull(segments);
+        Assert.assertEquals(2, segments.length);
+
+        log.append(Collections.singletonList(RaftLog.put("k1", bytes("latest"))), true).get();
+
+        Map<String, String> state = new HashMap<>();
+        replay(log, state);
+
+        Assert.assertEquals(9, state.size());
+        Assert.assertFalse(state.containsKey("k0"));
+        Assert.assertEquals("latest", state.get("k1"));
+        Assert.assertEquals("v99", state.get("k9"));
+
+        RaftLog reopened = new RaftLog(dir, 256, 1000);
+        reopened.open();
+        Assert.assertEquals(102L, reopened.getLastIndex());
+    }
+
+    @Test
+    public void readAtPosition() throws Exception {
+        File dir = folder.newFolder();
+        RaftLog log = new RaftLog(dir, 256, 1000);
+        log.open();
+
+        RaftLog.Entry first = RaftLog.put("k1", bytes("v1"));
+        log.append(Collections.singletonList(first), true).get();
+        for (int i = 0; i < 20; i++) {
+            log.append(Collections.singletonList(RaftLog.put("k2", bytes("v" + i))), true).get();
+        }
+        RaftLog.Entry last = RaftLog.put("k3", bytes("v3"));
+        log.append(Collections.singletonList(last), true).get();
+
+        Assert.assertEquals("v1", new String(log.read(first.position).value, StandardCharsets.UTF_8));
+        Assert.assertEquals("v3", new String(log.read(last.position).value, StandardCharsets.UTF_8));
+
+        log.compact();
+
+        // the sealed segment is gone, the active one is left in place:
+        Assert.assertNull(log.read(first.position));
+        Assert.assertEquals("k3", log.read(last.position).key);
+
+        final Map<String, RaftLog.Position> positions = new HashMap<>();
+        log.replay(new RaftLog.EntryVisitor() {
+            @Override
+            public void visit(RaftLog.Entry entry) {
+                positions.put(entry.key, entry.position);
+            }
+        });
+        Assert.assertEquals("v1", new String(log.read(positions.get("k1")).value, StandardCharsets.UTF_8));
+        Assert.assertEquals("v19", new String(log.read(positions.get("k2")).value, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void ignoreTornTail() throws Exception {
+        File dir = folder.newFolder();
+        RaftLog log = new RaftLog(dir, 1024 * 1024, 4);
+        log.open();
+        log.append(Collections.singletonList(RaftLog.put("k1", bytes("v1"))), true).get();
+
+        File[] segments = dir.listFiles();
+        Assert.assertNotNull(segments);
+        try (FileOutputStream out = new FileOutputStream(segments[0], true)) {
+            out.write(new byte[]{0, 0, 0, 42, 1, 2, 3});
+        }
+
+        RaftLog reopened = new RaftLog(dir, 1024 * 1024, 4);
+        reopened.open();
+        Assert.assertEquals(1L, reopened.getLastIndex());
+
+        reopened.append(Collections.singletonList(RaftLog.put("k2", bytes("v2"))), true).get();
+
+        Map<String, String> state = new HashMap<>();
+        replay(reopened, state);
+        Assert.assertEquals(2, state.size());
+        Assert.assertEquals("v2", state.get("k2"));
+    }
+
+    private long replay(RaftLog log, final Map<String, String> state) throws IOException {
+        final long[] term = new long[]{-1L};
+        log.replay(new RaftLog.EntryVisitor() {
+            @Override
+            public void visit(RaftLog.Entry entry) {
+                if (entry.type == RaftLog.TYPE_PUT) {
+                    state.put(entry.key, new String(entry.value, StandardCharsets.UTF_8));
+                } else if (entry.type == RaftLog.TYPE_DELETE) {
+                    state.remove(entry.key);
+                } else if (entry.type == RaftLog.TYPE_TERM) {
+                    term[0] = entry.term;
+                }
+            }
+        });
+        return term[0];
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.raft;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.nacos.naming.boot.RunningConfig;
+import com.alibaba.nacos.naming.consistency.KeyBuilder;
+import com.alibaba.nacos.naming.consistency.persistent.raft.RaftCore;
+import com.alibaba.nacos.naming.consistency.persistent.raft.RaftPeer;
+import com.alibaba.nacos.naming.consistency.persistent.raft.RaftPeerSet;
+import com.alibaba.nacos.naming.consistency.persistent.raft.RaftStore;
+import com.alibaba.nacos.naming.core.Instances;
+import com.alibaba.nacos.naming.misc.SwitchDomain;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author nkorange
+ */
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class RaftReplicatorTest {
+
+    @Mock
+    private RaftPeerSet peers;
+    @Mock
+    private RaftStore raftStore;
+
+    private RaftCore raftCore;
+
+    private RaftCore.Replicator replicator;
+
+    private RaftPeer local = new RaftPeer();
+
+    private Follower fast;
+
+    private Follower slow;
+
+    @Before
+    public void init() throws Exception {
+        raftCore = new RaftCore();
+        ReflectionTestUtils.setField(raftCore, "peers", peers);
+        ReflectionTestUtils.setField(raftCore, "raftStore", raftStore);
+        ReflectionTestUtils.setField(raftCore, "switchDomain", new SwitchDomain());
+        replicator = (RaftCore.Replicator) ReflectionTestUtils.getField(raftCore, "replicator");
+
+        fast = new Follower();
+        slow = new Follower();
+
+        local.ip = "127.0.0.1:8848";
+        local.state = RaftPeer.State.LEADER;
+        Mockito.doReturn(local).when(peers).local();
+        Mockito.doReturn(true).when(peers).isLeader(Mockito.anyString());
+        Mockito.doReturn(2).when(peers).majorityCount();
+        Mockito.doReturn(new LinkedHashSet<>(Arrays.asList(fast.address(), slow.address())))
+            .when(peers).allServersWithoutMySelf();
+    }
+
+    @After
+    public void destroy() {
+        fast.close();
+        slow.close();
+    }
+
+    @Test
+    public void coalesceWrites() throws Exception {
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(replicator.submit(key("service-" + i % 5), new Instances()));
+        }
+        // all publishes are queued before the replicator takes them:
+        startReplicator();
+
+        for (Future<Long> future : futures) {
+            future.get(5L, TimeUnit.SECONDS);
+        }
+
+        for (Follower follower : new Follower[]{fast, slow}) {
+            Request request = follower.take();
+            Assert.assertEquals("POST " + RaftCore.API_ON_PUB_BATCH, request.api);
+            Assert.assertEquals(5, request.body.getJSONArray("datums").size());
+            Assert.assertNull(follower.poll());
+        }
+    }
+
+    @Test
+    public void completeAtMajority() throws Exception {
+        fast.hold();
+        slow.hold();
+        startReplicator();
+
+        Future<Long> future = replicator.submit(key("service"), new Instances());
+        fast.take();
+        slow.take();
+        Assert.assertFalse(future.isDone());
+
+        // the leader and one follower are a majority of three:
+        fast.release();
+        future.get(5L, TimeUnit.SECONDS);
+        Assert.assertEquals(1, slow.waiting());
+    }
+
+    @Test
+    public void deleteAfterPut() throws Exception {
+        List<Future<Long>> futures = new ArrayList<>();
+        futures.add(replicator.submit(key("service-1"), new Instances()));
+        futures.add(replicator.submitDelete(key("service-1")));
+        futures.add(replicator.submit(key("service-2"), new Instances()));
+        startReplicator();
+
+        for (Future<Long> future : futures) {
+            future.get(5L, TimeUnit.SECONDS);
+        }
+        Assert.assertNull(raftCore.getDatum(key("service-1")));
+        Assert.assertNotNull(raftCore.getDatum(key("service-2")));
+
+        for (Follower follower : new Follower[]{fast, slow}) {
+            Request first = follower.take();
+            Assert.assertEquals("POST " + RaftCore.API_ON_PUB_BATCH, first.api);
+            Assert.assertEquals(key("service-1"), first.body.getJSONArray("datums").getJSONObject(0).getString("key"));
+
+            Request second = follower.take();
+            Assert.assertEquals("DELETE " + RaftCore.API_ON_DEL, second.api);
+            Assert.assertEquals(key("service-1"), second.body.getJSONObject("datum").getString("key"));
+
+            Request third = follower.take();
+            Assert.assertEquals("POST " + RaftCore.API_ON_PUB_BATCH, third.api);
+            Assert.assertEquals(key("service-2"), third.body.getJSONArray("datums").getJSONObject(0).getString("key"));
+        }
+    }
+
+    @Test
+    public void failOnlyFailedSegment() throws Exception {
+        Future<Long> put = replicator.submit(key("service-1"), new Instances());
+        Future<Long> delete = replicator.submitDelete(key("service-1"));
+        // an empty value is refused before it is replicated:
+        Future<Long> empty = replicator.submit(key("service-2"), null);
+        startReplicator();
+
+        put.get(5L, TimeUnit.SECONDS);
+        delete.get(5L, TimeUnit.SECONDS);
+        try {
+            empty.get(5L, TimeUnit.SECONDS);
+            Assert.fail("empty value replicated");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void resyncAfterOverflow() throws Exception {
+        // the slow follower does not answer, the fast one keeps up:
+        slow.hold();
+        startReplicator();
+
+        // deletes are never sent together, so each of them takes a place in the queue of the slow follower:
+        for (int i = 0; i <= RaftCore.MAX_PENDING_BATCHES_PER_PEER + 1; i++) {
+            replicator.submitDelete(key("service-" + i));
+        }
+
+        Set<?> resyncPeers = (Set<?>) ReflectionTestUtils.getField(raftCore, "resyncPeers");
+        long end = System.currentTimeMillis() + 5000L;
+        while (resyncPeers.isEmpty() && System.currentTimeMillis() < end) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(Collections.singleton(slow.address()), resyncPeers);
+
+        raftCore.new HeartBeat().sendBeat();
+        Assert.assertTrue(slow.takeBeat().getBooleanValue(RaftCore.RESYNC_BEAT_KEY));
+        Assert.assertFalse(fast.takeBeat().containsKey(RaftCore.RESYNC_BEAT_KEY));
+
+        // asked once, as soon as the follower acknowledged the beat:
+        end = System.currentTimeMillis() + 5000L;
+        while (!resyncPeers.isEmpty() && System.currentTimeMillis() < end) {
+            Thread.sleep(10L);
+        }
+        Assert.assertTrue(resyncPeers.isEmpty());
+    }
+
+    private void startReplicator() {
+        Thread replicatorThread = new Thread(replicator);
+        replicatorThread.setDaemon(true);
+        replicatorThread.start();
+    }
+
+    private static String key(String serviceName) {
+        return KeyBuilder.buildInstanceListKey("public", serviceName, false);
+    }
+
+    private static class Request {
+
+        private final String api;
+
+        private final JSONObject body;
+
+        private Request(String api, JSONObject body) {
+            this.api = api;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Follower recording the datums it receives, optionally holding its answers until released
+     */
+    private static class Follower {
+
+        private final HttpServer server;
+
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+
+        private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+
+        private final BlockingQueue<JSONObject> beats = new LinkedBlockingQueue<>();
+
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        private final Semaphore waiting = new Semaphore(0);
+
+        Follower() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", this::handle);
+            server.setExecutor(executor);
+            server.start();
+        }
+
+        String address() {
+            return "127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        void hold() {
+            gate = new CountDownLatch(1);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        int waiting() {
+            return waiting.availablePermits();
+        }
+
+        Request take() throws InterruptedException {
+            Request request = requests.poll(5L, TimeUnit.SECONDS);
+            Assert.assertNotNull(request);
+            return request;
+        }
+
+        Request poll() throws InterruptedException {
+            return requests.poll(200L, TimeUnit.MILLISECONDS);
+        }
+
+        JSONObject takeBeat() throws InterruptedException {
+            JSONObject beat = beats.poll(5L, TimeUnit.SECONDS);
+            Assert.assertNotNull(beat);
+            return beat;
+        }
+
+        void close() {
+            release();
+            server.stop(0);
+            executor.shutdownNow();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            JSONObject body = JSON.parseObject(read(IOUtils.toByteArray(exchange.getRequestBody())));
+
+            String response = "ok";
+            if (path.endsWith(RaftCore.API_BEAT)) {
+                beats.add(JSON.parseObject(body.getString("beat")));
+                response = "{\"ip\":\"" + address() + "\"}";
+            } else {
+                String api = path.substring(RunningConfig.getContextPath().length());
+                requests.add(new Request(exchange.getRequestMethod() + " " + api, body));
+                waiting.release();
+                try {
+                    gate.await(30L, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                waiting.tryAcquire();
+            }
+
+            byte[] content = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, content.length);
+            exchange.getResponseBody().write(content);
+            exchange.close();
+        }
+
+        private static String read(byte[] body) throws IOException {
+            if (body.length > 1 && body[0] == (byte) 0x1f && body[1] == (byte) 0x8b) {
+                return IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(body)), "UTF-8");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -60,4 +60,19 @@ public class RaftStoreTest extends BaseTest {
         Assert.assertEquals(1, result.timestamp.intValue());
         Assert.assertEquals(datum.value.toString(), result.value.toString());
     }
+
+    @Test
+    public void loadDatum() throws Exception {
+        Datum<Instances> datum = new Datum<>();
+        String key = KeyBuilder.buildInstanceListKey(TEST_NAMESPACE, TEST_SERVICE_NAME + "-load", false);
+        datum.key = key;
+        datum.value = new Instances();
+        datum.value.getInstanceList().add(new Instance("1.1.1.1", 1, TEST_CLUSTER_NAME));
+
+        raftStore.write(datum);
+        Assert.assertEquals(datum.value.toString(), raftStore.load(key).value.toString());
+
+        raftStore.delete(datum);
+        Assert.assertNull(raftStore.load(key));
+    }
 }
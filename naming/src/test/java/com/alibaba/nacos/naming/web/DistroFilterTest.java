@@ -0,0 +1,134 @@
+/*
+ * Copyright 1999-2018 Alibaba Group Holding Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alibaba.nacos.naming.web;
+
+import com.alibaba.nacos.naming.controllers.InstanceController;
+import com.alibaba.nacos.naming.core.DistroMapper;
+import com.alibaba.nacos.naming.misc.SwitchDomain;
+import com.alibaba.nacos.naming.misc.UtilsAndCommons;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author nkorange
+ */
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class DistroFilterTest {
+
+    @Mock
+    private DistroMapper distroMapper;
+    @Mock
+    private FilterBase filterBase;
+    @Mock
+    private FilterChain filterChain;
+
+    private DistroFilter filter;
+
+    private HttpServer peer;
+
+    private Map<String, String> received = new ConcurrentHashMap<>();
+
+    private List<String> servers = new ArrayList<>();
+
+    @Before
+    public void init() throws Exception {
+        filter = new DistroFilter();
+        ReflectionTestUtils.setField(filter, "distroMapper", distroMapper);
+        ReflectionTestUtils.setField(filter, "filterBase", filterBase);
+        ReflectionTestUtils.setField(filter, "switchDomain", new SwitchDomain());
+
+        peer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        peer.createContext("/", exchange -> {
+            received.put("request", exchange.getRequestMethod() + " " + exchange.getRequestURI());
+            received.put("body", IOUtils.toString(exchange.getRequestBody(), "UTF-8"));
+            received.put("agents", String.valueOf(exchange.getRequestHeaders().get("User-Agent")));
+
+            byte[] content = "ok".getBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/plain;charset=UTF-8");
+            exchange.sendResponseHeaders(201, content.length);
+            exchange.getResponseBody().write(content);
+            exchange.close();
+        });
+        peer.start();
+
+        Mockito.doReturn(InstanceController.class.getMethod("register", HttpServletRequest.class))
+            .when(filterBase).getMethod("POST", "/nacos/v1/ns/instance");
+        Mockito.doReturn(servers).when(distroMapper).getHealthyList();
+        Mockito.doReturn(false).when(distroMapper).responsible("DEFAULT_GROUP@@test-service");
+        Mockito.doReturn("127.0.0.1:" + peer.getAddress().getPort()).when(distroMapper).mapSrv("DEFAULT_GROUP@@test-service");
+    }
+
+    @After
+    public void destroy() {
+        filter.destroy();
+        peer.stop(0);
+    }
+
+    @Test
+    public void proxyFormRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/nacos/v1/ns/instance");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.addHeader("User-Agent", "Nacos-Java-Client:v1.0.0");
+        request.setQueryString("serviceName=test-service");
+        request.addParameter("serviceName", "test-service");
+        request.addParameter("ip", "1.1.1.1");
+        request.addParameter("metadata", "{\"site\":\"a&b\"}");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, filterChain);
+
+        Mockito.verify(filterChain, Mockito.never()).doFilter(Mockito.any(), Mockito.any());
+        Assert.assertEquals("POST /nacos/v1/ns/instance?serviceName=test-service", received.get("request"));
+        Assert.assertEquals("ip=1.1.1.1&metadata=%7B%22site%22%3A%22a%26b%22%7D", received.get("body"));
+        Assert.assertEquals("[" + UtilsAndCommons.SERVER_VERSION + "]", received.get("agents"));
+
+        Assert.assertEquals(201, response.getStatus());
+        Assert.assertEquals("text/plain;charset=UTF-8", response.getContentType());
+        Assert.assertEquals("ok", response.getContentAsString());
+    }
+
+    @Test
+    public void cacheRoutes() {
+        Assert.assertNotNull(filter.route("DEFAULT_GROUP@@test-service"));
+        Assert.assertNotNull(filter.route("DEFAULT_GROUP@@test-service"));
+        Mockito.verify(distroMapper, Mockito.times(1)).mapSrv("DEFAULT_GROUP@@test-service");
+
+        // decided again once the healthy servers change:
+        Mockito.doReturn(Collections.singletonList("127.0.0.1:8848")).when(distroMapper).getHealthyList();
+        filter.route("DEFAULT_GROUP@@test-service");
+        Mockito.verify(distroMapper, Mockito.times(2)).mapSrv("DEFAULT_GROUP@@test-service");
+    }
+}